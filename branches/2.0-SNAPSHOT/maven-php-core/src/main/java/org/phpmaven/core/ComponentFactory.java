@@ -18,9 +18,13 @@ package org.phpmaven.core;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Plugin;
@@ -59,6 +63,43 @@ import org.codehaus.plexus.util.xml.Xpp3Dom;
 @Component(role = IComponentFactory.class, instantiationStrategy = "per-lookup")
 @SuppressWarnings("deprecation")
 public class ComponentFactory implements IComponentFactory {
+    
+    /**
+     * The configuration metadata of a component class.
+     */
+    private static final class ClassMetadata {
+        
+        /**
+         * Configuration built from the {@link ConfigurationParameter} annotations; null if there are none.
+         */
+        private Xpp3Dom parameters;
+        
+        /**
+         * The {@link BuildPluginConfiguration} annotations of the class, its super classes and interfaces.
+         */
+        private final List<BuildPluginConfiguration> buildConfigs = new ArrayList<BuildPluginConfiguration>();
+        
+        /**
+         * The filtered nodes of the build plugin configurations (same order as {@link #buildConfigs}).
+         */
+        private final List<Set<String>> filters = new ArrayList<Set<String>>();
+        
+    }
+    
+    /**
+     * The metadata cache; weak keys to not pin classes of discarded class realms.
+     */
+    private static final Map<Class<?>, ClassMetadata> METADATA = new WeakHashMap<Class<?>, ClassMetadata>();
+    
+    /**
+     * Number of component lookups.
+     */
+    private static final AtomicLong LOOKUP_COUNT = new AtomicLong();
+    
+    /**
+     * Time spent in configuring components (nano seconds).
+     */
+    private static final AtomicLong LOOKUP_NANOS = new AtomicLong();
 
     /**
      * The plexus container.
@@ -171,33 +212,18 @@ public class ComponentFactory implements IComponentFactory {
     private <T> void configure(Class<T> clazz, Xpp3Dom[] configuration,
             MavenProject mavenProject, final T result, final ClassRealm realm, MavenSession session)
         throws ComponentLookupException, PlexusConfigurationException {
+        final long start = System.nanoTime();
         final MojoExecution execution = new MojoExecution(null);
         final ExpressionEvaluator expressionEvaluator = new PluginParameterExpressionEvaluator(session, execution);
         
-        Xpp3Dom classAnnotationConfig = null;
-        Class<?> resultClazz = result.getClass();
-        while (resultClazz != null) {
-            for (final Field field : resultClazz.getDeclaredFields()) {
-                final ConfigurationParameter param = field.getAnnotation(ConfigurationParameter.class);
-                if (param != null) {
-                    if (classAnnotationConfig == null) {
-                        classAnnotationConfig = new Xpp3Dom("configuration");
-                    }
-                    final Xpp3Dom child = new Xpp3Dom(param.name());
-                    child.setValue(param.expression());
-                    classAnnotationConfig.addChild(child);
-                }
-            }
-            resultClazz = resultClazz.getSuperclass();
-        }
-        if (classAnnotationConfig != null) {
-            final PlexusConfiguration pomConfiguration = new XmlPlexusConfiguration(classAnnotationConfig);
+        final ClassMetadata metadata = getMetadata(result.getClass());
+        if (metadata.parameters != null) {
+            final PlexusConfiguration pomConfiguration = new XmlPlexusConfiguration(metadata.parameters);
             populatePluginFields(result, pomConfiguration, expressionEvaluator, realm);
         }
         
-        final Set<Class<?>> classes = this.getAllClasses(result);
-        for (final Class<?> cls : classes) {
-            configureFromAnnotation(cls, mavenProject, result, realm,
+        for (int i = 0; i < metadata.buildConfigs.size(); i++) {
+            configureFromAnnotation(metadata.buildConfigs.get(i), metadata.filters.get(i), mavenProject, result, realm,
                     expressionEvaluator);
         }
         
@@ -210,12 +236,68 @@ public class ComponentFactory implements IComponentFactory {
                 populatePluginFields(result, pomConfiguration, expressionEvaluator, realm);
             }
         }
+        
+        final long nanos = System.nanoTime() - start;
+        final long count = LOOKUP_COUNT.incrementAndGet();
+        final long total = LOOKUP_NANOS.addAndGet(nanos);
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Configured component " + clazz.getName() + " in " + (nanos / 1000)
+                + " microseconds (" + count + " lookups, " + (total / 1000000) + " ms total)");
+        }
     }
     
-    private Set<Class<?>> getAllClasses(Object obj) {
+    /**
+     * Returns the configuration metadata of the given class.
+     * @param clazz component class
+     * @return metadata
+     */
+    private static ClassMetadata getMetadata(Class<?> clazz) {
+        synchronized (METADATA) {
+            final ClassMetadata cached = METADATA.get(clazz);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        final ClassMetadata result = new ClassMetadata();
+        Class<?> resultClazz = clazz;
+        while (resultClazz != null) {
+            for (final Field field : resultClazz.getDeclaredFields()) {
+                final ConfigurationParameter param = field.getAnnotation(ConfigurationParameter.class);
+                if (param != null) {
+                    if (result.parameters == null) {
+                        result.parameters = new Xpp3Dom("configuration");
+                    }
+                    final Xpp3Dom child = new Xpp3Dom(param.name());
+                    child.setValue(param.expression());
+                    result.parameters.addChild(child);
+                }
+            }
+            resultClazz = resultClazz.getSuperclass();
+        }
+        
+        for (final Class<?> cls : getAllClasses(clazz)) {
+            final BuildPluginConfiguration pConfiguration = cls.getAnnotation(BuildPluginConfiguration.class);
+            if (pConfiguration != null) {
+                final Set<String> filtered = new HashSet<String>();
+                for (final String filter : pConfiguration.filter()) {
+                    filtered.add(filter);
+                }
+                result.buildConfigs.add(pConfiguration);
+                result.filters.add(filtered);
+            }
+        }
+        
+        synchronized (METADATA) {
+            METADATA.put(clazz, result);
+        }
+        return result;
+    }
+    
+    private static Set<Class<?>> getAllClasses(Class<?> clazz) {
         final Set<Class<?>> result = new HashSet<Class<?>>();
         final Set<Class<?>> newcls = new HashSet<Class<?>>();
-        newcls.add(obj.getClass());
+        newcls.add(clazz);
         while (!newcls.isEmpty()) {
             final Class<?> cls = newcls.iterator().next();
             newcls.remove(cls);
@@ -231,46 +313,37 @@ public class ComponentFactory implements IComponentFactory {
         return result;
     }
 
-    private void configureFromAnnotation(Class<?> clazz,
+    private void configureFromAnnotation(BuildPluginConfiguration pConfiguration, Set<String> filtered,
             MavenProject mavenProject, final Object result, final ClassRealm realm,
             final ExpressionEvaluator expressionEvaluator)
         throws ComponentLookupException, PlexusConfigurationException {
-        final BuildPluginConfiguration pConfiguration = clazz.getAnnotation(BuildPluginConfiguration.class);
-        if (pConfiguration != null) {
-            
-            Xpp3Dom origConfig = this.getBuildConfig(
-                    mavenProject,
-                    pConfiguration.groupId(),
-                    pConfiguration.artifactId());
-            
-            for (final String cfg : pConfiguration.path().split("/")) {
-                if (cfg.length() > 0) {
-                    origConfig = origConfig == null ? null : origConfig.getChild(cfg);
-                }
+        Xpp3Dom origConfig = this.getBuildConfig(
+                mavenProject,
+                pConfiguration.groupId(),
+                pConfiguration.artifactId());
+        
+        for (final String cfg : pConfiguration.path().split("/")) {
+            if (cfg.length() > 0) {
+                origConfig = origConfig == null ? null : origConfig.getChild(cfg);
             }
-            
-            Xpp3Dom config = origConfig;
-            
-            // filtering needed?
-            if (pConfiguration.filter().length > 0 && origConfig != null) {
-                final Set<String> filtered = new HashSet<String>();
-                for (final String filter : pConfiguration.filter()) {
-                    filtered.add(filter);
-                }
-                
-                config = new Xpp3Dom(origConfig);
-                for (int i = 0; i < config.getChildCount(); i++) {
-                    if (filtered.contains(config.getChild(i).getName())) {
-                        config.removeChild(i);
-                        i--;
-                    }
+        }
+        
+        Xpp3Dom config = origConfig;
+        
+        // filtering needed?
+        if (!filtered.isEmpty() && origConfig != null) {
+            config = new Xpp3Dom(origConfig);
+            for (int i = 0; i < config.getChildCount(); i++) {
+                if (filtered.contains(config.getChild(i).getName())) {
+                    config.removeChild(i);
+                    i--;
                 }
             }
-            
-            if (config != null) {
-                final PlexusConfiguration pomConfiguration = new XmlPlexusConfiguration(config);
-                populatePluginFields(result, pomConfiguration, expressionEvaluator, realm);
-            }
+        }
+        
+        if (config != null) {
+            final PlexusConfiguration pomConfiguration = new XmlPlexusConfiguration(config);
+            populatePluginFields(result, pomConfiguration, expressionEvaluator, realm);
         }
     }
     
@@ -200,8 +200,11 @@ public class DeserializePhp {
         while (byteCount != strLen) {
             final char ch = input.charAt(index + utfStrLen++);
             if (assumeUTF8) {
-                if ((ch >= 0x0001) && (ch <= 0x007F)) {
+                if (ch <= 0x007F) {
                     byteCount++;
+                } else if (Character.isHighSurrogate(ch) || Character.isLowSurrogate(ch)) {
+                    // a surrogate pair is encoded as 4 bytes
+                    byteCount += 2;
                 } else if (ch > 0x07FF) {
                     byteCount += 3;
                 } else {
@@ -0,0 +1,694 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Byte oriented deserializer for the output of php serialize().
+ *
+ * <p>
+ * In contrast to {@link DeserializePhp} this parser reads the bytes from an {@link InputStream} or a
+ * {@link ByteBuffer}. Numbers are parsed in place and string lengths are taken as byte counts (as php
+ * writes them) so that multi byte characters are decoded correctly. Besides the primitives, arrays and
+ * objects it supports references (r: and R:) and custom serialized objects (C:).
+ * </p>
+ *
+ * <p>
+ * The input is either parsed into a tree ({@link #parse()}) with the same representation used by
+ * {@link DeserializePhp} or reported to a {@link Handler} ({@link #parse(Handler)}) without building the
+ * tree at all.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class DeserializePhpStream {
+
+    /**
+     * Receives the parser events.
+     *
+     * <p>
+     * Array and object members are reported as a {@link #key(Object)} event followed by the events of the
+     * value.
+     * </p>
+     */
+    public interface Handler {
+
+        /**
+         * A primitive value: Integer or Long, Double, Boolean, String or {@link DeserializePhp#NULL}.
+         * @param value the value
+         * @throws IOException thrown to abort parsing
+         */
+        void value(Object value) throws IOException;
+
+        /**
+         * The key of the next array or object member.
+         * @param key the key (Integer, Long or String)
+         * @throws IOException thrown to abort parsing
+         */
+        void key(Object key) throws IOException;
+
+        /**
+         * Start of an array.
+         * @param size the number of members
+         * @throws IOException thrown to abort parsing
+         */
+        void startArray(int size) throws IOException;
+
+        /**
+         * End of an array.
+         * @throws IOException thrown to abort parsing
+         */
+        void endArray() throws IOException;
+
+        /**
+         * Start of an object.
+         * @param className the class name
+         * @param size the number of members
+         * @throws IOException thrown to abort parsing
+         */
+        void startObject(String className, int size) throws IOException;
+
+        /**
+         * End of an object.
+         * @throws IOException thrown to abort parsing
+         */
+        void endObject() throws IOException;
+
+        /**
+         * An object using a custom serialization (Serializable interface).
+         * @param className the class name
+         * @param data the serialized data
+         * @throws IOException thrown to abort parsing
+         */
+        void customObject(String className, byte[] data) throws IOException;
+
+        /**
+         * A reference to a previous value.
+         * @param index the index of the value; values are numbered starting at 1 in the order they
+         *     appear (keys and R: references are not counted)
+         * @param strict true for a php reference (R:); false for an object reference (r:)
+         * @throws IOException thrown to abort parsing
+         */
+        void reference(int index, boolean strict) throws IOException;
+
+    }
+
+    /**
+     * Represents an object that uses a custom serialization.
+     */
+    public static class PhpCustomObject {
+
+        /**
+         * The class name.
+         */
+        public String name;
+
+        /**
+         * The serialized data.
+         */
+        public byte[] data;
+
+        @Override
+        public String toString() {
+            return "\"" + name + "\" : " + data.length + " bytes";
+        }
+    }
+
+    /**
+     * Size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The utf-8 charset.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The latin-1 charset.
+     */
+    private static final Charset ISO88591 = Charset.forName("ISO-8859-1");
+
+    /**
+     * The input stream; null if reading from the byte buffer.
+     */
+    private final InputStream stream;
+
+    /**
+     * The byte buffer; null if reading from the stream.
+     */
+    private final ByteBuffer source;
+
+    /**
+     * The read buffer.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Position within the read buffer.
+     */
+    private int pos;
+
+    /**
+     * Number of valid bytes in the read buffer.
+     */
+    private int limit;
+
+    /**
+     * Number of bytes consumed before the read buffer.
+     */
+    private long offset;
+
+    /**
+     * Scratch buffer for strings.
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * The charset used to decode strings.
+     */
+    private Charset charset = UTF8;
+
+    /**
+     * The attribute name regexp that is allowed.
+     */
+    private Pattern acceptedAttributeNameRegex;
+
+    /**
+     * Constructor to read from a stream.
+     * @param input the input stream; it is not closed by the parser
+     */
+    public DeserializePhpStream(InputStream input) {
+        this.stream = input;
+        this.source = null;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructor to read from a byte buffer. The bytes between position and limit are parsed; the
+     * position of the buffer is advanced.
+     * @param input the byte buffer
+     */
+    public DeserializePhpStream(ByteBuffer input) {
+        this.stream = null;
+        this.source = input;
+        this.buffer = new byte[Math.min(BUFFER_SIZE, Math.max(16, input.remaining()))];
+    }
+
+    /**
+     * Constructor to read from a byte array.
+     * @param input the serialized data
+     */
+    public DeserializePhpStream(byte[] input) {
+        this(new ByteArrayInputStream(input));
+    }
+
+    /**
+     * Sets whether strings are utf-8 encoded (default) or latin-1 encoded.
+     * @param assumeUTF8 true to assume utf-8
+     */
+    public void setAssumeUTF8(boolean assumeUTF8) {
+        this.charset = assumeUTF8 ? UTF8 : ISO88591;
+    }
+
+    /**
+     * Sets the regexp for accepted attribute names; only used by {@link #parse()}.
+     * @param acceptedAttributeNameRegex regexp.
+     */
+    public void setAcceptedAttributeNameRegex(String acceptedAttributeNameRegex) {
+        this.acceptedAttributeNameRegex = Pattern.compile(acceptedAttributeNameRegex);
+    }
+
+    /**
+     * Parses the next value and returns it as tree.
+     *
+     * <p>
+     * Arrays are returned as {@link Map}, objects as {@link DeserializePhp.PhpObject}, custom serialized
+     * objects as {@link PhpCustomObject}. References return the referenced value.
+     * </p>
+     *
+     * @return the value
+     * @throws IOException thrown on io errors or if the input is not a valid serialized value
+     */
+    public Object parse() throws IOException {
+        final TreeBuilder builder = new TreeBuilder(this.acceptedAttributeNameRegex);
+        this.parse(builder);
+        return builder.result;
+    }
+
+    /**
+     * Parses the next value and reports it to the handler.
+     * @param handler the handler
+     * @throws IOException thrown on io errors, if the input is not a valid serialized value or if the
+     *     handler aborts parsing
+     */
+    public void parse(Handler handler) throws IOException {
+        this.parseValue(handler);
+    }
+
+    /**
+     * Parses a value.
+     * @param handler the handler
+     * @throws IOException thrown on errors
+     */
+    private void parseValue(Handler handler) throws IOException {
+        final int type = this.read();
+        switch (type) {
+            case 'N':
+                this.expect(';');
+                handler.value(DeserializePhp.NULL);
+                break;
+            case 'b':
+                this.expect(':');
+                handler.value(Boolean.valueOf(this.readLong(';') != 0));
+                break;
+            case 'i':
+                this.expect(':');
+                handler.value(box(this.readLong(';')));
+                break;
+            case 'd':
+                this.expect(':');
+                handler.value(Double.valueOf(this.readDouble()));
+                break;
+            case 's':
+                this.expect(':');
+                handler.value(this.readString());
+                this.expect(';');
+                break;
+            case 'a': {
+                this.expect(':');
+                final int size = this.readInt(':');
+                this.expect('{');
+                handler.startArray(size);
+                this.parseMembers(handler, size);
+                handler.endArray();
+                break;
+            }
+            case 'O': {
+                this.expect(':');
+                final String name = this.readClassName();
+                final int size = this.readInt(':');
+                this.expect('{');
+                handler.startObject(name, size);
+                this.parseMembers(handler, size);
+                handler.endObject();
+                break;
+            }
+            case 'C': {
+                this.expect(':');
+                final String name = this.readClassName();
+                final int size = this.readInt(':');
+                this.expect('{');
+                final byte[] data = new byte[size];
+                this.readFully(data, size);
+                this.expect('}');
+                handler.customObject(name, data);
+                break;
+            }
+            case 'r':
+            case 'R':
+                this.expect(':');
+                handler.reference(this.readInt(';'), type == 'R');
+                break;
+            case -1:
+                throw new EOFException("Unexpected end of serialized data");
+            default:
+                throw this.error("Encountered unknown type [" + (char) type + "]");
+        }
+    }
+
+    /**
+     * Parses the members of an array or object, including the closing bracket.
+     * @param handler the handler
+     * @param size number of members
+     * @throws IOException thrown on errors
+     */
+    private void parseMembers(Handler handler, int size) throws IOException {
+        for (int i = 0; i < size; i++) {
+            final int type = this.read();
+            if (type == 'i') {
+                this.expect(':');
+                handler.key(box(this.readLong(';')));
+            } else if (type == 's') {
+                this.expect(':');
+                handler.key(this.readString());
+                this.expect(';');
+            } else {
+                throw this.error("Invalid key type [" + (char) type + "]");
+            }
+            this.parseValue(handler);
+        }
+        this.expect('}');
+    }
+
+    /**
+     * Boxes an integer value; Integer if it fits, Long otherwise.
+     * @param value the value
+     * @return boxed value
+     */
+    private static Object box(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return Integer.valueOf((int) value);
+        }
+        return Long.valueOf(value);
+    }
+
+    /**
+     * Reads a quoted class name followed by a colon.
+     * @return class name
+     * @throws IOException thrown on errors
+     */
+    private String readClassName() throws IOException {
+        final String result = this.readString();
+        this.expect(':');
+        return result;
+    }
+
+    /**
+     * Reads a string in the form len:"chars".
+     * @return string
+     * @throws IOException thrown on errors
+     */
+    private String readString() throws IOException {
+        final int len = this.readInt(':');
+        this.expect('"');
+        final String result;
+        if (this.limit - this.pos >= len) {
+            // decode directly from the read buffer
+            result = new String(this.buffer, this.pos, len, this.charset);
+            this.pos += len;
+        } else {
+            if (this.scratch.length < len) {
+                this.scratch = new byte[Math.max(len, this.scratch.length * 2)];
+            }
+            this.readFully(this.scratch, len);
+            result = new String(this.scratch, 0, len, this.charset);
+        }
+        this.expect('"');
+        return result;
+    }
+
+    /**
+     * Reads a non negative int followed by the given delimiter.
+     * @param delimiter the delimiter
+     * @return value
+     * @throws IOException thrown on errors
+     */
+    private int readInt(char delimiter) throws IOException {
+        final long result = this.readLong(delimiter);
+        if (result < 0 || result > Integer.MAX_VALUE) {
+            throw this.error("Invalid length " + result);
+        }
+        return (int) result;
+    }
+
+    /**
+     * Reads a decimal long followed by the given delimiter.
+     * @param delimiter the delimiter
+     * @return value
+     * @throws IOException thrown on errors
+     */
+    private long readLong(char delimiter) throws IOException {
+        int ch = this.read();
+        final boolean negative = ch == '-';
+        if (negative || ch == '+') {
+            ch = this.read();
+        }
+        if (ch < '0' || ch > '9') {
+            throw this.error("Digit expected");
+        }
+        long result = 0;
+        while (ch >= '0' && ch <= '9') {
+            final long next = result * 10 - (ch - '0');
+            if (result < Long.MIN_VALUE / 10 || next > result) {
+                throw this.error("Number too large");
+            }
+            result = next;
+            ch = this.read();
+        }
+        if (ch != delimiter) {
+            throw this.error("Expected '" + delimiter + "'");
+        }
+        if (negative) {
+            return result;
+        }
+        if (result == Long.MIN_VALUE) {
+            throw this.error("Number too large");
+        }
+        return -result;
+    }
+
+    /**
+     * Reads a double followed by a semicolon.
+     * @return value
+     * @throws IOException thrown on errors
+     */
+    private double readDouble() throws IOException {
+        final StringBuilder value = new StringBuilder(24);
+        int ch = this.read();
+        while (ch != ';') {
+            if (ch == -1) {
+                throw new EOFException("Unexpected end of serialized data");
+            }
+            value.append((char) ch);
+            ch = this.read();
+        }
+        final String str = value.toString();
+        if ("INF".equals(str)) {
+            return Double.POSITIVE_INFINITY;
+        } else if ("-INF".equals(str)) {
+            return Double.NEGATIVE_INFINITY;
+        } else if ("NAN".equals(str)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(str);
+        } catch (NumberFormatException ex) {
+            throw this.error("Invalid float " + str);
+        }
+    }
+
+    /**
+     * Reads the next byte and checks it.
+     * @param expected the expected byte
+     * @throws IOException thrown if the byte does not match
+     */
+    private void expect(char expected) throws IOException {
+        final int ch = this.read();
+        if (ch != expected) {
+            if (ch == -1) {
+                throw new EOFException("Unexpected end of serialized data");
+            }
+            throw this.error("Expected '" + expected + "' but found '" + (char) ch + "'");
+        }
+    }
+
+    /**
+     * Reads the next byte.
+     * @return the byte or -1 at the end of input
+     * @throws IOException thrown on io errors
+     */
+    private int read() throws IOException {
+        if (this.pos == this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.pos++] & 0xFF;
+    }
+
+    /**
+     * Reads the given number of bytes.
+     * @param target the target array
+     * @param len number of bytes
+     * @throws IOException thrown on io errors or at the end of input
+     */
+    private void readFully(byte[] target, int len) throws IOException {
+        int done = 0;
+        while (done < len) {
+            if (this.pos == this.limit && !this.fill()) {
+                throw new EOFException("Unexpected end of serialized data");
+            }
+            final int count = Math.min(len - done, this.limit - this.pos);
+            System.arraycopy(this.buffer, this.pos, target, done, count);
+            this.pos += count;
+            done += count;
+        }
+    }
+
+    /**
+     * Fills the read buffer.
+     * @return false at the end of input
+     * @throws IOException thrown on io errors
+     */
+    private boolean fill() throws IOException {
+        this.offset += this.limit;
+        this.pos = 0;
+        this.limit = 0;
+        if (this.stream != null) {
+            final int count = this.stream.read(this.buffer);
+            if (count <= 0) {
+                return false;
+            }
+            this.limit = count;
+        } else {
+            final int count = Math.min(this.buffer.length, this.source.remaining());
+            if (count == 0) {
+                return false;
+            }
+            this.source.get(this.buffer, 0, count);
+            this.limit = count;
+        }
+        return true;
+    }
+
+    /**
+     * Creates an exception for invalid input.
+     * @param message the message
+     * @return exception
+     */
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + (this.offset + this.pos - 1));
+    }
+
+    /**
+     * Handler building the tree.
+     */
+    private static final class TreeBuilder implements Handler {
+
+        /**
+         * The accepted attribute names or null.
+         */
+        private final Pattern accepted;
+
+        /**
+         * The values that can be referenced (index 0 is value 1).
+         */
+        private final List<Object> values = new ArrayList<Object>();
+
+        /**
+         * The open containers (Map or PhpObject).
+         */
+        private final List<Map<Object, Object>> stack = new ArrayList<Map<Object, Object>>();
+
+        /**
+         * The keys of the open containers.
+         */
+        private final List<Object> keys = new ArrayList<Object>();
+
+        /**
+         * The result.
+         */
+        private Object result;
+
+        /**
+         * Constructor.
+         * @param accepted the accepted attribute names or null
+         */
+        TreeBuilder(Pattern accepted) {
+            this.accepted = accepted;
+        }
+
+        @Override
+        public void value(Object value) {
+            this.values.add(value);
+            this.add(value);
+        }
+
+        @Override
+        public void key(Object key) {
+            this.keys.set(this.keys.size() - 1, key);
+        }
+
+        @Override
+        public void startArray(int size) {
+            final Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            this.values.add(map);
+            this.add(map);
+            this.stack.add(map);
+            this.keys.add(null);
+        }
+
+        @Override
+        public void endArray() {
+            this.stack.remove(this.stack.size() - 1);
+            this.keys.remove(this.keys.size() - 1);
+        }
+
+        @Override
+        public void startObject(String className, int size) {
+            final DeserializePhp.PhpObject object = new DeserializePhp.PhpObject();
+            object.name = className;
+            this.values.add(object);
+            this.add(object);
+            this.stack.add(object.attributes);
+            this.keys.add(null);
+        }
+
+        @Override
+        public void endObject() {
+            this.endArray();
+        }
+
+        @Override
+        public void customObject(String className, byte[] data) {
+            final PhpCustomObject object = new PhpCustomObject();
+            object.name = className;
+            object.data = data;
+            this.value(object);
+        }
+
+        @Override
+        public void reference(int index, boolean strict) throws IOException {
+            if (index < 1 || index > this.values.size()) {
+                throw new IOException("Invalid reference " + index);
+            }
+            final Object value = this.values.get(index - 1);
+            if (!strict) {
+                this.values.add(value);
+            }
+            this.add(value);
+        }
+
+        /**
+         * Adds a value to the current container.
+         * @param value the value
+         */
+        private void add(Object value) {
+            if (this.stack.isEmpty()) {
+                this.result = value;
+                return;
+            }
+            final Object key = this.keys.get(this.keys.size() - 1);
+            if (this.accepted == null || !(key instanceof String) || this.accepted.matcher((String) key).matches()) {
+                this.stack.get(this.stack.size() - 1).put(key, value);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.phpmaven.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utils to calculate content hashes of files.
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class HashUtils {
+
+    /** hex digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Hidden constructor.
+     */
+    private HashUtils() {
+        // hidden constructor
+    }
+
+    /**
+     * Calculates the content hash of a file.
+     * @param file the file
+     * @param algorithm the digest algorithm (for example "SHA-1" or "MD5")
+     * @return hex encoded hash
+     * @throws IOException thrown on io errors
+     */
+    public static String hash(File file, String algorithm) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        final InputStream is = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read = is.read(buffer);
+            while (read != -1) {
+                digest.update(buffer, 0, read);
+                read = is.read(buffer);
+            }
+        } finally {
+            is.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Converts the given bytes to a hex string.
+     * @param bytes bytes
+     * @return hex string
+     */
+    public static String toHex(byte[] bytes) {
+        final char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            result[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.core.test;
+
+import java.io.IOException;
+
+import org.phpmaven.core.DeserializePhp;
+import org.phpmaven.core.DeserializePhpStream;
+
+/**
+ * Compares the string based and the streaming deserializer.
+ * 
+ * <p>
+ * Not a unit test; run it manually with the test classpath:
+ * <code>java -cp ... org.phpmaven.core.test.DeserializePhpBenchmark [entries]</code>.
+ * Each parser is warmed up before it is measured; the best of five rounds is reported.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class DeserializePhpBenchmark {
+
+    /**
+     * Number of measured rounds.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * A parser under test.
+     */
+    private interface Parser {
+
+        /**
+         * Parses the input.
+         * @return result
+         * @throws IOException thrown on errors
+         */
+        Object parse() throws IOException;
+
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private DeserializePhpBenchmark() {
+        // main class
+    }
+
+    /**
+     * Main method.
+     * @param args optional number of array entries
+     * @throws Exception thrown on errors
+     */
+    public static void main(String[] args) throws Exception {
+        final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final StringBuilder builder = new StringBuilder();
+        builder.append("a:").append(entries).append(":{");
+        for (int i = 0; i < entries; i++) {
+            builder.append("i:").append(i).append(";a:4:{s:4:\"name\";s:18:\"some/file/äöü.php\";");
+            builder.append("s:4:\"size\";i:").append(i * 31).append(";");
+            builder.append("s:5:\"ratio\";d:0.").append(i).append(";");
+            builder.append("s:6:\"hidden\";b:").append(i % 2).append(";}");
+        }
+        builder.append("}");
+        final String input = builder.toString();
+        final byte[] bytes = input.getBytes("UTF-8");
+        System.out.println("Input: " + entries + " entries, " + bytes.length + " bytes");
+
+        run("DeserializePhp (string)", new Parser() {
+            @Override
+            public Object parse() {
+                return new DeserializePhp(input).parse();
+            }
+        });
+        run("DeserializePhpStream (bytes)", new Parser() {
+            @Override
+            public Object parse() throws IOException {
+                return new DeserializePhpStream(bytes).parse();
+            }
+        });
+        run("DeserializePhpStream (string to bytes)", new Parser() {
+            @Override
+            public Object parse() throws IOException {
+                return new DeserializePhpStream(input.getBytes("UTF-8")).parse();
+            }
+        });
+    }
+
+    /**
+     * Measures a parser.
+     * @param name name of the parser
+     * @param parser the parser
+     * @throws IOException thrown on errors
+     */
+    private static void run(String name, Parser parser) throws IOException {
+        // warm up
+        for (int i = 0; i < ROUNDS; i++) {
+            parser.parse();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            final long start = System.nanoTime();
+            parser.parse();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms");
+    }
+
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.core.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.phpmaven.core.DeserializePhp;
+import org.phpmaven.core.DeserializePhpStream;
+
+/**
+ * Test case for the streaming deserializer.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class DeserializePhpStreamTest extends TestCase {
+
+    /**
+     * Tests parsing primitives.
+     * @throws Exception thrown on errors
+     */
+    public void testPrimitives() throws Exception {
+        assertEquals(DeserializePhp.NULL, parse("N;"));
+        assertEquals(Boolean.TRUE, parse("b:1;"));
+        assertEquals(Boolean.FALSE, parse("b:0;"));
+        assertEquals(Integer.valueOf(-123), parse("i:-123;"));
+        assertEquals(Long.valueOf(9223372036854775807L), parse("i:9223372036854775807;"));
+        assertEquals(Long.valueOf(-9223372036854775808L), parse("i:-9223372036854775808;"));
+        assertEquals(Double.valueOf(0.19999998807907104), parse("d:0.19999998807907104;"));
+        assertEquals(Double.valueOf(1.0E+25), parse("d:1.0E+25;"));
+        assertEquals(Double.valueOf(Double.NEGATIVE_INFINITY), parse("d:-INF;"));
+        assertEquals("foo", parse("s:3:\"foo\";"));
+        assertEquals("a\";b", parse("s:4:\"a\";b\";"));
+    }
+
+    /**
+     * Tests that string lengths are byte counts, including characters outside the basic plane.
+     * @throws Exception thrown on errors
+     */
+    public void testMultibyte() throws Exception {
+        final String value = "supérb € 😀";
+        final int len = value.getBytes("UTF-8").length;
+        assertEquals(value, parse("s:" + len + ":\"" + value + "\";"));
+        assertEquals(value, new DeserializePhp("s:" + len + ":\"" + value + "\";").parse());
+        
+        final DeserializePhpStream latin1 = new DeserializePhpStream("s:6:\"supérb\";".getBytes("ISO-8859-1"));
+        latin1.setAssumeUTF8(false);
+        assertEquals("supérb", latin1.parse());
+    }
+
+    /**
+     * Tests parsing arrays, objects, references and custom objects.
+     * @throws Exception thrown on errors
+     */
+    @SuppressWarnings("rawtypes")
+    public void testStructures() throws Exception {
+        final Map result = (Map) parse(
+            "a:4:{i:0;O:7:\"MyClass\":1:{s:5:\"pippo\";s:4:\"test\";}s:3:\"ref\";r:2;"
+            + "s:6:\"custom\";C:11:\"ArrayObject\":5:{x:i:0}s:5:\"inner\";a:1:{i:0;R:3;}}");
+        assertEquals(4, result.size());
+        final DeserializePhp.PhpObject object = (DeserializePhp.PhpObject) result.get(0);
+        assertEquals("MyClass", object.name);
+        assertEquals("test", object.attributes.get("pippo"));
+        assertSame(object, result.get("ref"));
+        final DeserializePhpStream.PhpCustomObject custom = (DeserializePhpStream.PhpCustomObject) result.get("custom");
+        assertEquals("ArrayObject", custom.name);
+        assertEquals("x:i:0", new String(custom.data, "UTF-8"));
+        assertEquals("test", ((Map) result.get("inner")).get(0));
+    }
+
+    /**
+     * Tests the event interface and reading from a byte buffer.
+     * @throws Exception thrown on errors
+     */
+    public void testEvents() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        final DeserializePhpStream parser = new DeserializePhpStream(ByteBuffer.wrap(
+            "a:2:{s:1:\"a\";i:1;i:5;O:1:\"X\":0:{}}".getBytes("UTF-8")));
+        parser.parse(new DeserializePhpStream.Handler() {
+            @Override
+            public void value(Object value) {
+                events.add("value " + value);
+            }
+            @Override
+            public void key(Object key) {
+                events.add("key " + key);
+            }
+            @Override
+            public void startArray(int size) {
+                events.add("array " + size);
+            }
+            @Override
+            public void endArray() {
+                events.add("endArray");
+            }
+            @Override
+            public void startObject(String className, int size) {
+                events.add("object " + className + " " + size);
+            }
+            @Override
+            public void endObject() {
+                events.add("endObject");
+            }
+            @Override
+            public void customObject(String className, byte[] data) {
+                events.add("custom " + className);
+            }
+            @Override
+            public void reference(int index, boolean strict) {
+                events.add("reference " + index);
+            }
+        });
+        assertEquals(
+            "[array 2, key a, value 1, key 5, object X 0, endObject, endArray]",
+            events.toString());
+    }
+
+    /**
+     * Tests parsing a stream that delivers single bytes.
+     * @throws Exception thrown on errors
+     */
+    @SuppressWarnings("rawtypes")
+    public void testSlowStream() throws Exception {
+        final StringBuilder input = new StringBuilder("a:100:{");
+        for (int i = 0; i < 100; i++) {
+            input.append("i:").append(i).append(";s:300:\"");
+            for (int j = 0; j < 300; j++) {
+                input.append((char) ('a' + j % 26));
+            }
+            input.append("\";");
+        }
+        input.append("}");
+        final InputStream in = new ByteArrayInputStream(input.toString().getBytes("UTF-8")) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        final Map result = (Map) new DeserializePhpStream(in).parse();
+        assertEquals(100, result.size());
+        assertEquals(300, ((String) result.get(99)).length());
+    }
+
+    /**
+     * Tests invalid input.
+     * @throws Exception thrown on errors
+     */
+    public void testIllegal() throws Exception {
+        try {
+            parse("A;");
+            fail("Expected exception not thrown");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("offset 0"));
+        }
+        try {
+            parse("s:10:\"abc\";");
+            fail("Expected exception not thrown");
+        } catch (EOFException ex) {
+            // expected
+        }
+        try {
+            parse("a:1:{i:0;r:5;}");
+            fail("Expected exception not thrown");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Parses the given input.
+     * @param input serialized data
+     * @return result
+     * @throws IOException thrown on errors
+     */
+    private static Object parse(String input) throws IOException {
+        return new DeserializePhpStream(input.getBytes("UTF-8")).parse();
+    }
+
+}
@@ -17,8 +17,10 @@
 package org.phpmaven.core.test;
 
 import java.io.File;
+import java.util.List;
 
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.test.AbstractTestCase;
@@ -61,4 +63,55 @@ public class GetBuildConfigTest extends AbstractTestCase {
                 new File(dom.getChild("fooBar").getValue()).getAbsolutePath());
     }
 
+    /**
+     * Tests that the build config reflects plugins added after the first lookup.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testAddedPlugin() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the session
+        final MavenSession session = createSimpleSession("core/pom-with-buildconfig-childoverwrite");
+        assertNotNull(factory.getBuildConfig(session.getCurrentProject(), "org.phpmaven", "maven-php-plugin-test"));
+        assertNull(factory.getBuildConfig(session.getCurrentProject(), "org.phpmaven", "maven-php-plugin-other"));
+        
+        final Plugin plugin = new Plugin();
+        plugin.setGroupId("org.phpmaven");
+        plugin.setArtifactId("maven-php-plugin-other");
+        final Xpp3Dom config = new Xpp3Dom("configuration");
+        plugin.setConfiguration(config);
+        session.getCurrentProject().getBuild().addPlugin(plugin);
+        
+        assertSame(config, factory.getBuildConfig(session.getCurrentProject(), "org.phpmaven", "maven-php-plugin-other"));
+    }
+
+    /**
+     * Tests that the build config reflects plugins replaced after the first lookup.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testReplacedPlugin() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the session
+        final MavenSession session = createSimpleSession("core/pom-with-buildconfig-childoverwrite");
+        final Xpp3Dom old = factory.getBuildConfig(session.getCurrentProject(), "org.phpmaven", "maven-php-plugin-test");
+        assertNotNull(old);
+        
+        final List<Plugin> plugins = session.getCurrentProject().getBuild().getPlugins();
+        for (int i = 0; i < plugins.size(); i++) {
+            if ("maven-php-plugin-test".equals(plugins.get(i).getArtifactId())) {
+                final Plugin plugin = plugins.get(i).clone();
+                plugin.setConfiguration(new Xpp3Dom("configuration"));
+                plugins.set(i, plugin);
+            }
+        }
+        
+        final Xpp3Dom replaced = factory.getBuildConfig(
+            session.getCurrentProject(), "org.phpmaven", "maven-php-plugin-test");
+        assertNotNull(replaced);
+        assertNotSame(old, replaced);
+    }
+
 }
\ No newline at end of file
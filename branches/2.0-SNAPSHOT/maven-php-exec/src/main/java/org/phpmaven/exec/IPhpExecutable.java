@@ -17,9 +17,11 @@
 package org.phpmaven.exec;
 
 import java.io.File;
+import java.util.concurrent.Future;
 
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.phpmaven.core.DeserializePhpStream;
 
 /**
  * An interface representing a php executable.
@@ -35,6 +37,18 @@ import org.codehaus.plexus.util.cli.StreamConsumer;
  */
 public interface IPhpExecutable {
     
+    /**
+     * Name of the environment variable holding the result file of the executeForResult methods.
+     * 
+     * <p>
+     * Scripts deliver their result by writing serialized php data to this file, for example
+     * <code>file_put_contents(getenv('PHPMAVEN_RESULT_FILE'), serialize($result));</code>
+     * </p>
+     * 
+     * @since 2.0.1
+     */
+    String RESULT_FILE_ENV = "PHPMAVEN_RESULT_FILE";
+    
     /**
      * Configures this executable.
      * 
@@ -100,6 +114,42 @@ public interface IPhpExecutable {
      */
     int execute(String arguments, File file, final StreamConsumer stdout) throws PhpException;
     
+    /**
+     * Executes PHP with the given arguments and passes its output to the given capture.
+     * 
+     * <p>
+     * If the execution fails the output kept in memory by the capture is appended to the exception.
+     * The capture is not closed.
+     * </p>
+     *
+     * @param arguments string of arguments for PHP (including the file-path and filename)
+     * @param file a hint which file will be processed
+     * @param output the output capture
+     * @return the returncode of PHP
+     * @throws PhpException if the execution failed
+     * @since 2.0.1
+     */
+    int execute(String arguments, File file, OutputCapture output) throws PhpException;
+    
+    /**
+     * Executes PHP code snippet with the given arguments and passes its output to the given capture.
+     * 
+     * <p>
+     * If the execution fails the output kept in memory by the capture is appended to the exception.
+     * The capture is not closed.
+     * </p>
+     *
+     * @param arguments string of arguments for PHP
+     * @param code the php code to be executed
+     * @param codeArguments Arguments (cli) for the script
+     * @param output the output capture
+     * @return the returncode of PHP
+     * @throws PhpException if the execution failed
+     * @since 2.0.1
+     */
+    int executeCode(String arguments, String code, String codeArguments, OutputCapture output)
+        throws PhpException;
+    
     /**
      * Executes PHP with the given arguments.
      *
@@ -111,6 +161,87 @@ public interface IPhpExecutable {
      */
     int execute(String arguments, StreamConsumer stdout, StreamConsumer stderr) throws PhpException;
     
+    /**
+     * Executes PHP with the given arguments asynchronously.
+     * 
+     * <p>
+     * The execution is queued on an executor shared by all php executables; it runs at most one execution per
+     * available processor. Cancelling the future or exceeding the timeout destroys the php process. The future
+     * returns the return code of php or throws an {@link java.util.concurrent.ExecutionException} caused by
+     * the {@link PhpException} of the failed execution (see {@link #execute(String, File, OutputCapture)}).
+     * </p>
+     * 
+     * <p>
+     * Java does not offer access to the processes started by php; only php itself is destroyed.
+     * </p>
+     *
+     * @param arguments string of arguments for PHP (including the file-path and filename)
+     * @param file a hint which file will be processed
+     * @param output the output capture; it is not closed
+     * @param timeout the timeout in milliseconds; 0 for no timeout
+     * @return the future of the execution
+     * @since 2.0.1
+     */
+    Future<Integer> executeAsync(String arguments, File file, OutputCapture output, long timeout);
+    
+    /**
+     * Executes PHP code snippet with the given arguments asynchronously.
+     * 
+     * <p>
+     * Every asynchronous snippet is written to its own temporary file. See
+     * {@link #executeAsync(String, File, OutputCapture, long)} for details.
+     * </p>
+     *
+     * @param arguments string of arguments for PHP
+     * @param code the php code to be executed
+     * @param codeArguments Arguments (cli) for the script
+     * @param output the output capture; it is not closed
+     * @param timeout the timeout in milliseconds; 0 for no timeout
+     * @return the future of the execution
+     * @throws PhpException if the snippet cannot be written
+     * @since 2.0.1
+     */
+    Future<Integer> executeCodeAsync(String arguments, String code, String codeArguments, OutputCapture output,
+        long timeout) throws PhpException;
+    
+    /**
+     * Executes PHP with the given arguments and returns the result written by the script.
+     * 
+     * <p>
+     * The result is passed through a separate channel (see {@link #RESULT_FILE_ENV}) and is not mixed
+     * with the script output. The output is checked for errors and warnings but not returned.
+     * </p>
+     *
+     * @param arguments string of arguments for PHP (including the file-path and filename)
+     * @param file a hint which file will be processed
+     * @return the unserialized result (see {@link DeserializePhpStream#parse()})
+     * @throws PhpException if the execution failed or the script did not write a result
+     * @since 2.0.1
+     */
+    Object executeForResult(String arguments, File file) throws PhpException;
+    
+    /**
+     * Executes PHP with the given arguments and streams the result written by the script to the given handler.
+     *
+     * @param arguments string of arguments for PHP (including the file-path and filename)
+     * @param file a hint which file will be processed
+     * @param handler the handler receiving the result
+     * @throws PhpException if the execution failed or the script did not write a result
+     * @since 2.0.1
+     */
+    void executeForResult(String arguments, File file, DeserializePhpStream.Handler handler) throws PhpException;
+    
+    /**
+     * Executes PHP code snippet with the given arguments and returns the result written by the code.
+     *
+     * @param arguments string of arguments for PHP
+     * @param code the php code to be executed
+     * @return the unserialized result (see {@link DeserializePhpStream#parse()})
+     * @throws PhpException if the execution failed or the code did not write a result
+     * @since 2.0.1
+     */
+    Object executeCodeForResult(String arguments, String code) throws PhpException;
+    
     /**
      * Returns the version of this php executable.
      * @return php executable version.
@@ -87,7 +87,26 @@ import org.phpmaven.core.IComponentFactory;
  *   <td>PHP_EXE</td>
  *   <td>An alternative interpreter that will be used; additional plugins are able to install custom
  *       interpreters implementing the Interface {@link IPhpExecutable}. For example there may be interpreters
- *       written in java.
+ *       written in java. The interpreter PHP_WORKER keeps a pool of long-living php processes and re-uses them
+ *       for script invocations instead of starting a new php process for every call.
+ *   </td>
+ * </tr>
+ * <tr>
+ *   <td>workerPoolSize</td>
+ *   <td>-Dphp.executable.workerPoolSize=</td>
+ *   <td>php.executable.workerPoolSize</td>
+ *   <td>0</td>
+ *   <td>The maximum number of php worker processes per configuration (include path, defines etc.) used by the
+ *       PHP_WORKER interpreter. A value of 0 uses the number of available processors.
+ *   </td>
+ * </tr>
+ * <tr>
+ *   <td>workerMaxRequests</td>
+ *   <td>-Dphp.executable.workerMaxRequests=</td>
+ *   <td>php.executable.workerMaxRequests</td>
+ *   <td>100</td>
+ *   <td>The number of invocations a php worker process of the PHP_WORKER interpreter serves before it is
+ *       recycled. Workers are recycled earlier on fatal errors.
  *   </td>
  * </tr>
  * <tr>
@@ -313,6 +332,30 @@ public interface IPhpExecutableConfiguration {
      */
     IPhpExecutable getPhpExecutable(Log log) throws PlexusConfigurationException, ComponentLookupException;
     
+    /**
+     * Returns the maximum number of php worker processes (interpreter PHP_WORKER).
+     * @return maximum number of php worker processes; 0 for the number of available processors.
+     */
+    int getWorkerPoolSize();
+
+    /**
+     * Sets the maximum number of php worker processes (interpreter PHP_WORKER).
+     * @param workerPoolSize maximum number of php worker processes; 0 for the number of available processors.
+     */
+    void setWorkerPoolSize(int workerPoolSize);
+
+    /**
+     * Returns the number of invocations a php worker process serves before it is recycled.
+     * @return number of invocations per worker process.
+     */
+    int getWorkerMaxRequests();
+
+    /**
+     * Sets the number of invocations a php worker process serves before it is recycled.
+     * @param workerMaxRequests number of invocations per worker process.
+     */
+    void setWorkerMaxRequests(int workerMaxRequests);
+    
     /**
      * The work directory.
      * @return work directory.
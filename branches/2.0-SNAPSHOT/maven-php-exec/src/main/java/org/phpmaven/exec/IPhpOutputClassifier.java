@@ -0,0 +1,61 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.exec;
+
+/**
+ * Classifies the output lines of php.
+ * 
+ * <p>
+ * Implementations are invoked for every output line and must be thread safe.
+ * The default implementation is {@link PhpOutputClassifier#instance()}.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public interface IPhpOutputClassifier {
+    
+    /**
+     * The type of an output line.
+     */
+    enum LineType {
+        /** regular output. */
+        OUTPUT,
+        /** a php warning or notice. */
+        WARNING,
+        /** a php error. */
+        ERROR
+    }
+    
+    /**
+     * Classifies an output line.
+     * 
+     * @param line the output line
+     * @return the line type
+     */
+    LineType classify(CharSequence line);
+    
+    /**
+     * Checks if an error or warning line is caused by an include statement
+     * (include, include_once, require or require_once).
+     * 
+     * @param line the output line
+     * @return true if the line reports a failed include
+     */
+    boolean isIncludeError(CharSequence line);
+
+}
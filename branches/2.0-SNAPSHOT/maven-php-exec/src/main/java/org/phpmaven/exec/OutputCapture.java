@@ -0,0 +1,312 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.exec;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * A bounded capture of php output lines.
+ * 
+ * <p>
+ * The capture keeps the first and the last lines of the output in memory; each part is limited to a
+ * number of characters. Lines in between are dropped from memory. If a target file is given every line
+ * is written to that file, so the complete output is available without buffering it in memory.
+ * </p>
+ * 
+ * <p>
+ * The capture counts all lines and their bytes (UTF-8 encoded, including the line separator). The
+ * target file is UTF-8 encoded, too, so the byte count matches the size of the file.
+ * Instances are thread safe; the output is usually consumed by the stream pumper of the php process
+ * and read by the invoking thread.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class OutputCapture implements StreamConsumer, Closeable {
+    
+    /**
+     * The encoding of the target file and of the byte count.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    /**
+     * Default limit (characters) of the head and of the tail kept in memory.
+     */
+    public static final int DEFAULT_LIMIT = 32 * 1024;
+    
+    /**
+     * The limit (characters) of the head and of the tail.
+     */
+    private final int limit;
+    
+    /**
+     * The first lines of the output.
+     */
+    private final StringBuilder head = new StringBuilder();
+    
+    /**
+     * The last lines of the output (after the head is full).
+     */
+    private final Deque<String> tail = new ArrayDeque<String>();
+    
+    /**
+     * The number of characters within the tail.
+     */
+    private int tailChars;
+    
+    /**
+     * true if the head is full.
+     */
+    private boolean headFull;
+    
+    /**
+     * The number of lines dropped between head and tail.
+     */
+    private long omittedLines;
+    
+    /**
+     * true if lines were dropped or shortened.
+     */
+    private boolean truncated;
+    
+    /**
+     * The number of lines.
+     */
+    private long lineCount;
+    
+    /**
+     * The number of bytes.
+     */
+    private long byteCount;
+    
+    /**
+     * The writer for the target file; {@code null} if there is no target file.
+     */
+    private Writer writer;
+    
+    /**
+     * The target file.
+     */
+    private final File target;
+    
+    /**
+     * The first error writing the target file.
+     */
+    private IOException writeError;
+    
+    /**
+     * Constructor to capture the output in memory using the default limit.
+     */
+    public OutputCapture() {
+        this.limit = DEFAULT_LIMIT;
+        this.target = null;
+    }
+    
+    /**
+     * Constructor to capture the output in memory.
+     * 
+     * @param limit the limit (characters) of the head and of the tail
+     */
+    public OutputCapture(int limit) {
+        this.limit = limit;
+        this.target = null;
+    }
+    
+    /**
+     * Constructor to write the output to the given file using the default limit.
+     * 
+     * @param target the target file; an existing file is overwritten
+     * @throws IOException thrown if the target file cannot be created
+     */
+    public OutputCapture(File target) throws IOException {
+        this(target, DEFAULT_LIMIT);
+    }
+    
+    /**
+     * Constructor to write the output to the given file.
+     * 
+     * @param target the target file; an existing file is overwritten
+     * @param limit the limit (characters) of the head and of the tail
+     * @throws IOException thrown if the target file cannot be created
+     */
+    public OutputCapture(File target, int limit) throws IOException {
+        this.limit = limit;
+        this.target = target;
+        if (target.getParentFile() != null) {
+            target.getParentFile().mkdirs();
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(target), UTF8));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void consumeLine(String line) {
+        this.lineCount++;
+        this.byteCount += utf8Length(line) + 1;
+        
+        if (this.writer != null && this.writeError == null) {
+            try {
+                this.writer.write(line);
+                this.writer.write('\n');
+            } catch (IOException ex) {
+                this.writeError = ex;
+            }
+        }
+        
+        if (!this.headFull) {
+            if (this.head.length() + line.length() + 1 <= this.limit) {
+                this.head.append(line).append('\n');
+                return;
+            }
+            this.headFull = true;
+        }
+        
+        String stored = line;
+        if (line.length() > this.limit) {
+            stored = line.substring(line.length() - this.limit);
+            this.truncated = true;
+        }
+        this.tail.addLast(stored);
+        this.tailChars += stored.length() + 1;
+        while (this.tailChars > this.limit && this.tail.size() > 1) {
+            this.tailChars -= this.tail.removeFirst().length() + 1;
+            this.omittedLines++;
+            this.truncated = true;
+        }
+    }
+    
+    /**
+     * Returns the number of lines.
+     * 
+     * @return number of lines
+     */
+    public synchronized long getLineCount() {
+        return this.lineCount;
+    }
+    
+    /**
+     * Returns the number of bytes (UTF-8 encoded, including the line separators).
+     * 
+     * @return number of bytes
+     */
+    public synchronized long getByteCount() {
+        return this.byteCount;
+    }
+    
+    /**
+     * Returns true if lines were dropped from memory or shortened.
+     * 
+     * @return true if the output kept in memory is not complete
+     */
+    public synchronized boolean isTruncated() {
+        return this.truncated;
+    }
+    
+    /**
+     * Returns the target file.
+     * 
+     * @return target file or {@code null} if the output is only captured in memory
+     */
+    public File getTarget() {
+        return this.target;
+    }
+    
+    /**
+     * Returns the output kept in memory: the head, a marker for omitted lines and the tail.
+     * 
+     * @return output
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder result = new StringBuilder(this.head.length() + this.tailChars + 80);
+        result.append(this.head);
+        if (this.omittedLines > 0) {
+            result.append("[... ").append(this.omittedLines).append(" lines omitted");
+            if (this.target != null) {
+                result.append("; see ").append(this.target.getAbsolutePath());
+            }
+            result.append(" ...]\n");
+        }
+        for (final String line : this.tail) {
+            result.append(line).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Closes the target file.
+     * 
+     * @throws IOException thrown if the output could not be written to the target file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            } catch (IOException ex) {
+                if (this.writeError == null) {
+                    this.writeError = ex;
+                }
+            }
+            this.writer = null;
+        }
+        if (this.writeError != null) {
+            throw this.writeError;
+        }
+    }
+    
+    /**
+     * Returns the number of bytes of the UTF-8 encoded string.
+     * 
+     * @param str the string
+     * @return number of bytes
+     */
+    private static int utf8Length(String str) {
+        final int len = str.length();
+        int result = len;
+        for (int i = 0; i < len; i++) {
+            final char ch = str.charAt(i);
+            if (ch > 0x7F) {
+                if (ch <= 0x7FF) {
+                    result++;
+                } else if (Character.isHighSurrogate(ch) || Character.isLowSurrogate(ch)) {
+                    // a surrogate pair is encoded with 4 bytes
+                    result++;
+                } else {
+                    result += 2;
+                }
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.exec;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared executor for asynchronous php executions.
+ * 
+ * <p>
+ * The executor runs at most one execution per available processor; further executions are queued.
+ * The threads are daemon threads so that a hung php process does not prevent the jvm from exiting.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+final class PhpAsyncExecutor {
+    
+    /**
+     * Singleton instance.
+     */
+    private static final PhpAsyncExecutor INSTANCE = new PhpAsyncExecutor();
+    
+    /**
+     * An execution whose cancellation destroys the php process.
+     */
+    private final class PhpFuture extends FutureTask<Integer> {
+        
+        /**
+         * The process control.
+         */
+        private final PhpProcessControl control;
+        
+        /**
+         * The timeout task or {@code null} if there is no timeout.
+         */
+        private Future<?> timeoutTask;
+
+        /**
+         * Constructor.
+         * @param callable the execution
+         * @param control the process control
+         */
+        PhpFuture(Callable<Integer> callable, PhpProcessControl control) {
+            super(callable);
+            this.control = control;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean result = super.cancel(mayInterruptIfRunning);
+            if (result) {
+                this.control.destroy();
+            }
+            return result;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void done() {
+            synchronized (this) {
+                if (this.timeoutTask != null) {
+                    this.timeoutTask.cancel(false);
+                }
+            }
+        }
+        
+        /**
+         * Schedules the timeout.
+         * @param timeout timeout in milliseconds
+         */
+        void scheduleTimeout(long timeout) {
+            synchronized (this) {
+                if (!this.isDone()) {
+                    this.timeoutTask = PhpAsyncExecutor.this.timer.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            PhpFuture.this.control.timeout();
+                        }
+                    }, timeout, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * The executor running the executions.
+     */
+    private final ExecutorService executor;
+    
+    /**
+     * The executor for the timeouts.
+     */
+    private final ScheduledExecutorService timer;
+    
+    /**
+     * Constructor.
+     */
+    private PhpAsyncExecutor() {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new DaemonThreadFactory("php-async"));
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        this.timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("php-async-timeout"));
+    }
+    
+    /**
+     * Returns the instance of this singleton.
+     * 
+     * @return instance singleton.
+     */
+    public static PhpAsyncExecutor instance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Submits an execution.
+     * 
+     * <p>
+     * The execution is invoked with a {@link PhpProcessControl} bound to the executing thread. If the timeout
+     * elapses the php process is destroyed and the future fails with a {@link PhpCoreException}.
+     * </p>
+     * 
+     * @param execution the execution
+     * @param description the description of the execution used in timeout messages
+     * @param timeout timeout in milliseconds; 0 for no timeout
+     * @return the future
+     */
+    public Future<Integer> submit(final Callable<Integer> execution, final String description, final long timeout) {
+        final PhpProcessControl control = new PhpProcessControl();
+        final PhpFuture future = new PhpFuture(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                control.enter();
+                try {
+                    return execution.call();
+                } catch (PhpException ex) {
+                    if (control.isTimedOut()) {
+                        throw new PhpCoreException(
+                            "Timeout after " + timeout + " ms executing " + description, ex);
+                    }
+                    throw ex;
+                } finally {
+                    control.leave();
+                }
+            }
+        }, control);
+        this.executor.execute(future);
+        if (timeout > 0) {
+            future.scheduleTimeout(timeout);
+        }
+        return future;
+    }
+    
+    /**
+     * Thread factory creating daemon threads.
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        
+        /**
+         * The thread name prefix.
+         */
+        private final String prefix;
+        
+        /**
+         * Counter for the thread names.
+         */
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        /**
+         * Constructor.
+         * @param prefix thread name prefix
+         */
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread result = new Thread(r, this.prefix + "-" + this.counter.incrementAndGet());
+            result.setDaemon(true);
+            return result;
+        }
+        
+    }
+
+}
@@ -17,12 +17,16 @@
 package org.phpmaven.exec;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.maven.plugin.logging.Log;
@@ -31,6 +35,7 @@ import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.phpmaven.core.DeserializePhpStream;
 
 import com.google.common.base.Preconditions;
 
@@ -44,7 +49,7 @@ import com.google.common.base.Preconditions;
  * @since 2.0.0
  */
 @Component(role = IPhpExecutable.class, hint = "PHP_EXE" , instantiationStrategy = "per-lookup")
-public final class PhpExecutable implements IPhpExecutable {
+public class PhpExecutable implements IPhpExecutable {
 
     
     /**
@@ -58,23 +63,9 @@ public final class PhpExecutable implements IPhpExecutable {
     private static final String PHP_FLAG_INCLUDES = "-d include_path";
 
     /**
-     * This list describes all keywords which will be printed out by PHP
-     * if an error occurs.
+     * The classifier detecting php errors and warnings within the output.
      */
-    private static final String[] ERROR_IDENTIFIERS = new String[]{
-        "Fatal error",
-        "Error",
-        "Parse error"
-    };
-
-    /**
-     * This list describes all keywords which will be printed out by PHP
-     * if a warrning occurs.
-     */
-    private static final String[] WARNING_IDENTIFIERS = new String[]{
-        "Warning",
-        "Notice"
-    };
+    private final IPhpOutputClassifier classifier = PhpOutputClassifier.instance();
 
     /**
      * Path to the php executable.
@@ -139,48 +130,62 @@ public final class PhpExecutable implements IPhpExecutable {
     private File workDirectory;
 
     /**
-     * Checks if a line (string) contains a PHP error message.
-     *
-     * @param line output line
-     * @return if the line contains php error messages
-     */
-    private boolean isError(String line) {
-        final String trimmedLine = line.trim();
-        for (String errorIdentifier : ERROR_IDENTIFIERS) {
-            if (trimmedLine.startsWith(errorIdentifier + ":")
-                || trimmedLine.startsWith("<b>" + errorIdentifier + "</b>:")) {
-                return true;
-            }
-        }
-        return false;
+     * {@inheritDoc}
+     */
+    @Override
+    public int execute(String arguments, StreamConsumer stdout, StreamConsumer stderr) throws PhpException {
+        return this.executeWithResultFile(arguments, null, stdout, stderr);
     }
 
     /**
-     * Checks if a line (string) contains a PHP warning message.
+     * Executes PHP with the given arguments.
      *
-     * @param line output line
-     * @return if the line contains php warning messages
-     */
-    private boolean isWarning(String line) {
-        final String trimmedLine = line.trim();
-        for (String warningIdentifier : WARNING_IDENTIFIERS) {
-            if (trimmedLine.startsWith(warningIdentifier + ":")
-                || trimmedLine.startsWith("<b>" + warningIdentifier + "</b>:")) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * {@inheritDoc}
+     * @param arguments string of arguments for PHP (including the file-path and filename)
+     * @param resultFile the result file passed to the script (see {@link IPhpExecutable#RESULT_FILE_ENV});
+     *     {@code null} if the script does not deliver a result
+     * @param stdout handler for stdout lines
+     * @param stderr handler for stderr lines
+     * @return the return code of PHP
+     * @throws PhpException if the executions fails
      */
-    @Override
-    public int execute(String arguments, StreamConsumer stdout, StreamConsumer stderr) throws PhpException {
+    protected int executeWithResultFile(String arguments, File resultFile, StreamConsumer stdout,
+        StreamConsumer stderr) throws PhpException {
         Preconditions.checkNotNull(arguments, "Arguments");
         Preconditions.checkNotNull(stdout, "stdout");
         Preconditions.checkNotNull(stderr, "stderr");
 
+        final Commandline commandLine = this.createCommandline(arguments);
+        if (resultFile != null) {
+            commandLine.addEnvironment(RESULT_FILE_ENV, resultFile.getAbsolutePath());
+        }
+
+        final PhpProcessControl control = PhpProcessControl.current();
+        if (control != null) {
+            // asynchronous execution; the process may be destroyed on cancellation or timeout
+            this.log.debug("Executing " + commandLine);
+            return control.execute(commandLine, stdout, stderr);
+        }
+
+        try {
+            this.log.debug("Executing " + commandLine);
+            return CommandLineUtils.executeCommandLine(commandLine, stdout, stderr);
+        } catch (CommandLineException e) {
+            throw new PhpCoreException(e);
+        }
+    }
+
+    /**
+     * Creates the command line to invoke php with the given arguments.
+     * 
+     * <p>
+     * The command line respects the configured executable, the additional php parameters, the php defines,
+     * the include path, the environment variables and the work directory.
+     * </p>
+     *
+     * @param arguments string of arguments for PHP (including the file-path and filename)
+     * @return the command line
+     */
+    protected Commandline createCommandline(String arguments) {
         String command;
         if (this.additionalPhpParameters != null) {
             command = phpExecutable + " " + this.additionalPhpParameters;
@@ -210,13 +215,7 @@ public final class PhpExecutable implements IPhpExecutable {
             }
             commandLine.setWorkingDirectory(this.workDirectory);
         }
-
-        try {
-            this.log.debug("Executing " + commandLine);
-            return CommandLineUtils.executeCommandLine(commandLine, stdout, stderr);
-        } catch (CommandLineException e) {
-            throw new PhpCoreException(e);
-        }
+        return commandLine;
     }
 
     /**
@@ -224,13 +223,30 @@ public final class PhpExecutable implements IPhpExecutable {
      */
     @Override
     public int execute(String arguments, File file, final StreamConsumer stdout) throws PhpException {
-        final StringBuilder stderr = new StringBuilder();
+        return this.executeChecked(arguments, file, null, stdout);
+    }
+
+    /**
+     * Executes PHP with the given arguments and throws an exception if the execution fails.
+     *
+     * @param arguments string of arguments for PHP (including the file-path and filename)
+     * @param file a hint which file will be processed
+     * @param resultFile the result file passed to the script; {@code null} if the script does not deliver a result
+     * @param stdout handler for stdout lines
+     * @return the returncode of PHP
+     * @throws PhpException if the execution failed
+     */
+    private int executeChecked(String arguments, File file, File resultFile, final StreamConsumer stdout)
+        throws PhpException {
+        // error messages only; keeps the first and the last messages of noisy scripts
+        final OutputCapture stderr = new OutputCapture();
 
         final AtomicBoolean throwError = new AtomicBoolean(false);
         final AtomicBoolean throwWarning = new AtomicBoolean(false);
 
-        final int returnCode = execute(
+        final int returnCode = this.executeWithResultFile(
             arguments,
+            resultFile,
             new StreamConsumer() {
                 @Override
                 public void consumeLine(String line) {
@@ -242,24 +258,15 @@ public final class PhpExecutable implements IPhpExecutable {
 
                     stdout.consumeLine(line);
 
-                    final boolean error = isError(line);
-                    final boolean warning = isWarning(line);
-                    if (error || warning) {
-                        if (PhpExecutable.this.ignoreIncludeErrors
-                                && !line.contains("require_once(")
-                                && !line.contains("include_once(")
-                                && !line.contains("require(")
-                                && !line.contains("include(")
-                            ) {
-                            stderr.append(line);
-                            stderr.append("\n");
-                            if (error) throwError.set(true);
-                            if (warning) throwWarning.set(true);
-                        } else if (!PhpExecutable.this.ignoreIncludeErrors) {
-                            stderr.append(line);
-                            stderr.append("\n");
-                            if (error) throwError.set(true);
-                            if (warning) throwWarning.set(true);
+                    final IPhpOutputClassifier.LineType type = PhpExecutable.this.classifier.classify(line);
+                    if (type != IPhpOutputClassifier.LineType.OUTPUT
+                            && !(PhpExecutable.this.ignoreIncludeErrors
+                                && PhpExecutable.this.classifier.isIncludeError(line))) {
+                        stderr.consumeLine(line);
+                        if (type == IPhpOutputClassifier.LineType.ERROR) {
+                            throwError.set(true);
+                        } else {
+                            throwWarning.set(true);
                         }
                     }
                 }
@@ -267,8 +274,7 @@ public final class PhpExecutable implements IPhpExecutable {
             new StreamConsumer() {
                 @Override
                 public void consumeLine(String line) {
-                    stderr.append(line);
-                    stderr.append("\n");
+                    stderr.consumeLine(line);
                     throwError.set(true);
                 }
             }
@@ -313,6 +319,96 @@ public final class PhpExecutable implements IPhpExecutable {
         return stdout.toString();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int execute(String arguments, File file, OutputCapture output) throws PhpException {
+        try {
+            return this.executeChecked(arguments, file, null, output);
+        } catch (PhpException e) {
+            e.appendOutput(output.toString());
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object executeForResult(String arguments, File file) throws PhpException {
+        final File resultFile = this.runForResult(arguments, file);
+        try {
+            final InputStream in = new FileInputStream(resultFile);
+            try {
+                return new DeserializePhpStream(in).parse();
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            throw new PhpCoreException("Failed to read the result of php with arguments '" + arguments + "'", ex);
+        } finally {
+            resultFile.delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void executeForResult(String arguments, File file, DeserializePhpStream.Handler handler)
+        throws PhpException {
+        Preconditions.checkNotNull(handler, "handler");
+        final File resultFile = this.runForResult(arguments, file);
+        try {
+            final InputStream in = new FileInputStream(resultFile);
+            try {
+                new DeserializePhpStream(in).parse(handler);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            throw new PhpCoreException("Failed to read the result of php with arguments '" + arguments + "'", ex);
+        } finally {
+            resultFile.delete();
+        }
+    }
+
+    /**
+     * Executes PHP with a new result file.
+     *
+     * @param arguments string of arguments for PHP (including the file-path and filename)
+     * @param file a hint which file will be processed
+     * @return the result file written by the script; the caller must delete it
+     * @throws PhpException if the execution failed or the script did not write a result
+     */
+    private File runForResult(String arguments, File file) throws PhpException {
+        final File resultFile;
+        try {
+            resultFile = File.createTempFile("phpmaven-result", ".ser");
+        } catch (IOException ex) {
+            throw new PhpCoreException("Failed to create the php result file", ex);
+        }
+        boolean success = false;
+        try {
+            this.executeChecked(arguments, file, resultFile, new StreamConsumer() {
+                @Override
+                public void consumeLine(String line) {
+                    // already logged; the output is not part of the result
+                }
+            });
+            if (resultFile.length() == 0) {
+                throw new PhpCoreException("PHP with arguments '" + arguments + "' did not write a result");
+            }
+            success = true;
+            return resultFile;
+        } finally {
+            if (!success) {
+                resultFile.delete();
+            }
+        }
+    }
+
     /**
      * Generates a string which can be used as a parameter for the PHP
      * executable defining the include paths to use.
@@ -389,7 +485,92 @@ public final class PhpExecutable implements IPhpExecutable {
      */
     @Override
     public String executeCode(String arguments, String code, String codeArguments) throws PhpException {
-        final File snippet = this.temporaryScriptFile;
+        return this.execute(this.writeSnippet(arguments, code, codeArguments), this.temporaryScriptFile);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int executeCode(String arguments, String code, String codeArguments, OutputCapture output)
+        throws PhpException {
+        return this.execute(this.writeSnippet(arguments, code, codeArguments), this.temporaryScriptFile, output);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<Integer> executeAsync(final String arguments, final File file, final OutputCapture output,
+        long timeout) {
+        return PhpAsyncExecutor.instance().submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws PhpException {
+                return PhpExecutable.this.execute(arguments, file, output);
+            }
+        }, "php with arguments '" + arguments + "'", timeout);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<Integer> executeCodeAsync(String arguments, String code, String codeArguments,
+        final OutputCapture output, long timeout) throws PhpException {
+        // every asynchronous execution uses its own snippet file
+        final File snippet;
+        try {
+            this.temporaryScriptFile.getParentFile().mkdirs();
+            snippet = File.createTempFile("snippet", ".php", this.temporaryScriptFile.getParentFile());
+        } catch (IOException ex) {
+            throw new PhpErrorException(this.temporaryScriptFile, "Error writing php temporary code snippet to file");
+        }
+        final String command = this.writeSnippet(snippet, arguments, code, codeArguments);
+        return PhpAsyncExecutor.instance().submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws PhpException {
+                try {
+                    return PhpExecutable.this.execute(command, snippet, output);
+                } finally {
+                    snippet.delete();
+                }
+            }
+        }, "php code snippet " + snippet, timeout);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object executeCodeForResult(String arguments, String code) throws PhpException {
+        return this.executeForResult(this.writeSnippet(arguments, code, null), this.temporaryScriptFile);
+    }
+    
+    /**
+     * Writes a code snippet to the temporary script file.
+     *
+     * @param arguments string of arguments for PHP
+     * @param code the php code to be executed
+     * @param codeArguments Arguments (cli) for the script
+     * @return the arguments to execute the snippet
+     * @throws PhpException if the snippet cannot be written
+     */
+    private String writeSnippet(String arguments, String code, String codeArguments) throws PhpException {
+        return this.writeSnippet(this.temporaryScriptFile, arguments, code, codeArguments);
+    }
+    
+    /**
+     * Writes a code snippet to the given script file.
+     *
+     * @param snippet the script file
+     * @param arguments string of arguments for PHP
+     * @param code the php code to be executed
+     * @param codeArguments Arguments (cli) for the script
+     * @return the arguments to execute the snippet
+     * @throws PhpException if the snippet cannot be written
+     */
+    private String writeSnippet(File snippet, String arguments, String code, String codeArguments)
+        throws PhpException {
         if (!snippet.getParentFile().exists()) {
             snippet.getParentFile().mkdirs();
         }
@@ -414,7 +595,7 @@ public final class PhpExecutable implements IPhpExecutable {
         if (codeArguments != null && codeArguments.length() > 0) {
             command += " " + codeArguments;
         }
-        return this.execute(command, snippet);
+        return command;
     }
 
     /**
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
@@ -31,6 +32,7 @@ import org.codehaus.plexus.component.repository.exception.ComponentLookupExcepti
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.phpmaven.core.ConfigurationParameter;
+import org.phpmaven.core.DeserializePhpStream;
 import org.phpmaven.core.IComponentFactory;
 
 /**
@@ -114,6 +116,20 @@ public class PhpExecutableConfiguration implements IPhpExecutableConfiguration {
     @ConfigurationParameter(name = "temporaryScriptFile", expression = "${project.basedir}/target/snippet.php")
     private File temporaryScriptFile;
     
+    /**
+     * The maximum number of php worker processes (interpreter PHP_WORKER).
+     */
+    @Configuration(name = "workerPoolSize", value = "0")
+    @ConfigurationParameter(name = "workerPoolSize", expression = "${php.executable.workerPoolSize}")
+    private int workerPoolSize;
+    
+    /**
+     * The number of invocations a php worker process serves before it is recycled.
+     */
+    @Configuration(name = "workerMaxRequests", value = "100")
+    @ConfigurationParameter(name = "workerMaxRequests", expression = "${php.executable.workerMaxRequests}")
+    private int workerMaxRequests;
+    
     /**
      * The component factory.
      */
@@ -377,6 +393,65 @@ public class PhpExecutableConfiguration implements IPhpExecutableConfiguration {
             return this.result.execute(arguments, file);
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int execute(String arguments, File file, OutputCapture output) throws PhpException {
+            return this.result.execute(arguments, file, output);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int executeCode(String arguments, String code, String codeArguments, OutputCapture output)
+            throws PhpException {
+            return this.result.executeCode(arguments, code, codeArguments, output);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Future<Integer> executeAsync(String arguments, File file, OutputCapture output, long timeout) {
+            return this.result.executeAsync(arguments, file, output, timeout);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Future<Integer> executeCodeAsync(String arguments, String code, String codeArguments,
+            OutputCapture output, long timeout) throws PhpException {
+            return this.result.executeCodeAsync(arguments, code, codeArguments, output, timeout);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object executeForResult(String arguments, File file) throws PhpException {
+            return this.result.executeForResult(arguments, file);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void executeForResult(String arguments, File file, DeserializePhpStream.Handler handler)
+            throws PhpException {
+            this.result.executeForResult(arguments, file, handler);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object executeCodeForResult(String arguments, String code) throws PhpException {
+            return this.result.executeCodeForResult(arguments, code);
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -402,6 +477,38 @@ public class PhpExecutableConfiguration implements IPhpExecutableConfiguration {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWorkerPoolSize() {
+        return this.workerPoolSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWorkerPoolSize(int workerPoolSize) {
+        this.workerPoolSize = workerPoolSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWorkerMaxRequests() {
+        return this.workerMaxRequests;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWorkerMaxRequests(int workerMaxRequests) {
+        this.workerMaxRequests = workerMaxRequests;
+    }
+
     /**
      * {@inheritDoc}
      */
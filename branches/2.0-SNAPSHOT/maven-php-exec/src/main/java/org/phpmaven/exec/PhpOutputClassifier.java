@@ -0,0 +1,235 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Default classifier for php output lines.
+ * 
+ * <p>
+ * A line is an error or warning if it starts (after leading whitespace) with one of the php message
+ * identifiers followed by a colon, for example "Fatal error:" or "Warning:". The identifier may be
+ * prefixed with "PHP " (php 7/8 error log format) and may be enclosed in &lt;b&gt; tags (html errors).
+ * Uncaught exceptions are reported as "Fatal error:  Uncaught ..." and are errors, too.
+ * </p>
+ * 
+ * <p>
+ * The identifiers are pre-compiled into a table indexed by their first character. Classifying a line
+ * does not allocate any objects.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class PhpOutputClassifier implements IPhpOutputClassifier {
+    
+    /**
+     * Singleton instance.
+     */
+    private static final PhpOutputClassifier INSTANCE = new PhpOutputClassifier();
+    
+    /**
+     * Prefix of the php error log format.
+     */
+    private static final String PHP_PREFIX = "PHP ";
+    
+    /**
+     * Opening bold tag.
+     */
+    private static final String BOLD_START = "<b>";
+    
+    /**
+     * Closing bold tag.
+     */
+    private static final String BOLD_END = "</b>";
+    
+    /**
+     * The statements checked by {@link #isIncludeError(CharSequence)}.
+     */
+    private static final String[] INCLUDE_STATEMENTS = new String[]{
+        "require",
+        "include"
+    };
+    
+    /**
+     * Suffix of the include statements.
+     */
+    private static final String ONCE_SUFFIX = "_once";
+    
+    /**
+     * A message identifier.
+     */
+    private static final class Identifier {
+        
+        /**
+         * The identifier.
+         */
+        private final String name;
+        
+        /**
+         * The character following the identifier.
+         */
+        private final char separator;
+        
+        /**
+         * The line type.
+         */
+        private final LineType type;
+        
+        /**
+         * Constructor.
+         * @param name the identifier
+         * @param separator the character following the identifier
+         * @param type the line type
+         */
+        Identifier(String name, char separator, LineType type) {
+            this.name = name;
+            this.separator = separator;
+            this.type = type;
+        }
+        
+    }
+    
+    /**
+     * The identifiers indexed by their first character.
+     */
+    private final Identifier[][] identifiers = new Identifier[128][];
+    
+    /**
+     * Constructor.
+     */
+    private PhpOutputClassifier() {
+        final List<Identifier> list = new ArrayList<Identifier>();
+        list.add(new Identifier("Fatal error", ':', LineType.ERROR));
+        list.add(new Identifier("Error", ':', LineType.ERROR));
+        list.add(new Identifier("Parse error", ':', LineType.ERROR));
+        list.add(new Identifier("Catchable fatal error", ':', LineType.ERROR));
+        list.add(new Identifier("Recoverable fatal error", ':', LineType.ERROR));
+        list.add(new Identifier("Warning", ':', LineType.WARNING));
+        list.add(new Identifier("Notice", ':', LineType.WARNING));
+        for (final Identifier identifier : list) {
+            final char first = identifier.name.charAt(0);
+            final Identifier[] existing = this.identifiers[first];
+            if (existing == null) {
+                this.identifiers[first] = new Identifier[]{identifier};
+            } else {
+                final Identifier[] extended = new Identifier[existing.length + 1];
+                System.arraycopy(existing, 0, extended, 0, existing.length);
+                extended[existing.length] = identifier;
+                this.identifiers[first] = extended;
+            }
+        }
+    }
+    
+    /**
+     * Returns the instance of this singleton.
+     * 
+     * @return instance singleton.
+     */
+    public static PhpOutputClassifier instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LineType classify(CharSequence line) {
+        final int length = line.length();
+        int pos = 0;
+        while (pos < length && line.charAt(pos) <= ' ') {
+            pos++;
+        }
+        if (startsWith(line, pos, PHP_PREFIX)) {
+            pos += PHP_PREFIX.length();
+        }
+        final boolean bold = startsWith(line, pos, BOLD_START);
+        if (bold) {
+            pos += BOLD_START.length();
+        }
+        if (pos >= length) {
+            return LineType.OUTPUT;
+        }
+        final char first = line.charAt(pos);
+        if (first >= this.identifiers.length || this.identifiers[first] == null) {
+            return LineType.OUTPUT;
+        }
+        for (final Identifier identifier : this.identifiers[first]) {
+            if (!startsWith(line, pos, identifier.name)) {
+                continue;
+            }
+            int end = pos + identifier.name.length();
+            if (bold) {
+                if (!startsWith(line, end, BOLD_END)) {
+                    continue;
+                }
+                end += BOLD_END.length();
+            }
+            if (end < length && line.charAt(end) == identifier.separator) {
+                return identifier.type;
+            }
+        }
+        return LineType.OUTPUT;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIncludeError(CharSequence line) {
+        final int length = line.length();
+        for (int i = 0; i < length; i++) {
+            final char c = line.charAt(i);
+            for (final String statement : INCLUDE_STATEMENTS) {
+                if (c != statement.charAt(0) || !startsWith(line, i, statement)) {
+                    continue;
+                }
+                int end = i + statement.length();
+                if (startsWith(line, end, ONCE_SUFFIX)) {
+                    end += ONCE_SUFFIX.length();
+                }
+                if (end < length && line.charAt(end) == '(') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks if the line contains the given string at the given position.
+     * @param line the line
+     * @param pos the position
+     * @param str the string
+     * @return true if the line contains the string at the given position
+     */
+    private static boolean startsWith(CharSequence line, int pos, String str) {
+        final int len = str.length();
+        if (pos + len > line.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (line.charAt(pos + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.cli.StreamPumper;
+
+/**
+ * Controls the php processes of an asynchronous execution.
+ * 
+ * <p>
+ * The control is bound to the thread running the execution. The executables register their php
+ * processes so that a cancellation or a timeout can destroy them.
+ * </p>
+ * 
+ * <p>
+ * Php is started by a shell. On unix systems the children of the shell are killed, too (the pid of
+ * the shell is read by reflection because java 6 does not offer it). Processes started by php itself
+ * are not reached.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+final class PhpProcessControl {
+    
+    /**
+     * The control of the current thread.
+     */
+    private static final ThreadLocal<PhpProcessControl> CURRENT = new ThreadLocal<PhpProcessControl>();
+    
+    /**
+     * Milliseconds to wait for the output of destroyed processes.
+     */
+    private static final long PUMPER_TIMEOUT = 1000;
+    
+    /**
+     * The running process.
+     */
+    private Process process;
+    
+    /**
+     * true if the execution was cancelled or timed out.
+     */
+    private boolean destroyed;
+    
+    /**
+     * true if the execution timed out.
+     */
+    private boolean timedOut;
+    
+    /**
+     * Returns the control of the current thread.
+     * 
+     * @return control or {@code null} for synchronous executions
+     */
+    public static PhpProcessControl current() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * Binds this control to the current thread.
+     */
+    public void enter() {
+        CURRENT.set(this);
+    }
+    
+    /**
+     * Removes the control from the current thread.
+     */
+    public void leave() {
+        CURRENT.remove();
+    }
+    
+    /**
+     * Registers a running process. The process is destroyed immediately if the execution was already cancelled.
+     * 
+     * @param newProcess the process
+     */
+    public synchronized void attach(Process newProcess) {
+        this.process = newProcess;
+        if (this.destroyed) {
+            destroyTree(newProcess);
+        }
+    }
+    
+    /**
+     * Removes the registered process.
+     */
+    public synchronized void detach() {
+        this.process = null;
+    }
+    
+    /**
+     * Destroys the running process and all processes started later on.
+     */
+    public synchronized void destroy() {
+        this.destroyed = true;
+        if (this.process != null) {
+            destroyTree(this.process);
+        }
+    }
+    
+    /**
+     * Destroys the process and its children.
+     * 
+     * @param process the process
+     */
+    private static void destroyTree(Process process) {
+        final Long pid = pid(process);
+        if (pid != null && File.separatorChar == '/') {
+            try {
+                new ProcessBuilder("pkill", "-KILL", "-P", pid.toString()).start().waitFor();
+            } catch (IOException ex) {
+                // pkill not available; only the process itself is destroyed
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        process.destroy();
+    }
+    
+    /**
+     * Returns the pid of the process.
+     * 
+     * @param process the process
+     * @return pid or {@code null} if it is not available
+     */
+    private static Long pid(Process process) {
+        // CHECKSTYLE:OFF
+        // reflection throws various exceptions; the pid is optional
+        try {
+            // java 9 and newer
+            final Method method = Process.class.getMethod("pid");
+            return (Long) method.invoke(process);
+        } catch (Exception ex) {
+            // not available
+        }
+        try {
+            final Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return ((Number) field.get(process)).longValue();
+        } catch (Exception ex) {
+            return null;
+        }
+        // CHECKSTYLE:ON
+    }
+    
+    /**
+     * Destroys the running process because of a timeout.
+     */
+    public synchronized void timeout() {
+        this.timedOut = true;
+        this.destroy();
+    }
+    
+    /**
+     * Returns true if the execution was cancelled or timed out.
+     * 
+     * @return true if the execution was cancelled or timed out
+     */
+    public synchronized boolean isDestroyed() {
+        return this.destroyed;
+    }
+    
+    /**
+     * Returns true if the execution timed out.
+     * 
+     * @return true if the execution timed out
+     */
+    public synchronized boolean isTimedOut() {
+        return this.timedOut;
+    }
+    
+    /**
+     * Executes the command line.
+     * 
+     * @param commandLine the command line
+     * @param stdout handler for stdout lines
+     * @param stderr handler for stderr lines
+     * @return the return code
+     * @throws PhpException thrown if the process cannot be started or the execution was cancelled
+     */
+    public int execute(Commandline commandLine, StreamConsumer stdout, StreamConsumer stderr) throws PhpException {
+        if (this.isDestroyed()) {
+            throw new PhpCoreException("The php execution was cancelled");
+        }
+        final Process newProcess;
+        try {
+            newProcess = commandLine.execute();
+        } catch (CommandLineException e) {
+            throw new PhpCoreException(e);
+        }
+        this.attach(newProcess);
+        try {
+            try {
+                newProcess.getOutputStream().close();
+            } catch (IOException ex) {
+                // ignore; php does not read stdin
+            }
+            final StreamPumper out = new StreamPumper(newProcess.getInputStream(), stdout);
+            final StreamPumper err = new StreamPumper(newProcess.getErrorStream(), stderr);
+            out.setDaemon(true);
+            err.setDaemon(true);
+            out.start();
+            err.start();
+            final int returnCode = newProcess.waitFor();
+            if (this.isDestroyed()) {
+                // processes started by php may still hold the streams
+                out.join(PUMPER_TIMEOUT);
+                err.join(PUMPER_TIMEOUT);
+            } else {
+                out.join();
+                err.join();
+            }
+            return returnCode;
+        } catch (InterruptedException ex) {
+            newProcess.destroy();
+            Thread.currentThread().interrupt();
+            throw new PhpCoreException("The php execution was interrupted", ex);
+        } finally {
+            this.detach();
+        }
+    }
+
+}
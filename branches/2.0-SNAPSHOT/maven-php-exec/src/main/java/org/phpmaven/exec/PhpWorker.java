@@ -0,0 +1,348 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.exec;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.UUID;
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * A long-living php process executing scripts on request.
+ *
+ * <p>
+ * The worker runs the script "php-worker.php" that reads requests from stdin. See the script for
+ * details on the protocol.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+final class PhpWorker {
+
+    /**
+     * The php process.
+     */
+    private final Process process;
+
+    /**
+     * The stdin of the php process.
+     */
+    private final OutputStream stdin;
+
+    /**
+     * The stdout of the php process.
+     */
+    private final BufferedReader stdout;
+
+    /**
+     * The consumer for stderr lines of the current request.
+     */
+    private volatile StreamConsumer stderr;
+
+    /**
+     * The boundary of the current request; guarded by {@link #stderrLock}.
+     */
+    private String stderrBoundary;
+
+    /**
+     * True if the stderr boundary of the current request was read or stderr was closed; guarded by
+     * {@link #stderrLock}.
+     */
+    private boolean stderrDone;
+
+    /**
+     * True if stderr of the process was closed; guarded by {@link #stderrLock}.
+     */
+    private boolean stderrClosed;
+
+    /**
+     * Lock for the stderr state.
+     */
+    private final Object stderrLock = new Object();
+
+    /**
+     * The number of requests served by this worker.
+     */
+    private int requests;
+
+    /**
+     * True if this worker can be re-used.
+     */
+    private boolean reusable = true;
+
+    /**
+     * Constructor.
+     * @param process the php process
+     */
+    private PhpWorker(Process process) {
+        this.process = process;
+        this.stdin = process.getOutputStream();
+        this.stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()));
+        final BufferedReader err = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), Charset.defaultCharset()));
+        final Thread pump = new Thread("php-worker-stderr") {
+            @Override
+            public void run() {
+                try {
+                    String line = err.readLine();
+                    while (line != null) {
+                        PhpWorker.this.consumeError(line);
+                        line = err.readLine();
+                    }
+                } catch (IOException ex) {
+                    // process died; will be detected while reading stdout
+                }
+                synchronized (PhpWorker.this.stderrLock) {
+                    PhpWorker.this.stderrClosed = true;
+                    PhpWorker.this.stderrDone = true;
+                    PhpWorker.this.stderrLock.notifyAll();
+                }
+            }
+        };
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /**
+     * Passes a stderr line to the consumer of the current request.
+     * @param line the line
+     */
+    private void consumeError(String line) {
+        final StreamConsumer consumer = this.stderr;
+        String boundary;
+        synchronized (this.stderrLock) {
+            boundary = this.stderrBoundary;
+        }
+        final int pos = boundary == null ? -1 : line.indexOf(boundary);
+        if (pos == -1) {
+            if (consumer != null) {
+                consumer.consumeLine(line);
+            }
+            return;
+        }
+        if (pos > 0 && consumer != null) {
+            consumer.consumeLine(line.substring(0, pos));
+        }
+        synchronized (this.stderrLock) {
+            this.stderrDone = true;
+            this.stderrLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the stderr output of the current request was passed to the consumer.
+     */
+    private void awaitErrors() {
+        synchronized (this.stderrLock) {
+            while (!this.stderrDone) {
+                try {
+                    this.stderrLock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new worker.
+     *
+     * @param commandLine the command line invoking the worker script
+     * @return the worker
+     * @throws PhpException thrown if the process cannot be started
+     */
+    public static PhpWorker start(Commandline commandLine) throws PhpException {
+        try {
+            return new PhpWorker(commandLine.execute());
+        } catch (CommandLineException e) {
+            throw new PhpCoreException(e);
+        }
+    }
+
+    /**
+     * Executes the given script.
+     *
+     * @param script the script file (absolute path)
+     * @param resultFile the result file (absolute path) or an empty string
+     * @param args the script arguments
+     * @param out the consumer for stdout lines
+     * @param err the consumer for stderr lines
+     * @return the return code of the script
+     * @throws PhpException thrown if the worker died
+     */
+    public int execute(String script, String resultFile, List<String> args, StreamConsumer out,
+        StreamConsumer err) throws PhpException {
+        this.requests++;
+        final String boundary = "--phpmaven-" + UUID.randomUUID().toString();
+        this.stderr = err;
+        synchronized (this.stderrLock) {
+            this.stderrBoundary = boundary;
+            this.stderrDone = this.stderrClosed;
+        }
+        boolean finished = false;
+        try {
+            final ByteArrayOutputStream request = new ByteArrayOutputStream();
+            writeLine(request, String.valueOf(args.size() + 3));
+            writeString(request, boundary);
+            writeString(request, resultFile);
+            writeString(request, script);
+            for (final String arg : args) {
+                writeString(request, arg);
+            }
+            this.stdin.write(request.toByteArray());
+            this.stdin.flush();
+
+            String line = this.stdout.readLine();
+            while (line != null) {
+                final int pos = line.indexOf(boundary);
+                if (pos != -1) {
+                    if (pos > 0) {
+                        out.consumeLine(line.substring(0, pos));
+                    }
+                    finished = true;
+                    return this.parseResult(line.substring(pos + boundary.length()).trim());
+                }
+                out.consumeLine(line);
+                line = this.stdout.readLine();
+            }
+
+            // the worker died without sending the boundary
+            this.reusable = false;
+            finished = true;
+            return this.waitFor();
+        } catch (IOException e) {
+            this.destroy();
+            throw new PhpCoreException("php worker died", e);
+        } finally {
+            if (finished) {
+                // stderr is drained by another thread; the marker follows the error output of the script
+                this.awaitErrors();
+            }
+            this.stderr = null;
+            synchronized (this.stderrLock) {
+                this.stderrBoundary = null;
+            }
+        }
+    }
+
+    /**
+     * Parses the result line written by the worker.
+     * @param result the result (return code and flag)
+     * @return the return code
+     */
+    private int parseResult(String result) {
+        final String[] parts = result.split(" ");
+        final String flag = parts.length > 1 ? parts[1] : "x";
+        if ("x".equals(flag)) {
+            // the script invoked exit; the status is the exit status of the worker process
+            this.reusable = false;
+            try {
+                this.stdin.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            return this.waitFor();
+        }
+        if (!"k".equals(flag)) {
+            this.reusable = false;
+        }
+        final int returnCode = Integer.parseInt(parts[0]);
+        if (returnCode == 255) {
+            // fatal error
+            this.reusable = false;
+        }
+        return returnCode;
+    }
+
+    /**
+     * Waits for the process to terminate.
+     * @return process exit code
+     */
+    private int waitFor() {
+        try {
+            return this.process.waitFor();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.process.destroy();
+            return 255;
+        }
+    }
+
+    /**
+     * Returns the php process.
+     * @return process
+     */
+    Process getProcess() {
+        return this.process;
+    }
+
+    /**
+     * Returns true if this worker can be used for further requests.
+     * @param maxRequests the maximum number of requests a worker serves
+     * @return true if the worker can be re-used
+     */
+    public boolean isReusable(int maxRequests) {
+        return this.reusable && this.requests < maxRequests;
+    }
+
+    /**
+     * Terminates the worker.
+     */
+    public void destroy() {
+        this.reusable = false;
+        try {
+            // let the worker terminate gracefully
+            this.stdin.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+        this.process.destroy();
+    }
+
+    /**
+     * Writes a length prefixed string.
+     * @param os output
+     * @param str string
+     * @throws IOException thrown on io errors
+     */
+    private static void writeString(OutputStream os, String str) throws IOException {
+        final byte[] bytes = str.getBytes(Charset.defaultCharset().name());
+        writeLine(os, String.valueOf(bytes.length));
+        os.write(bytes);
+    }
+
+    /**
+     * Writes a line.
+     * @param os output
+     * @param str string
+     * @throws IOException thrown on io errors
+     */
+    private static void writeLine(OutputStream os, String str) throws IOException {
+        os.write((str + "\n").getBytes("US-ASCII"));
+    }
+
+}
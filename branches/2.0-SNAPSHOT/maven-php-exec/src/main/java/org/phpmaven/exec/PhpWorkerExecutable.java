@@ -0,0 +1,172 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.exec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Implementation of a php executable using a pool of long-living php processes.
+ *
+ * <p>
+ * Script invocations (arguments starting with the script file) are passed to a worker process
+ * that was started with the same include path, defines and environment. Invocations using php
+ * command line options (for example "-l" or "-v") are executed by a new php process.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+@Component(role = IPhpExecutable.class, hint = "PHP_WORKER" , instantiationStrategy = "per-lookup")
+public class PhpWorkerExecutable extends PhpExecutable {
+
+    /**
+     * The key describing the php configuration.
+     */
+    private String key;
+
+    /**
+     * The maximum number of worker processes.
+     */
+    private int poolSize;
+
+    /**
+     * The number of requests a worker serves before it is recycled.
+     */
+    private int maxRequests;
+
+    /**
+     * The work directory.
+     */
+    private File workDirectory;
+
+    /**
+     * The log.
+     */
+    private Log log;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void configure(IPhpExecutableConfiguration config, Log logger) {
+        super.configure(config, logger);
+        this.log = logger;
+        this.workDirectory = config.getWorkDirectory();
+        this.poolSize = config.getWorkerPoolSize() > 0
+            ? config.getWorkerPoolSize()
+            : Runtime.getRuntime().availableProcessors();
+        this.maxRequests = config.getWorkerMaxRequests() > 0 ? config.getWorkerMaxRequests() : 1;
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append(config.getExecutable()).append('\n');
+        builder.append(config.getAdditionalPhpParameters()).append('\n');
+        builder.append(new TreeMap<String, String>(config.getPhpDefines())).append('\n');
+        builder.append(config.getIncludePath()).append('\n');
+        builder.append(new TreeMap<String, String>(config.getEnv())).append('\n');
+        builder.append(this.workDirectory == null ? "" : this.workDirectory.getAbsolutePath());
+        this.key = builder.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int executeWithResultFile(String arguments, File resultFile, StreamConsumer stdout,
+        StreamConsumer stderr) throws PhpException {
+        Preconditions.checkNotNull(arguments, "Arguments");
+        Preconditions.checkNotNull(stdout, "stdout");
+        Preconditions.checkNotNull(stderr, "stderr");
+
+        final List<String> args = this.parseArguments(arguments);
+        if (args == null) {
+            // php command line options; cannot be handled by a worker
+            return super.executeWithResultFile(arguments, resultFile, stdout, stderr);
+        }
+        final String script = args.remove(0);
+
+        final PhpWorkerPool pool = PhpWorkerPool.instance();
+        final PhpWorker worker = pool.acquire(
+            this.key,
+            this.poolSize,
+            this.createCommandline("\"" + pool.getWorkerScript().getAbsolutePath() + "\""));
+        // asynchronous executions destroy the worker on cancellation or timeout
+        final PhpProcessControl control = PhpProcessControl.current();
+        if (control != null) {
+            control.attach(worker.getProcess());
+        }
+        try {
+            this.log.debug("Executing " + arguments + " (php worker)");
+            return worker.execute(
+                script,
+                resultFile == null ? "" : resultFile.getAbsolutePath(),
+                args,
+                stdout,
+                stderr);
+        } finally {
+            if (control != null) {
+                control.detach();
+            }
+            pool.release(this.key, worker, this.maxRequests);
+        }
+    }
+
+    /**
+     * Parses the arguments of a script invocation.
+     *
+     * @param arguments string of arguments for PHP
+     * @return the script file (absolute path) followed by the script arguments or {@code null} if the
+     *     arguments cannot be executed by a worker.
+     */
+    private List<String> parseArguments(String arguments) {
+        final String[] parts;
+        try {
+            parts = CommandLineUtils.translateCommandline(arguments);
+        // CHECKSTYLE:OFF
+        // translateCommandline throws the generic exception
+        } catch (Exception ex) {
+        // CHECKSTYLE:ON
+            return null;
+        }
+        if (parts.length == 0 || parts[0].startsWith("-")) {
+            return null;
+        }
+        File script = new File(parts[0]);
+        if (!script.isAbsolute() && this.workDirectory != null) {
+            script = new File(this.workDirectory, parts[0]);
+        }
+        if (!script.isFile()) {
+            // let php report the missing file
+            return null;
+        }
+        final List<String> result = new ArrayList<String>(Arrays.asList(parts));
+        result.set(0, script.getAbsolutePath());
+        return result;
+    }
+
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+
+/**
+ * A pool of php worker processes.
+ *
+ * <p>
+ * The workers are grouped by a key describing the php configuration (executable, include path,
+ * defines etc.). Workers are only re-used for the same key.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+final class PhpWorkerPool {
+
+    /**
+     * Singleton instance.
+     */
+    private static final PhpWorkerPool INSTANCE = new PhpWorkerPool();
+
+    /**
+     * The idle workers.
+     */
+    private final Map<String, LinkedList<PhpWorker>> idle = new HashMap<String, LinkedList<PhpWorker>>();
+
+    /**
+     * The number of workers (idle and busy) per key.
+     */
+    private final Map<String, Integer> count = new HashMap<String, Integer>();
+
+    /**
+     * The worker script.
+     */
+    private File workerScript;
+
+    /**
+     * Hidden constructor (singleton).
+     */
+    private PhpWorkerPool() {
+        Runtime.getRuntime().addShutdownHook(new Thread("php-worker-shutdown") {
+            @Override
+            public void run() {
+                PhpWorkerPool.this.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Returns the instance of this singleton.
+     *
+     * @return instance singleton.
+     */
+    public static PhpWorkerPool instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the worker script file.
+     * @return worker script file
+     * @throws PhpException thrown if the worker script cannot be created
+     */
+    public synchronized File getWorkerScript() throws PhpException {
+        if (this.workerScript == null) {
+            try {
+                final File script = File.createTempFile("phpmaven-worker", ".php");
+                script.deleteOnExit();
+                FileUtils.copyURLToFile(
+                        PhpWorkerPool.class.getResource("/org/phpmaven/exec/worker/php-worker.php"),
+                        script);
+                this.workerScript = script;
+            } catch (IOException e) {
+                throw new PhpCoreException("failed creating the php worker script", e);
+            }
+        }
+        return this.workerScript;
+    }
+
+    /**
+     * Acquires a worker. Blocks until a worker is available.
+     *
+     * @param key the key describing the php configuration
+     * @param poolSize the maximum number of workers for the given key
+     * @param commandLine the command line used to start new workers
+     * @return the worker
+     * @throws PhpException thrown if a new worker cannot be started
+     */
+    public PhpWorker acquire(String key, int poolSize, Commandline commandLine) throws PhpException {
+        synchronized (this) {
+            while (true) {
+                final LinkedList<PhpWorker> workers = this.idle.get(key);
+                if (workers != null && !workers.isEmpty()) {
+                    return workers.removeFirst();
+                }
+                final Integer current = this.count.get(key);
+                if (current == null || current < poolSize) {
+                    this.count.put(key, current == null ? 1 : current + 1);
+                    break;
+                }
+                try {
+                    this.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new PhpCoreException("interrupted while waiting for a php worker");
+                }
+            }
+        }
+
+        // start the worker outside the lock
+        try {
+            return PhpWorker.start(commandLine);
+        } catch (PhpException ex) {
+            this.discard(key);
+            throw ex;
+        }
+    }
+
+    /**
+     * Releases a worker that was acquired before.
+     *
+     * @param key the key describing the php configuration
+     * @param worker the worker
+     * @param maxRequests the maximum number of requests a worker serves
+     */
+    public void release(String key, PhpWorker worker, int maxRequests) {
+        if (!worker.isReusable(maxRequests)) {
+            worker.destroy();
+            this.discard(key);
+            return;
+        }
+        synchronized (this) {
+            LinkedList<PhpWorker> workers = this.idle.get(key);
+            if (workers == null) {
+                workers = new LinkedList<PhpWorker>();
+                this.idle.put(key, workers);
+            }
+            workers.addFirst(worker);
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Removes a worker from the pool.
+     * @param key the key describing the php configuration
+     */
+    private synchronized void discard(String key) {
+        final Integer current = this.count.get(key);
+        if (current != null) {
+            if (current <= 1) {
+                this.count.remove(key);
+            } else {
+                this.count.put(key, current - 1);
+            }
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Terminates all idle workers.
+     */
+    public void shutdown() {
+        final List<PhpWorker> workers = new ArrayList<PhpWorker>();
+        synchronized (this) {
+            for (final Map.Entry<String, LinkedList<PhpWorker>> entry : this.idle.entrySet()) {
+                workers.addAll(entry.getValue());
+                final Integer current = this.count.get(entry.getKey());
+                final int remaining = current == null ? 0 : current - entry.getValue().size();
+                if (remaining <= 0) {
+                    this.count.remove(entry.getKey());
+                } else {
+                    this.count.put(entry.getKey(), remaining);
+                }
+            }
+            this.idle.clear();
+            this.notifyAll();
+        }
+        for (final PhpWorker worker : workers) {
+            worker.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+<?php
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * PHP-Maven worker process (interpreter PHP_WORKER).
+ *
+ * Reads requests from STDIN and executes the requested script files. A request is a line containing
+ * the number of strings followed by the strings; every string is a line containing the byte length
+ * followed by the raw bytes. The first string is the boundary, the second string the result file
+ * (exported as environment variable PHPMAVEN_RESULT_FILE; may be empty), the third string the script
+ * file and the remaining strings are the script arguments.
+ *
+ * The script output is written to STDOUT as is. After the script finished the worker writes the line
+ * "<boundary> <return code> <flag>" where flag is one of:
+ *   k - the worker can be re-used
+ *   d - the worker is dirty (the script declared classes, functions etc.) and must not be re-used
+ *   x - the script invoked exit or died; the worker process is exiting with the status of the script. The
+ *       return code within the line is "-"; the caller must use the exit status of the process instead.
+ * The boundary followed by a newline is written to STDERR as well, after any error output of the script.
+ *
+ * If pcntl is available every script is executed within a forked child process. Otherwise the scripts
+ * are executed within the worker process itself.
+ */
+
+$__phpmavenFork = function_exists('pcntl_fork') && function_exists('pcntl_waitpid');
+$__phpmavenCwd = getcwd();
+$__phpmavenGlobals = array_keys($GLOBALS);
+$__phpmavenGlobals[] = '__phpmavenGlobals';
+$__phpmavenBoundary = null;
+
+/**
+ * Reads a single string from STDIN.
+ * @return string the string or false on end of file.
+ */
+function __phpmaven_worker_read() {
+    $len = fgets(STDIN);
+    if ($len === false) {
+        return false;
+    }
+    $len = (int) trim($len);
+    $result = '';
+    while (strlen($result) < $len) {
+        $chunk = fread(STDIN, $len - strlen($result));
+        if ($chunk === false || $chunk === '') {
+            return false;
+        }
+        $result .= $chunk;
+    }
+    return $result;
+}
+
+/**
+ * Reads a request from STDIN.
+ * @return array the request strings or false on end of file.
+ */
+function __phpmaven_worker_request() {
+    $count = fgets(STDIN);
+    if ($count === false) {
+        return false;
+    }
+    $count = (int) trim($count);
+    $result = array();
+    for ($i = 0; $i < $count; $i++) {
+        $str = __phpmaven_worker_read();
+        if ($str === false) {
+            return false;
+        }
+        $result[] = $str;
+    }
+    return $result;
+}
+
+/**
+ * Returns the symbols declared by scripts.
+ * @return array symbols
+ */
+function __phpmaven_worker_symbols() {
+    $functions = get_defined_functions();
+    return array(
+        count(get_declared_classes()),
+        count(get_declared_interfaces()),
+        count($functions['user']),
+        count(get_defined_constants()),
+        get_included_files()
+    );
+}
+
+/**
+ * Writes the end of request markers to STDERR and STDOUT.
+ * @param string $boundary the request boundary
+ * @param string $result return code and flag
+ */
+function __phpmaven_worker_finish($boundary, $result) {
+    fwrite(STDERR, $boundary . "\n");
+    fflush(STDERR);
+    fwrite(STDOUT, $boundary . ' ' . $result . "\n");
+    fflush(STDOUT);
+}
+
+/**
+ * Shutdown function; invoked if a script exits or dies within the worker process.
+ *
+ * PHP does not expose the exit status to shutdown functions. The worker only reports that the script
+ * exited; the process then terminates with the exit status of the script.
+ */
+function __phpmaven_worker_shutdown() {
+    if ($GLOBALS['__phpmavenBoundary'] !== null) {
+        if (empty($GLOBALS['__phpmavenShutdownLast'])) {
+            // run after the shutdown functions registered by the script so that their output is part
+            // of the request
+            $GLOBALS['__phpmavenShutdownLast'] = true;
+            register_shutdown_function('__phpmaven_worker_shutdown');
+            return;
+        }
+        __phpmaven_worker_finish($GLOBALS['__phpmavenBoundary'], '- x');
+    }
+}
+
+if (!$__phpmavenFork) {
+    register_shutdown_function('__phpmaven_worker_shutdown');
+}
+
+while (($__phpmavenRequest = __phpmaven_worker_request()) !== false) {
+    $__phpmavenScript = $__phpmavenRequest[2];
+    if ($__phpmavenRequest[1] === '') {
+        putenv('PHPMAVEN_RESULT_FILE');
+    } else {
+        putenv('PHPMAVEN_RESULT_FILE=' . $__phpmavenRequest[1]);
+    }
+    $argv = array_slice($__phpmavenRequest, 2);
+    $argc = count($argv);
+    $_SERVER['argv'] = $argv;
+    $_SERVER['argc'] = $argc;
+    $_SERVER['PHP_SELF'] = $__phpmavenScript;
+    $_SERVER['SCRIPT_NAME'] = $__phpmavenScript;
+    $_SERVER['SCRIPT_FILENAME'] = $__phpmavenScript;
+
+    if ($__phpmavenFork) {
+        $__phpmavenPid = pcntl_fork();
+        if ($__phpmavenPid === 0) {
+            // child process
+            fclose(STDIN);
+            unset($__phpmavenRequest, $__phpmavenPid);
+            include $__phpmavenScript;
+            exit(0);
+        }
+        $__phpmavenCode = 255;
+        if ($__phpmavenPid > 0) {
+            pcntl_waitpid($__phpmavenPid, $__phpmavenStatus);
+            if (pcntl_wifexited($__phpmavenStatus)) {
+                $__phpmavenCode = pcntl_wexitstatus($__phpmavenStatus);
+            }
+        }
+        __phpmaven_worker_finish($__phpmavenRequest[0], $__phpmavenCode . ' k');
+        continue;
+    }
+
+    $__phpmavenBoundary = $__phpmavenRequest[0];
+    $__phpmavenBefore = __phpmaven_worker_symbols();
+    include $__phpmavenScript;
+    $__phpmavenAfter = __phpmaven_worker_symbols();
+
+    $__phpmavenDirty = $__phpmavenBefore[0] != $__phpmavenAfter[0]
+        || $__phpmavenBefore[1] != $__phpmavenAfter[1]
+        || $__phpmavenBefore[2] != $__phpmavenAfter[2]
+        || $__phpmavenBefore[3] != $__phpmavenAfter[3]
+        || count(array_diff($__phpmavenAfter[4], $__phpmavenBefore[4], array(realpath($__phpmavenScript)))) > 0;
+
+    // cleanup the global variables declared by the script
+    foreach (array_keys($GLOBALS) as $__phpmavenVar) {
+        if (!in_array($__phpmavenVar, $__phpmavenGlobals) && strpos($__phpmavenVar, '__phpmaven') !== 0) {
+            unset($GLOBALS[$__phpmavenVar]);
+        }
+    }
+    chdir($__phpmavenCwd);
+
+    __phpmaven_worker_finish($__phpmavenBoundary, '0 ' . ($__phpmavenDirty ? 'd' : 'k'));
+    $__phpmavenBoundary = null;
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.php.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.exec.IPhpExecutable;
+import org.phpmaven.exec.IPhpExecutableConfiguration;
+import org.phpmaven.exec.OutputCapture;
+import org.phpmaven.exec.PhpCoreException;
+import org.phpmaven.test.AbstractTestCase;
+
+/**
+ * test cases for asynchronous php executions.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class AsyncTest extends AbstractTestCase {
+
+    /**
+     * Creates the execution configuration.
+     *
+     * @return execution configuration
+     * @throws Exception thrown on errors
+     */
+    private IPhpExecutableConfiguration createConfig() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final MavenSession session = this.createSimpleSession("exec/empty-pom");
+        return factory.lookup(
+                IPhpExecutableConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+    }
+
+    /**
+     * Tests concurrent executions of code snippets.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testCode() throws Exception {
+        final IPhpExecutable exec = this.createConfig().getPhpExecutable(new DefaultLog(new ConsoleLogger()));
+        final List<OutputCapture> outputs = new ArrayList<OutputCapture>();
+        final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 5; i++) {
+            final OutputCapture output = new OutputCapture();
+            outputs.add(output);
+            futures.add(exec.executeCodeAsync("", "echo 'FOO" + i + "';", null, output, 0));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, futures.get(i).get().intValue());
+            assertEquals("FOO" + i + "\n", outputs.get(i).toString());
+        }
+    }
+
+    /**
+     * Tests that hanging executions are destroyed after the timeout.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testTimeout() throws Exception {
+        final IPhpExecutable exec = this.createSleepExecutable();
+        final long start = System.currentTimeMillis();
+        final Future<Integer> future = exec.executeAsync("60", null, new OutputCapture(), 500);
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof PhpCoreException);
+            assertTrue(ex.getCause().getMessage().startsWith("Timeout after 500 ms"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 30000);
+    }
+
+    /**
+     * Tests that cancelled executions are destroyed.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testCancel() throws Exception {
+        final IPhpExecutable exec = this.createSleepExecutable();
+        final Future<Integer> future = exec.executeAsync("60", null, new OutputCapture(), 0);
+        Thread.sleep(200);
+        assertTrue(future.cancel(true));
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (CancellationException ex) {
+            // expected
+        }
+        
+        // following executions must not be blocked
+        final Future<Integer> next = exec.executeAsync("0", null, new OutputCapture(), 0);
+        assertEquals(0, next.get(30, TimeUnit.SECONDS).intValue());
+    }
+
+    /**
+     * Creates an executable using the sleep command instead of php to simulate hanging scripts.
+     *
+     * @return executable
+     * @throws Exception thrown on errors
+     */
+    private IPhpExecutable createSleepExecutable() throws Exception {
+        final IPhpExecutableConfiguration config = this.createConfig();
+        config.setExecutable("sleep");
+        config.setUseCache(false);
+        return config.getPhpExecutable(new DefaultLog(new ConsoleLogger()));
+    }
+    
+}
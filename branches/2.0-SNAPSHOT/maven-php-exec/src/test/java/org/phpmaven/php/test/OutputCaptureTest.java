@@ -0,0 +1,100 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.php.test;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.phpmaven.exec.OutputCapture;
+
+/**
+ * test cases for the bounded output capture.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class OutputCaptureTest extends TestCase {
+
+    /**
+     * Tests small outputs that are kept completely.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testSmall() throws Exception {
+        final OutputCapture capture = new OutputCapture(100);
+        capture.consumeLine("foo");
+        capture.consumeLine("bär");
+        assertEquals("foo\nbär\n", capture.toString());
+        assertEquals(2, capture.getLineCount());
+        assertEquals(9, capture.getByteCount());
+        assertFalse(capture.isTruncated());
+        capture.close();
+    }
+
+    /**
+     * Tests that head and tail are kept and the lines in between are dropped.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testTruncated() throws Exception {
+        final OutputCapture capture = new OutputCapture(20);
+        for (int i = 0; i < 1000; i++) {
+            capture.consumeLine("line" + i);
+        }
+        assertEquals(1000, capture.getLineCount());
+        assertTrue(capture.isTruncated());
+        final String output = capture.toString();
+        assertTrue(output, output.startsWith("line0\nline1\nline2\n"));
+        assertTrue(output, output.endsWith("\nline998\nline999\n"));
+        assertTrue(output, output.contains(" lines omitted"));
+        assertTrue(output, output.length() < 100);
+
+        // a single line larger than the limit
+        final OutputCapture large = new OutputCapture(5);
+        large.consumeLine("0123456789");
+        assertEquals("56789\n", large.toString());
+        assertTrue(large.isTruncated());
+    }
+
+    /**
+     * Tests writing the output to a file.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testFile() throws Exception {
+        final File target = File.createTempFile("phpmaven", ".txt");
+        try {
+            final OutputCapture capture = new OutputCapture(target, 20);
+            final StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                capture.consumeLine("line" + i);
+                expected.append("line").append(i).append('\n');
+            }
+            capture.consumeLine("bär");
+            expected.append("bär\n");
+            capture.close();
+            assertEquals(expected.toString(), FileUtils.fileRead(target, "UTF-8"));
+            assertEquals(target.length(), capture.getByteCount());
+            assertTrue(capture.toString().contains(target.getAbsolutePath()));
+        } finally {
+            target.delete();
+        }
+    }
+    
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.php.test;
+
+import org.phpmaven.exec.IPhpOutputClassifier;
+import org.phpmaven.exec.PhpOutputClassifier;
+
+/**
+ * Compares the php output classifier with the former string based checks.
+ * 
+ * <p>
+ * Not a unit test; run it manually with the test classpath:
+ * <code>java -cp ... org.phpmaven.php.test.PhpOutputClassifierBenchmark [lines]</code>.
+ * Each implementation is warmed up before it is measured; the best of five rounds is reported.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class PhpOutputClassifierBenchmark {
+
+    /**
+     * Number of measured rounds.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * The error identifiers of the former implementation.
+     */
+    private static final String[] ERROR_IDENTIFIERS = new String[]{
+        "Fatal error",
+        "Error",
+        "Parse error"
+    };
+
+    /**
+     * The warning identifiers of the former implementation.
+     */
+    private static final String[] WARNING_IDENTIFIERS = new String[]{
+        "Warning",
+        "Notice"
+    };
+
+    /**
+     * Sample output lines; mostly regular phpunit output.
+     */
+    private static final String[] SAMPLES = new String[]{
+        "PHPUnit 3.6.10 by Sebastian Bergmann.",
+        "",
+        "...............................................................  63 / 512 ( 12%)",
+        "  Configuration read from /home/build/project/phpunit.xml",
+        "There was 1 failure:",
+        "1) FooTest::testBar",
+        "Failed asserting that false is true.",
+        "/home/build/project/src/test/php/FooTest.php:42",
+        "Warning: require_once(foo.php): failed to open stream",
+        "<b>Notice</b>:  Undefined variable: bar in <b>/tmp/foo.php</b> on line <b>3</b><br />",
+    };
+
+    /**
+     * A classifier under test.
+     */
+    private interface Classifier {
+
+        /**
+         * Classifies the line.
+         * @param line the line
+         * @return 0 for output, 1 for warnings and 2 for errors
+         */
+        int classify(String line);
+
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private PhpOutputClassifierBenchmark() {
+        // main class
+    }
+
+    /**
+     * Main method.
+     * @param args optional number of lines per round
+     */
+    public static void main(String[] args) {
+        final int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final String[] input = new String[lines];
+        for (int i = 0; i < lines; i++) {
+            // new instances to defeat caching within the strings
+            input[i] = new String(SAMPLES[i % SAMPLES.length]);
+        }
+        System.out.println("Input: " + lines + " lines");
+
+        run("string concatenation (former)", input, new Classifier() {
+            @Override
+            public int classify(String line) {
+                final boolean error = isFormerError(line);
+                final boolean warning = isFormerWarning(line);
+                if (error || warning) {
+                    isFormerIncludeError(line);
+                }
+                return error ? 2 : (warning ? 1 : 0);
+            }
+        });
+        final IPhpOutputClassifier classifier = PhpOutputClassifier.instance();
+        run("PhpOutputClassifier", input, new Classifier() {
+            @Override
+            public int classify(String line) {
+                final IPhpOutputClassifier.LineType type = classifier.classify(line);
+                if (type != IPhpOutputClassifier.LineType.OUTPUT) {
+                    classifier.isIncludeError(line);
+                }
+                return type.ordinal();
+            }
+        });
+    }
+
+    /**
+     * Measures a classifier.
+     * @param name name of the classifier
+     * @param input the input lines
+     * @param classifier the classifier
+     */
+    private static void run(String name, String[] input, Classifier classifier) {
+        int found = 0;
+        // warm up
+        for (int i = 0; i < ROUNDS; i++) {
+            found += classify(input, classifier);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            final long start = System.nanoTime();
+            found += classify(input, classifier);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms (" + (found / (2 * ROUNDS)) + " messages)");
+    }
+
+    /**
+     * Classifies all lines.
+     * @param input the input lines
+     * @param classifier the classifier
+     * @return number of errors and warnings
+     */
+    private static int classify(String[] input, Classifier classifier) {
+        int result = 0;
+        for (final String line : input) {
+            if (classifier.classify(line) != 0) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The former error check.
+     * @param line output line
+     * @return true for errors
+     */
+    private static boolean isFormerError(String line) {
+        final String trimmedLine = line.trim();
+        for (String errorIdentifier : ERROR_IDENTIFIERS) {
+            if (trimmedLine.startsWith(errorIdentifier + ":")
+                || trimmedLine.startsWith("<b>" + errorIdentifier + "</b>:")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The former include check.
+     * @param line output line
+     * @return true for include errors
+     */
+    private static boolean isFormerIncludeError(String line) {
+        return line.contains("require_once(")
+            || line.contains("include_once(")
+            || line.contains("require(")
+            || line.contains("include(");
+    }
+
+    /**
+     * The former warning check.
+     * @param line output line
+     * @return true for warnings
+     */
+    private static boolean isFormerWarning(String line) {
+        final String trimmedLine = line.trim();
+        for (String warningIdentifier : WARNING_IDENTIFIERS) {
+            if (trimmedLine.startsWith(warningIdentifier + ":")
+                || trimmedLine.startsWith("<b>" + warningIdentifier + "</b>:")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
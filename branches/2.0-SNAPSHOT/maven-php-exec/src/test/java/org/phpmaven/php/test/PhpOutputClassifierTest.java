@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.php.test;
+
+import junit.framework.TestCase;
+
+import org.phpmaven.exec.IPhpOutputClassifier;
+import org.phpmaven.exec.IPhpOutputClassifier.LineType;
+import org.phpmaven.exec.PhpOutputClassifier;
+
+/**
+ * test cases for the php output classifier.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class PhpOutputClassifierTest extends TestCase {
+
+    /**
+     * The classifier.
+     */
+    private final IPhpOutputClassifier classifier = PhpOutputClassifier.instance();
+
+    /**
+     * Tests the classification of errors.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testErrors() throws Exception {
+        assertEquals(LineType.ERROR, this.classifier.classify("Fatal error: Call to undefined function foo()"));
+        assertEquals(LineType.ERROR, this.classifier.classify("  Parse error: syntax error in foo.php"));
+        assertEquals(LineType.ERROR, this.classifier.classify("Error: something"));
+        assertEquals(LineType.ERROR, this.classifier.classify("<b>Fatal error</b>:  Call to undefined function"));
+        assertEquals(LineType.ERROR, this.classifier.classify("PHP Fatal error:  Uncaught Exception: foo"));
+        assertEquals(LineType.ERROR, this.classifier.classify("PHP Parse error:  syntax error"));
+        assertEquals(LineType.ERROR, this.classifier.classify("Fatal error: Uncaught Error: Call to undefined function"));
+        assertEquals(LineType.ERROR, this.classifier.classify("Recoverable fatal error: Object could not be converted"));
+    }
+
+    /**
+     * Tests the classification of warnings.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testWarnings() throws Exception {
+        assertEquals(LineType.WARNING, this.classifier.classify("Warning: require_once(foo.php): failed"));
+        assertEquals(LineType.WARNING, this.classifier.classify("\tNotice: Undefined variable: foo"));
+        assertEquals(LineType.WARNING, this.classifier.classify("<b>Warning</b>: foo"));
+        assertEquals(LineType.WARNING, this.classifier.classify("PHP Warning:  foo"));
+    }
+
+    /**
+     * Tests regular output.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testOutput() throws Exception {
+        assertEquals(LineType.OUTPUT, this.classifier.classify(""));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("   "));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("Errors: 0"));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("Fatal error"));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("There was a Warning: foo"));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("<b>Warning: foo"));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("PHP 5.3.10 (cli)"));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("Uncaughtfoo"));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("Uncaught exceptions are logged to foo.log"));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("PHP Uncaught Error: foo"));
+        assertEquals(LineType.OUTPUT, this.classifier.classify("äWarning: foo"));
+    }
+
+    /**
+     * Tests the detection of include errors.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testIncludeErrors() throws Exception {
+        assertTrue(this.classifier.isIncludeError("Warning: require_once(existing.php): failed to open stream"));
+        assertTrue(this.classifier.isIncludeError("Fatal error: require_once(): Failed opening required"));
+        assertTrue(this.classifier.isIncludeError("Warning: include(foo.php): failed to open stream"));
+        assertTrue(this.classifier.isIncludeError("Warning: include_once(foo.php): failed to open stream"));
+        assertTrue(this.classifier.isIncludeError("Warning: require(foo.php): failed to open stream"));
+        assertFalse(this.classifier.isIncludeError("Warning: required parameter missing"));
+        assertFalse(this.classifier.isIncludeError("Warning: includes(foo)"));
+        assertFalse(this.classifier.isIncludeError("Warning: require_once"));
+    }
+    
+}
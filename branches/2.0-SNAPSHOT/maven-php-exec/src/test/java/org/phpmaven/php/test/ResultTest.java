@@ -0,0 +1,108 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.php.test;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.exec.IPhpExecutable;
+import org.phpmaven.exec.IPhpExecutableConfiguration;
+import org.phpmaven.exec.PhpCoreException;
+import org.phpmaven.test.AbstractTestCase;
+
+/**
+ * test cases for the structured results of php executions.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class ResultTest extends AbstractTestCase {
+
+    /**
+     * Creates the php executable.
+     *
+     * @param session the maven session
+     * @param interpreter the interpreter
+     * @return php executable
+     * @throws Exception thrown on errors
+     */
+    private IPhpExecutable createExecutable(MavenSession session, String interpreter) throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final IPhpExecutableConfiguration execConfig = factory.lookup(
+                IPhpExecutableConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        execConfig.setInterpreter(interpreter);
+        return execConfig.getPhpExecutable(new DefaultLog(new ConsoleLogger()));
+    }
+
+    /**
+     * Tests if the result of a script is returned.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testResult() throws Exception {
+        this.assertResult("PHP_EXE");
+    }
+
+    /**
+     * Tests if the result of a script executed by a php worker is returned.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testWorkerResult() throws Exception {
+        this.assertResult("PHP_WORKER");
+    }
+
+    /**
+     * Tests the result of the test script.
+     *
+     * @param interpreter the interpreter
+     * @throws Exception thrown on errors
+     */
+    @SuppressWarnings("rawtypes")
+    private void assertResult(String interpreter) throws Exception {
+        final MavenSession session = this.createSimpleSession("exec/empty-pom");
+        final IPhpExecutable exec = this.createExecutable(session, interpreter);
+        final File resultTestPhp = new File(session.getCurrentProject().getBasedir(), "result-test.php");
+
+        final Map result = (Map) exec.executeForResult("\"" + resultTestPhp.getAbsolutePath() + "\"", resultTestPhp);
+        assertEquals(2, result.get("count"));
+        final Map files = (Map) result.get("files");
+        assertEquals("a.php", files.get(0));
+        assertEquals("b.php", files.get(1));
+
+        assertEquals("FOO", exec.executeCodeForResult(
+            "",
+            "file_put_contents(getenv('" + IPhpExecutable.RESULT_FILE_ENV + "'), serialize('FOO'));"));
+
+        // a script without result
+        try {
+            exec.executeCodeForResult("", "echo 'FOO';");
+            fail("Exception expected");
+        } catch (PhpCoreException ex) {
+            // expected
+        }
+    }
+    
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.php.test;
+
+import java.io.File;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.exec.IPhpExecutable;
+import org.phpmaven.exec.IPhpExecutableConfiguration;
+import org.phpmaven.exec.PhpErrorException;
+import org.phpmaven.test.AbstractTestCase;
+
+/**
+ * test cases for the php worker interpreter.
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class WorkerTest extends AbstractTestCase {
+
+    /**
+     * Creates the php executable using the worker interpreter.
+     *
+     * @param session the maven session
+     * @return php executable
+     * @throws Exception thrown on errors
+     */
+    private IPhpExecutable createExecutable(MavenSession session) throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final IPhpExecutableConfiguration execConfig = factory.lookup(
+                IPhpExecutableConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        execConfig.setInterpreter("PHP_WORKER");
+        execConfig.setWorkerPoolSize(1);
+        execConfig.setWorkerMaxRequests(3);
+        return execConfig.getPhpExecutable(new DefaultLog(new ConsoleLogger()));
+    }
+
+    /**
+     * Tests if code snippets are executed by the worker.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testCode() throws Exception {
+        final IPhpExecutable exec = this.createExecutable(this.createSimpleSession("exec/empty-pom"));
+        // invoke multiple times to re-use and recycle the worker
+        for (int i = 0; i < 5; i++) {
+            assertEquals("FOO" + i + "\n", exec.executeCode("", "echo 'FOO" + i + "';"));
+        }
+    }
+
+    /**
+     * Tests if script arguments are passed to the worker.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testCodeArgs() throws Exception {
+        final IPhpExecutable exec = this.createExecutable(this.createSimpleSession("exec/empty-pom"));
+        assertEquals("JUNIT_ARG_TEST\n", exec.executeCode("", "echo $argv[1];", "JUNIT_ARG_TEST"));
+        assertEquals("\n", exec.executeCode("", "echo isset($argv[1]) ? $argv[1] : '';"));
+    }
+
+    /**
+     * Tests if the return code of exit is reported.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testExit() throws Exception {
+        final IPhpExecutable exec = this.createExecutable(this.createSimpleSession("exec/empty-pom"));
+        final File envTestPhp = new File(this.createSimpleSession("exec/empty-pom").getCurrentProject().getBasedir(),
+                "args-test.php");
+        final StreamConsumer nullConsumer = new StreamConsumer() {
+            @Override
+            public void consumeLine(String line) {
+                // does nothing
+            }
+        };
+        assertEquals(0, exec.execute("\"" + envTestPhp.getAbsolutePath() + "\" JUNIT_ARG_TEST",
+                nullConsumer, nullConsumer));
+        assertEquals(0, exec.execute("\"" + envTestPhp.getAbsolutePath() + "\" JUNIT_ARG_TEST",
+                nullConsumer, nullConsumer));
+        assertEquals("FOO\n", exec.executeCode("", "echo 'FOO';"));
+    }
+
+    /**
+     * Tests if the status of scripts invoking exit is reported.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testExitStatus() throws Exception {
+        final IPhpExecutable exec = this.createExecutable(this.createSimpleSession("exec/empty-pom"));
+        final File exitTestPhp = new File(this.createSimpleSession("exec/empty-pom").getCurrentProject().getBasedir(),
+                "exit-test.php");
+        final StreamConsumer nullConsumer = new StreamConsumer() {
+            @Override
+            public void consumeLine(String line) {
+                // does nothing
+            }
+        };
+        assertEquals(0, exec.execute("\"" + exitTestPhp.getAbsolutePath() + "\" 0", nullConsumer, nullConsumer));
+        assertEquals(3, exec.execute("\"" + exitTestPhp.getAbsolutePath() + "\" 3", nullConsumer, nullConsumer));
+        assertEquals("FOO\n", exec.executeCode("", "echo 'FOO';"));
+    }
+
+    /**
+     * Tests if error output is passed to the consumer of the request that produced it.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testErrorOutput() throws Exception {
+        final IPhpExecutable exec = this.createExecutable(this.createSimpleSession("exec/empty-pom"));
+        final File errTestPhp = new File(this.createSimpleSession("exec/empty-pom").getCurrentProject().getBasedir(),
+                "stderr-test.php");
+        // the script does not terminate the line; the request marker must still be detected
+        for (int i = 0; i < 3; i++) {
+            final StringBuilder err = new StringBuilder();
+            final StreamConsumer errConsumer = new StreamConsumer() {
+                @Override
+                public void consumeLine(String line) {
+                    err.append(line).append('\n');
+                }
+            };
+            final StreamConsumer nullConsumer = new StreamConsumer() {
+                @Override
+                public void consumeLine(String line) {
+                    // does nothing
+                }
+            };
+            assertEquals(0, exec.execute("\"" + errTestPhp.getAbsolutePath() + "\" ERR" + i,
+                    nullConsumer, errConsumer));
+            assertEquals("ERR" + i + "\n", err.toString());
+        }
+    }
+
+    /**
+     * Tests if the worker is recycled after fatal errors and if declarations do not leak.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testFatalAndDeclarations() throws Exception {
+        final IPhpExecutable exec = this.createExecutable(this.createSimpleSession("exec/empty-pom"));
+        try {
+            exec.executeCode("", "undefined_function_foo();");
+            fail("Exception expected");
+        // CHECKSTYLE:OFF
+        // checkstyle does not like empty catches
+        } catch (PhpErrorException ex) {
+            // ignore; we expect this exception
+        }
+        // CHECKSTYLE:ON
+        assertEquals("FOO\n", exec.executeCode("", "class Foo {} echo 'FOO';"));
+        assertEquals("FOO\n", exec.executeCode("", "class Foo {} echo 'FOO';"));
+    }
+
+}
@@ -0,0 +1,2 @@
+<?php 
+exit((int) $argv[1]);
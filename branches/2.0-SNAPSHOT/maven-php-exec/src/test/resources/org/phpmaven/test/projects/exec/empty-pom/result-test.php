@@ -0,0 +1,3 @@
+<?php 
+echo "some output that is not part of the result\n";
+file_put_contents(getenv('PHPMAVEN_RESULT_FILE'), serialize(array('files' => array('a.php', 'b.php'), 'count' => 2)));
@@ -0,0 +1,2 @@
+<?php 
+fwrite(STDERR, $argv[1]);
@@ -0,0 +1,150 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.jettycgi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request metrics of the php servlets.
+ * 
+ * <p>
+ * The metrics are available via {@link PHP#getMetrics()} and as servlet context attribute
+ * {@link #ATTRIBUTE}.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class CGIMetrics {
+    
+    /** name of the servlet context attribute holding the metrics. */
+    public static final String ATTRIBUTE = CGIMetrics.class.getName();
+    
+    /** number of requests. */
+    private final AtomicLong requests = new AtomicLong();
+    
+    /** number of failed requests. */
+    private final AtomicLong errors = new AtomicLong();
+    
+    /** request bytes relayed to php. */
+    private final AtomicLong bytesIn = new AtomicLong();
+    
+    /** response bytes relayed to the client. */
+    private final AtomicLong bytesOut = new AtomicLong();
+    
+    /** total latency in nanoseconds. */
+    private final AtomicLong totalLatency = new AtomicLong();
+    
+    /** maximum latency in nanoseconds. */
+    private final AtomicLong maxLatency = new AtomicLong();
+    
+    /**
+     * Records a finished request.
+     * @param latency the latency in nanoseconds
+     * @param out number of response bytes
+     * @param failed true if the request failed
+     */
+    void record(long latency, long out, boolean failed) {
+        this.requests.incrementAndGet();
+        if (failed) {
+            this.errors.incrementAndGet();
+        }
+        this.bytesOut.addAndGet(out);
+        this.totalLatency.addAndGet(latency);
+        long max = this.maxLatency.get();
+        while (latency > max && !this.maxLatency.compareAndSet(max, latency)) {
+            max = this.maxLatency.get();
+        }
+    }
+    
+    /**
+     * Adds request bytes relayed to php.
+     * @param count number of bytes
+     */
+    void addBytesIn(long count) {
+        this.bytesIn.addAndGet(count);
+    }
+    
+    /**
+     * Returns the number of requests.
+     * @return requests
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+    
+    /**
+     * Returns the number of failed requests (php errors, timeouts, broken connections).
+     * @return failed requests
+     */
+    public long getErrors() {
+        return this.errors.get();
+    }
+    
+    /**
+     * Returns the number of request bytes relayed to php.
+     * @return bytes
+     */
+    public long getBytesIn() {
+        return this.bytesIn.get();
+    }
+    
+    /**
+     * Returns the number of response bytes relayed to the clients.
+     * @return bytes
+     */
+    public long getBytesOut() {
+        return this.bytesOut.get();
+    }
+    
+    /**
+     * Returns the total latency of all requests in milliseconds.
+     * @return latency
+     */
+    public long getTotalLatencyMillis() {
+        return this.totalLatency.get() / 1000000;
+    }
+    
+    /**
+     * Returns the average latency in milliseconds.
+     * @return latency
+     */
+    public double getAverageLatencyMillis() {
+        final long count = this.requests.get();
+        return count == 0 ? 0 : this.totalLatency.get() / 1000000d / count;
+    }
+    
+    /**
+     * Returns the maximum latency in milliseconds.
+     * @return latency
+     */
+    public double getMaxLatencyMillis() {
+        return this.maxLatency.get() / 1000000d;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "requests=" + this.getRequests()
+            + ", errors=" + this.getErrors()
+            + ", bytesIn=" + this.getBytesIn()
+            + ", bytesOut=" + this.getBytesOut()
+            + ", avgLatency=" + this.getAverageLatencyMillis() + "ms"
+            + ", maxLatency=" + this.getMaxLatencyMillis() + "ms";
+    }
+
+}
@@ -0,0 +1,296 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.jettycgi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mortbay.log.Log;
+
+/**
+ * Relays a cgi response: parses the headers and streams the content.
+ * 
+ * <p>
+ * The response is read in blocks into a pooled buffer; the headers are parsed from that buffer and
+ * the bytes following the headers are written as the first part of the content. Continuation lines
+ * (starting with a space or tab) are appended to the previous header. Repeated headers are kept in
+ * their order.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+final class CGIRelay {
+    
+    /** size of the pooled buffers. */
+    static final int BUFFER_SIZE = 64 * 1024;
+    
+    /** maximum number of pooled buffers. */
+    private static final int MAX_POOLED = 64;
+    
+    /** maximum length of the response headers. */
+    private static final int MAX_HEADER_LENGTH = 1024 * 1024;
+    
+    /** the buffer pool. */
+    private static final ConcurrentLinkedQueue<byte[]> BUFFERS = new ConcurrentLinkedQueue<byte[]>();
+    
+    /** the number of pooled buffers. */
+    private static final AtomicInteger POOLED = new AtomicInteger();
+    
+    /** the threads relaying the request bodies. */
+    private static final ExecutorService THREADS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "php-cgi-relay-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
+    /**
+     * The cgi output.
+     */
+    private final InputStream in;
+    
+    /**
+     * The buffer.
+     */
+    private byte[] buffer;
+    
+    /**
+     * Read position within the buffer.
+     */
+    private int pos;
+    
+    /**
+     * Number of valid bytes within the buffer.
+     */
+    private int limit;
+    
+    /**
+     * true if any byte was read from the cgi output.
+     */
+    private boolean started;
+    
+    /**
+     * Constructor.
+     * @param in the cgi output
+     */
+    CGIRelay(InputStream in) {
+        this.in = in;
+        this.buffer = acquireBuffer();
+    }
+    
+    /**
+     * Reads the response headers.
+     * @return the headers; every entry is a name/value pair
+     * @throws IOException thrown on io errors or if the headers are too long
+     */
+    List<String[]> readHeaders() throws IOException {
+        final List<String[]> result = new ArrayList<String[]>();
+        final StringBuilder line = new StringBuilder();
+        int total = 0;
+        while (this.readLine(line)) {
+            total += line.length();
+            if (total > MAX_HEADER_LENGTH) {
+                throw new IOException("CGI response headers exceed " + MAX_HEADER_LENGTH + " bytes");
+            }
+            if (line.length() == 0) {
+                break;
+            }
+            final char first = line.charAt(0);
+            if ((first == ' ' || first == '\t') && !result.isEmpty()) {
+                final String[] last = result.get(result.size() - 1);
+                last[1] = last[1] + ' ' + line.toString().trim();
+                continue;
+            }
+            final int k = line.indexOf(":");
+            if (k > 0) {
+                result.add(new String[]{line.substring(0, k).trim(), line.substring(k + 1).trim()});
+            }
+            // status lines ("HTTP/1.1 200 OK") of nph scripts and garbage are ignored
+        }
+        return result;
+    }
+    
+    /**
+     * Copies the remaining content.
+     * @param out the target
+     * @return number of bytes copied
+     * @throws IOException thrown on io errors
+     */
+    long copyContent(OutputStream out) throws IOException {
+        long count = 0;
+        if (this.limit > this.pos) {
+            out.write(this.buffer, this.pos, this.limit - this.pos);
+            count += this.limit - this.pos;
+        }
+        this.pos = 0;
+        this.limit = 0;
+        int read;
+        while ((read = this.in.read(this.buffer)) != -1) {
+            out.write(this.buffer, 0, read);
+            count += read;
+        }
+        return count;
+    }
+    
+    /**
+     * Returns true if any byte was read from the cgi output.
+     * @return true if the cgi started to respond
+     */
+    boolean isStarted() {
+        return this.started;
+    }
+    
+    /**
+     * Returns the buffer to the pool.
+     */
+    void close() {
+        if (this.buffer != null) {
+            releaseBuffer(this.buffer);
+            this.buffer = null;
+        }
+    }
+    
+    /**
+     * Reads a line (ISO-8859-1, terminated by LF or CRLF).
+     * @param line the target; cleared before reading
+     * @return false if the stream ended before any character was read
+     * @throws IOException thrown on io errors
+     */
+    private boolean readLine(StringBuilder line) throws IOException {
+        line.setLength(0);
+        boolean any = false;
+        while (true) {
+            if (this.pos == this.limit) {
+                this.pos = 0;
+                this.limit = Math.max(0, this.in.read(this.buffer));
+                if (this.limit == 0) {
+                    return any;
+                }
+                this.started = true;
+            }
+            any = true;
+            final byte[] buf = this.buffer;
+            int i = this.pos;
+            final int end = this.limit;
+            while (i < end && buf[i] != '\n') {
+                i++;
+            }
+            for (int j = this.pos; j < i; j++) {
+                line.append((char) (buf[j] & 0xFF));
+            }
+            if (i < end) {
+                this.pos = i + 1;
+                final int len = line.length();
+                if (len > 0 && line.charAt(len - 1) == '\r') {
+                    line.setLength(len - 1);
+                }
+                return true;
+            }
+            this.pos = end;
+        }
+    }
+    
+    /**
+     * Copies up to length bytes in a pooled thread and closes the target afterwards.
+     * @param from the source
+     * @param to the target
+     * @param length the number of bytes to copy
+     * @param metrics receives the number of copied bytes; may be null
+     */
+    static void copyAsync(final InputStream from, final OutputStream to, final long length, final CGIMetrics metrics) {
+        THREADS.execute(new Runnable() {
+            public void run() {
+                try {
+                    final long count = copy(from, to, length);
+                    if (metrics != null) {
+                        metrics.addBytesIn(count);
+                    }
+                } catch (IOException ex) {
+                    Log.ignore(ex);
+                } finally {
+                    try {
+                        to.close();
+                    } catch (IOException ex) {
+                        Log.ignore(ex);
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Copies up to length bytes using a pooled buffer.
+     * @param from the source
+     * @param to the target
+     * @param length the number of bytes to copy
+     * @return the number of copied bytes
+     * @throws IOException thrown on io errors
+     */
+    static long copy(InputStream from, OutputStream to, long length) throws IOException {
+        final byte[] buf = acquireBuffer();
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                final int read = from.read(buf, 0, (int) Math.min(remaining, buf.length));
+                if (read == -1) {
+                    break;
+                }
+                to.write(buf, 0, read);
+                remaining -= read;
+            }
+            return length - remaining;
+        } finally {
+            releaseBuffer(buf);
+        }
+    }
+    
+    /**
+     * Takes a buffer from the pool.
+     * @return buffer of {@link #BUFFER_SIZE} bytes
+     */
+    static byte[] acquireBuffer() {
+        final byte[] buf = BUFFERS.poll();
+        if (buf == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        POOLED.decrementAndGet();
+        return buf;
+    }
+    
+    /**
+     * Returns a buffer to the pool.
+     * @param buf the buffer
+     */
+    static void releaseBuffer(byte[] buf) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            BUFFERS.offer(buf);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+}
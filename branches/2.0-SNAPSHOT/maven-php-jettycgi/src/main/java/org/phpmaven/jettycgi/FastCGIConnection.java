@@ -0,0 +1,457 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.jettycgi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+
+import org.mortbay.log.Log;
+
+/**
+ * A connection to a FastCGI responder (php-cgi -b or php-fpm).
+ * 
+ * <p>
+ * The connection is kept open (FCGI_KEEP_CONN) and serves one request at a time; php does not
+ * multiplex requests on a single connection. The response is read as a stream of the FCGI_STDOUT
+ * records. FCGI_STDERR records are logged.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+final class FastCGIConnection {
+    
+    /** protocol version. */
+    private static final int VERSION = 1;
+    
+    /** record type FCGI_BEGIN_REQUEST. */
+    private static final int BEGIN_REQUEST = 1;
+    
+    /** record type FCGI_END_REQUEST. */
+    private static final int END_REQUEST = 3;
+    
+    /** record type FCGI_PARAMS. */
+    private static final int PARAMS = 4;
+    
+    /** record type FCGI_STDIN. */
+    private static final int STDIN = 5;
+    
+    /** record type FCGI_STDOUT. */
+    private static final int STDOUT = 6;
+    
+    /** record type FCGI_STDERR. */
+    private static final int STDERR = 7;
+    
+    /** role FCGI_RESPONDER. */
+    private static final int RESPONDER = 1;
+    
+    /** flag FCGI_KEEP_CONN. */
+    private static final int KEEP_CONN = 1;
+    
+    /** protocol status FCGI_REQUEST_COMPLETE. */
+    private static final int REQUEST_COMPLETE = 0;
+    
+    /** the request id; there is only one request per connection. */
+    private static final int REQUEST_ID = 1;
+    
+    /** maximum content length of a record. */
+    private static final int MAX_CONTENT = 0xFFFF;
+    
+    /** buffer size. */
+    private static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * The socket.
+     */
+    private final Socket socket;
+    
+    /**
+     * The socket input.
+     */
+    private final DataInputStream in;
+    
+    /**
+     * The socket output.
+     */
+    private final OutputStream out;
+    
+    /**
+     * true if the last response was read completely and the connection can be re-used.
+     */
+    private boolean reusable;
+    
+    /**
+     * The number of requests served.
+     */
+    private int requests;
+    
+    /**
+     * Constructor.
+     * @param address the address of the responder
+     * @param timeout the connect and read timeout in milliseconds
+     * @throws IOException thrown if the connection cannot be established
+     */
+    FastCGIConnection(InetSocketAddress address, int timeout) throws IOException {
+        this(connect(address, timeout));
+    }
+    
+    /**
+     * Constructor.
+     * @param socket the connected socket
+     * @throws IOException thrown if the socket streams cannot be opened
+     */
+    private FastCGIConnection(Socket socket) throws IOException {
+        this(socket, socket.getInputStream(), socket.getOutputStream());
+    }
+    
+    /**
+     * Constructor.
+     * @param socket the socket (closed by {@link #close()})
+     * @param in the input of the connection
+     * @param out the output of the connection
+     */
+    FastCGIConnection(Socket socket, InputStream in, OutputStream out) {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        this.reusable = true;
+    }
+    
+    /**
+     * Connects to the responder.
+     * @param address the address of the responder
+     * @param timeout the connect and read timeout in milliseconds
+     * @return the socket
+     * @throws IOException thrown if the connection cannot be established
+     */
+    private static Socket connect(InetSocketAddress address, int timeout) throws IOException {
+        final Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(address, timeout);
+        socket.setSoTimeout(timeout);
+        return socket;
+    }
+    
+    /**
+     * Sends a request.
+     * 
+     * @param params the request parameters (cgi environment)
+     * @param body the request body
+     * @param contentLength number of bytes to read from the body
+     * @return the response stream (cgi headers followed by the content)
+     * @throws IOException thrown on io errors
+     */
+    Response execute(Map<String, String> params, InputStream body, int contentLength) throws IOException {
+        this.reusable = false;
+        this.requests++;
+        
+        final byte[] begin = new byte[8];
+        begin[1] = RESPONDER;
+        begin[2] = KEEP_CONN;
+        this.writeRecord(BEGIN_REQUEST, begin, 0, begin.length);
+        
+        final ByteArrayOutputStream paramBytes = new ByteArrayOutputStream();
+        for (final Map.Entry<String, String> param : params.entrySet()) {
+            final byte[] name = param.getKey().getBytes("UTF-8");
+            final byte[] value = param.getValue() == null ? new byte[0] : param.getValue().getBytes("UTF-8");
+            writeLength(paramBytes, name.length);
+            writeLength(paramBytes, value.length);
+            paramBytes.write(name);
+            paramBytes.write(value);
+        }
+        this.writeStream(PARAMS, paramBytes.toByteArray());
+        this.writeRecord(PARAMS, null, 0, 0);
+        
+        int sent = 0;
+        final byte[] buffer = CGIRelay.acquireBuffer();
+        try {
+            int remaining = contentLength;
+            while (remaining > 0) {
+                final int read = body.read(buffer, 0, Math.min(remaining, MAX_CONTENT));
+                if (read < 0) {
+                    break;
+                }
+                this.writeRecord(STDIN, buffer, 0, read);
+                remaining -= read;
+                sent += read;
+            }
+        } finally {
+            CGIRelay.releaseBuffer(buffer);
+        }
+        this.writeRecord(STDIN, null, 0, 0);
+        this.out.flush();
+        return new Response(sent);
+    }
+    
+    /**
+     * Returns true if the connection can be used for further requests.
+     * @return true if the connection can be re-used
+     */
+    boolean isReusable() {
+        return this.reusable && !this.socket.isClosed();
+    }
+    
+    /**
+     * Returns the number of requests served by this connection.
+     * @return number of requests
+     */
+    int getRequests() {
+        return this.requests;
+    }
+    
+    /**
+     * Closes the connection.
+     */
+    void close() {
+        this.reusable = false;
+        try {
+            this.socket.close();
+        } catch (IOException ex) {
+            Log.ignore(ex);
+        }
+    }
+    
+    /**
+     * Writes a stream (split into multiple records if required).
+     * @param type the record type
+     * @param data the data
+     * @throws IOException thrown on io errors
+     */
+    private void writeStream(int type, byte[] data) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            final int len = Math.min(MAX_CONTENT, data.length - offset);
+            this.writeRecord(type, data, offset, len);
+            offset += len;
+        }
+    }
+    
+    /**
+     * Writes a single record.
+     * @param type the record type
+     * @param data the content
+     * @param offset the offset within data
+     * @param len the content length
+     * @throws IOException thrown on io errors
+     */
+    private void writeRecord(int type, byte[] data, int offset, int len) throws IOException {
+        this.out.write(VERSION);
+        this.out.write(type);
+        this.out.write(REQUEST_ID >> 8);
+        this.out.write(REQUEST_ID & 0xFF);
+        this.out.write(len >> 8);
+        this.out.write(len & 0xFF);
+        // no padding
+        this.out.write(0);
+        this.out.write(0);
+        if (len > 0) {
+            this.out.write(data, offset, len);
+        }
+    }
+    
+    /**
+     * Writes the length of a name or value.
+     * @param out the target
+     * @param len the length
+     */
+    private static void writeLength(ByteArrayOutputStream out, int len) {
+        if (len < 0x80) {
+            out.write(len);
+        } else {
+            out.write((len >> 24) | 0x80);
+            out.write(len >> 16);
+            out.write(len >> 8);
+            out.write(len);
+        }
+    }
+    
+    /**
+     * Skips the given number of bytes of the input.
+     * @param count the number of bytes
+     * @throws IOException thrown on io errors or if the connection was closed
+     */
+    private void skip(int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            final int skipped = this.in.skipBytes(remaining);
+            if (skipped <= 0) {
+                if (this.in.read() < 0) {
+                    throw new EOFException("FastCGI connection closed");
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+    
+    /**
+     * The response of a request; reads the content of the FCGI_STDOUT records.
+     */
+    final class Response extends InputStream {
+        
+        /**
+         * The number of request body bytes sent.
+         */
+        private final int sent;
+        
+        /**
+         * The remaining content bytes of the current stdout record.
+         */
+        private int remaining;
+        
+        /**
+         * The padding of the current stdout record.
+         */
+        private int padding;
+        
+        /**
+         * true if the end of the request was reached.
+         */
+        private boolean finished;
+        
+        /**
+         * The application status.
+         */
+        private int appStatus;
+        
+        /**
+         * Constructor.
+         * @param sent the number of request body bytes sent
+         */
+        Response(int sent) {
+            this.sent = sent;
+        }
+        
+        /**
+         * Returns the number of request body bytes sent to the responder.
+         * @return number of bytes
+         */
+        int getBytesSent() {
+            return this.sent;
+        }
+        
+        /**
+         * Returns the application status (exit code of the script).
+         * @return application status; only valid after the response was read completely
+         */
+        int getAppStatus() {
+            return this.appStatus;
+        }
+        
+        /**
+         * Returns true if the response was read completely.
+         * @return true if the response was read completely
+         */
+        boolean isFinished() {
+            return this.finished;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            if (!this.fill()) {
+                return -1;
+            }
+            final int result = FastCGIConnection.this.in.read();
+            if (result < 0) {
+                throw new EOFException("FastCGI connection closed");
+            }
+            this.remaining--;
+            return result;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.fill()) {
+                return -1;
+            }
+            final int read = FastCGIConnection.this.in.read(b, off, Math.min(len, this.remaining));
+            if (read < 0) {
+                throw new EOFException("FastCGI connection closed");
+            }
+            this.remaining -= read;
+            return read;
+        }
+        
+        /**
+         * Reads the next stdout record if the current one is exhausted.
+         * @return false at the end of the response
+         * @throws IOException thrown on io errors
+         */
+        private boolean fill() throws IOException {
+            final DataInputStream input = FastCGIConnection.this.in;
+            while (this.remaining == 0) {
+                if (this.finished) {
+                    return false;
+                }
+                if (this.padding > 0) {
+                    FastCGIConnection.this.skip(this.padding);
+                    this.padding = 0;
+                }
+                input.readUnsignedByte();
+                final int type = input.readUnsignedByte();
+                input.readUnsignedShort();
+                final int contentLength = input.readUnsignedShort();
+                final int paddingLength = input.readUnsignedByte();
+                input.readUnsignedByte();
+                switch (type) {
+                    case STDOUT:
+                        this.remaining = contentLength;
+                        this.padding = paddingLength;
+                        break;
+                    case STDERR:
+                        final byte[] err = new byte[contentLength];
+                        input.readFully(err);
+                        FastCGIConnection.this.skip(paddingLength);
+                        if (contentLength > 0) {
+                            Log.warn("php: " + new String(err, "UTF-8").trim());
+                        }
+                        break;
+                    case END_REQUEST:
+                        this.appStatus = input.readInt();
+                        final int protocolStatus = input.readUnsignedByte();
+                        FastCGIConnection.this.skip(3 + contentLength - 8 + paddingLength);
+                        this.finished = true;
+                        FastCGIConnection.this.reusable = protocolStatus == REQUEST_COMPLETE;
+                        return false;
+                    default:
+                        FastCGIConnection.this.skip(contentLength + paddingLength);
+                        break;
+                }
+            }
+            return true;
+        }
+        
+    }
+
+}
@@ -0,0 +1,347 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.jettycgi;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.mortbay.log.Log;
+import org.mortbay.util.IO;
+
+/**
+ * A pool of FastCGI connections.
+ * 
+ * <p>
+ * Every slot of the pool either owns a php-cgi process (started with "-b") or points to an external
+ * responder (for example php-fpm). A slot serves one request at a time; a request waiting for a
+ * free slot blocks up to the acquire timeout (backpressure). Slots are health checked on acquire:
+ * dead php-cgi processes are restarted and broken connections are re-opened.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+final class FastCGIPool {
+    
+    /** delay between connection attempts while php-cgi is starting. */
+    private static final long CONNECT_RETRY_DELAY = 50;
+    
+    /** maximum time to wait for php-cgi to accept connections. */
+    private static final long STARTUP_TIMEOUT = 10000;
+    
+    /**
+     * The free slots.
+     */
+    private final BlockingQueue<Slot> free;
+    
+    /**
+     * All slots.
+     */
+    private final List<Slot> slots = new ArrayList<Slot>();
+    
+    /**
+     * The acquire timeout in milliseconds.
+     */
+    private final long acquireTimeout;
+    
+    /**
+     * The socket read timeout in milliseconds.
+     */
+    private final int readTimeout;
+    
+    /**
+     * true if the pool was closed.
+     */
+    private volatile boolean closed;
+    
+    /**
+     * Creates a pool connecting to an external responder.
+     * @param address the responder address
+     * @param size the number of connections
+     * @param acquireTimeout the acquire timeout in milliseconds
+     * @param readTimeout the socket read timeout in milliseconds
+     */
+    FastCGIPool(InetSocketAddress address, int size, long acquireTimeout, int readTimeout) {
+        this.free = new ArrayBlockingQueue<Slot>(size);
+        this.acquireTimeout = acquireTimeout;
+        this.readTimeout = readTimeout;
+        for (int i = 0; i < size; i++) {
+            final Slot slot = new Slot(address, null, null, null);
+            this.slots.add(slot);
+            this.free.add(slot);
+        }
+    }
+    
+    /**
+     * Creates a pool spawning php-cgi processes.
+     * @param command the php-cgi command (executable followed by the arguments; "-b address" is appended)
+     * @param env the process environment
+     * @param dir the working directory
+     * @param size the number of processes
+     * @param acquireTimeout the acquire timeout in milliseconds
+     * @param readTimeout the socket read timeout in milliseconds
+     */
+    FastCGIPool(String[] command, String[] env, File dir, int size, long acquireTimeout, int readTimeout) {
+        this.free = new ArrayBlockingQueue<Slot>(size);
+        this.acquireTimeout = acquireTimeout;
+        this.readTimeout = readTimeout;
+        for (int i = 0; i < size; i++) {
+            final Slot slot = new Slot(null, command, env, dir);
+            this.slots.add(slot);
+            this.free.add(slot);
+        }
+    }
+    
+    /**
+     * Acquires a connection.
+     * @return the connection or null if no connection got free within the acquire timeout
+     * @throws IOException thrown if the connection cannot be established
+     * @throws InterruptedException thrown if the current thread was interrupted
+     */
+    FastCGIConnection acquire() throws IOException, InterruptedException {
+        if (this.closed) {
+            throw new IOException("FastCGI pool closed");
+        }
+        final Slot slot = this.free.poll(this.acquireTimeout, TimeUnit.MILLISECONDS);
+        if (slot == null) {
+            return null;
+        }
+        try {
+            return slot.open();
+        } catch (IOException ex) {
+            this.free.add(slot);
+            throw ex;
+        } catch (RuntimeException ex) {
+            this.free.add(slot);
+            throw ex;
+        }
+    }
+    
+    /**
+     * Releases a connection acquired before. Connections that are not reusable are closed.
+     * @param connection the connection
+     */
+    void release(FastCGIConnection connection) {
+        for (final Slot slot : this.slots) {
+            if (slot.connection == connection) {
+                if (!connection.isReusable() || this.closed) {
+                    slot.discard();
+                }
+                this.free.add(slot);
+                return;
+            }
+        }
+        connection.close();
+    }
+    
+    /**
+     * Returns the number of slots.
+     * @return pool size
+     */
+    int getSize() {
+        return this.slots.size();
+    }
+    
+    /**
+     * Returns the number of free slots.
+     * @return free slots
+     */
+    int getFree() {
+        return this.free.size();
+    }
+    
+    /**
+     * Closes all connections and stops the php-cgi processes.
+     */
+    void close() {
+        this.closed = true;
+        for (final Slot slot : this.slots) {
+            slot.discard();
+            slot.stop();
+        }
+    }
+    
+    /**
+     * Returns a free local tcp port.
+     * @return port
+     * @throws IOException thrown on io errors
+     */
+    private static int freePort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+    
+    /**
+     * A pool slot.
+     */
+    private final class Slot {
+        
+        /**
+         * The php-cgi command or null for external responders.
+         */
+        private final String[] command;
+        
+        /**
+         * The process environment.
+         */
+        private final String[] env;
+        
+        /**
+         * The working directory.
+         */
+        private final File dir;
+        
+        /**
+         * The responder address.
+         */
+        private InetSocketAddress address;
+        
+        /**
+         * The php-cgi process.
+         */
+        private Process process;
+        
+        /**
+         * The open connection.
+         */
+        private FastCGIConnection connection;
+        
+        /**
+         * Constructor.
+         * @param address the responder address
+         * @param command the php-cgi command
+         * @param env the process environment
+         * @param dir the working directory
+         */
+        Slot(InetSocketAddress address, String[] command, String[] env, File dir) {
+            this.address = address;
+            this.command = command;
+            this.env = env;
+            this.dir = dir;
+        }
+        
+        /**
+         * Returns an open connection; (re-)starts the process if required.
+         * @return connection
+         * @throws IOException thrown on io errors
+         */
+        FastCGIConnection open() throws IOException {
+            if (this.command != null && !this.isAlive()) {
+                this.discard();
+                this.start();
+            }
+            if (this.connection == null || !this.connection.isReusable()) {
+                this.discard();
+                this.connection = this.connect();
+            }
+            return this.connection;
+        }
+        
+        /**
+         * Closes the connection.
+         */
+        void discard() {
+            if (this.connection != null) {
+                this.connection.close();
+                this.connection = null;
+            }
+        }
+        
+        /**
+         * Stops the php-cgi process.
+         */
+        void stop() {
+            if (this.process != null) {
+                this.process.destroy();
+                this.process = null;
+            }
+        }
+        
+        /**
+         * Returns true if the php-cgi process is running.
+         * @return true if the process is running
+         */
+        private boolean isAlive() {
+            if (this.process == null) {
+                return false;
+            }
+            try {
+                final int exit = this.process.exitValue();
+                Log.warn("php-cgi exited with " + exit + "; restarting");
+                return false;
+            } catch (IllegalThreadStateException ex) {
+                return true;
+            }
+        }
+        
+        /**
+         * Starts the php-cgi process.
+         * @throws IOException thrown on io errors
+         */
+        private void start() throws IOException {
+            this.stop();
+            final int port = freePort();
+            final String[] cmd = new String[this.command.length + 2];
+            System.arraycopy(this.command, 0, cmd, 0, this.command.length);
+            cmd[cmd.length - 2] = "-b";
+            cmd[cmd.length - 1] = "127.0.0.1:" + port;
+            if (Log.isDebugEnabled()) {
+                Log.debug("starting php-cgi on port " + port);
+            }
+            this.process = Runtime.getRuntime().exec(cmd, this.env, this.dir);
+            this.process.getOutputStream().close();
+            IO.copyThread(this.process.getInputStream(), System.err);
+            IO.copyThread(this.process.getErrorStream(), System.err);
+            this.address = new InetSocketAddress("127.0.0.1", port);
+        }
+        
+        /**
+         * Connects to the responder; retries while php-cgi is starting.
+         * @return the connection
+         * @throws IOException thrown on io errors
+         */
+        private FastCGIConnection connect() throws IOException {
+            final long end = System.currentTimeMillis() + STARTUP_TIMEOUT;
+            while (true) {
+                try {
+                    return new FastCGIConnection(this.address, FastCGIPool.this.readTimeout);
+                } catch (IOException ex) {
+                    if (this.command == null || !this.isAlive() || System.currentTimeMillis() > end) {
+                        throw ex;
+                    }
+                    try {
+                        Thread.sleep(CONNECT_RETRY_DELAY);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw ex;
+                    }
+                }
+            }
+        }
+        
+    }
+
+}
@@ -20,7 +20,6 @@ package org.phpmaven.jettycgi;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -62,17 +61,19 @@ public class PHP extends HttpServlet
   private boolean _ok;
   private File _docRoot;
   private String _path;
-  private String _cmdPrefix;
-  private EnvList _env;
-  private boolean _ignoreExitState;
+  String _cmdPrefix;
+  EnvList _env;
+  boolean _ignoreExitState;
   
   // PHP-FIX
-  private String includePath = "";
+  String includePath = "";
   // PHP-FIX-END
+  final CGIMetrics _metrics=new CGIMetrics();
 
   /* ------------------------------------------------------------ */
   public void init() throws ServletException
   {
+      getServletContext().setAttribute(CGIMetrics.ATTRIBUTE,_metrics);
       // PHP-FIX
       String os2 = System.getProperty("os.name");
       final String[] path = System.getProperty("phpIncludePath", "").split(";");
@@ -164,6 +165,16 @@ public class PHP extends HttpServlet
       _ok=true;
   }
 
+  /* ------------------------------------------------------------ */
+  /**
+   * Returns the request metrics.
+   * @return metrics
+   */
+  public CGIMetrics getMetrics()
+  {
+      return _metrics;
+  }
+
   /* ------------------------------------------------------------ */
   public void service(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException
   {
@@ -220,13 +231,16 @@ public class PHP extends HttpServlet
   }
 
   /* ------------------------------------------------------------ */
-  /*
-   * @param root @param path @param req @param res @exception IOException
+  /**
+   * Creates the cgi environment of a request.
+   * @param command the script file
+   * @param pathInfo the path info
+   * @param req the request
+   * @return the environment
    */
-  private void exec(File command, String pathInfo, HttpServletRequest req, HttpServletResponse res) throws IOException
+  EnvList createEnvironment(File command, String pathInfo, HttpServletRequest req)
   {
       String path=command.getAbsolutePath();
-      File dir=command.getParentFile();
       String scriptName=req.getRequestURI().substring(0,req.getRequestURI().length()-pathInfo.length());
       String scriptPath=getServletContext().getRealPath(scriptName);
       String pathTranslated=req.getPathTranslated();
@@ -293,6 +307,21 @@ public class PHP extends HttpServlet
 
       env.set("SCRIPT_FILENAME", path);
       env.set("REDIRECT_STATUS", "200");
+      return env;
+  }
+
+  /* ------------------------------------------------------------ */
+  /*
+   * @param root @param path @param req @param res @exception IOException
+   */
+  protected void exec(File command, String pathInfo, HttpServletRequest req, HttpServletResponse res) throws IOException
+  {
+      String path=command.getAbsolutePath();
+      File dir=command.getParentFile();
+      int len=req.getContentLength();
+      if (len<0)
+          len=0;
+      EnvList env=createEnvironment(command,pathInfo,req);
       final String execCmd = (this._cmdPrefix == null ? "php-cgi" : this._cmdPrefix) + " -d include_path='" + this.includePath + "'";
       
       if (Log.isDebugEnabled())
@@ -304,79 +333,41 @@ public class PHP extends HttpServlet
       
       Process p=(dir==null)?Runtime.getRuntime().exec(execCmd, env.getEnvArray()):Runtime.getRuntime().exec(execCmd,env.getEnvArray(),dir);
 
-      // hook processes input to browser's output (async)
-      final InputStream inFromReq=req.getInputStream();
-      final OutputStream outToCgi=p.getOutputStream();
-      final int inLength=len;
+      final long start=System.nanoTime();
+
+      // hook processes input to browser's output (async, pooled thread)
+      if (len>0)
+          CGIRelay.copyAsync(req.getInputStream(),p.getOutputStream(),len,_metrics);
+      else
+          p.getOutputStream().close();
 
       IO.copyThread(p.getErrorStream(),System.err);
-      
-      new Thread(new Runnable()
-      {
-          public void run()
-          {
-              try
-              {
-                  if (inLength>0)
-                      IO.copy(inFromReq,outToCgi,inLength);
-                  outToCgi.close();
-              }
-              catch (IOException e)
-              {
-                  Log.ignore(e);
-              }
-          }
-      }).start();
 
       // hook processes output to browser's input (sync)
       // if browser closes stream, we should detect it and kill process...
       OutputStream os = null;
+      CGIRelay relay = new CGIRelay(p.getInputStream());
+      long bytesOut=0;
+      boolean failed=true;
       try
       {
           // read any headers off the top of our input stream
-          // NOTE: Multiline header items not supported!
-          String line=null;
-          InputStream inFromCgi=p.getInputStream();
-
-          //br=new BufferedReader(new InputStreamReader(inFromCgi));
-          //while ((line=br.readLine())!=null)
-          while( (line = getTextLineFromStream( inFromCgi )).length() > 0 )
+          for (String[] header : relay.readHeaders())
           {
-              if (!line.startsWith("HTTP"))
-              {
-                  int k=line.indexOf(':');
-                  if (k>0)
-                  {
-                      String key=line.substring(0,k).trim();
-                      String value = line.substring(k+1).trim();
-                      if ("Location".equals(key))
-                      {
-                          res.sendRedirect(value);
-                      }
-                      else if ("Status".equals(key))
-                      {
-                          String[] token = value.split( " " );
-                          int status=Integer.parseInt(token[0]);
-                          res.setStatus(status);
-                      }
-                      else
-                      {
-                          // add remaining header items to our response header
-                          res.addHeader(key,value);
-                      }
-                  }
-              }
+              applyHeader(header[0],header[1],res);
           }
           // copy cgi content to response stream...
           os = res.getOutputStream();
-          IO.copy(inFromCgi, os);
+          bytesOut=relay.copyContent(os);
           p.waitFor();
+          failed=false;
 
           if (!_ignoreExitState)
           {
               int exitValue=p.exitValue();
               if (0!=exitValue)
               {
+                  failed=true;
                   Log.warn("Non-zero exit status ("+exitValue+") from CGI program: "+path);
                   if (!res.isCommitted())
                       res.sendError(500,"Failed to exec CGI");
@@ -395,34 +386,61 @@ public class PHP extends HttpServlet
       }
       finally
       {
+          relay.close();
           if( os != null )
               os.close();
           os = null;
           p.destroy();
           // Log.debug("CGI: terminated!");
+          record(path,start,bytesOut,failed);
       }
   }
 
   /**
-   * Utility method to get a line of text from the input stream.
-   * @param is the input stream
-   * @return the line of text
-   * @throws IOException
+   * Records the metrics of a finished request.
+   * @param path the script
+   * @param start start time (nanos)
+   * @param bytesOut number of response bytes
+   * @param failed true if the request failed
    */
-  private String getTextLineFromStream( InputStream is ) throws IOException {
-      StringBuffer buffer = new StringBuffer();
-      int b;
+  void record(String path, long start, long bytesOut, boolean failed)
+  {
+      long latency=System.nanoTime()-start;
+      _metrics.record(latency,bytesOut,failed);
+      if (Log.isDebugEnabled())
+          Log.debug("CGI: "+path+" took "+(latency/1000000)+"ms, "+bytesOut+" bytes"+(failed?" (failed)":""));
+  }
 
-      while( (b = is.read()) != -1 && b != (int) '\n' ) {
-          buffer.append( (char) b );
+  /**
+   * Applies a cgi response header to the response. Repeated headers are added.
+   * @param key the header name
+   * @param value the header value
+   * @param res the response
+   * @throws IOException
+   */
+  static void applyHeader(String key, String value, HttpServletResponse res) throws IOException
+  {
+      if ("Location".equalsIgnoreCase(key))
+      {
+          res.sendRedirect(value);
+      }
+      else if ("Status".equalsIgnoreCase(key))
+      {
+          String[] token = value.split( " " );
+          int status=Integer.parseInt(token[0]);
+          res.setStatus(status);
+      }
+      else
+      {
+          // add remaining header items to our response header
+          res.addHeader(key,value);
       }
-      return buffer.toString().trim();
   }
   /* ------------------------------------------------------------ */
   /**
    * private utility class that manages the Environment passed to exec.
    */
-  private static class EnvList
+  static class EnvList
   {
       private Map envMap;
 
@@ -444,6 +462,19 @@ public class PHP extends HttpServlet
           envMap.put(name,name+"="+StringUtil.nonNull(value));
       }
 
+      /** Get the variables (name to value). */
+      public Map<String, String> getVariables()
+      {
+          Map<String, String> result=new HashMap<String, String>();
+          for (Object o : envMap.entrySet())
+          {
+              Map.Entry e=(Map.Entry)o;
+              String name=(String)e.getKey();
+              result.put(name,((String)e.getValue()).substring(name.length()+1));
+          }
+          return result;
+      }
+
       /** Get representation suitable for passing to exec. */
       public String[] getEnvArray()
       {
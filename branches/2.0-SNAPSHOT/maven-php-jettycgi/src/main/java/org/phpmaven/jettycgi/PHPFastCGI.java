@@ -0,0 +1,230 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.jettycgi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mortbay.log.Log;
+
+/**
+ * FastCGI variant of the {@link PHP} servlet.
+ * 
+ * <p>
+ * Instead of spawning a php-cgi process per request the requests are sent to a pool of persistent
+ * php-cgi processes (or to an external FastCGI responder like php-fpm). The init parameters of the
+ * {@link PHP} servlet are supported. Additional init parameters:
+ * </p>
+ * <ul>
+ * <li>"fastcgiAddress": host:port of an external responder; if not set php-cgi processes are spawned.</li>
+ * <li>"workers": number of php-cgi processes/connections; defaults to the number of processors.</li>
+ * <li>"acquireTimeout": milliseconds a request waits for a free worker before it is answered with
+ * 503; defaults to 30000.</li>
+ * <li>"readTimeout": socket read timeout in milliseconds; defaults to 300000.</li>
+ * <li>"maxRequests": number of requests after which php-cgi restarts itself (PHP_FCGI_MAX_REQUESTS);
+ * defaults to 0 (unlimited).</li>
+ * </ul>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class PHPFastCGI extends PHP {
+    
+    /** serial version uid. */
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * The connection pool.
+     */
+    private transient FastCGIPool pool;
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        
+        final int workers = this.getIntParameter("workers", Runtime.getRuntime().availableProcessors());
+        final long acquireTimeout = this.getIntParameter("acquireTimeout", 30000);
+        final int readTimeout = this.getIntParameter("readTimeout", 300000);
+        final String address = this.getInitParameter("fastcgiAddress");
+        if (address != null && address.length() > 0) {
+            final int index = address.lastIndexOf(':');
+            if (index <= 0) {
+                throw new ServletException("Invalid fastcgiAddress " + address + "; expecting host:port");
+            }
+            final InetSocketAddress socketAddress = new InetSocketAddress(
+                address.substring(0, index),
+                Integer.parseInt(address.substring(index + 1)));
+            this.pool = new FastCGIPool(socketAddress, workers, acquireTimeout, readTimeout);
+        } else {
+            final EnvList env = new EnvList(this._env);
+            env.set("PHP_FCGI_CHILDREN", "0");
+            env.set("PHP_FCGI_MAX_REQUESTS", String.valueOf(this.getIntParameter("maxRequests", 0)));
+            final String[] command = new String[] {
+                this._cmdPrefix == null ? "php-cgi" : this._cmdPrefix,
+                "-d",
+                "include_path=" + this.includePath
+            };
+            this.pool = new FastCGIPool(command, env.getEnvArray(), null, workers, acquireTimeout, readTimeout);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        if (this.pool != null) {
+            this.pool.close();
+            this.pool = null;
+        }
+        super.destroy();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void exec(File command, String pathInfo, HttpServletRequest req, HttpServletResponse res)
+        throws IOException {
+        final FastCGIPool p = this.pool;
+        if (p == null) {
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        
+        int len = req.getContentLength();
+        if (len < 0) {
+            len = 0;
+        }
+        final Map<String, String> params = this.createEnvironment(command, pathInfo, req).getVariables();
+        if (Log.isDebugEnabled()) {
+            Log.debug("FastCGI: ENV: " + params);
+        }
+        
+        final long start = System.nanoTime();
+        // requests without body can be repeated on a fresh connection if php closed an idle connection
+        boolean retry = len == 0;
+        long bytesOut = 0;
+        boolean failed = true;
+        try {
+            while (true) {
+                final FastCGIConnection connection;
+                try {
+                    connection = p.acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    return;
+                } catch (IOException ex) {
+                    Log.warn("FastCGI: failed to connect to php", ex);
+                    res.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+                    return;
+                }
+                if (connection == null) {
+                    Log.warn("FastCGI: no free php worker; rejecting " + command);
+                    res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    return;
+                }
+                
+                final boolean reused = connection.getRequests() > 0;
+                final FastCGIConnection.Response response;
+                try {
+                    response = connection.execute(params, req.getInputStream(), len);
+                } catch (IOException ex) {
+                    p.release(connection);
+                    if (retry && reused) {
+                        Log.debug("FastCGI: stale connection; retrying");
+                        retry = false;
+                        continue;
+                    }
+                    throw ex;
+                }
+                this._metrics.addBytesIn(response.getBytesSent());
+                final CGIRelay relay = new CGIRelay(response);
+                try {
+                    final List<String[]> headers;
+                    try {
+                        headers = relay.readHeaders();
+                    } catch (IOException ex) {
+                        if (retry && reused && !relay.isStarted()) {
+                            Log.debug("FastCGI: stale connection; retrying");
+                            retry = false;
+                            continue;
+                        }
+                        throw ex;
+                    }
+                    for (final String[] header : headers) {
+                        applyHeader(header[0], header[1], res);
+                    }
+                    final OutputStream os = res.getOutputStream();
+                    bytesOut = relay.copyContent(os);
+                    os.flush();
+                    failed = false;
+                    
+                    if (!this._ignoreExitState && response.isFinished() && response.getAppStatus() != 0) {
+                        failed = true;
+                        Log.warn("Non-zero exit status (" + response.getAppStatus() + ") from CGI program: " + command);
+                        if (!res.isCommitted()) {
+                            res.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to exec CGI");
+                        }
+                    }
+                    return;
+                } finally {
+                    relay.close();
+                    p.release(connection);
+                }
+            }
+        } catch (IOException ex) {
+            // browser has probably closed its input stream or php died
+            Log.debug("FastCGI: request failed", ex);
+            if (!res.isCommitted()) {
+                res.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+            }
+        } finally {
+            this.record(command.getAbsolutePath(), start, bytesOut, failed);
+        }
+    }
+    
+    /**
+     * Returns an integer init parameter.
+     * @param name parameter name
+     * @param defaultValue the default value
+     * @return the parameter value
+     * @throws ServletException thrown if the parameter is not a number
+     */
+    private int getIntParameter(String name, int defaultValue) throws ServletException {
+        final String value = this.getInitParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new ServletException("Invalid init parameter " + name + ": " + value, ex);
+        }
+    }
+
+}
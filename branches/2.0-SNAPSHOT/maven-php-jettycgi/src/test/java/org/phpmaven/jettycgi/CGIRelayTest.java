@@ -0,0 +1,239 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.jettycgi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+/**
+ * test cases for the cgi header parsing.
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class CGIRelayTest extends TestCase {
+
+    /**
+     * Tests simple headers followed by the content.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testHeaders() throws Exception {
+        final CGIRelay relay = new CGIRelay(stream(
+                "Content-Type: text/html\r\nX-Foo:bar  \nHTTP/1.1 200 OK\r\n\r\nHello\r\nWorld", 0));
+        try {
+            final List<String[]> headers = relay.readHeaders();
+            assertEquals(2, headers.size());
+            assertHeader("Content-Type", "text/html", headers.get(0));
+            assertHeader("X-Foo", "bar", headers.get(1));
+            assertEquals("Hello\r\nWorld", content(relay));
+            assertTrue(relay.isStarted());
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Tests continuation lines and repeated headers.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testContinuationAndRepeated() throws Exception {
+        final CGIRelay relay = new CGIRelay(stream(
+                "Set-Cookie: a=1\r\n"
+                + "X-Long: first\r\n"
+                + "   second\r\n"
+                + "\tthird\r\n"
+                + "Set-Cookie: b=2\r\n"
+                + "Set-Cookie: c=3;\r\n"
+                + " path=/\r\n"
+                + "\r\n", 0));
+        try {
+            final List<String[]> headers = relay.readHeaders();
+            assertEquals(4, headers.size());
+            assertHeader("Set-Cookie", "a=1", headers.get(0));
+            assertHeader("X-Long", "first second third", headers.get(1));
+            assertHeader("Set-Cookie", "b=2", headers.get(2));
+            assertHeader("Set-Cookie", "c=3; path=/", headers.get(3));
+            assertEquals("", content(relay));
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Tests headers split into multiple reads (line separators split between reads, too) and header
+     * blocks larger than the buffer.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testSplit() throws Exception {
+        final String response = "Status: 404 Not Found\r\nSet-Cookie: a=1\r\n continued\r\n"
+            + "Set-Cookie: b=2\r\n\r\nContent";
+        for (int chunk = 1; chunk <= 4; chunk++) {
+            final CGIRelay relay = new CGIRelay(stream(response, chunk));
+            try {
+                final List<String[]> headers = relay.readHeaders();
+                assertEquals(3, headers.size());
+                assertHeader("Status", "404 Not Found", headers.get(0));
+                assertHeader("Set-Cookie", "a=1 continued", headers.get(1));
+                assertHeader("Set-Cookie", "b=2", headers.get(2));
+                assertEquals("Content", content(relay));
+            } finally {
+                relay.close();
+            }
+        }
+
+        final StringBuilder large = new StringBuilder();
+        for (int i = 0; i < CGIRelay.BUFFER_SIZE + 100; i++) {
+            large.append((char) ('a' + i % 26));
+        }
+        final CGIRelay relay = new CGIRelay(stream(
+                "X-Large: " + large + "\r\nX-After: foo\r\n\r\nContent", 0));
+        try {
+            final List<String[]> headers = relay.readHeaders();
+            assertEquals(2, headers.size());
+            assertHeader("X-Large", large.toString(), headers.get(0));
+            assertHeader("X-After", "foo", headers.get(1));
+            assertEquals("Content", content(relay));
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Tests responses ending within or right after the headers.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testEndOfStream() throws Exception {
+        CGIRelay relay = new CGIRelay(stream("", 0));
+        try {
+            assertTrue(relay.readHeaders().isEmpty());
+            assertFalse(relay.isStarted());
+            assertEquals("", content(relay));
+        } finally {
+            relay.close();
+        }
+
+        relay = new CGIRelay(stream("Content-Type: text/plain\r\nX-Foo: b", 3));
+        try {
+            final List<String[]> headers = relay.readHeaders();
+            assertEquals(2, headers.size());
+            assertHeader("Content-Type", "text/plain", headers.get(0));
+            assertHeader("X-Foo", "b", headers.get(1));
+            assertEquals("", content(relay));
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Tests applying the Status and Location headers.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testApplyHeader() throws Exception {
+        final List<String> calls = new ArrayList<String>();
+        final HttpServletResponse res = (HttpServletResponse) Proxy.newProxyInstance(
+            HttpServletResponse.class.getClassLoader(),
+            new Class<?>[]{HttpServletResponse.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    final StringBuilder call = new StringBuilder(method.getName());
+                    if (args != null) {
+                        for (final Object arg : args) {
+                            call.append(' ').append(arg);
+                        }
+                    }
+                    calls.add(call.toString());
+                    return null;
+                }
+            });
+        PHP.applyHeader("Status", "404 Not Found", res);
+        PHP.applyHeader("status", "201", res);
+        PHP.applyHeader("Location", "http://localhost/foo", res);
+        PHP.applyHeader("Set-Cookie", "a=1", res);
+        PHP.applyHeader("Set-Cookie", "b=2", res);
+        assertEquals(5, calls.size());
+        assertEquals("setStatus 404", calls.get(0));
+        assertEquals("setStatus 201", calls.get(1));
+        assertEquals("sendRedirect http://localhost/foo", calls.get(2));
+        assertEquals("addHeader Set-Cookie a=1", calls.get(3));
+        assertEquals("addHeader Set-Cookie b=2", calls.get(4));
+    }
+
+    /**
+     * Checks a header.
+     * @param name expected name
+     * @param value expected value
+     * @param header the header
+     */
+    private static void assertHeader(String name, String value, String[] header) {
+        assertEquals(name, header[0]);
+        assertEquals(value, header[1]);
+    }
+
+    /**
+     * Returns the content following the headers.
+     * @param relay the relay
+     * @return content
+     * @throws IOException thrown on io errors
+     */
+    private static String content(CGIRelay relay) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long count = relay.copyContent(out);
+        assertEquals(out.size(), count);
+        return out.toString("ISO-8859-1");
+    }
+
+    /**
+     * Returns a stream of the given response.
+     * @param response the response
+     * @param chunk the maximum number of bytes returned by a single read; 0 for no limit
+     * @return stream
+     * @throws IOException thrown on io errors
+     */
+    private static InputStream stream(String response, final int chunk) throws IOException {
+        final InputStream in = new ByteArrayInputStream(response.getBytes("ISO-8859-1"));
+        if (chunk == 0) {
+            return in;
+        }
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+
+}
@@ -0,0 +1,276 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.jettycgi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mortbay.util.IO;
+
+/**
+ * Throughput benchmark comparing a process per request (cgi) with persistent FastCGI connections.
+ * 
+ * <p>
+ * Run it with "java org.phpmaven.jettycgi.FastCGIBenchmark [requests] [threads] [fastcgiAddress]".
+ * Without an address a trivial in-process FastCGI responder is used so that only the protocol and
+ * pool overhead is measured. The cgi side spawns "php-cgi -v" or "true" if php-cgi is not installed.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class FastCGIBenchmark {
+    
+    /** the response of the stand-in responder. */
+    private static final byte[] RESPONSE = "Content-Type: text/plain\r\n\r\nHello world\n".getBytes();
+    
+    /**
+     * Hidden constructor.
+     */
+    private FastCGIBenchmark() {
+        // empty
+    }
+    
+    /**
+     * Main method.
+     * @param args the arguments
+     * @throws Exception thrown on errors
+     */
+    public static void main(String[] args) throws Exception {
+        final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        
+        final InetSocketAddress address;
+        if (args.length > 2) {
+            final int index = args[2].lastIndexOf(':');
+            address = new InetSocketAddress(args[2].substring(0, index), Integer.parseInt(args[2].substring(index + 1)));
+        } else {
+            address = startResponder();
+        }
+        
+        final Map<String, String> params = new HashMap<String, String>();
+        params.put("REQUEST_METHOD", "GET");
+        params.put("SCRIPT_FILENAME", "/tmp/index.php");
+        params.put("REDIRECT_STATUS", "200");
+        params.put("CONTENT_LENGTH", "0");
+        
+        final FastCGIPool pool = new FastCGIPool(address, threads, 30000, 30000);
+        // warm up
+        run(threads, requests / 10, new Task() {
+            public void run() throws Exception {
+                fastcgi(pool, params);
+            }
+        });
+        final long fcgi = run(threads, requests, new Task() {
+            public void run() throws Exception {
+                fastcgi(pool, params);
+            }
+        });
+        pool.close();
+        
+        final String[] cmd = spawnCommand();
+        final int spawns = Math.max(1, requests / 10);
+        final long cgi = run(threads, spawns, new Task() {
+            public void run() throws Exception {
+                final Process p = Runtime.getRuntime().exec(cmd);
+                p.getOutputStream().close();
+                IO.copy(p.getInputStream(), new ByteArrayOutputStream());
+                p.waitFor();
+            }
+        });
+        
+        System.out.println("fastcgi: " + requests + " requests in " + fcgi + " ms ("
+            + (requests * 1000L / Math.max(1, fcgi)) + " req/s)");
+        System.out.println("cgi (" + cmd[0] + "): " + spawns + " requests in " + cgi + " ms ("
+            + (spawns * 1000L / Math.max(1, cgi)) + " req/s)");
+    }
+    
+    /**
+     * A benchmark task.
+     */
+    private interface Task {
+        /**
+         * Executes the task.
+         * @throws Exception thrown on errors
+         */
+        void run() throws Exception;
+    }
+    
+    /**
+     * Runs the task in parallel.
+     * @param threads number of threads
+     * @param count number of task invocations
+     * @param task the task
+     * @return duration in milliseconds
+     * @throws InterruptedException thrown on interruption
+     */
+    private static long run(int threads, final int count, final Task task) throws InterruptedException {
+        final AtomicInteger remaining = new AtomicInteger(count);
+        final Thread[] workers = new Thread[threads];
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (remaining.getAndDecrement() > 0) {
+                            task.run();
+                        }
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        return System.currentTimeMillis() - start;
+    }
+    
+    /**
+     * Executes a single FastCGI request.
+     * @param pool the pool
+     * @param params the parameters
+     * @throws Exception thrown on errors
+     */
+    private static void fastcgi(FastCGIPool pool, Map<String, String> params) throws Exception {
+        final FastCGIConnection connection = pool.acquire();
+        try {
+            final CGIRelay relay = new CGIRelay(connection.execute(params, new ByteArrayInputStream(new byte[0]), 0));
+            try {
+                relay.readHeaders();
+                relay.copyContent(new ByteArrayOutputStream());
+            } finally {
+                relay.close();
+            }
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    /**
+     * Returns the command used to simulate cgi requests.
+     * @return command
+     */
+    private static String[] spawnCommand() {
+        try {
+            final Process p = Runtime.getRuntime().exec(new String[]{"php-cgi", "-v"});
+            p.getOutputStream().close();
+            IO.copy(p.getInputStream(), new ByteArrayOutputStream());
+            if (p.waitFor() == 0) {
+                return new String[]{"php-cgi", "-v"};
+            }
+        } catch (Exception ex) {
+            // fall through
+        }
+        return new String[]{"true"};
+    }
+    
+    /**
+     * Starts a trivial FastCGI responder answering every request with {@link #RESPONSE}.
+     * @return the address
+     * @throws IOException thrown on io errors
+     */
+    private static InetSocketAddress startResponder() throws IOException {
+        final ServerSocket server = new ServerSocket(0);
+        final Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        final Socket socket = server.accept();
+                        final Thread handler = new Thread() {
+                            @Override
+                            public void run() {
+                                respond(socket);
+                            }
+                        };
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException ex) {
+                        return;
+                    }
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return new InetSocketAddress("127.0.0.1", server.getLocalPort());
+    }
+    
+    /**
+     * Serves the requests of a single connection.
+     * @param socket the socket
+     */
+    private static void respond(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (true) {
+                in.readUnsignedByte();
+                final int type = in.readUnsignedByte();
+                final int id = in.readUnsignedShort();
+                final int len = in.readUnsignedShort();
+                final int padding = in.readUnsignedByte();
+                in.readUnsignedByte();
+                in.skipBytes(len + padding);
+                // an empty stdin record ends the request
+                if (type == 5 && len == 0) {
+                    record(out, 6, id, RESPONSE);
+                    record(out, 6, id, new byte[0]);
+                    record(out, 3, id, new byte[8]);
+                    out.flush();
+                }
+            }
+        } catch (IOException ex) {
+            // connection closed
+        }
+    }
+    
+    /**
+     * Writes a record.
+     * @param out target
+     * @param type record type
+     * @param id request id
+     * @param content the content
+     * @throws IOException thrown on io errors
+     */
+    private static void record(OutputStream out, int type, int id, byte[] content) throws IOException {
+        out.write(1);
+        out.write(type);
+        out.write(id >> 8);
+        out.write(id);
+        out.write(content.length >> 8);
+        out.write(content.length);
+        out.write(0);
+        out.write(0);
+        out.write(content);
+    }
+
+}
@@ -0,0 +1,255 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.jettycgi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * test cases for the FastCGI record framing.
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class FastCGIConnectionTest extends TestCase {
+
+    /**
+     * Tests the records of a request.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testRequest() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final FastCGIConnection connection = new FastCGIConnection(
+                new Socket(), new ByteArrayInputStream(new byte[0]), out);
+        final Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("SCRIPT_FILENAME", "/index.php");
+        final StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            longValue.append('x');
+        }
+        params.put("QUERY_STRING", longValue.toString());
+        final byte[] body = new byte[70000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        final FastCGIConnection.Response response = connection.execute(
+                params, new ByteArrayInputStream(body), body.length);
+        assertEquals(body.length, response.getBytesSent());
+        assertEquals(1, connection.getRequests());
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        // begin request: role responder, keep connection
+        final byte[] begin = readRecord(in, 1);
+        assertEquals(8, begin.length);
+        assertEquals(1, begin[1]);
+        assertEquals(1, begin[2]);
+
+        // params: short and long length encoding, terminated by an empty record
+        final DataInputStream paramIn = new DataInputStream(new ByteArrayInputStream(readRecord(in, 4)));
+        assertEquals(15, paramIn.readUnsignedByte());
+        assertEquals(10, paramIn.readUnsignedByte());
+        assertEquals("SCRIPT_FILENAME", readString(paramIn, 15));
+        assertEquals("/index.php", readString(paramIn, 10));
+        assertEquals(12, paramIn.readUnsignedByte());
+        assertEquals(0x80000000 | 200, paramIn.readInt());
+        assertEquals("QUERY_STRING", readString(paramIn, 12));
+        assertEquals(longValue.toString(), readString(paramIn, 200));
+        assertEquals(-1, paramIn.read());
+        assertEquals(0, readRecord(in, 4).length);
+
+        // stdin split into records of at most 65535 bytes, terminated by an empty record
+        final ByteArrayOutputStream stdin = new ByteArrayOutputStream();
+        byte[] record = readRecord(in, 5);
+        while (record.length > 0) {
+            assertTrue(record.length <= 0xFFFF);
+            stdin.write(record);
+            record = readRecord(in, 5);
+        }
+        assertTrue(Arrays.equals(body, stdin.toByteArray()));
+        assertEquals(-1, in.read());
+    }
+
+    /**
+     * Tests reading the stdout records of a response with padding and stderr records.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testResponse() throws Exception {
+        final ByteArrayOutputStream canned = new ByteArrayOutputStream();
+        writeRecord(canned, 6, "Content-type: text/html\r\n\r\n".getBytes("UTF-8"), 5);
+        writeRecord(canned, 7, "PHP Notice: foo".getBytes("UTF-8"), 1);
+        writeRecord(canned, 6, "Hello".getBytes("UTF-8"), 3);
+        writeRecord(canned, 6, " World".getBytes("UTF-8"), 0);
+        writeRecord(canned, 6, new byte[0], 0);
+        writeRecord(canned, 3, new byte[]{0, 0, 0, 3, 0, 0, 0, 0}, 0);
+
+        final FastCGIConnection connection = new FastCGIConnection(
+                new Socket(), new ByteArrayInputStream(canned.toByteArray()), new ByteArrayOutputStream());
+        final FastCGIConnection.Response response = connection.execute(
+                new LinkedHashMap<String, String>(), new ByteArrayInputStream(new byte[0]), 0);
+        assertFalse(connection.isReusable());
+
+        // mix single byte and block reads
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.write(response.read());
+        final byte[] buffer = new byte[4];
+        int read = response.read(buffer, 0, buffer.length);
+        while (read != -1) {
+            result.write(buffer, 0, read);
+            read = response.read(buffer, 0, buffer.length);
+        }
+        assertEquals("Content-type: text/html\r\n\r\nHello World", result.toString("UTF-8"));
+        assertEquals(-1, response.read());
+        assertTrue(response.isFinished());
+        assertEquals(3, response.getAppStatus());
+        assertTrue(connection.isReusable());
+    }
+
+    /**
+     * Tests that a connection closed within a record is reported as error.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testTruncated() throws Exception {
+        final ByteArrayOutputStream canned = new ByteArrayOutputStream();
+        writeRecord(canned, 6, "Hello World".getBytes("UTF-8"), 0);
+        final byte[] truncated = new byte[canned.size() - 6];
+        System.arraycopy(canned.toByteArray(), 0, truncated, 0, truncated.length);
+
+        // single byte reads
+        FastCGIConnection.Response response = this.respond(truncated);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Hello".charAt(i), response.read());
+        }
+        try {
+            response.read();
+            fail("EOFException expected");
+        // CHECKSTYLE:OFF
+        // checkstyle does not like empty catches
+        } catch (EOFException ex) {
+            // ignore; we expect this exception
+        }
+        // CHECKSTYLE:ON
+
+        // block reads
+        response = this.respond(truncated);
+        assertEquals(5, response.read(new byte[20], 0, 20));
+        try {
+            response.read(new byte[20], 0, 20);
+            fail("EOFException expected");
+        // CHECKSTYLE:OFF
+        // checkstyle does not like empty catches
+        } catch (EOFException ex) {
+            // ignore; we expect this exception
+        }
+        // CHECKSTYLE:ON
+
+        // closed within the padding of a record
+        final ByteArrayOutputStream padded = new ByteArrayOutputStream();
+        writeRecord(padded, 6, "Hello".getBytes("UTF-8"), 7);
+        final byte[] truncatedPadding = new byte[padded.size() - 3];
+        System.arraycopy(padded.toByteArray(), 0, truncatedPadding, 0, truncatedPadding.length);
+        response = this.respond(truncatedPadding);
+        assertEquals(5, response.read(new byte[20], 0, 20));
+        try {
+            response.read(new byte[20], 0, 20);
+            fail("EOFException expected");
+        // CHECKSTYLE:OFF
+        // checkstyle does not like empty catches
+        } catch (EOFException ex) {
+            // ignore; we expect this exception
+        }
+        // CHECKSTYLE:ON
+    }
+
+    /**
+     * Sends an empty request to a connection returning the given bytes.
+     * @param canned the bytes returned by the responder
+     * @return response
+     * @throws IOException thrown on io errors
+     */
+    private FastCGIConnection.Response respond(byte[] canned) throws IOException {
+        final FastCGIConnection connection = new FastCGIConnection(
+                new Socket(), new ByteArrayInputStream(canned), new ByteArrayOutputStream());
+        return connection.execute(new LinkedHashMap<String, String>(), new ByteArrayInputStream(new byte[0]), 0);
+    }
+
+    /**
+     * Reads a record and checks the header.
+     * @param in input
+     * @param type expected record type
+     * @return the content
+     * @throws IOException thrown on io errors
+     */
+    private static byte[] readRecord(DataInputStream in, int type) throws IOException {
+        assertEquals(1, in.readUnsignedByte());
+        assertEquals(type, in.readUnsignedByte());
+        assertEquals(1, in.readUnsignedShort());
+        final byte[] content = new byte[in.readUnsignedShort()];
+        final int padding = in.readUnsignedByte();
+        in.readUnsignedByte();
+        in.readFully(content);
+        in.skipBytes(padding);
+        return content;
+    }
+
+    /**
+     * Reads a string.
+     * @param in input
+     * @param length the length
+     * @return string
+     * @throws IOException thrown on io errors
+     */
+    private static String readString(DataInputStream in, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Writes a record.
+     * @param out output
+     * @param type record type
+     * @param content the content
+     * @param padding the padding length
+     * @throws IOException thrown on io errors
+     */
+    private static void writeRecord(ByteArrayOutputStream out, int type, byte[] content, int padding)
+        throws IOException {
+        out.write(1);
+        out.write(type);
+        out.write(0);
+        out.write(1);
+        out.write(content.length >> 8);
+        out.write(content.length & 0xFF);
+        out.write(padding);
+        out.write(0);
+        out.write(content);
+        for (int i = 0; i < padding; i++) {
+            out.write(0x55);
+        }
+    }
+
+}
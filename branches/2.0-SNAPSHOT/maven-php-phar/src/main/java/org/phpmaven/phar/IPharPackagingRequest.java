@@ -116,6 +116,15 @@ import org.phpmaven.core.IComponentFactory;
  *   <td>List of arbitrary elements that will be added to the phar metadata.<p>Usage: &lt;metadata&gt;&lt;myMetadataKey&gt;Value&lt;/myMetadataKey&gt;&lt/metadata&gt;
  *   </td>
  * </tr>
+ * <tr>
+ *   <td>parallelism</td>
+ *   <td>-Dphar.parallelism=</td>
+ *   <td>phar.parallelism</td>
+ *   <td>0</td>
+ *   <td>Number of threads compressing the files (java packager only). 0 uses one thread per available
+ *   processor; 1 compresses the files sequentially. The resulting phar does not depend on this setting.
+ *   </td>
+ * </tr>
  * </table>
  * 
  * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
@@ -344,4 +353,18 @@ public interface IPharPackagingRequest {
 	 * @param metadatas the metadata elements
 	 */
 	void setMetadata(Map<String,String> metadatas);
+
+    /**
+     * Returns the number of threads compressing the files.
+     * @return number of threads; 0 for one thread per available processor
+     * @since 2.0.1
+     */
+    int getParallelism();
+
+    /**
+     * Sets the number of threads compressing the files.
+     * @param parallelism number of threads; 0 for one thread per available processor
+     * @since 2.0.1
+     */
+    void setParallelism(int parallelism);
 }
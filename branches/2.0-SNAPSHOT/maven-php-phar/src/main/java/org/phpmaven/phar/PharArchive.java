@@ -0,0 +1,847 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phar;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only random access to the files of a phar archive without php.
+ *
+ * <p>
+ * Supports the phar file format (tar and zip based phars are not supported). The archive is memory mapped
+ * (archives larger than 2 GB are read via the file channel) and the manifest is read once when the archive
+ * is opened. The entries are indexed by name; opening an entry returns a stream inflating the entry while
+ * it is read. The archive can be used by multiple threads at the same time.
+ * </p>
+ *
+ * <p>
+ * Example:
+ * </p>
+ *
+ * <pre>
+ * final PharArchive archive = new PharArchive(pharFile);
+ * try {
+ *     final InputStream in = archive.open("some/file.php");
+ *     ...
+ * } finally {
+ *     archive.close();
+ * }
+ * </pre>
+ *
+ * <p>
+ * Notice: The memory mapping is released by the garbage collector; on windows the phar file may be locked
+ * until then.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class PharArchive implements Closeable {
+
+    /**
+     * The token ending the stub.
+     */
+    private static final byte[] HALT_TOKEN = {
+        '_', '_', 'H', 'A', 'L', 'T', '_', 'C', 'O', 'M', 'P', 'I', 'L', 'E', 'R', '(', ')', ';'
+    };
+
+    /**
+     * Global flag: the phar has a signature.
+     */
+    private static final int FLAG_SIGNATURE = 0x10000;
+
+    /**
+     * Entry flag: gzip compressed.
+     */
+    private static final int FLAG_GZIP = 0x1000;
+
+    /**
+     * Entry flag: bzip2 compressed.
+     */
+    private static final int FLAG_BZIP2 = 0x2000;
+
+    /**
+     * Size of the io buffers.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Orders entries by name.
+     */
+    private static final Comparator<Entry> NAME_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return o1.name.compareTo(o2.name);
+        }
+    };
+
+    /**
+     * A file within the phar.
+     */
+    public static final class Entry {
+
+        /**
+         * The file name.
+         */
+        private final String name;
+
+        /**
+         * The uncompressed size.
+         */
+        private final long size;
+
+        /**
+         * The modification time (seconds).
+         */
+        private final long timestamp;
+
+        /**
+         * The compressed size.
+         */
+        private final long compressedSize;
+
+        /**
+         * The CRC32 checksum of the uncompressed file.
+         */
+        private final long crc;
+
+        /**
+         * The entry flags.
+         */
+        private final int flags;
+
+        /**
+         * Offset of the file contents.
+         */
+        private final long offset;
+
+        /**
+         * Constructor.
+         * @param name the file name
+         * @param size the uncompressed size
+         * @param timestamp the modification time
+         * @param compressedSize the compressed size
+         * @param crc the checksum
+         * @param flags the flags
+         * @param offset offset of the file contents
+         */
+        private Entry(String name, long size, long timestamp, long compressedSize, long crc, int flags, long offset) {
+            this.name = name;
+            this.size = size;
+            this.timestamp = timestamp;
+            this.compressedSize = compressedSize;
+            this.crc = crc;
+            this.flags = flags;
+            this.offset = offset;
+        }
+
+        /**
+         * Returns the file name within the phar.
+         * @return file name (without leading slash; directories end with a slash)
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns the uncompressed size.
+         * @return uncompressed size
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * Returns the compressed size.
+         * @return compressed size
+         */
+        public long getCompressedSize() {
+            return this.compressedSize;
+        }
+
+        /**
+         * Returns the CRC32 checksum of the uncompressed file.
+         * @return checksum
+         */
+        public long getCrc() {
+            return this.crc;
+        }
+
+        /**
+         * Returns the modification time.
+         * @return modification time in milliseconds
+         */
+        public long getLastModified() {
+            return this.timestamp * 1000;
+        }
+
+        /**
+         * Returns true if this entry is a directory.
+         * @return true for directories
+         */
+        public boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+
+        /**
+         * Returns true if this entry is gzip compressed.
+         * @return true for gzip compression
+         */
+        public boolean isGzip() {
+            return (this.flags & FLAG_GZIP) != 0;
+        }
+
+        /**
+         * Returns true if this entry is bzip2 compressed.
+         * @return true for bzip2 compression
+         */
+        public boolean isBzip2() {
+            return (this.flags & FLAG_BZIP2) != 0;
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+
+    }
+
+    /**
+     * The phar file.
+     */
+    private final File file;
+
+    /**
+     * The random access file.
+     */
+    private final RandomAccessFile raf;
+
+    /**
+     * The file channel.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The mapped file; null if the file is too large to be mapped.
+     */
+    private final ByteBuffer mapped;
+
+    /**
+     * The stub.
+     */
+    private final String stub;
+
+    /**
+     * The global flags.
+     */
+    private final int flags;
+
+    /**
+     * The entries in manifest order.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * The entries sorted by name.
+     */
+    private final Entry[] index;
+
+    /**
+     * The sorted entry names.
+     */
+    private final String[] names;
+
+    /**
+     * The end of the last file.
+     */
+    private final long dataEnd;
+
+    /**
+     * Opens the phar and reads the manifest.
+     * @param file the phar file
+     * @throws IOException thrown on io errors or if the file is not a valid phar
+     */
+    public PharArchive(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = this.raf.getChannel();
+        boolean success = false;
+        try {
+            final long fileSize = this.channel.size();
+            this.mapped = fileSize <= Integer.MAX_VALUE ? this.channel.map(MapMode.READ_ONLY, 0, fileSize) : null;
+
+            final long haltOffset = this.findManifest();
+            final byte[] stubBytes = new byte[(int) haltOffset];
+            this.readFully(stubBytes, 0);
+            this.stub = new String(stubBytes, "UTF-8");
+
+            final long manifestLength = this.read(haltOffset, 4).getInt() & 0xFFFFFFFFL;
+            if (haltOffset + 4 + manifestLength > fileSize) {
+                throw new IOException("Invalid phar " + file + ": manifest exceeds the file");
+            }
+            final ByteBuffer manifest = this.read(haltOffset + 4, (int) manifestLength);
+            final int count = manifest.getInt();
+            // api version
+            manifest.getShort();
+            this.flags = manifest.getInt();
+            // alias and metadata
+            skip(manifest, manifest.getInt());
+            skip(manifest, manifest.getInt());
+
+            final List<Entry> list = new ArrayList<Entry>(Math.min(count, 65536));
+            long offset = haltOffset + 4 + manifestLength;
+            for (int i = 0; i < count; i++) {
+                final byte[] nameBytes = new byte[manifest.getInt()];
+                manifest.get(nameBytes);
+                String name = new String(nameBytes, "UTF-8").replace('\\', '/');
+                while (name.startsWith("/")) {
+                    name = name.substring(1);
+                }
+                final long size = manifest.getInt() & 0xFFFFFFFFL;
+                final long timestamp = manifest.getInt() & 0xFFFFFFFFL;
+                final long compressedSize = manifest.getInt() & 0xFFFFFFFFL;
+                final long crc = manifest.getInt() & 0xFFFFFFFFL;
+                final int entryFlags = manifest.getInt();
+                skip(manifest, manifest.getInt());
+                list.add(new Entry(name, size, timestamp, compressedSize, crc, entryFlags, offset));
+                offset += compressedSize;
+            }
+            if (offset > fileSize) {
+                throw new IOException("Invalid phar " + file + ": files exceed the file");
+            }
+            this.dataEnd = offset;
+            this.entries = Collections.unmodifiableList(list);
+
+            this.index = list.toArray(new Entry[list.size()]);
+            Arrays.sort(this.index, NAME_ORDER);
+            this.names = new String[this.index.length];
+            for (int i = 0; i < this.index.length; i++) {
+                this.names[i] = this.index[i].name;
+            }
+            success = true;
+        } catch (RuntimeException ex) {
+            // buffer underflows and invalid lengths
+            throw new IOException("Invalid phar " + file + ": invalid manifest", ex);
+        } finally {
+            if (!success) {
+                this.raf.close();
+            }
+        }
+    }
+
+    /**
+     * Skips bytes of the manifest.
+     * @param manifest manifest buffer
+     * @param count number of bytes
+     */
+    private static void skip(ByteBuffer manifest, int count) {
+        manifest.position(manifest.position() + count);
+    }
+
+    /**
+     * Searches the end of the stub.
+     * @return offset of the manifest
+     * @throws IOException thrown on io errors or if the file is not a phar
+     */
+    private long findManifest() throws IOException {
+        final long size = this.channel.size();
+        final byte[] data = new byte[BUFFER_SIZE];
+        long position = 0;
+        while (position < size) {
+            final int length = (int) Math.min(data.length, size - position);
+            this.readFully(data, 0, length, position);
+            for (int i = 0; i + HALT_TOKEN.length <= length; i++) {
+                if (data[i] == HALT_TOKEN[0]
+                    && Arrays.equals(HALT_TOKEN, Arrays.copyOfRange(data, i, i + HALT_TOKEN.length))) {
+                    return this.skipHaltTail(position + i + HALT_TOKEN.length);
+                }
+            }
+            if (position + length >= size) {
+                break;
+            }
+            // the token may span two buffers
+            position += length - HALT_TOKEN.length + 1;
+        }
+        throw new IOException("Invalid phar " + this.file + ": __HALT_COMPILER(); not found");
+    }
+
+    /**
+     * Skips the optional " ?&gt;" and the line break after the halt compiler token (like php does).
+     * @param offset offset behind the token
+     * @return offset of the manifest
+     * @throws IOException thrown on io errors
+     */
+    private long skipHaltTail(long offset) throws IOException {
+        final byte[] tail = new byte[(int) Math.min(5, this.channel.size() - offset)];
+        this.readFully(tail, offset);
+        final int count = tail.length;
+        if (count < 3 || (tail[0] != ' ' && tail[0] != '\n') || tail[1] != '?' || tail[2] != '>') {
+            return offset;
+        }
+        if (count > 4 && tail[3] == '\r' && tail[4] == '\n') {
+            return offset + 5;
+        }
+        if (count > 3 && tail[3] == '\n') {
+            return offset + 4;
+        }
+        return offset + 3;
+    }
+
+    /**
+     * Reads bytes from the file.
+     * @param position the file position
+     * @param length number of bytes
+     * @return buffer (little endian)
+     * @throws IOException thrown on io errors
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        this.readFully(bytes, position);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Fills the array.
+     * @param bytes the target
+     * @param position the file position
+     * @throws IOException thrown on io errors
+     */
+    private void readFully(byte[] bytes, long position) throws IOException {
+        this.readFully(bytes, 0, bytes.length, position);
+    }
+
+    /**
+     * Reads bytes.
+     * @param bytes the target
+     * @param off offset within the target
+     * @param len number of bytes
+     * @param position the file position
+     * @throws IOException thrown on io errors
+     */
+    private void readFully(byte[] bytes, int off, int len, long position) throws IOException {
+        if (this.mapped != null) {
+            if (position + len > this.mapped.limit()) {
+                throw new EOFException("Invalid phar " + this.file + ": unexpected end of file");
+            }
+            final ByteBuffer buffer = this.mapped.duplicate();
+            buffer.position((int) position);
+            buffer.get(bytes, off, len);
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, off, len);
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            final int read = this.channel.read(buffer, pos);
+            if (read == -1) {
+                throw new EOFException("Invalid phar " + this.file + ": unexpected end of file");
+            }
+            pos += read;
+        }
+    }
+
+    /**
+     * Returns the phar file.
+     * @return phar file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns the stub.
+     * @return stub including the halt compiler token
+     */
+    public String getStub() {
+        return this.stub;
+    }
+
+    /**
+     * Returns the entries.
+     * @return entries in manifest order
+     */
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Returns the entries whose names start with the given prefix.
+     * @param prefix name prefix (for example "some/dir/")
+     * @return entries sorted by name
+     */
+    public List<Entry> getEntries(String prefix) {
+        final String p = normalize(prefix);
+        int pos = Arrays.binarySearch(this.names, p);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        final List<Entry> result = new ArrayList<Entry>();
+        while (pos < this.names.length && this.names[pos].startsWith(p)) {
+            result.add(this.index[pos]);
+            pos++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the entry with the given name.
+     * @param name file name within the phar
+     * @return entry or null if the phar does not contain the file
+     */
+    public Entry getEntry(String name) {
+        final int pos = Arrays.binarySearch(this.names, normalize(name));
+        return pos < 0 ? null : this.index[pos];
+    }
+
+    /**
+     * Normalizes a file name.
+     * @param name file name
+     * @return name with slashes and without leading slash
+     */
+    private static String normalize(String name) {
+        String result = name.replace('\\', '/');
+        while (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if at least one file is bzip2 compressed.
+     * @return true if bzip2 is used
+     */
+    public boolean hasBzip2() {
+        for (final Entry entry : this.entries) {
+            if (entry.isBzip2()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verifies the signature of the phar.
+     *
+     * <p>
+     * MD5, SHA-1, SHA-256 and SHA-512 signatures are verified. OpenSSL signatures cannot be verified
+     * without the public key; they are ignored.
+     * </p>
+     *
+     * @return false if the phar has an OpenSSL signature that was not verified
+     * @throws IOException thrown on io errors or if the signature is invalid
+     */
+    public boolean verify() throws IOException {
+        if ((this.flags & FLAG_SIGNATURE) == 0) {
+            return true;
+        }
+        final long size = this.channel.size();
+        if (size < this.dataEnd + 8) {
+            throw new IOException("Invalid phar " + this.file + ": signature missing");
+        }
+        final ByteBuffer trailer = this.read(size - 8, 8);
+        final int type = trailer.getInt();
+        if (trailer.get() != 'G' || trailer.get() != 'B' || trailer.get() != 'M' || trailer.get() != 'B') {
+            throw new IOException("Invalid phar " + this.file + ": signature missing");
+        }
+        final String algorithm;
+        switch (type) {
+            case 0x01:
+                algorithm = "MD5";
+                break;
+            case 0x02:
+                algorithm = "SHA-1";
+                break;
+            case 0x04:
+                algorithm = "SHA-256";
+                break;
+            case 0x08:
+                algorithm = "SHA-512";
+                break;
+            case 0x10:
+            case 0x11:
+            case 0x12:
+                // OpenSSL
+                return false;
+            default:
+                throw new IOException("Invalid phar " + this.file + ": unknown signature type " + type);
+        }
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(algorithm);
+            final long signatureOffset = size - 8 - digest.getDigestLength();
+            if (signatureOffset < this.dataEnd) {
+                throw new IOException("Invalid phar " + this.file + ": signature missing");
+            }
+            if (this.mapped != null) {
+                final ByteBuffer buffer = this.mapped.duplicate();
+                buffer.limit((int) signatureOffset);
+                digest.update(buffer);
+            } else {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                long position = 0;
+                while (position < signatureOffset) {
+                    final int length = (int) Math.min(buffer.length, signatureOffset - position);
+                    this.readFully(buffer, 0, length, position);
+                    digest.update(buffer, 0, length);
+                    position += length;
+                }
+            }
+            final byte[] expected = new byte[digest.getDigestLength()];
+            this.readFully(expected, signatureOffset);
+            if (!MessageDigest.isEqual(expected, digest.digest())) {
+                throw new IOException("Invalid phar " + this.file + ": signature mismatch");
+            }
+            return true;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Cannot verify phar " + this.file, ex);
+        }
+    }
+
+    /**
+     * Opens a file for reading.
+     * @param name file name within the phar
+     * @return the uncompressed contents
+     * @throws IOException thrown on io errors, if the file does not exist or if it is bzip2 compressed
+     * @see #open(Entry)
+     */
+    public InputStream open(String name) throws IOException {
+        final Entry entry = this.getEntry(name);
+        if (entry == null || entry.isDirectory()) {
+            throw new FileNotFoundException(name + " not found in phar " + this.file);
+        }
+        return this.open(entry);
+    }
+
+    /**
+     * Opens an entry for reading.
+     *
+     * <p>
+     * The entry is inflated while it is read. The size and the checksum are verified when the end of
+     * the stream is reached.
+     * </p>
+     *
+     * @param entry the entry
+     * @return the uncompressed contents
+     * @throws IOException thrown on io errors or if the entry is bzip2 compressed
+     */
+    public InputStream open(Entry entry) throws IOException {
+        if (entry.isBzip2()) {
+            throw new IOException("Cannot read " + entry.getName() + " from phar " + this.file
+                + ": bzip2 compression is not supported");
+        }
+        return new EntryInputStream(entry);
+    }
+
+    /**
+     * Closes the phar file.
+     * @throws IOException thrown on io errors
+     */
+    @Override
+    public void close() throws IOException {
+        this.raf.close();
+    }
+
+    /**
+     * Stream to read an entry.
+     */
+    private final class EntryInputStream extends InputStream {
+
+        /**
+         * The entry.
+         */
+        private final Entry entry;
+
+        /**
+         * The inflater; null for uncompressed files.
+         */
+        private final Inflater inflater;
+
+        /**
+         * Buffer for the compressed bytes.
+         */
+        private final byte[] buffer;
+
+        /**
+         * Current file position.
+         */
+        private long position;
+
+        /**
+         * Remaining bytes in the file.
+         */
+        private long remaining;
+
+        /**
+         * Checksum of the bytes read.
+         */
+        private final CRC32 checksum = new CRC32();
+
+        /**
+         * Number of bytes read.
+         */
+        private long count;
+
+        /**
+         * True if the dummy byte was passed to the inflater.
+         */
+        private boolean dummy;
+
+        /**
+         * True if the end was reached.
+         */
+        private boolean eof;
+
+        /**
+         * Constructor.
+         * @param entry the entry
+         */
+        EntryInputStream(Entry entry) {
+            this.entry = entry;
+            this.position = entry.offset;
+            this.remaining = entry.compressedSize;
+            if (entry.isGzip()) {
+                this.inflater = new Inflater(true);
+                this.buffer = new byte[(int) Math.min(BUFFER_SIZE, this.remaining + 1)];
+            } else {
+                this.inflater = null;
+                this.buffer = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            final int read = this.read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.eof) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            final int read = this.inflater == null ? this.readStored(b, off, len) : this.readGzip(b, off, len);
+            if (read == -1) {
+                this.eof = true;
+                if (this.count != this.entry.size || this.checksum.getValue() != this.entry.crc) {
+                    throw new IOException("Invalid phar " + PharArchive.this.file + ": checksum error in "
+                        + this.entry.name);
+                }
+                return -1;
+            }
+            this.checksum.update(b, off, read);
+            this.count += read;
+            return read;
+        }
+
+        /**
+         * Reads uncompressed bytes.
+         * @param b target
+         * @param off offset
+         * @param len maximum length
+         * @return bytes read or -1 at the end
+         * @throws IOException thrown on io errors
+         */
+        private int readStored(byte[] b, int off, int len) throws IOException {
+            if (this.remaining == 0) {
+                return -1;
+            }
+            final int length = (int) Math.min(len, this.remaining);
+            PharArchive.this.readFully(b, off, length, this.position);
+            this.position += length;
+            this.remaining -= length;
+            return length;
+        }
+
+        /**
+         * Reads and inflates gzip compressed bytes.
+         * @param b target
+         * @param off offset
+         * @param len maximum length
+         * @return bytes read or -1 at the end
+         * @throws IOException thrown on io errors
+         */
+        private int readGzip(byte[] b, int off, int len) throws IOException {
+            try {
+                while (true) {
+                    if (this.inflater.finished()) {
+                        return -1;
+                    }
+                    if (this.inflater.needsInput()) {
+                        if (this.remaining > 0) {
+                            final int length = (int) Math.min(this.buffer.length, this.remaining);
+                            PharArchive.this.readFully(this.buffer, 0, length, this.position);
+                            this.position += length;
+                            this.remaining -= length;
+                            this.inflater.setInput(this.buffer, 0, length);
+                        } else if (!this.dummy) {
+                            // raw inflate may need an additional dummy byte
+                            this.dummy = true;
+                            this.buffer[0] = 0;
+                            this.inflater.setInput(this.buffer, 0, 1);
+                        } else {
+                            throw new EOFException("Invalid phar " + PharArchive.this.file
+                                + ": unexpected end of " + this.entry.name);
+                        }
+                    }
+                    final int inflated = this.inflater.inflate(b, off, len);
+                    if (inflated > 0) {
+                        return inflated;
+                    }
+                    if (this.inflater.needsDictionary()) {
+                        throw new IOException("Invalid phar " + PharArchive.this.file
+                            + ": invalid compressed data in " + this.entry.name);
+                    }
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("Invalid phar " + PharArchive.this.file + ": invalid compressed data in "
+                    + this.entry.name, ex);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.inflater != null) {
+                this.inflater.end();
+            }
+        }
+
+    }
+
+}
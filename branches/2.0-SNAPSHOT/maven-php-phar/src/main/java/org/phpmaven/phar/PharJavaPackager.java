@@ -16,28 +16,78 @@
 
 package org.phpmaven.phar;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Configuration;
+import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
+import org.phpmaven.core.ConfigurationParameter;
+import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.exec.PhpCoreException;
 import org.phpmaven.exec.PhpException;
 import org.phpmaven.phar.PharEntry.EntryType;
 
 /**
- * Phar packager implementation to use php-exe.
+ * Phar packager implementation written in java.
+ * 
+ * <p>
+ * The phar is written in a streaming fashion. The manifest has a fixed size that is known before the
+ * files are compressed; the space for the manifest is reserved and the compressed files are written
+ * directly behind it. The manifest is written after all files were compressed. At last the SHA-1
+ * signature is calculated while reading the phar once. The memory used does not depend on the size
+ * of the files.
+ * </p>
+ * 
+ * <p>
+ * The phar file format stores the file sizes as unsigned 32 bit integers; files larger than 4 GB
+ * cannot be packed.
+ * </p>
+ * 
+ * <p>
+ * The files can be compressed in parallel (see {@link IPharPackagingRequest#getParallelism()}); the
+ * files are written in the same order and the phar is identical to the phar compressed by a single thread.
+ * </p>
+ * 
+ * <p>
+ * Phars are read without php (see {@link PharArchive}). The signature is verified before extracting and the
+ * files are extracted in parallel. Phars containing bzip2 compressed files are extracted by the php
+ * packager.
+ * </p>
  * 
  * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
  * @since 2.0.0
@@ -45,7 +95,163 @@ import org.phpmaven.phar.PharEntry.EntryType;
 @Component(role = IPharPackager.class, hint = "JAVA", instantiationStrategy = "per-lookup")
 public class PharJavaPackager implements IPharPackager {
     
-    private static final boolean DEBUG = false;
+    /**
+     * Maximum file size supported by the phar format (unsigned 32 bit).
+     */
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    
+    /**
+     * Size of the manifest entry of a file without the file name.
+     */
+    private static final int ENTRY_SIZE = 28;
+    
+    /**
+     * Size of the io buffers.
+     */
+    private static final int BUFFER_SIZE = 65536;
+    
+    /**
+     * Maximum size of files compressed into memory by parallel packaging.
+     */
+    private static final int IN_MEMORY_SIZE = 1048576;
+    
+    /**
+     * The component factory.
+     */
+    @Requirement
+    private IComponentFactory factory;
+    
+    /**
+     * The maven session.
+     */
+    @ConfigurationParameter(name = "session", expression = "${session}")
+    private MavenSession session;
+    
+    /**
+     * Number of threads extracting files.
+     */
+    @Configuration(name = "extractThreads", value = "0")
+    @ConfigurationParameter(name = "extractThreads", expression = "${phar.extractThreads}")
+    private int extractThreads;
+    
+    /**
+     * A file to be packed.
+     */
+    private static final class PackEntry {
+        
+        /**
+         * The file to pack.
+         */
+        private final File file;
+        
+        /**
+         * The file name within the phar (UTF-8).
+         */
+        private final byte[] name;
+        
+        /**
+         * The uncompressed size.
+         */
+        private long size;
+        
+        /**
+         * The compressed size.
+         */
+        private long compressedSize;
+        
+        /**
+         * The CRC32 checksum of the uncompressed file.
+         */
+        private long crc;
+        
+        /**
+         * The compressed file if compressed in parallel.
+         */
+        private Future<byte[]> body;
+        
+        /**
+         * Constructor.
+         * @param file the file to pack
+         * @param name the file name within the phar
+         * @throws IOException thrown on io errors
+         */
+        PackEntry(File file, String name) throws IOException {
+            this.file = file;
+            this.name = name.getBytes("UTF-8");
+        }
+        
+    }
+    
+    /**
+     * Compresses files; a deflater with its buffers.
+     */
+    private static final class Compressor {
+        
+        /**
+         * The deflater.
+         */
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        
+        /**
+         * Buffer for reading the files.
+         */
+        private final byte[] inBuffer = new byte[BUFFER_SIZE];
+        
+        /**
+         * Buffer for the compressed bytes.
+         */
+        private final byte[] outBuffer = new byte[BUFFER_SIZE];
+        
+        /**
+         * Compresses a file and writes the compressed bytes.
+         * @param file the file to pack; receives the sizes and the checksum
+         * @param out the target stream
+         * @throws IOException thrown on io errors
+         * @throws PhpException thrown if the file is too large
+         */
+        void pack(PackEntry file, OutputStream out) throws IOException, PhpException {
+            this.deflater.reset();
+            final CRC32 checksum = new CRC32();
+            long size = 0;
+            long compressedSize = 0;
+            final InputStream in = new FileInputStream(file.file);
+            try {
+                int read = in.read(this.inBuffer);
+                while (read != -1) {
+                    size += read;
+                    checksum.update(this.inBuffer, 0, read);
+                    this.deflater.setInput(this.inBuffer, 0, read);
+                    while (!this.deflater.needsInput()) {
+                        final int deflated = this.deflater.deflate(this.outBuffer);
+                        out.write(this.outBuffer, 0, deflated);
+                        compressedSize += deflated;
+                    }
+                    read = in.read(this.inBuffer);
+                }
+            } finally {
+                in.close();
+            }
+            this.deflater.finish();
+            while (!this.deflater.finished()) {
+                final int deflated = this.deflater.deflate(this.outBuffer);
+                out.write(this.outBuffer, 0, deflated);
+                compressedSize += deflated;
+            }
+            checkSize(file.file, size);
+            checkSize(file.file, compressedSize);
+            file.size = size;
+            file.compressedSize = compressedSize;
+            file.crc = checksum.getValue();
+        }
+        
+        /**
+         * Releases the deflater.
+         */
+        void end() {
+            this.deflater.end();
+        }
+        
+    }
 
     /**
      * {@inheritDoc}
@@ -55,112 +261,98 @@ public class PharJavaPackager implements IPharPackager {
         throws PhpException, ComponentLookupException, PlexusConfigurationException {
         try {
             final File pharFile = new File(request.getTargetDirectory(), request.getFilename());
-            final FileOutputStream fos = new FileOutputStream(pharFile);
-            fos.write("<?php ".getBytes("UTF-8"));
-            fos.write(request.getStub().getBytes("UTF-8"));
-            fos.write(" __HALT_COMPILER(); ?>".getBytes("UTF-8"));
-            fos.write(13);
-            fos.write(10);
+            final List<PackEntry> files = this.collectFiles(request);
             
-            final ByteArrayOutputStream fileEntriesBaos = new ByteArrayOutputStream();
-            final ByteArrayOutputStream compressedFilesBaos = new ByteArrayOutputStream();
-            int fileCount = 0;
-            for (final PharEntry entry : request.getEntries()) {
-                if (entry.getType() == EntryType.DIRECTORY) {
-                    final PharDirectory dir = (PharDirectory) entry;
-                    final File dirToPack = dir.getPathToPack();
-                    for (final File fileToPack : FileUtils.listFiles(dirToPack, null, true)) {
-                        final String relPath = fileToPack.getAbsolutePath().substring(
-                                dirToPack.getAbsolutePath().length());
-                        String filePath = (dir.getRelativePath() + relPath).replace("\\", "/");
-                        while (filePath.startsWith("/")) {
-                            filePath = filePath.substring(1);
-                        }
-                        fileCount++;
-                        packFile(fileEntriesBaos, compressedFilesBaos, fileToPack, filePath);
-                    }
+            final ByteArrayOutputStream stubBaos = new ByteArrayOutputStream();
+            stubBaos.write("<?php ".getBytes("UTF-8"));
+            stubBaos.write(request.getStub().getBytes("UTF-8"));
+            stubBaos.write(" __HALT_COMPILER(); ?>".getBytes("UTF-8"));
+            stubBaos.write(13);
+            stubBaos.write(10);
+            final byte[] stub = stubBaos.toByteArray();
+            
+            final byte[] metadata = this.buildMetadata(request);
+            final byte[] pharAlias = pharFile.getName().getBytes("UTF-8");
+            long manifestLength = metadata.length + pharAlias.length + 14;
+            for (final PackEntry file : files) {
+                manifestLength += file.name.length + ENTRY_SIZE;
+            }
+            if (manifestLength > Integer.MAX_VALUE) {
+                throw new PhpCoreException("Error building phar: the manifest exceeds 2 GB");
+            }
+            
+            final RandomAccessFile raf = new RandomAccessFile(pharFile, "rw");
+            try {
+                raf.setLength(0);
+                final FileChannel channel = raf.getChannel();
+                writeFully(channel, ByteBuffer.wrap(stub), 0);
+                
+                // compressed files behind the manifest
+                channel.position(stub.length + 4 + manifestLength);
+                final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                final int threads = request.getParallelism() > 0
+                    ? request.getParallelism() : Runtime.getRuntime().availableProcessors();
+                if (threads > 1 && files.size() > 1) {
+                    this.packParallel(files, threads, out, log);
                 } else {
-                    final PharFile file = (PharFile) entry;
-                    final File fileToPack = file.getFile();
-                    String filePath = file.getLocalName().replace("\\", "/");
-                    while (filePath.startsWith("/")) {
-                        filePath = filePath.substring(1);
+                    final Compressor compressor = new Compressor();
+                    try {
+                        for (final PackEntry file : files) {
+                            if (log.isDebugEnabled()) {
+                                log.debug("Packing file " + file.file + " with " + file.file.length() + " bytes.");
+                            }
+                            compressor.pack(file, out);
+                        }
+                    } finally {
+                        compressor.end();
                     }
-                    fileCount++;
-                    packFile(fileEntriesBaos, compressedFilesBaos, fileToPack, filePath);
                 }
-            }
-            
-            // build metadata
-            final ByteArrayOutputStream metadataBaos = new ByteArrayOutputStream();
-            if (request.getMetadata().isEmpty()) {
-                writeIntLE(metadataBaos, 0);
-            } else {
-                final StringBuffer metadata = new StringBuffer();
-                metadata.append("a:");
-                metadata.append(request.getMetadata().size());
-                metadata.append(":{");
-                for (Entry<String, String> entry : request.getMetadata().entrySet()) {
-                    metadata.append("s:");
-                    metadata.append(entry.getKey().length());
-                    metadata.append(":\"");
-                    metadata.append(entry.getKey());
-                    metadata.append("\";s:");
-                    metadata.append(entry.getValue().length());
-                    metadata.append(":\"");
-                    metadata.append(entry.getValue());
-                    metadata.append("\";");
+                out.flush();
+                final long end = channel.position();
+                
+                // manifest
+                final ByteArrayOutputStream manifest = new ByteArrayOutputStream((int) manifestLength + 4);
+                writeIntLE(manifest, (int) manifestLength);
+                writeIntLE(manifest, files.size());
+                
+                // version
+                manifest.write(0x11);
+                manifest.write(0);
+                
+                // bits: 0x00010000, with signature
+                manifest.write(0);
+                manifest.write(0);
+                manifest.write(1);
+                manifest.write(0);
+                
+                // phar file alias
+                writeIntLE(manifest, pharAlias.length);
+                manifest.write(pharAlias);
+                
+                // add metadata
+                manifest.write(metadata);
+                
+                for (final PackEntry file : files) {
+                    writeManifestEntry(manifest, file);
                 }
-                metadata.append("}");
-                final byte[] metabytes = metadata.toString().getBytes("UTF-8");
-                writeIntLE(metadataBaos, metabytes.length);
-                metadataBaos.write(metabytes);
-            }
-            final byte[] metadata = metadataBaos.toByteArray();
-            
-            final byte[] fileEntries = fileEntriesBaos.toByteArray();
-            
-            final byte[] pharAlias = pharFile.getName().getBytes("UTF-8");
-            final int manifestLength = metadata.length + fileEntries.length + pharAlias.length + 14;
-            writeIntLE(fos, manifestLength);
-            writeIntLE(fos, fileCount);
-            
-            // version
-            fos.write(0x11);
-            fos.write(0);
-            
-            // bits: 0x00010000, with signature
-            fos.write(0);
-            fos.write(0);
-            fos.write(1);
-            fos.write(0);
-            
-            // phar file alias
-            writeIntLE(fos, pharAlias.length);
-            fos.write(pharAlias);
-            
-            // add metadata
-            fos.write(metadata);
-            
-            fos.write(fileEntries);
-            fos.write(compressedFilesBaos.toByteArray());
-            fos.flush();
-            
-            // signature
-            final MessageDigest cript = MessageDigest.getInstance("SHA-1");
-            cript.update(FileUtils.readFileToByteArray(pharFile));
-            final byte[] sha1 = cript.digest();
-            fos.write(sha1);
-            for (int i = sha1.length; i < 20; i++) {
-                fos.write(0);
+                writeFully(channel, ByteBuffer.wrap(manifest.toByteArray()), stub.length);
+                
+                // signature
+                final byte[] sha1 = digest(channel, end);
+                final ByteArrayOutputStream signature = new ByteArrayOutputStream();
+                signature.write(sha1);
+                for (int i = sha1.length; i < 20; i++) {
+                    signature.write(0);
+                }
+                // SHA1 signature
+                writeIntLE(signature, 2);
+                // Signature magic
+                signature.write("GBMB".getBytes("UTF-8"));
+                writeFully(channel, ByteBuffer.wrap(signature.toByteArray()), end);
+                channel.force(false);
+            } finally {
+                raf.close();
             }
-            // SHA1 signature
-            writeIntLE(fos, 2);
-            // Signature magic
-            fos.write("GBMB".getBytes());
-            
-            fos.flush();
-            fos.close();
         } catch (IOException ex) {
             throw new PhpCoreException("Error building phar", ex);
         } catch (NoSuchAlgorithmException ex) {
@@ -168,73 +360,266 @@ public class PharJavaPackager implements IPharPackager {
         }
     }
 
-    private void packFile(
-        final ByteArrayOutputStream fileEntriesBaos,
-        final ByteArrayOutputStream compressedFilesBaos,
-        final File fileToPack,
-        String filePath)
-        throws IOException {
-        if (DEBUG) {
-            System.out.println("Packing file " + fileToPack + " with " + fileToPack.length() + " bytes.");
+    /**
+     * Collects the files to be packed.
+     * @param request the packaging request
+     * @return files to be packed
+     * @throws IOException thrown on io errors
+     * @throws PhpException thrown if a file is too large
+     */
+    private List<PackEntry> collectFiles(IPharPackagingRequest request) throws IOException, PhpException {
+        final List<PackEntry> result = new ArrayList<PackEntry>();
+        for (final PharEntry entry : request.getEntries()) {
+            if (entry.getType() == EntryType.DIRECTORY) {
+                final PharDirectory dir = (PharDirectory) entry;
+                final File dirToPack = dir.getPathToPack();
+                for (final File fileToPack : FileUtils.listFiles(dirToPack, null, true)) {
+                    final String relPath = fileToPack.getAbsolutePath().substring(
+                            dirToPack.getAbsolutePath().length());
+                    String filePath = (dir.getRelativePath() + relPath).replace("\\", "/");
+                    while (filePath.startsWith("/")) {
+                        filePath = filePath.substring(1);
+                    }
+                    result.add(new PackEntry(fileToPack, filePath));
+                }
+            } else {
+                final PharFile file = (PharFile) entry;
+                String filePath = file.getLocalName().replace("\\", "/");
+                while (filePath.startsWith("/")) {
+                    filePath = filePath.substring(1);
+                }
+                result.add(new PackEntry(file.getFile(), filePath));
+            }
         }
-        
-        final byte[] fileBytes = filePath.getBytes("UTF-8");
-        writeIntLE(fileEntriesBaos, fileBytes.length);
-        fileEntriesBaos.write(fileBytes);
-        // TODO Complain with files larger than 4 bytes file length
-        writeIntLE(fileEntriesBaos, (int) fileToPack.length());
-        writeIntLE(fileEntriesBaos, (int) (fileToPack.lastModified() / 1000));
-        
-        final byte[] uncompressed = FileUtils.readFileToByteArray(fileToPack);
-        if (DEBUG) {
-            System.out.println("read " + uncompressed.length + " bytes from file.");
+        for (final PackEntry file : result) {
+            checkSize(file.file, file.file.length());
+        }
+        return result;
+    }
+
+    /**
+     * Builds the phar metadata.
+     * @param request the packaging request
+     * @return metadata bytes (including the length)
+     * @throws IOException thrown on io errors
+     */
+    private byte[] buildMetadata(IPharPackagingRequest request) throws IOException {
+        final ByteArrayOutputStream metadataBaos = new ByteArrayOutputStream();
+        if (request.getMetadata().isEmpty()) {
+            writeIntLE(metadataBaos, 0);
+        } else {
+            final StringBuffer metadata = new StringBuffer();
+            metadata.append("a:");
+            metadata.append(request.getMetadata().size());
+            metadata.append(":{");
+            for (Entry<String, String> entry : request.getMetadata().entrySet()) {
+                metadata.append("s:");
+                metadata.append(entry.getKey().length());
+                metadata.append(":\"");
+                metadata.append(entry.getKey());
+                metadata.append("\";s:");
+                metadata.append(entry.getValue().length());
+                metadata.append(":\"");
+                metadata.append(entry.getValue());
+                metadata.append("\";");
+            }
+            metadata.append("}");
+            final byte[] metabytes = metadata.toString().getBytes("UTF-8");
+            writeIntLE(metadataBaos, metabytes.length);
+            metadataBaos.write(metabytes);
         }
-        final ByteArrayOutputStream compressedStream = new ByteArrayOutputStream();
-//        final GZIPOutputStream gzipStream = new GZIPOutputStream(compressedStream);
-//        gzipStream.write(uncompressed);
-//        gzipStream.flush();
-        final CRC32 checksum = new CRC32();
-        checksum.update(uncompressed);
-        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
-        deflater.setInput(uncompressed);
-        deflater.finish();
-        final byte[] buf = new byte[Short.MAX_VALUE];
-        while (!deflater.needsInput()) {
-            final int bytesRead = deflater.deflate(buf);
-            compressedStream.write(buf, 0, bytesRead);
+        return metadataBaos.toByteArray();
+    }
+
+    /**
+     * Compresses the files in parallel and writes them in manifest order.
+     * 
+     * <p>
+     * Small files are compressed into memory by the worker threads; at most two files per thread are
+     * kept in memory. Larger files are compressed by the calling thread while writing them.
+     * </p>
+     * 
+     * @param files the files to pack
+     * @param threads number of threads
+     * @param out the target stream
+     * @param log the logger
+     * @throws IOException thrown on io errors
+     * @throws PhpException thrown if a file is too large
+     */
+    private void packParallel(List<PackEntry> files, int threads, OutputStream out, final Log log)
+        throws IOException, PhpException {
+        final BlockingQueue<Compressor> compressors = new LinkedBlockingQueue<Compressor>();
+        for (int i = 0; i < threads; i++) {
+            compressors.add(new Compressor());
         }
-        
-        final byte[] compressed = compressedStream.toByteArray();
-        if (DEBUG) {
-            System.out.println("compressed to " + compressed.length + " bytes.");
+        final Compressor compressor = new Compressor();
+        final ExecutorService executor = newExecutor("Phar-Packager-", threads);
+        try {
+            final LinkedList<PackEntry> pending = new LinkedList<PackEntry>();
+            final Iterator<PackEntry> iter = files.iterator();
+            while (iter.hasNext() || !pending.isEmpty()) {
+                while (iter.hasNext() && pending.size() < threads * 2) {
+                    final PackEntry file = iter.next();
+                    if (file.file.length() <= IN_MEMORY_SIZE) {
+                        file.body = executor.submit(new Callable<byte[]>() {
+                            @Override
+                            public byte[] call() throws Exception {
+                                final Compressor c = compressors.take();
+                                try {
+                                    final ByteArrayOutputStream body = new ByteArrayOutputStream(
+                                        (int) file.file.length() + 64);
+                                    c.pack(file, body);
+                                    return body.toByteArray();
+                                } finally {
+                                    compressors.add(c);
+                                }
+                            }
+                        });
+                    }
+                    pending.add(file);
+                }
+                
+                final PackEntry file = pending.removeFirst();
+                if (log.isDebugEnabled()) {
+                    log.debug("Packing file " + file.file + " with " + file.file.length() + " bytes.");
+                }
+                if (file.body == null) {
+                    compressor.pack(file, out);
+                } else {
+                    out.write(file.body.get());
+                    file.body = null;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while building phar");
+        } catch (ExecutionException ex) {
+            throw rethrow(ex, "Error building phar");
+        } finally {
+            executor.shutdownNow();
+            compressor.end();
+            // compressors still used by cancelled tasks are finalized by the garbage collector
+            Compressor c = compressors.poll();
+            while (c != null) {
+                c.end();
+                c = compressors.poll();
+            }
         }
+    }
 
-//        final Inflater decompresser = new Inflater();
-//        decompresser.setInput(compressed);
-//        byte[] result = new byte[5000];
-//        try {
-//            int resultLength = decompresser.inflate(result);
-//            final String str = new String(result, 0, resultLength);
-//            int i = 42;
-//        } catch (DataFormatException e) {
-//            // TODO Auto-generated catch block
-//            e.printStackTrace();
-//        }
-//        decompresser.end();
-        
-        compressedFilesBaos.write(compressed);
-        writeIntLE(fileEntriesBaos, compressed.length);
+    /**
+     * Creates a thread pool with daemon threads.
+     * @param name prefix of the thread names
+     * @param threads number of threads
+     * @return thread pool
+     */
+    private static ExecutorService newExecutor(final String name, int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger number = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, name + this.number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
 
-        writeIntLE(fileEntriesBaos, checksum.getValue());
+    /**
+     * Rethrows the cause of a failed task.
+     * @param ex the execution exception
+     * @param message message for unexpected exceptions
+     * @return never returns (only to be used as throw statement)
+     * @throws IOException thrown if the task failed with an io error
+     * @throws PhpException thrown if the task failed with a php exception or any other exception
+     */
+    private static PhpException rethrow(ExecutionException ex, String message) throws IOException, PhpException {
+        final Throwable cause = ex.getCause();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof PhpException) {
+            throw (PhpException) cause;
+        }
+        throw new PhpCoreException(message, cause);
+    }
 
+    /**
+     * Writes the manifest entry of a file.
+     * @param manifest the manifest stream
+     * @param file the packed file
+     * @throws IOException thrown on io errors
+     */
+    private static void writeManifestEntry(OutputStream manifest, PackEntry file) throws IOException {
+        writeIntLE(manifest, file.name.length);
+        manifest.write(file.name);
+        writeIntLE(manifest, file.size);
+        writeIntLE(manifest, file.file.lastModified() / 1000);
+        writeIntLE(manifest, file.compressedSize);
+        writeIntLE(manifest, file.crc);
+        
         // bits: 0x00001000, gzip
-        fileEntriesBaos.write(0);
-        fileEntriesBaos.write(0x10);
-        fileEntriesBaos.write(0);
-        fileEntriesBaos.write(0);
+        manifest.write(0);
+        manifest.write(0x10);
+        manifest.write(0);
+        manifest.write(0);
         
         // 0 bytes manifest
-        writeIntLE(fileEntriesBaos, 0);
+        writeIntLE(manifest, 0);
+    }
+
+    /**
+     * Checks if the given size can be stored within the phar.
+     * @param file the file
+     * @param size the size
+     * @throws PhpException thrown if the size is too large
+     */
+    private static void checkSize(File file, long size) throws PhpException {
+        if (size > MAX_SIZE) {
+            throw new PhpCoreException("Error building phar: " + file
+                + " is larger than 4 GB; the phar format does not support such large files");
+        }
+    }
+
+    /**
+     * Calculates the SHA-1 digest of the first bytes of the file.
+     * @param channel the file channel
+     * @param length number of bytes
+     * @return digest
+     * @throws IOException thrown on io errors
+     * @throws NoSuchAlgorithmException thrown if SHA-1 is not available
+     */
+    private static byte[] digest(FileChannel channel, long length) throws IOException, NoSuchAlgorithmException {
+        final MessageDigest cript = MessageDigest.getInstance("SHA-1");
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            if (length - position < buffer.capacity()) {
+                buffer.limit((int) (length - position));
+            }
+            final int read = channel.read(buffer, position);
+            if (read == -1) {
+                throw new IOException("Unexpected end of phar file");
+            }
+            position += read;
+            cript.update(buffer.array(), 0, read);
+        }
+        return cript.digest();
+    }
+
+    /**
+     * Writes the buffer at the given position.
+     * @param channel the file channel
+     * @param buffer the buffer
+     * @param position the file position
+     * @throws IOException thrown on io errors
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
     }
 
     /**
@@ -243,7 +628,7 @@ public class PharJavaPackager implements IPharPackager {
      * @param v
      * @throws IOException 
      */
-    private void writeIntLE(OutputStream baos, int v) throws IOException {
+    private static void writeIntLE(OutputStream baos, int v) throws IOException {
         baos.write((v >>>  0) & 0xFF);
         baos.write((v >>>  8) & 0xFF);
         baos.write((v >>> 16) & 0xFF);
@@ -256,7 +641,7 @@ public class PharJavaPackager implements IPharPackager {
      * @param v
      * @throws IOException 
      */
-    private void writeIntLE(OutputStream baos, long v) throws IOException {
+    private static void writeIntLE(OutputStream baos, long v) throws IOException {
         baos.write((int) ((v >>>  0) & 0xFF));
         baos.write((int) ((v >>>  8) & 0xFF));
         baos.write((int) ((v >>> 16) & 0xFF));
@@ -269,8 +654,16 @@ public class PharJavaPackager implements IPharPackager {
     @Override
     public String readStub(File pharPackage, Log log)
         throws PhpException, ComponentLookupException, PlexusConfigurationException {
-        // TODO add support
-        throw new PhpCoreException("not supported");
+        try {
+            final PharArchive archive = new PharArchive(pharPackage);
+            try {
+                return archive.getStub();
+            } finally {
+                archive.close();
+            }
+        } catch (IOException ex) {
+            throw new PhpCoreException("Error reading phar " + pharPackage, ex);
+        }
     }
 
     /**
@@ -279,8 +672,182 @@ public class PharJavaPackager implements IPharPackager {
     @Override
     public void extractPharTo(File pharPackage, File targetDirectory, Log log)
         throws PhpException, ComponentLookupException, PlexusConfigurationException {
-        // TODO add support
-        throw new PhpCoreException("not supported");
+        this.extractPharTo(pharPackage, targetDirectory, "/", log);
+    }
+
+    /**
+     * Extracts the files below the given path inside the phar. The path itself is not part of the
+     * extracted file names: extracting "/lib" of a phar containing "lib/foo.php" creates the file
+     * "foo.php" in the target directory.
+     * 
+     * <p>
+     * Only the manifest and the selected files are read. The signature of the phar is not verified
+     * because it spans the whole file; the files are checked against the crc of the manifest instead.
+     * </p>
+     * 
+     * @param pharPackage the phar package
+     * @param targetDirectory the target directory
+     * @param path the path inside the phar; "/" to extract all files
+     * @param log the logger
+     * @throws PhpException thrown on errors
+     * @throws ComponentLookupException thrown if the php packager for bzip2 compressed phars cannot be found
+     * @throws PlexusConfigurationException thrown if the php packager for bzip2 compressed phars cannot be found
+     * @since 2.0.1
+     */
+    public void extractPharTo(File pharPackage, File targetDirectory, String path, Log log)
+        throws PhpException, ComponentLookupException, PlexusConfigurationException {
+        String prefix = path == null ? "" : path.replace('\\', '/');
+        while (prefix.startsWith("/")) {
+            prefix = prefix.substring(1);
+        }
+        if (prefix.length() > 0 && !prefix.endsWith("/")) {
+            prefix += "/";
+        }
+        try {
+            final PharArchive archive = new PharArchive(pharPackage);
+            try {
+                final List<PharArchive.Entry> entries =
+                    prefix.length() == 0 ? archive.getEntries() : archive.getEntries(prefix);
+                boolean bzip2 = false;
+                for (final PharArchive.Entry entry : entries) {
+                    bzip2 |= entry.isBzip2();
+                }
+                if (bzip2) {
+                    if (this.factory == null) {
+                        throw new PhpCoreException("Error extracting phar " + pharPackage
+                            + ": bzip2 compression is not supported");
+                    }
+                    log.debug("Phar " + pharPackage + " contains bzip2 compressed files; extracting via php");
+                    final IPharPackager php = this.factory.lookup(
+                        IPharPackager.class, "PHP_EXE", IComponentFactory.EMPTY_CONFIG, this.session);
+                    if (prefix.length() == 0) {
+                        php.extractPharTo(pharPackage, targetDirectory, log);
+                    } else {
+                        final File tmp = File.createTempFile("phar", ".tmp");
+                        tmp.delete();
+                        try {
+                            php.extractPharTo(pharPackage, tmp, log);
+                            final File source = new File(tmp, prefix);
+                            if (source.isDirectory()) {
+                                FileUtils.copyDirectory(source, targetDirectory);
+                            }
+                        } finally {
+                            FileUtils.deleteQuietly(tmp);
+                        }
+                    }
+                    return;
+                }
+                if (prefix.length() == 0 && !archive.verify()) {
+                    log.warn("Cannot verify the OpenSSL signature of phar " + pharPackage);
+                }
+                this.extract(archive, entries, prefix, targetDirectory, log);
+            } finally {
+                archive.close();
+            }
+        } catch (IOException ex) {
+            throw new PhpCoreException("Error extracting phar " + pharPackage, ex);
+        }
+    }
+
+    /**
+     * Extracts the files of the phar.
+     * @param archive the phar archive
+     * @param entries the entries to be extracted
+     * @param prefix the prefix to be removed from the entry names
+     * @param targetDirectory the target directory
+     * @param log the logger
+     * @throws IOException thrown on io errors
+     * @throws PhpException thrown on errors
+     */
+    private void extract(final PharArchive archive, List<PharArchive.Entry> entries, String prefix,
+        File targetDirectory, final Log log) throws IOException, PhpException {
+        targetDirectory.mkdirs();
+        final String targetPath = targetDirectory.getCanonicalPath() + File.separator;
+        final List<PharArchive.Entry> files = new ArrayList<PharArchive.Entry>();
+        final List<File> targets = new ArrayList<File>();
+        for (final PharArchive.Entry entry : entries) {
+            final File target = new File(targetDirectory, entry.getName().substring(prefix.length()));
+            if (!(target.getCanonicalPath() + File.separator).startsWith(targetPath)) {
+                throw new IOException("Invalid phar entry " + entry.getName() + ": outside of the target directory");
+            }
+            final File dir = entry.isDirectory() ? target : target.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Cannot create directory " + dir);
+            }
+            if (!entry.isDirectory()) {
+                files.add(entry);
+                targets.add(target);
+            }
+        }
+        
+        final int threads = Math.min(
+            files.size(),
+            this.extractThreads > 0 ? this.extractThreads : Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            for (int i = 0; i < files.size(); i++) {
+                extractFile(archive, files.get(i), targets.get(i), buffer, log);
+            }
+            return;
+        }
+        
+        final ExecutorService executor = newExecutor("Phar-Extractor-", threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < files.size(); i++) {
+                final PharArchive.Entry entry = files.get(i);
+                final File target = targets.get(i);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        extractFile(archive, entry, target, new byte[BUFFER_SIZE], log);
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting phar");
+        } catch (ExecutionException ex) {
+            throw rethrow(ex, "Error extracting phar");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts a single file.
+     * @param archive the phar archive
+     * @param entry the phar entry
+     * @param target the target file
+     * @param buffer the copy buffer
+     * @param log the logger
+     * @throws IOException thrown on io errors
+     */
+    private static void extractFile(PharArchive archive, PharArchive.Entry entry, File target, byte[] buffer, Log log)
+        throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Extracting " + entry.getName() + " with " + entry.getSize() + " bytes.");
+        }
+        final InputStream in = archive.open(entry);
+        try {
+            final OutputStream out = new FileOutputStream(target);
+            try {
+                int read = in.read(buffer);
+                while (read != -1) {
+                    out.write(buffer, 0, read);
+                    read = in.read(buffer);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        target.setLastModified(entry.getLastModified());
     }
 
     /**
@@ -289,8 +856,40 @@ public class PharJavaPackager implements IPharPackager {
     @Override
     public Iterable<String> listFiles(File pharPackage, Log log)
         throws PhpException, ComponentLookupException, PlexusConfigurationException {
-        // TODO add support
-        throw new PhpCoreException("not supported");
+        try {
+            final PharArchive archive = new PharArchive(pharPackage);
+            try {
+                final List<String> result = new ArrayList<String>();
+                for (final PharArchive.Entry entry : archive.getEntries()) {
+                    if (!entry.isDirectory()) {
+                        result.add("/" + entry.getName());
+                    }
+                }
+                return result;
+            } finally {
+                archive.close();
+            }
+        } catch (IOException ex) {
+            throw new PhpCoreException("Error reading phar " + pharPackage, ex);
+        }
+    }
+
+    /**
+     * Returns the number of threads extracting files.
+     * @return number of threads; 0 for one thread per available processor
+     * @since 2.0.1
+     */
+    public int getExtractThreads() {
+        return this.extractThreads;
+    }
+
+    /**
+     * Sets the number of threads extracting files.
+     * @param extractThreads number of threads; 0 for one thread per available processor
+     * @since 2.0.1
+     */
+    public void setExtractThreads(int extractThreads) {
+        this.extractThreads = extractThreads;
     }
 
 }
@@ -19,6 +19,7 @@ package org.phpmaven.phar;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.maven.execution.MavenSession;
@@ -253,18 +254,19 @@ public class PharPackager implements IPharPackager {
         final IPhpExecutable executable = execConfig.getPhpExecutable(log);
             
         final String pharFileName = this.maskBackslash(pharPackage.getAbsolutePath());
-        final String files = executable.executeCode("",
+        final Object files = executable.executeCodeForResult("",
             "$iter = new RecursiveIteratorIterator(new RecursiveDirectoryIterator(" +
             "'phar://" + pharFileName + "'));\n" +
+            "$result = array();\n" +
             "foreach ($iter as $file) {\n" +
             "  if (!$iter->isDir()) {\n" +
-            "    echo substr($file->getPathName(), strlen('phar://" + pharFileName + "'));\n" +
-            "    echo \"\\n\";\n" +
+            "    $result[] = substr($file->getPathName(), strlen('phar://" + pharFileName + "'));\n" +
             "  }\n" +
-            "}\n");
+            "}\n" +
+            "file_put_contents(getenv('" + IPhpExecutable.RESULT_FILE_ENV + "'), serialize($result));\n");
         final List<String> result = new ArrayList<String>();
-        for (final String line : files.split("\n")) {
-            result.add(line);
+        for (final Object file : ((Map<?, ?>) files).values()) {
+            result.add(file.toString());
         }
         return result;
     }
@@ -127,6 +127,13 @@ public class PharPackagingRequest implements IPharPackagingRequest {
      */
     private Map<String, String> metadata = new HashMap<String, String>();
 
+    /**
+     * Number of threads compressing the files.
+     */
+    @Configuration(name = "parallelism", value = "0")
+    @ConfigurationParameter(name = "parallelism", expression = "${phar.parallelism}")
+    private int parallelism;
+
     /**
      * {@inheritDoc}
      */
@@ -318,4 +325,20 @@ public class PharPackagingRequest implements IPharPackagingRequest {
 		this.metadata = metadata;
 	}
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phar.test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.phar.IPharPackager;
+import org.phpmaven.phar.IPharPackagerConfiguration;
+import org.phpmaven.phar.IPharPackagingRequest;
+import org.phpmaven.phar.PharArchive;
+import org.phpmaven.test.AbstractTestCase;
+
+/**
+ * test cases for the phar archive reader.
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class ArchiveTest extends AbstractTestCase {
+
+    /**
+     * Tests the random access to the phar entries.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testEntries() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final MavenSession session = this.createSimpleSession("phar/simple");
+        final File basedir = session.getCurrentProject().getBasedir();
+        final IPharPackagerConfiguration pharConfig = factory.lookup(
+                IPharPackagerConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        pharConfig.setPackager("JAVA");
+        final IPharPackager exec = pharConfig.getPharPackager();
+        final IPharPackagingRequest request = factory.lookup(
+                IPharPackagingRequest.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+
+        // prepare the request
+        final File pharFile = new File(basedir, "phar1.phar");
+        request.setStub("die('HELLO STUB!');");
+        request.addFile("/some/file.php", new File(basedir, "testphar.php"));
+        request.addDirectory("/", new File(basedir, "phar1"));
+        request.setTargetDirectory(basedir);
+        request.setFilename(pharFile.getName());
+        exec.packagePhar(request, new DefaultLog(new ConsoleLogger()));
+
+        final PharArchive archive = new PharArchive(pharFile);
+        try {
+            assertTrue(archive.verify());
+            assertEquals(3, archive.getEntries().size());
+
+            // lookup by name
+            final PharArchive.Entry entry = archive.getEntry("/includes1/file.php");
+            assertNotNull(entry);
+            assertEquals("includes1/file.php", entry.getName());
+            assertEquals(new File(basedir, "phar1/includes1/file.php").length(), entry.getSize());
+            assertNotNull(archive.getEntry("data/some.txt"));
+            assertNull(archive.getEntry("data/other.txt"));
+
+            // lookup by prefix
+            final List<PharArchive.Entry> some = archive.getEntries("some/");
+            assertEquals(1, some.size());
+            assertEquals("some/file.php", some.get(0).getName());
+            assertTrue(archive.getEntries("unknown/").isEmpty());
+            assertEquals(3, archive.getEntries("").size());
+
+            // contents
+            final InputStream in = archive.open("some/file.php");
+            try {
+                assertEquals(
+                        FileUtils.readFileToString(new File(basedir, "testphar.php")),
+                        IOUtils.toString(in));
+            } finally {
+                in.close();
+            }
+            try {
+                archive.open("data/other.txt");
+                fail("Exception expected");
+            } catch (FileNotFoundException ex) {
+                // expected
+            }
+        } finally {
+            archive.close();
+        }
+    }
+
+}
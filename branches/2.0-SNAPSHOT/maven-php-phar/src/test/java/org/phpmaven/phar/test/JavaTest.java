@@ -17,18 +17,23 @@
 package org.phpmaven.phar.test;
 
 import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.monitor.logging.DefaultLog;
 import org.codehaus.plexus.logging.console.ConsoleLogger;
 import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.exec.IPhpExecutable;
 import org.phpmaven.exec.IPhpExecutableConfiguration;
+import org.phpmaven.exec.PhpException;
 import org.phpmaven.phar.IPharPackager;
 import org.phpmaven.phar.IPharPackagerConfiguration;
 import org.phpmaven.phar.IPharPackagingRequest;
+import org.phpmaven.phar.PharJavaPackager;
 import org.phpmaven.test.AbstractTestCase;
 
 /**
@@ -116,6 +121,236 @@ public class JavaTest extends AbstractTestCase {
                 session.getCurrentProject().getBasedir(), "testphar.php")));
     }
 
+    /**
+     * Tests that parallel packaging creates the same phar as sequential packaging.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testParallel() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final MavenSession session = this.createSimpleSession("phar/simple");
+        final File basedir = session.getCurrentProject().getBasedir();
+        final IPharPackagerConfiguration pharConfig = factory.lookup(
+                IPharPackagerConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        pharConfig.setPackager("JAVA");
+        final IPharPackager exec = pharConfig.getPharPackager();
+        
+        // some files including one compressed by the calling thread
+        final File dir = new File(basedir, "parallel");
+        for (int i = 0; i < 20; i++) {
+            final StringBuilder contents = new StringBuilder();
+            for (int j = 0; j < i * 100; j++) {
+                contents.append("<?php echo ").append(i * j).append(";\n");
+            }
+            FileUtils.writeStringToFile(new File(dir, "dir" + (i % 3) + "/file" + i + ".php"), contents.toString());
+        }
+        final byte[] large = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) (i * 31 + i / 7);
+        }
+        FileUtils.writeByteArrayToFile(new File(dir, "dir1/large.bin"), large);
+        
+        final DefaultLog logger = new DefaultLog(new ConsoleLogger());
+        final byte[][] phars = new byte[2][];
+        for (int i = 0; i < phars.length; i++) {
+            final IPharPackagingRequest request = factory.lookup(
+                    IPharPackagingRequest.class,
+                    IComponentFactory.EMPTY_CONFIG,
+                    session);
+            assertEquals(0, request.getParallelism());
+            request.setParallelism(i == 0 ? 1 : 4);
+            request.setStub("die('HELLO STUB!');");
+            request.addFile("/some/file.php", new File(basedir, "testphar.php"));
+            request.addDirectory("/", dir);
+            // same file name; the name is used as phar alias
+            final File targetDirectory = new File(basedir, "target" + i);
+            targetDirectory.mkdirs();
+            request.setTargetDirectory(targetDirectory);
+            request.setFilename("parallel.phar");
+            exec.packagePhar(request, logger);
+            phars[i] = FileUtils.readFileToByteArray(new File(targetDirectory, "parallel.phar"));
+        }
+        assertTrue(Arrays.equals(phars[0], phars[1]));
+    }
+
+    /**
+     * Packs the simple test project.
+     *
+     * @param factory the component factory
+     * @param session the maven session
+     * @param exec the packager
+     * @return the phar file
+     * @throws Exception thrown on errors
+     */
+    private File packSimple(IComponentFactory factory, MavenSession session, IPharPackager exec) throws Exception {
+        final File basedir = session.getCurrentProject().getBasedir();
+        final File pharFile = new File(basedir, "phar1.phar");
+        delete(pharFile);
+        final IPharPackagingRequest request = factory.lookup(
+                IPharPackagingRequest.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        request.setStub("die('HELLO STUB!');");
+        request.addFile("/some/file.php", new File(basedir, "testphar.php"));
+        request.addDirectory("/", new File(basedir, "phar1"));
+        request.setTargetDirectory(basedir);
+        request.setFilename(pharFile.getName());
+        exec.packagePhar(request, new DefaultLog(new ConsoleLogger()));
+        return pharFile;
+    }
+
+    /**
+     * Tests reading and extracting phars without php.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testRead() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final MavenSession session = this.createSimpleSession("phar/simple");
+        final File basedir = session.getCurrentProject().getBasedir();
+        final IPharPackagerConfiguration pharConfig = factory.lookup(
+                IPharPackagerConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        pharConfig.setPackager("JAVA");
+        final IPharPackager exec = pharConfig.getPharPackager();
+        final File pharFile = this.packSimple(factory, session, exec);
+        final DefaultLog logger = new DefaultLog(new ConsoleLogger());
+        
+        // read stub
+        assertEquals("<?php die('HELLO STUB!'); __HALT_COMPILER(); ?>\r\n", exec.readStub(pharFile, logger));
+        
+        // read contents
+        final Set<String> files = new HashSet<String>();
+        for (final String file : exec.listFiles(pharFile, logger)) {
+            files.add(file);
+        }
+        assertEquals(3, files.size());
+        assertTrue(files.contains("/data/some.txt"));
+        assertTrue(files.contains("/includes1/file.php"));
+        assertTrue(files.contains("/some/file.php"));
+        
+        // test extraction (sequential and parallel)
+        for (int threads = 1; threads <= 2; threads++) {
+            final File testdir = new File(basedir, "testdir" + threads);
+            ((PharJavaPackager) exec).setExtractThreads(threads);
+            exec.extractPharTo(pharFile, testdir, logger);
+            assertEquals(
+                    FileUtils.readFileToString(new File(basedir, "phar1/data/some.txt")),
+                    FileUtils.readFileToString(new File(testdir, "data/some.txt")));
+            assertEquals(
+                    FileUtils.readFileToString(new File(basedir, "phar1/includes1/file.php")),
+                    FileUtils.readFileToString(new File(testdir, "includes1/file.php")));
+            assertEquals(
+                    FileUtils.readFileToString(new File(basedir, "testphar.php")),
+                    FileUtils.readFileToString(new File(testdir, "some/file.php")));
+        }
+        
+        // test extraction of a path inside the phar
+        final File pathdir = new File(basedir, "testdirpath");
+        ((PharJavaPackager) exec).extractPharTo(pharFile, pathdir, "/includes1", logger);
+        assertEquals(
+                FileUtils.readFileToString(new File(basedir, "phar1/includes1/file.php")),
+                FileUtils.readFileToString(new File(pathdir, "file.php")));
+        assertEquals(1, pathdir.list().length);
+    }
+
+    /**
+     * Tests that corrupted phars are not extracted.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testReadCorrupted() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final MavenSession session = this.createSimpleSession("phar/simple");
+        final File basedir = session.getCurrentProject().getBasedir();
+        final IPharPackagerConfiguration pharConfig = factory.lookup(
+                IPharPackagerConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        pharConfig.setPackager("JAVA");
+        final IPharPackager exec = pharConfig.getPharPackager();
+        final File pharFile = this.packSimple(factory, session, exec);
+        final DefaultLog logger = new DefaultLog(new ConsoleLogger());
+        
+        // modify a byte of the first file
+        final byte[] bytes = FileUtils.readFileToByteArray(pharFile);
+        bytes[bytes.length - 30] ^= 1;
+        FileUtils.writeByteArrayToFile(pharFile, bytes);
+        try {
+            exec.extractPharTo(pharFile, new File(basedir, "testdir"), logger);
+            fail("Exception expected");
+        } catch (PhpException ex) {
+            assertTrue(ex.getCause().getMessage().contains("signature mismatch"));
+        }
+        
+        // no phar
+        try {
+            exec.listFiles(new File(basedir, "testphar.php"), logger);
+            fail("Exception expected");
+        } catch (PhpException ex) {
+            assertTrue(ex.getCause().getMessage().contains("__HALT_COMPILER"));
+        }
+    }
+
+    /**
+     * Tests that files larger than supported by the phar format are rejected.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testTooLargeFile() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final MavenSession session = this.createSimpleSession("phar/simple");
+        final File pharFile = new File(session.getCurrentProject().getBasedir(), "phar1.phar");
+        delete(pharFile);
+        final IPharPackagerConfiguration pharConfig = factory.lookup(
+                IPharPackagerConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        pharConfig.setPackager("JAVA");
+        final IPharPackager exec = pharConfig.getPharPackager();
+        final IPharPackagingRequest request = factory.lookup(
+                IPharPackagingRequest.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        
+        // a sparse file with 4 GB (one byte more than supported)
+        final File largeFile = new File(session.getCurrentProject().getBasedir(), "large.bin");
+        final RandomAccessFile raf = new RandomAccessFile(largeFile, "rw");
+        try {
+            raf.setLength(0x100000000L);
+        } finally {
+            raf.close();
+        }
+        
+        // prepare the request
+        request.setStub("die('HELLO STUB!');");
+        request.addFile("/large.bin", largeFile);
+        request.setTargetDirectory(session.getCurrentProject().getBasedir());
+        request.setFilename(pharFile.getName());
+        
+        // package
+        final DefaultLog logger = new DefaultLog(new ConsoleLogger());
+        try {
+            exec.packagePhar(request, logger);
+            fail("Exception expected");
+        } catch (PhpException ex) {
+            assertTrue(ex.getMessage().contains("4 GB"));
+        } finally {
+            largeFile.delete();
+        }
+    }
+
     /**
      * Tests if the execution configuration can be created
      * with an unknown executable set.
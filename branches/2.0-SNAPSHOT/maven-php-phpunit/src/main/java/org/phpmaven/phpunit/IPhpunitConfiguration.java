@@ -106,6 +106,27 @@ import org.phpmaven.exec.IPhpExecutableConfiguration;
  *   several times for multiple tests. Defaults to true.
  *   </td>
  * </tr>
+ * <tr>
+ *   <td>forkCount</td>
+ *   <td>-</td>
+ *   <td>phpunit.forkCount</td>
+ *   <td>1</td>
+ *   <td>Number of concurrent phpunit processes if every test is invoked on its own (singleInvocation
+ *   set to false). Values below 1 mean the number of processors. The longest tests of the previous run
+ *   are started first. Tests producing coverage reports are always executed one after another. The
+ *   processes are not limited by the number of processors.
+ *   </td>
+ * </tr>
+ * <tr>
+ *   <td>impactAnalysis</td>
+ *   <td>-</td>
+ *   <td>phpunit.impact</td>
+ *   <td>false</td>
+ *   <td>True to record the coverage of every forked test invocation within the test impact index
+ *   (see {@link IPhpunitImpactIndex}). The goal php:test only executes the tests affected by changes
+ *   if this option is set. Cannot be combined with a coverage xml result.
+ *   </td>
+ * </tr>
  * </table>
  * 
  * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
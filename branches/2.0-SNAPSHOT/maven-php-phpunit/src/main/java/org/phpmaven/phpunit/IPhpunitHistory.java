@@ -0,0 +1,115 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phpunit;
+
+import java.io.File;
+import java.util.List;
+
+import org.phpmaven.statedb.IStateDatabase;
+
+/**
+ * Durations and outcomes of previous phpunit runs.
+ * 
+ * <p>
+ * The history is kept within the {@link IStateDatabase} of the project and is updated every time
+ * tests are executed via {@link IPhpunitSupport}. Get an instance via {@link IPhpunitSupport#getHistory()}.
+ * </p>
+ * 
+ * <p>
+ * Sharding (see {@link #shard(Iterable, int, int)}) is only stable if every agent uses the same history;
+ * either share the state database (for example restore it from a build cache) or start without history.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public interface IPhpunitHistory {
+    
+    /**
+     * Returns the duration of the last run of a test file.
+     * @param testFile the test file.
+     * @return duration in seconds or {@code null} if the file was never executed.
+     */
+    Float getDuration(File testFile);
+    
+    /**
+     * Returns the duration of the last run of a test suite.
+     * @param suiteName the suite name (test case class).
+     * @return duration in seconds or {@code null} if the suite was never executed.
+     */
+    Float getSuiteDuration(String suiteName);
+    
+    /**
+     * Returns true if the last run of the test file failed.
+     * @param testFile the test file.
+     * @return true if the last run failed.
+     */
+    boolean isFailed(File testFile);
+    
+    /**
+     * Returns the time of the last failure of the test file.
+     * @param testFile the test file.
+     * @return time in milliseconds or 0 if the file never failed.
+     */
+    long getLastFailure(File testFile);
+    
+    /**
+     * Records the outcome of a test file.
+     * @param testFile the test file.
+     * @param seconds duration in seconds or {@code null} if unknown (php errors).
+     * @param failed true if the test failed.
+     */
+    void recordFile(File testFile, Float seconds, boolean failed);
+    
+    /**
+     * Records the duration of a test suite.
+     * @param suiteName the suite name (test case class).
+     * @param testFile the file declaring the suite.
+     * @param seconds duration in seconds.
+     */
+    void recordSuite(String suiteName, File testFile, float seconds);
+    
+    /**
+     * Orders the test files longest first; files without history are put first.
+     * @param testFiles the test files.
+     * @return ordered test files.
+     */
+    List<File> orderLongestFirst(Iterable<File> testFiles);
+    
+    /**
+     * Orders the test files recently failed first; the remaining files are ordered longest first.
+     * @param testFiles the test files.
+     * @return ordered test files.
+     */
+    List<File> orderFailedFirst(Iterable<File> testFiles);
+    
+    /**
+     * Splits the test files into balanced shards (by duration) and returns a single shard.
+     * @param testFiles the test files.
+     * @param index the shard index (1 to count).
+     * @param count the number of shards.
+     * @return the test files of the given shard in their original order.
+     */
+    List<File> shard(Iterable<File> testFiles, int index, int count);
+    
+    /**
+     * Writes the history to the state database. The history of test files that no longer exist (and of the
+     * suites declared by them) is removed.
+     */
+    void save();
+
+}
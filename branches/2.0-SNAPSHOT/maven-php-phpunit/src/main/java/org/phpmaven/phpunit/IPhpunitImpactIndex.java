@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phpunit;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import org.phpmaven.statedb.IStateDatabase;
+
+/**
+ * Test impact index; maps test files to the php files they executed.
+ * 
+ * <p>
+ * The index is filled by forked test invocations with impact analysis enabled (see
+ * {@link IPhpunitSupport#setImpactAnalysis(boolean)}); every test file is executed with its own
+ * coverage report. Together with the covered files the content hashes of the files are stored. A test
+ * is impacted if one of the files it executed (or the test file itself) changed since the test was
+ * executed, or if there is no coverage data for the test (new tests, failed tests, php without
+ * coverage support). The index is kept within the {@link IStateDatabase} of the project and updated
+ * incrementally: only the entries of executed tests are rewritten.
+ * </p>
+ * 
+ * <p>
+ * Get an instance via {@link IPhpunitSupport#getImpactIndex()}.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public interface IPhpunitImpactIndex {
+    
+    /**
+     * Returns the files executed by the given test file.
+     * @param testFile the test file.
+     * @return covered files or {@code null} if there is no coverage data for the test.
+     */
+    Set<File> getCoveredFiles(File testFile);
+    
+    /**
+     * Returns true if the test file has to be executed.
+     * @param testFile the test file.
+     * @return true if the test has no coverage data or if the test file or a covered file changed.
+     */
+    boolean isImpacted(File testFile);
+    
+    /**
+     * Selects the impacted test files.
+     * @param testFiles the test files.
+     * @return impacted test files in their original order.
+     */
+    List<File> selectImpacted(Iterable<File> testFiles);
+    
+    /**
+     * Records the coverage of a test file; the content hashes of the files are taken now.
+     * @param testFile the test file.
+     * @param coveredFiles the files executed by the test.
+     */
+    void record(File testFile, Iterable<File> coveredFiles);
+    
+    /**
+     * Removes the coverage data of a test file; the test is impacted until its coverage is recorded again.
+     * @param testFile the test file.
+     */
+    void remove(File testFile);
+    
+    /**
+     * Forces the changes to the state database file.
+     */
+    void save();
+
+}
@@ -19,6 +19,8 @@ package org.phpmaven.phpunit;
 import java.io.File;
 
 import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.codehaus.plexus.configuration.PlexusConfigurationException;
 import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.exec.PhpException;
 
@@ -106,6 +108,52 @@ public interface IPhpunitSupport {
      */
     void setCoverageResultXml(File coverageResult);
     
+    /**
+     * Returns the number of concurrent phpunit processes used for forked test invocations.
+     * @return number of concurrent phpunit processes; values below 1 mean the number of processors.
+     * @since 2.0.1
+     */
+    int getForkCount();
+    
+    /**
+     * Sets the number of concurrent phpunit processes used for forked test invocations.
+     * @param forkCount number of concurrent phpunit processes; values below 1 mean the number of processors.
+     * @since 2.0.1
+     */
+    void setForkCount(int forkCount);
+    
+    /**
+     * Returns the history of previous test runs of the current project.
+     * @return the history.
+     * @throws PlexusConfigurationException thrown on configuration errors.
+     * @throws ComponentLookupException thrown on configuration errors.
+     * @since 2.0.1
+     */
+    IPhpunitHistory getHistory() throws PlexusConfigurationException, ComponentLookupException;
+    
+    /**
+     * Returns true if forked test invocations record their coverage within the test impact index.
+     * @return true for impact analysis.
+     * @since 2.0.1
+     */
+    boolean isImpactAnalysis();
+    
+    /**
+     * Sets the impact analysis flag; only used for forked test invocations.
+     * @param impactAnalysis true to record the coverage of every test within the test impact index.
+     * @since 2.0.1
+     */
+    void setImpactAnalysis(boolean impactAnalysis);
+    
+    /**
+     * Returns the test impact index of the current project.
+     * @return the test impact index.
+     * @throws PlexusConfigurationException thrown on configuration errors.
+     * @throws ComponentLookupException thrown on configuration errors.
+     * @since 2.0.1
+     */
+    IPhpunitImpactIndex getImpactIndex() throws PlexusConfigurationException, ComponentLookupException;
+    
     /**
      * Executes the phpunit tests.
      * @param request test request.
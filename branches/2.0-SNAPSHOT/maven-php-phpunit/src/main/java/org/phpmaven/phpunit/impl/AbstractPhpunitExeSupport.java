@@ -19,8 +19,17 @@ package org.phpmaven.phpunit.impl;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -30,10 +39,14 @@ import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
 import org.phpmaven.exec.IPhpExecutable;
+import org.phpmaven.exec.OutputCapture;
 import org.phpmaven.exec.PhpCoreException;
 import org.phpmaven.exec.PhpException;
 import org.phpmaven.phpunit.IPhpunitEntry;
 import org.phpmaven.phpunit.IPhpunitEntry.EntryType;
+import org.phpmaven.phpunit.IPhpunitHistory;
+import org.phpmaven.phpunit.IPhpunitImpactIndex;
+import org.phpmaven.phpunit.IPhpunitResult;
 import org.phpmaven.phpunit.IPhpunitTestRequest;
 import org.phpmaven.phpunit.IPhpunitTestResult;
 import org.w3c.dom.Document;
@@ -79,6 +92,16 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
      */
     private IPhpunitTestRequest testRequest;
     
+    /**
+     * The history of the current test execution.
+     */
+    private IPhpunitHistory history;
+    
+    /**
+     * The impact index of the current test execution; {@code null} if impact analysis is disabled.
+     */
+    private IPhpunitImpactIndex impactIndex;
+    
     protected IPhpunitTestRequest getTestRequest() {
         return this.testRequest;
     }
@@ -92,6 +115,20 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
         try {
             this.testRequest = request;
             final IPhpExecutable exec = this.getExec(log);
+            try {
+                this.history = this.getHistory();
+                this.impactIndex = this.isImpactAnalysis() && !this.isSingleTestInvocation()
+                    ? this.getImpactIndex() : null;
+            } catch (PlexusConfigurationException ex) {
+                throw new PhpCoreException("Failed loading the test history", ex);
+            } catch (ComponentLookupException ex) {
+                throw new PhpCoreException("Failed loading the test history", ex);
+            }
+            if (this.impactIndex != null && this.getCoverageResultXml() != null) {
+                // the forked invocations write their coverage xml for the impact index instead
+                throw new PhpCoreException("Test impact analysis cannot be combined with a coverage xml result ("
+                    + this.getCoverageResultXml() + ")");
+            }
             final IPhpunitTestResult result = new PhpunitTestResult();
             
             if (!request.getEntries().iterator().hasNext()) {
@@ -106,10 +143,17 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
                 resultFolder.mkdirs();
             }
             
-            if (this.isSingleTestInvocation()) {
-                this.doSingleInvocation(request, exec, result);
-            } else {
-                this.doForkInvocation(request, exec, result);
+            try {
+                if (this.isSingleTestInvocation()) {
+                    this.doSingleInvocation(request, exec, result);
+                } else {
+                    this.doForkInvocation(request, exec, result);
+                }
+            } finally {
+                this.history.save();
+                if (this.impactIndex != null) {
+                    this.impactIndex.save();
+                }
             }
             
             return result;
@@ -136,58 +180,202 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
             }
         }
         
+        // the result file names are calculated before any test is started; they only depend on the request
         final Set<String> usedFilenames = new HashSet<String>();
+        final List<IPhpunitEntry> entries = new ArrayList<IPhpunitEntry>();
+        final Map<IPhpunitEntry, String> resultFileNames = new HashMap<IPhpunitEntry, String>();
+        for (final IPhpunitEntry entry : request.getEntries()) {
+            entries.add(entry);
+            resultFileNames.put(entry, getResultFilename(usedFilenames, entry));
+        }
         
         // assume test results ok.
         result.setSuccess(true);
         
-        // perform tests
-        for (final IPhpunitEntry entry : request.getEntries()) {
-            // calculate file name
-            final String resultFileName = getResultFilename(usedFilenames, entry);
-            
-            // result files
-            final File xmlFile = new File(this.getResultFolder(), resultFileName + ".xml");
-            final File txtFile = new File(this.getResultFolder(), resultFileName + ".txt");
-            
-            // execute
-            final String command = getForkInvocationCommand(entry, xmlFile);
-            deleteFile(xmlFile);
-            deleteFile(txtFile);
+        int forks = this.getForkCount();
+        if (forks < 1) {
+            forks = Runtime.getRuntime().availableProcessors();
+        }
+        if (this.getCoverageResult() != null || this.getCoverageResultXml() != null) {
+            // all invocations write to the same coverage report
+            forks = 1;
+        }
+        
+        if (forks == 1 || entries.size() == 1) {
+            // perform tests
+            for (final IPhpunitEntry entry : entries) {
+                this.doForkInvocation(entry, resultFileNames.get(entry), exec, result, false);
+            }
+            return;
+        }
+        
+        this.doParallelForkInvocation(entries, resultFileNames, exec, result, forks);
+    }
+
+    /**
+     * Performs the forked invocations with concurrent phpunit processes. Every fork thread runs its php process
+     * itself so that exactly {@code forks} processes run concurrently, independent of the executor used for
+     * asynchronous php executions.
+     * @param entries the test entries
+     * @param resultFileNames the result file names
+     * @param exec the php exec
+     * @param result the result.
+     * @param forks number of concurrent processes
+     * @throws PhpException thrown if the execution was interrupted.
+     */
+    private void doParallelForkInvocation(List<IPhpunitEntry> entries,
+            final Map<IPhpunitEntry, String> resultFileNames, final IPhpExecutable exec,
+            IPhpunitTestResult result, int forks) throws PhpException {
+        // longest tests of the previous runs first
+        final Map<IPhpunitEntry, Float> durations = new HashMap<IPhpunitEntry, Float>();
+        for (final IPhpunitEntry entry : entries) {
+            Float duration = this.history == null ? null : this.history.getDuration(entry.getFile());
+            if (duration == null) {
+                duration = PhpunitForkScheduler.readDuration(
+                    new File(this.getResultFolder(), resultFileNames.get(entry) + ".xml"));
+            }
+            if (duration != null) {
+                durations.put(entry, duration);
+            }
+        }
+        
+        final Map<IPhpunitEntry, Future<IPhpunitTestResult>> futures =
+            new HashMap<IPhpunitEntry, Future<IPhpunitTestResult>>();
+        final ExecutorService executor = Executors.newFixedThreadPool(forks);
+        try {
+            for (final IPhpunitEntry entry : PhpunitForkScheduler.longestFirst(entries, durations)) {
+                futures.put(entry, executor.submit(new Callable<IPhpunitTestResult>() {
+                    @Override
+                    public IPhpunitTestResult call() {
+                        final IPhpunitTestResult single = new PhpunitTestResult();
+                        single.setSuccess(true);
+                        AbstractPhpunitExeSupport.this.doForkInvocation(
+                            entry, resultFileNames.get(entry), exec, single, true);
+                        return single;
+                    }
+                }));
+            }
             
-            try {
-                // perform
-                final String cliResult = exec.executeCode(
-                        "",
-                        this.getTemplate(),
-                        command);
-                if (!xmlFile.exists()) {
-                    throw new PhpCoreException("Xml result not written: " + xmlFile + "\nCLI:\n" + cliResult);
-                }
-                
-                // write txt output
+            // merge in request order
+            for (final IPhpunitEntry entry : entries) {
                 try {
-                    deleteFile(txtFile);
-                    final FileWriter writer = new FileWriter(txtFile);
-                    writer.write(cliResult);
-                } catch (IOException ex) {
-                    throw new PhpCoreException("Error writing php output to " + txtFile + "\nCLI:\n" + cliResult, ex);
+                    mergeResult(futures.get(entry).get(), result);
+                } catch (ExecutionException ex) {
+                    result.setSuccess(false);
+                    result.appendException(entry.getFile(), ex.getCause() instanceof PhpException
+                        ? (PhpException) ex.getCause()
+                        : new PhpCoreException("Error executing test " + entry.getFile(), ex.getCause()));
                 }
-                
-                // analyze
-                try {
-                    this.parseResultingXML(entry.getFile(), xmlFile, result, txtFile, this.getCoverageResult());
-                } catch (ParserConfigurationException ex) {
-                    throw new PhpCoreException("Error analyzing xml output. See test results in " + txtFile, ex);
-                } catch (IOException ex) {
-                    throw new PhpCoreException("Error analyzing xml output. See test results in " + txtFile, ex);
-                } catch (SAXException ex) {
-                    throw new PhpCoreException("Error analyzing xml output. See test results in " + txtFile, ex);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new PhpCoreException("Interrupted while waiting for the test results", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Appends the results of a single forked invocation.
+     * @param from the single result
+     * @param to the target result
+     */
+    private static void mergeResult(IPhpunitTestResult from, IPhpunitTestResult to) {
+        if (!from.isSuccess()) {
+            to.setSuccess(false);
+        }
+        for (final IPhpunitResult r : from.getResults()) {
+            switch (r.getResultType()) {
+                case SUCCESS:
+                    to.appendSuccess(r.getFileToTest(), r.getXmlOutput(), r.getTextOutput(), r.getCoverageOutput(),
+                        r.getTestName(), r.getTests(), r.getTime());
+                    break;
+                case FAILURE:
+                    to.appendFailure(r.getFileToTest(), r.getXmlOutput(), r.getTextOutput(), r.getCoverageOutput(),
+                        r.getTestName(), r.getTests(), r.getFailures(), r.getErrors(), r.getTime());
+                    break;
+                default:
+                    to.appendException(r.getFileToTest(), r.getException());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A single forked invocation.
+     * @param entry the test entry
+     * @param resultFileName the result file name (without extension)
+     * @param exec the php exec
+     * @param result the result.
+     * @param concurrent true to use a separate snippet file (concurrent invocations)
+     */
+    private void doForkInvocation(IPhpunitEntry entry, String resultFileName, IPhpExecutable exec,
+            IPhpunitTestResult result, boolean concurrent) {
+        // result files
+        final File xmlFile = new File(this.getResultFolder(), resultFileName + ".xml");
+        final File txtFile = new File(this.getResultFolder(), resultFileName + ".txt");
+        final File snippet = concurrent ? new File(this.getResultFolder(), resultFileName + ".snippet.php") : null;
+        // every test gets its own coverage report for the impact index
+        final File impactFile = this.impactIndex == null
+            ? null : new File(this.getResultFolder(), resultFileName + ".coverage.xml");
+        
+        // execute
+        final String command = impactFile == null
+            ? getForkInvocationCommand(entry, xmlFile)
+            : getForkInvocationCommand(entry, xmlFile, impactFile);
+        deleteFile(xmlFile);
+        deleteFile(txtFile);
+        if (impactFile != null) {
+            deleteFile(impactFile);
+        }
+        
+        try {
+            // perform; the output is written to the txt file
+            final OutputCapture cliResult = this.execute(exec, command, txtFile, snippet);
+            if (!xmlFile.exists()) {
+                throw new PhpCoreException("Xml result not written: " + xmlFile + "\nCLI:\n" + cliResult);
+            }
+            
+            // analyze
+            try {
+                this.parseResultingXML(entry.getFile(), xmlFile, result, txtFile, this.getCoverageResult());
+                if (impactFile != null) {
+                    this.recordImpact(entry.getFile(), impactFile);
                 }
-            } catch (PhpException ex) {
-                result.setSuccess(false);
-                result.appendException(entry.getFile(), ex);
+            } catch (ParserConfigurationException ex) {
+                throw new PhpCoreException("Error analyzing xml output. See test results in " + txtFile, ex);
+            } catch (IOException ex) {
+                throw new PhpCoreException("Error analyzing xml output. See test results in " + txtFile, ex);
+            } catch (SAXException ex) {
+                throw new PhpCoreException("Error analyzing xml output. See test results in " + txtFile, ex);
             }
+        } catch (PhpException ex) {
+            result.setSuccess(false);
+            result.appendException(entry.getFile(), ex);
+            if (this.history != null) {
+                this.history.recordFile(entry.getFile(), null, true);
+            }
+            if (this.impactIndex != null) {
+                this.impactIndex.remove(entry.getFile());
+            }
+        }
+    }
+
+    /**
+     * Records the coverage of a forked invocation within the impact index.
+     * @param testFile the test file
+     * @param coverageFile the coverage report of the test
+     * @throws IOException thrown on io errors
+     * @throws SAXException thrown on xml errors
+     * @throws ParserConfigurationException thrown on xml errors
+     */
+    private void recordImpact(File testFile, File coverageFile)
+        throws IOException, SAXException, ParserConfigurationException {
+        if (!coverageFile.exists() || this.history.isFailed(testFile)) {
+            // no coverage support (xdebug) or failed test; execute it again next time
+            this.impactIndex.remove(testFile);
+        } else {
+            this.impactIndex.record(testFile, PhpunitImpactIndex.readCoverage(coverageFile));
         }
     }
 
@@ -199,13 +387,26 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
      */
     protected String getForkInvocationCommand(final IPhpunitEntry entry,
             final File xmlFile) {
+        return this.getForkInvocationCommand(entry, xmlFile, this.getCoverageResultXml());
+    }
+
+    /**
+     * Returns the command for forked invocations.
+     * @param entry entry
+     * @param xmlFile xml file
+     * @param coverageXmlFile the coverage result (xml) or {@code null}
+     * @return command.
+     * @since 2.0.1
+     */
+    protected String getForkInvocationCommand(final IPhpunitEntry entry,
+            final File xmlFile, final File coverageXmlFile) {
         String command =
             this.getLogXmlArgument() + " \"" + xmlFile.getAbsolutePath() + "\" " + this.getExtraArguments() + " ";
         if (this.getCoverageResult() != null) {
             command += "--coverage-html \"" + this.getCoverageResult().getAbsolutePath() + "\" ";
         }
-        if (this.getCoverageResultXml() != null) {
-            command += "--coverage-xml \"" + this.getCoverageResultXml().getAbsolutePath() + "\" ";
+        if (coverageXmlFile != null) {
+            command += "--coverage-xml \"" + coverageXmlFile.getAbsolutePath() + "\" ";
         }
         if (this.getPhpunitArguments() != null && this.getPhpunitArguments().length() > 0) {
             command += this.getPhpunitArguments() + " ";
@@ -285,6 +486,10 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
             final int errors = Integer.parseInt(e.getAttribute("errors"));
             final float time = Float.parseFloat(e.getAttribute("time"));
             
+            if (this.history != null) {
+                this.recordHistory(toTest, e, i == 0, time, errors > 0 || failures > 0);
+            }
+            
             if (errors > 0 || failures > 0) {
                 result.setSuccess(false);
                 result.appendFailure(toTest, xmlFile, textFile, coverageFile, name, tests, failures, errors, time);
@@ -294,6 +499,28 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
         }
     }
 
+    /**
+     * Records the duration and outcome of a test suite within the history.
+     * @param toTest the tested file.
+     * @param suite the testsuite element.
+     * @param first true for the first (outermost) testsuite element.
+     * @param time the duration in seconds.
+     * @param failed true if the suite failed.
+     */
+    private void recordHistory(File toTest, Element suite, boolean first, float time, boolean failed) {
+        final String name = suite.getAttribute("name");
+        final String file = suite.getAttribute("file");
+        this.history.recordSuite(name, file.length() > 0 ? new File(file) : toTest, time);
+        if (file.length() > 0 && name.indexOf("::") == -1) {
+            // test case class; data provider suites (class::method) are part of it
+            this.history.recordFile(new File(file), time, failed);
+        }
+        if (first && !toTest.equals(this.getTestSuiteFile())) {
+            // forked invocation of a single test file
+            this.history.recordFile(toTest, time, failed);
+        }
+    }
+
     /**
      * A invocation for single phpunit tests invocations.
      * @param request the request.
@@ -338,24 +565,12 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
         final String command = getSingleInvocationCommand(xmlFile);
         
         try {
-            // perform
-            final String cliResult = exec.executeCode(
-                    "",
-                    this.getTemplate(),
-                    command);
+            // perform; the output is written to the txt file
+            final OutputCapture cliResult = this.execute(exec, command, txtFile, null);
             if (!xmlFile.exists()) {
                 throw new PhpCoreException("Xml result not written: " + xmlFile + "\nCLI:\n" + cliResult);
             }
             
-            // write txt output
-            try {
-                deleteFile(txtFile);
-                final FileWriter writer = new FileWriter(txtFile);
-                writer.write(cliResult);
-            } catch (IOException ex) {
-                throw new PhpCoreException("Error writing php output to " + txtFile + "\nCLI:\n" + cliResult, ex);
-            }
-            
             // analyze
             try {
                 this.parseResultingXML(getTestSuiteFile(), xmlFile, result, txtFile, this.getCoverageResult());
@@ -372,6 +587,69 @@ public abstract class AbstractPhpunitExeSupport extends AbstractPhpunitSupport {
         }
     }
 
+    /**
+     * Executes the phpunit template and writes the output to the given file.
+     * @param exec the php execution.
+     * @param command the phpunit arguments.
+     * @param txtFile the file receiving the output.
+     * @param snippet the file receiving the template; required for concurrent invocations. {@code null} to use
+     *     the snippet file of the php executable.
+     * @return the captured output.
+     * @throws PhpException thrown on execution errors.
+     */
+    private OutputCapture execute(IPhpExecutable exec, String command, File txtFile, File snippet)
+        throws PhpException {
+        final OutputCapture output;
+        try {
+            output = new OutputCapture(txtFile);
+        } catch (IOException ex) {
+            throw new PhpCoreException("Error writing php output to " + txtFile, ex);
+        }
+        boolean success = false;
+        try {
+            if (snippet == null) {
+                exec.executeCode("", this.getTemplate(), command, output);
+            } else {
+                writeSnippet(snippet, this.getTemplate());
+                try {
+                    exec.execute("\"" + snippet.getAbsolutePath() + "\" " + command, snippet, output);
+                } finally {
+                    snippet.delete();
+                }
+            }
+            success = true;
+        } finally {
+            try {
+                output.close();
+            } catch (IOException ex) {
+                // on failures the execution exception takes precedence
+                if (success) {
+                    throw new PhpCoreException("Error writing php output to " + txtFile + "\nCLI:\n" + output, ex);
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Writes the php code to the given snippet file.
+     * @param snippet the snippet file
+     * @param code the php code
+     * @throws PhpException thrown if the file cannot be written.
+     */
+    private static void writeSnippet(File snippet, String code) throws PhpException {
+        try {
+            final FileWriter writer = new FileWriter(snippet);
+            try {
+                writer.write("<?php \n" + code);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ex) {
+            throw new PhpCoreException("Error writing php code snippet to " + snippet, ex);
+        }
+    }
+
     /**
      * Returns the command for single invocations.
      * @param xmlFile xml file
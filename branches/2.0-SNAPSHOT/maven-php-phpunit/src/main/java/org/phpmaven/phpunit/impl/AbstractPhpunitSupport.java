@@ -20,6 +20,7 @@ import java.io.File;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.component.annotations.Configuration;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
@@ -29,8 +30,11 @@ import org.phpmaven.core.BuildPluginConfiguration;
 import org.phpmaven.core.ConfigurationParameter;
 import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.exec.IPhpExecutable;
+import org.phpmaven.phpunit.IPhpunitHistory;
+import org.phpmaven.phpunit.IPhpunitImpactIndex;
 import org.phpmaven.phpunit.IPhpunitSupport;
 import org.phpmaven.project.IProjectPhpExecution;
+import org.phpmaven.statedb.IStateDatabase;
 
 /**
  * Abstract Phpunit support base class.
@@ -60,6 +64,18 @@ public abstract class AbstractPhpunitSupport implements IPhpunitSupport {
      */
     @Configuration(name = "singleInvocation", value = "true")
     private boolean isSingleInvocation;
+    
+    /**
+     * Number of concurrent phpunit processes for forked invocations.
+     */
+    @Configuration(name = "forkCount", value = "1")
+    private int forkCount;
+    
+    /**
+     * true to record the coverage of forked invocations within the impact index.
+     */
+    @Configuration(name = "impactAnalysis", value = "false")
+    private boolean impactAnalysis;
 
     /**
      * Xml result file.
@@ -94,6 +110,16 @@ public abstract class AbstractPhpunitSupport implements IPhpunitSupport {
     @ConfigurationParameter(name = "session", expression = "${session}")
     private MavenSession session;
     
+    /**
+     * The test history.
+     */
+    private IPhpunitHistory history;
+    
+    /**
+     * The test impact index.
+     */
+    private IPhpunitImpactIndex impactIndex;
+    
     /**
      * Returns the maven session.
      * @return maven session.
@@ -133,6 +159,61 @@ public abstract class AbstractPhpunitSupport implements IPhpunitSupport {
                 this.session.getCurrentProject()).getPhpExecutable(log);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IPhpunitHistory getHistory() throws PlexusConfigurationException, ComponentLookupException {
+        if (this.history == null) {
+            final MavenProject project = this.session.getCurrentProject();
+            this.history = new PhpunitHistory(
+                this.getStateDatabase(), project.getGroupId(), project.getArtifactId(), project.getBasedir());
+        }
+        return this.history;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IPhpunitImpactIndex getImpactIndex() throws PlexusConfigurationException, ComponentLookupException {
+        if (this.impactIndex == null) {
+            final MavenProject project = this.session.getCurrentProject();
+            this.impactIndex = new PhpunitImpactIndex(
+                this.getStateDatabase(), project.getGroupId(), project.getArtifactId(), project.getBasedir());
+        }
+        return this.impactIndex;
+    }
+    
+    /**
+     * Returns the state database of the current project.
+     * @return state database.
+     * @throws PlexusConfigurationException thrown on configuration errors.
+     * @throws ComponentLookupException thrown on configuration errors.
+     */
+    private IStateDatabase getStateDatabase() throws PlexusConfigurationException, ComponentLookupException {
+        return this.factory.lookup(
+                IStateDatabase.class,
+                IComponentFactory.EMPTY_CONFIG,
+                this.session);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isImpactAnalysis() {
+        return this.impactAnalysis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setImpactAnalysis(boolean impactAnalysis) {
+        this.impactAnalysis = impactAnalysis;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -181,6 +262,22 @@ public abstract class AbstractPhpunitSupport implements IPhpunitSupport {
         this.isSingleInvocation = isSingle;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getForkCount() {
+        return this.forkCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setForkCount(int forkCount) {
+        this.forkCount = forkCount;
+    }
+
     /**
      * {@inheritDoc}
      */
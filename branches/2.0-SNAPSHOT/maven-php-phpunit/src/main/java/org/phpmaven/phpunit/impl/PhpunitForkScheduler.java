@@ -0,0 +1,125 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phpunit.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders forked phpunit invocations to minimize the total duration (makespan).
+ * 
+ * <p>
+ * The tests are started longest first (LPT scheduling); a free phpunit process always picks the longest
+ * remaining test. Tests without known duration are started before all others because they may be long
+ * running.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class PhpunitForkScheduler {
+    
+    /**
+     * Number of bytes scanned for the duration within a result xml.
+     */
+    private static final int XML_HEAD = 4096;
+    
+    /**
+     * Hidden constructor.
+     */
+    private PhpunitForkScheduler() {
+        // empty
+    }
+    
+    /**
+     * Orders the given items longest first.
+     * @param <T> the item type
+     * @param items the items
+     * @param durations the known durations in seconds; items without duration are started first
+     * @return ordered items; items with equal durations keep their order
+     */
+    public static <T> List<T> longestFirst(List<T> items, final Map<T, Float> durations) {
+        final List<T> result = new ArrayList<T>(items);
+        Collections.sort(result, new Comparator<T>() {
+            @Override
+            public int compare(T o1, T o2) {
+                final Float d1 = durations.get(o1);
+                final Float d2 = durations.get(o2);
+                if (d1 == null || d2 == null) {
+                    return d1 == null ? (d2 == null ? 0 : -1) : 1;
+                }
+                return Float.compare(d2, d1);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Reads the duration of a previous run from a phpunit result xml.
+     * @param xmlFile the xml file
+     * @return the duration (time attribute of the first testsuite) in seconds or {@code null} if unknown
+     */
+    public static Float readDuration(File xmlFile) {
+        if (!xmlFile.isFile()) {
+            return null;
+        }
+        // only the head is scanned; the first testsuite element contains the total time
+        final byte[] head = new byte[XML_HEAD];
+        int len = 0;
+        try {
+            final InputStream is = new FileInputStream(xmlFile);
+            try {
+                int read;
+                while (len < head.length && (read = is.read(head, len, head.length - len)) != -1) {
+                    len += read;
+                }
+            } finally {
+                is.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+        final String xml = new String(head, 0, len);
+        final int suite = xml.indexOf("<testsuite ");
+        if (suite == -1) {
+            return null;
+        }
+        final int end = xml.indexOf('>', suite);
+        final int time = xml.indexOf(" time=\"", suite);
+        if (time == -1 || (end != -1 && time > end)) {
+            return null;
+        }
+        final int start = time + 7;
+        final int quote = xml.indexOf('"', start);
+        if (quote == -1) {
+            return null;
+        }
+        try {
+            return Float.valueOf(xml.substring(start, quote));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+}
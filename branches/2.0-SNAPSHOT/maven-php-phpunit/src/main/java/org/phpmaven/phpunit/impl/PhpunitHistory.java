@@ -0,0 +1,414 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phpunit.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.phpmaven.phpunit.IPhpunitHistory;
+import org.phpmaven.statedb.IStateDatabase;
+
+/**
+ * Phpunit history stored within the state database.
+ * 
+ * <p>
+ * The history is stored as a single string (one line per test file or suite) to keep the state
+ * database independent from the phpunit classes. Test files are identified by their path relative
+ * to the project base directory so that the history can be shared between checkouts.
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class PhpunitHistory implements IPhpunitHistory {
+    
+    /**
+     * The key within the state database.
+     */
+    private static final String KEY = "phpunit.history";
+    
+    /**
+     * Line prefix of test files.
+     */
+    private static final String FILE = "F";
+    
+    /**
+     * Line prefix of test suites.
+     */
+    private static final String SUITE = "S";
+    
+    /**
+     * The state database.
+     */
+    private final IStateDatabase db;
+    
+    /**
+     * The group id.
+     */
+    private final String groupId;
+    
+    /**
+     * The artifact id.
+     */
+    private final String artifactId;
+    
+    /**
+     * The project base directory (see {@link #prefix(File)}).
+     */
+    private final String basedir;
+    
+    /**
+     * The test files.
+     */
+    private final Map<String, FileRecord> files = new HashMap<String, FileRecord>();
+    
+    /**
+     * The test suites.
+     */
+    private final Map<String, SuiteRecord> suites = new HashMap<String, SuiteRecord>();
+    
+    /**
+     * Constructor.
+     * @param db the state database
+     * @param groupId the project group id
+     * @param artifactId the project artifact id
+     * @param basedir the project base directory
+     */
+    public PhpunitHistory(IStateDatabase db, String groupId, String artifactId, File basedir) {
+        this.db = db;
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.basedir = prefix(basedir);
+        final String data = db.get(groupId, artifactId, KEY, String.class);
+        if (data != null) {
+            this.parse(data);
+        }
+    }
+    
+    /**
+     * Parses the stored history.
+     * @param data history data
+     */
+    private void parse(String data) {
+        for (final String line : data.split("\n")) {
+            final String[] cols = line.split("\t");
+            try {
+                if (FILE.equals(cols[0]) && cols.length == 5) {
+                    final FileRecord rec = new FileRecord();
+                    rec.duration = "-".equals(cols[2]) ? null : Float.valueOf(cols[2]);
+                    rec.failed = "1".equals(cols[3]);
+                    rec.lastFailure = Long.parseLong(cols[4]);
+                    this.files.put(cols[1], rec);
+                } else if (SUITE.equals(cols[0]) && cols.length == 4) {
+                    final SuiteRecord rec = new SuiteRecord();
+                    rec.duration = Float.parseFloat(cols[2]);
+                    rec.file = cols[3];
+                    this.suites.put(cols[1], rec);
+                }
+            } catch (NumberFormatException ex) {
+                // ignore corrupt lines
+            }
+        }
+    }
+    
+    /**
+     * Returns the key of a test file.
+     * @param testFile test file
+     * @return the key
+     */
+    private String key(File testFile) {
+        return key(this.basedir, testFile);
+    }
+    
+    /**
+     * Returns the key of a file: the path relative to the project base directory.
+     * @param basedir the project base directory (see {@link #prefix(File)})
+     * @param file the file
+     * @return relative path (with slashes) or the absolute path for files outside the base directory
+     */
+    static String key(String basedir, File file) {
+        final String path = file.getAbsolutePath().replace('\\', '/');
+        return path.startsWith(basedir) ? path.substring(basedir.length()) : path;
+    }
+    
+    /**
+     * Returns the file of a key.
+     * @param key the key (see {@link #key(String, File)})
+     * @return the file
+     */
+    private File resolve(String key) {
+        final File file = new File(key);
+        return file.isAbsolute() ? file : new File(this.basedir + key);
+    }
+    
+    /**
+     * Returns the project base directory as prefix of the keys.
+     * @param basedir the project base directory
+     * @return absolute path with slashes, ending with a slash
+     */
+    static String prefix(File basedir) {
+        return basedir.getAbsolutePath().replace('\\', '/') + "/";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Float getDuration(File testFile) {
+        final FileRecord rec = this.files.get(this.key(testFile));
+        return rec == null ? null : rec.duration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Float getSuiteDuration(String suiteName) {
+        final SuiteRecord rec = this.suites.get(suiteName);
+        return rec == null ? null : rec.duration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isFailed(File testFile) {
+        final FileRecord rec = this.files.get(this.key(testFile));
+        return rec != null && rec.failed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getLastFailure(File testFile) {
+        final FileRecord rec = this.files.get(this.key(testFile));
+        return rec == null ? 0 : rec.lastFailure;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void recordFile(File testFile, Float seconds, boolean failed) {
+        final String key = this.key(testFile);
+        FileRecord rec = this.files.get(key);
+        if (rec == null) {
+            rec = new FileRecord();
+            this.files.put(key, rec);
+        }
+        if (seconds != null) {
+            rec.duration = seconds;
+        }
+        rec.failed = failed;
+        if (failed) {
+            rec.lastFailure = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void recordSuite(String suiteName, File testFile, float seconds) {
+        final SuiteRecord rec = new SuiteRecord();
+        rec.duration = seconds;
+        rec.file = this.key(testFile);
+        this.suites.put(suiteName, rec);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<File> orderLongestFirst(Iterable<File> testFiles) {
+        final List<File> list = new ArrayList<File>();
+        final Map<File, Float> durations = new HashMap<File, Float>();
+        for (final File file : testFiles) {
+            list.add(file);
+            final Float duration = this.getDuration(file);
+            if (duration != null) {
+                durations.put(file, duration);
+            }
+        }
+        return PhpunitForkScheduler.longestFirst(list, durations);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<File> orderFailedFirst(Iterable<File> testFiles) {
+        final List<File> result = this.orderLongestFirst(testFiles);
+        final Map<File, Long> failures = new HashMap<File, Long>();
+        for (final File file : result) {
+            failures.put(file, this.isFailed(file) ? this.getLastFailure(file) : 0L);
+        }
+        // stable sort; the longest first order is kept within the failed and the passed files
+        Collections.sort(result, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return failures.get(o2).compareTo(failures.get(o1));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<File> shard(Iterable<File> testFiles, int index, int count) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        final List<File> list = new ArrayList<File>();
+        for (final File file : testFiles) {
+            list.add(file);
+        }
+        
+        // files without history are estimated with the average duration
+        final Map<File, Float> estimates = new HashMap<File, Float>();
+        float known = 0;
+        int knownCount = 0;
+        for (final File file : list) {
+            final Float duration = this.getDuration(file);
+            if (duration != null) {
+                estimates.put(file, duration);
+                known += duration;
+                knownCount++;
+            }
+        }
+        final float average = knownCount == 0 ? 1 : known / knownCount;
+        for (final File file : list) {
+            if (!estimates.containsKey(file)) {
+                estimates.put(file, average);
+            }
+        }
+        
+        // greedy longest first into the least loaded shard; the order is deterministic (duration, path)
+        final List<File> sorted = new ArrayList<File>(list);
+        Collections.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                final int result = Float.compare(estimates.get(o2), estimates.get(o1));
+                return result != 0 ? result : PhpunitHistory.this.key(o1).compareTo(PhpunitHistory.this.key(o2));
+            }
+        });
+        final float[] loads = new float[count];
+        final Map<File, Integer> shards = new HashMap<File, Integer>();
+        for (final File file : sorted) {
+            int min = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[min]) {
+                    min = i;
+                }
+            }
+            loads[min] += estimates.get(file);
+            shards.put(file, min);
+        }
+        
+        final List<File> result = new ArrayList<File>();
+        for (final File file : list) {
+            if (shards.get(file) == index - 1) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void save() {
+        // renamed or deleted test files must not skew the estimates of the remaining files
+        final Iterator<String> fileIter = this.files.keySet().iterator();
+        while (fileIter.hasNext()) {
+            if (!this.resolve(fileIter.next()).exists()) {
+                fileIter.remove();
+            }
+        }
+        final Iterator<SuiteRecord> suiteIter = this.suites.values().iterator();
+        while (suiteIter.hasNext()) {
+            if (!this.resolve(suiteIter.next().file).exists()) {
+                suiteIter.remove();
+            }
+        }
+        
+        final StringBuilder data = new StringBuilder();
+        for (final Map.Entry<String, FileRecord> entry : this.files.entrySet()) {
+            final FileRecord rec = entry.getValue();
+            data.append(FILE).append('\t').append(entry.getKey()).append('\t');
+            data.append(rec.duration == null ? "-" : rec.duration.toString()).append('\t');
+            data.append(rec.failed ? '1' : '0').append('\t').append(rec.lastFailure).append('\n');
+        }
+        for (final Map.Entry<String, SuiteRecord> entry : this.suites.entrySet()) {
+            final SuiteRecord rec = entry.getValue();
+            data.append(SUITE).append('\t').append(entry.getKey()).append('\t');
+            data.append(rec.duration).append('\t').append(rec.file).append('\n');
+        }
+        this.db.set(this.groupId, this.artifactId, KEY, data.toString());
+        this.db.flush();
+    }
+    
+    /**
+     * History of a single test file.
+     */
+    private static final class FileRecord {
+        
+        /**
+         * Duration in seconds.
+         */
+        private Float duration;
+        
+        /**
+         * true if the last run failed.
+         */
+        private boolean failed;
+        
+        /**
+         * Time of the last failure.
+         */
+        private long lastFailure;
+        
+    }
+    
+    /**
+     * History of a single test suite.
+     */
+    private static final class SuiteRecord {
+        
+        /**
+         * Duration in seconds.
+         */
+        private float duration;
+        
+        /**
+         * Key of the file declaring the suite.
+         */
+        private String file;
+        
+    }
+
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phpunit.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.phpmaven.core.HashUtils;
+import org.phpmaven.phpunit.IPhpunitImpactIndex;
+import org.phpmaven.statedb.IStateDatabase;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Test impact index stored within the state database.
+ * 
+ * <p>
+ * Every test file is stored with its own key; the value is a string with one line per covered file
+ * (content hash and path relative to the project base directory).
+ * </p>
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class PhpunitImpactIndex implements IPhpunitImpactIndex {
+    
+    /**
+     * The key prefix within the state database.
+     */
+    private static final String KEY = "phpunit.impact:";
+    
+    /**
+     * Hash of missing files.
+     */
+    private static final String MISSING = "-";
+    
+    /**
+     * The state database.
+     */
+    private final IStateDatabase db;
+    
+    /**
+     * The group id.
+     */
+    private final String groupId;
+    
+    /**
+     * The artifact id.
+     */
+    private final String artifactId;
+    
+    /**
+     * The project base directory.
+     */
+    private final File basedir;
+    
+    /**
+     * The key prefix of the project base directory.
+     */
+    private final String prefix;
+    
+    /**
+     * The current content hashes; the files do not change during a build.
+     */
+    private final Map<String, String> hashes = new HashMap<String, String>();
+    
+    /**
+     * Constructor.
+     * @param db the state database
+     * @param groupId the project group id
+     * @param artifactId the project artifact id
+     * @param basedir the project base directory
+     */
+    public PhpunitImpactIndex(IStateDatabase db, String groupId, String artifactId, File basedir) {
+        this.db = db;
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.basedir = basedir;
+        this.prefix = PhpunitHistory.prefix(basedir);
+    }
+    
+    /**
+     * Returns the stored coverage of a test.
+     * @param testFile test file
+     * @return map from path to hash or {@code null} if there is no coverage data
+     */
+    private Map<String, String> load(File testFile) {
+        final String data = this.db.get(this.groupId, this.artifactId,
+            KEY + PhpunitHistory.key(this.prefix, testFile), String.class);
+        if (data == null) {
+            return null;
+        }
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        for (final String line : data.split("\n")) {
+            final int tab = line.indexOf('\t');
+            if (tab > 0) {
+                result.put(line.substring(tab + 1), line.substring(0, tab));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Resolves a stored path.
+     * @param path the path
+     * @return file
+     */
+    private File resolve(String path) {
+        final File file = new File(path);
+        return file.isAbsolute() || path.startsWith("/") ? file : new File(this.basedir, path);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<File> getCoveredFiles(File testFile) {
+        final Map<String, String> data = this.load(testFile);
+        if (data == null) {
+            return null;
+        }
+        final Set<File> result = new LinkedHashSet<File>();
+        for (final String path : data.keySet()) {
+            result.add(this.resolve(path));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isImpacted(File testFile) {
+        final Map<String, String> data = this.load(testFile);
+        if (data == null) {
+            return true;
+        }
+        for (final Map.Entry<String, String> entry : data.entrySet()) {
+            if (!entry.getValue().equals(this.hash(entry.getKey()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<File> selectImpacted(Iterable<File> testFiles) {
+        final List<File> result = new ArrayList<File>();
+        for (final File file : testFiles) {
+            if (this.isImpacted(file)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(File testFile, Iterable<File> coveredFiles) {
+        final Set<String> paths = new LinkedHashSet<String>();
+        // the test itself is always part of the coverage
+        paths.add(PhpunitHistory.key(this.prefix, testFile));
+        for (final File file : coveredFiles) {
+            paths.add(PhpunitHistory.key(this.prefix, file));
+        }
+        final StringBuilder data = new StringBuilder();
+        for (final String path : paths) {
+            data.append(this.hash(path)).append('\t').append(path).append('\n');
+        }
+        this.db.set(this.groupId, this.artifactId,
+            KEY + PhpunitHistory.key(this.prefix, testFile), data.toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(File testFile) {
+        this.db.remove(this.groupId, this.artifactId, KEY + PhpunitHistory.key(this.prefix, testFile));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void save() {
+        this.db.flush();
+    }
+    
+    /**
+     * Returns the current content hash of a file.
+     * @param path the stored path
+     * @return hash
+     */
+    private String hash(String path) {
+        synchronized (this.hashes) {
+            String result = this.hashes.get(path);
+            if (result == null) {
+                result = hash(this.resolve(path));
+                this.hashes.put(path, result);
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * Calculates the content hash of a file.
+     * @param file the file
+     * @return hash (hex md5) or {@link #MISSING}
+     */
+    private static String hash(File file) {
+        if (!file.isFile()) {
+            return MISSING;
+        }
+        try {
+            return HashUtils.hash(file, "MD5");
+        } catch (IOException ex) {
+            return MISSING;
+        }
+    }
+    
+    /**
+     * Reads the files from a coverage report (clover xml as written by phpunit --coverage-xml).
+     * Every file of the report is returned, even if none of its lines was counted; files only declaring
+     * interfaces or constants do not have executed lines but the test still depends on them.
+     * @param coverageXml the coverage report
+     * @return files of the report
+     * @throws IOException thrown on io errors
+     * @throws SAXException thrown on xml errors
+     * @throws ParserConfigurationException thrown on xml errors
+     */
+    public static Set<File> readCoverage(File coverageXml)
+        throws IOException, SAXException, ParserConfigurationException {
+        final Set<File> result = new LinkedHashSet<File>();
+        SAXParserFactory.newInstance().newSAXParser().parse(coverageXml, new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if ("file".equals(qName)) {
+                    final String name = attributes.getValue("name");
+                    if (name != null) {
+                        result.add(new File(name));
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+}
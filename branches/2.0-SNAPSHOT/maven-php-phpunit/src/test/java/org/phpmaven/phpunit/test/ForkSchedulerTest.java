@@ -0,0 +1,81 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phpunit.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.phpmaven.phpunit.impl.PhpunitForkScheduler;
+
+/**
+ * test cases for the ordering of forked phpunit invocations.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class ForkSchedulerTest extends TestCase {
+
+    /**
+     * Tests the longest first ordering.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testLongestFirst() throws Exception {
+        final Map<String, Float> durations = new HashMap<String, Float>();
+        durations.put("a", 1f);
+        durations.put("b", 10f);
+        durations.put("d", 5f);
+        durations.put("e", 5f);
+        final List<String> ordered = PhpunitForkScheduler.longestFirst(
+            Arrays.asList("a", "b", "c", "d", "e"), durations);
+        // unknown durations first; equal durations keep their order
+        assertEquals(Arrays.asList("c", "b", "d", "e", "a"), ordered);
+    }
+
+    /**
+     * Tests reading the duration of a previous run.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testReadDuration() throws Exception {
+        final File xml = File.createTempFile("phpunit", ".xml");
+        try {
+            final FileWriter writer = new FileWriter(xml);
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuites>\n"
+                + "  <testsuite name=\"FooTest\" file=\"/tmp/FooTest.php\" tests=\"2\" assertions=\"2\" "
+                + "failures=\"0\" errors=\"0\" time=\"1.250000\">\n"
+                + "    <testcase name=\"testFoo\" time=\"0.5\"/>\n  </testsuite>\n</testsuites>\n");
+            writer.close();
+            assertEquals(Float.valueOf(1.25f), PhpunitForkScheduler.readDuration(xml));
+            
+            final FileWriter writer2 = new FileWriter(xml);
+            writer2.write("garbage");
+            writer2.close();
+            assertNull(PhpunitForkScheduler.readDuration(xml));
+        } finally {
+            xml.delete();
+        }
+        assertNull(PhpunitForkScheduler.readDuration(xml));
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phpunit.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.phpmaven.phpunit.IPhpunitHistory;
+import org.phpmaven.phpunit.impl.PhpunitHistory;
+import org.phpmaven.statedb.IStateDatabase;
+import org.phpmaven.statedb.LogStateDatabase;
+
+/**
+ * test cases for the phpunit history.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class HistoryTest extends TestCase {
+    
+    /**
+     * The project base directory.
+     */
+    private File basedir;
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        this.basedir = File.createTempFile("project", "");
+        this.basedir.delete();
+        new File(this.basedir, "src/test/php").mkdirs();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(this.basedir);
+    }
+    
+    /**
+     * Returns a test file.
+     * @param name file name
+     * @return test file
+     */
+    private File file(String name) {
+        return new File(this.basedir, "src/test/php/" + name);
+    }
+    
+    /**
+     * Returns an existing test file.
+     * @param name file name
+     * @return test file
+     * @throws Exception thrown on errors
+     */
+    private File create(String name) throws Exception {
+        final File result = this.file(name);
+        FileUtils.fileWrite(result.getAbsolutePath(), "<?php");
+        return result;
+    }
+
+    /**
+     * Tests persisting and ordering.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testPersistence() throws Exception {
+        final File dbfile = File.createTempFile("phpunit", ".db");
+        dbfile.delete();
+        final IStateDatabase db = new LogStateDatabase(dbfile);
+        try {
+            final IPhpunitHistory history = new PhpunitHistory(db, "org.sample", "sample", this.basedir);
+            history.recordFile(create("ATest.php"), 1f, false);
+            history.recordFile(create("BTest.php"), 5f, false);
+            history.recordFile(create("CTest.php"), 2f, true);
+            history.recordSuite("ATest", file("ATest.php"), 1f);
+            history.save();
+            
+            // the history is bound to the relative path
+            final IPhpunitHistory loaded = new PhpunitHistory(db, "org.sample", "sample", new File("/other/project"));
+            assertEquals(Float.valueOf(5f), loaded.getDuration(new File("/other/project/src/test/php/BTest.php")));
+            assertEquals(Float.valueOf(1f), loaded.getSuiteDuration("ATest"));
+            
+            final IPhpunitHistory reloaded = new PhpunitHistory(db, "org.sample", "sample", this.basedir);
+            assertTrue(reloaded.isFailed(file("CTest.php")));
+            assertFalse(reloaded.isFailed(file("ATest.php")));
+            assertTrue(reloaded.getLastFailure(file("CTest.php")) > 0);
+            assertNull(reloaded.getDuration(file("DTest.php")));
+            
+            final List<File> all = Arrays.asList(file("ATest.php"), file("BTest.php"), file("CTest.php"), file("DTest.php"));
+            assertEquals(
+                Arrays.asList(file("DTest.php"), file("BTest.php"), file("CTest.php"), file("ATest.php")),
+                reloaded.orderLongestFirst(all));
+            assertEquals(
+                Arrays.asList(file("CTest.php"), file("DTest.php"), file("BTest.php"), file("ATest.php")),
+                reloaded.orderFailedFirst(all));
+            
+            // php errors keep the previous duration
+            reloaded.recordFile(file("BTest.php"), null, true);
+            assertEquals(Float.valueOf(5f), reloaded.getDuration(file("BTest.php")));
+            assertTrue(reloaded.isFailed(file("BTest.php")));
+        } finally {
+            db.delete();
+        }
+    }
+
+    /**
+     * Tests that the history of deleted test files is removed.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testPrune() throws Exception {
+        final File dbfile = File.createTempFile("phpunit", ".db");
+        dbfile.delete();
+        final IStateDatabase db = new LogStateDatabase(dbfile);
+        try {
+            final IPhpunitHistory history = new PhpunitHistory(db, "org.sample", "sample", this.basedir);
+            history.recordFile(create("ATest.php"), 1f, false);
+            history.recordFile(create("BTest.php"), 100f, false);
+            history.recordSuite("ATest", file("ATest.php"), 1f);
+            history.recordSuite("BTest", file("BTest.php"), 100f);
+            history.save();
+            
+            // renamed test file
+            assertTrue(file("BTest.php").renameTo(file("RenamedTest.php")));
+            final IPhpunitHistory loaded = new PhpunitHistory(db, "org.sample", "sample", this.basedir);
+            assertEquals(Float.valueOf(100f), loaded.getDuration(file("BTest.php")));
+            loaded.save();
+            
+            final IPhpunitHistory reloaded = new PhpunitHistory(db, "org.sample", "sample", this.basedir);
+            assertEquals(Float.valueOf(1f), reloaded.getDuration(file("ATest.php")));
+            assertEquals(Float.valueOf(1f), reloaded.getSuiteDuration("ATest"));
+            assertNull(reloaded.getDuration(file("BTest.php")));
+            assertNull(reloaded.getSuiteDuration("BTest"));
+        } finally {
+            db.delete();
+        }
+    }
+
+    /**
+     * Tests sharding.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testShard() throws Exception {
+        final File dbfile = File.createTempFile("phpunit", ".db");
+        dbfile.delete();
+        final IStateDatabase db = new LogStateDatabase(dbfile);
+        try {
+            final IPhpunitHistory history = new PhpunitHistory(db, "org.sample", "sample", this.basedir);
+            final List<File> all = new ArrayList<File>();
+            for (int i = 0; i < 20; i++) {
+                final File f = file("T" + i + "Test.php");
+                all.add(f);
+                history.recordFile(f, (float) (i + 1), false);
+            }
+            // no history
+            all.add(file("NewTest.php"));
+            
+            final Set<File> seen = new HashSet<File>();
+            final float[] loads = new float[3];
+            for (int s = 1; s <= 3; s++) {
+                for (final File f : history.shard(all, s, 3)) {
+                    assertTrue(seen.add(f));
+                    final Float d = history.getDuration(f);
+                    loads[s - 1] += d == null ? 10.5f : d;
+                }
+            }
+            assertEquals(all.size(), seen.size());
+            // total is 220.5; every shard is close to a third
+            for (final float load : loads) {
+                assertTrue(String.valueOf(load), Math.abs(load - 73.5f) < 5f);
+            }
+            
+            // order is kept
+            final List<File> shard = history.shard(all, 2, 3);
+            final List<File> sorted = new ArrayList<File>(all);
+            sorted.retainAll(shard);
+            assertEquals(sorted, shard);
+            
+            try {
+                history.shard(all, 4, 3);
+                fail("Exception expected");
+            } catch (IllegalArgumentException ex) {
+                // ok
+            }
+        } finally {
+            db.delete();
+        }
+    }
+
+}
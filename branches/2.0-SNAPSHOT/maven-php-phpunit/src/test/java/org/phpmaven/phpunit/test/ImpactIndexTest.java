@@ -0,0 +1,144 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.phpunit.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.phpmaven.phpunit.IPhpunitImpactIndex;
+import org.phpmaven.phpunit.impl.PhpunitImpactIndex;
+import org.phpmaven.statedb.IStateDatabase;
+import org.phpmaven.statedb.LogStateDatabase;
+
+/**
+ * test cases for the test impact index.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class ImpactIndexTest extends TestCase {
+    
+    /**
+     * Writes a file.
+     * @param file the file
+     * @param content the content
+     * @throws Exception thrown on errors
+     */
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        final FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+    }
+    
+    /**
+     * Deletes a folder.
+     * @param file folder
+     */
+    private static void delete(File file) {
+        if (file.isDirectory()) {
+            for (final File child : file.listFiles()) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Tests the selection of impacted tests.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testImpact() throws Exception {
+        final File basedir = File.createTempFile("phpunit", "impact");
+        basedir.delete();
+        final File a = new File(basedir, "src/main/php/A.php");
+        final File b = new File(basedir, "src/main/php/B.php");
+        final File aTest = new File(basedir, "src/test/php/ATest.php");
+        final File bTest = new File(basedir, "src/test/php/BTest.php");
+        final File newTest = new File(basedir, "src/test/php/NewTest.php");
+        write(a, "<?php class A {}");
+        write(b, "<?php class B {}");
+        write(aTest, "<?php class ATest {}");
+        write(bTest, "<?php class BTest {}");
+        write(newTest, "<?php class NewTest {}");
+        final IStateDatabase db = new LogStateDatabase(new File(basedir, "target/phpmaven.state.db"));
+        try {
+            final IPhpunitImpactIndex index = new PhpunitImpactIndex(db, "org.sample", "sample", basedir);
+            index.record(aTest, Arrays.asList(a));
+            index.record(bTest, Arrays.asList(a, b));
+            index.save();
+            
+            assertEquals(new HashSet<File>(Arrays.asList(aTest, a)), index.getCoveredFiles(aTest));
+            assertNull(index.getCoveredFiles(newTest));
+            assertEquals(
+                Arrays.asList(newTest),
+                index.selectImpacted(Arrays.asList(aTest, bTest, newTest)));
+            
+            // change B; a new index instance is needed because the hashes are cached per build
+            write(b, "<?php class B { public $x; }");
+            final IPhpunitImpactIndex changed = new PhpunitImpactIndex(db, "org.sample", "sample", basedir);
+            assertEquals(
+                Arrays.asList(bTest, newTest),
+                changed.selectImpacted(Arrays.asList(aTest, bTest, newTest)));
+            
+            // changing the test itself
+            write(aTest, "<?php class ATest { public $y; }");
+            assertTrue(new PhpunitImpactIndex(db, "org.sample", "sample", basedir).isImpacted(aTest));
+            
+            // removed tests are impacted
+            changed.remove(bTest);
+            assertTrue(changed.isImpacted(bTest));
+            changed.record(bTest, Collections.<File>emptyList());
+            assertFalse(changed.isImpacted(bTest));
+        } finally {
+            db.delete();
+            delete(basedir);
+        }
+    }
+
+    /**
+     * Tests reading a clover coverage report.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testReadCoverage() throws Exception {
+        final File xml = File.createTempFile("coverage", ".xml");
+        try {
+            write(xml, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<coverage generated=\"1\" phpunit=\"3.6.0\"><project name=\"Foo\" timestamp=\"1\">"
+                + "<file name=\"/src/A.php\"><class name=\"A\"/><line num=\"3\" type=\"stmt\" count=\"2\"/></file>"
+                + "<package name=\"x\"><file name=\"/src/B.php\"><line num=\"3\" type=\"stmt\" count=\"0\"/></file>"
+                + "<file name=\"/src/C.php\"><line num=\"3\" type=\"stmt\" count=\"0\"/>"
+                + "<line num=\"4\" type=\"method\" count=\"1\"/></file>"
+                + "<file name=\"/src/D.php\"><class name=\"D\"/></file></package>"
+                + "<metrics files=\"4\"/></project></coverage>");
+            final Set<File> covered = PhpunitImpactIndex.readCoverage(xml);
+            assertEquals(new HashSet<File>(Arrays.asList(new File("/src/A.php"), new File("/src/B.php"),
+                    new File("/src/C.php"), new File("/src/D.php"))), covered);
+        } finally {
+            xml.delete();
+        }
+    }
+
+}
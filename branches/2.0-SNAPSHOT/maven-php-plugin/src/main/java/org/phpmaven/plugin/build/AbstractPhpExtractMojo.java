@@ -37,6 +37,36 @@ import org.phpmaven.project.IProjectPhpExecution;
  */
 public abstract class AbstractPhpExtractMojo extends AbstractPhpMojo {
 
+    /**
+     * Number of threads used to extract the dependencies; 0 for one thread per available processor.
+     *
+     * @parameter default-value="0" expression="${php.extract.threads}"
+     */
+    private int extractThreads;
+
+    /**
+     * If true the dependencies are extracted once into a cache shared by all modules and builds and copied
+     * from there.
+     *
+     * @parameter default-value="false" expression="${php.extract.cache}"
+     */
+    private boolean extractCache;
+
+    /**
+     * The directory of the extraction cache; defaults to ".cache/php-deps" within the local repository.
+     *
+     * @parameter expression="${php.extract.cacheDirectory}"
+     */
+    private File extractCacheDirectory;
+
+    /**
+     * The maximum size of the extraction cache in megabytes. The least recently used dependencies are
+     * removed if the cache grows larger.
+     *
+     * @parameter default-value="2048" expression="${php.extract.cacheSize}"
+     */
+    private long extractCacheSize;
+
     /**
      * Returns the scope from which dependencies should be unpacked from.
      * @return target scope
@@ -76,12 +106,20 @@ public abstract class AbstractPhpExtractMojo extends AbstractPhpMojo {
         try {
             // TODO move this to a plugin (f.e. maven-php-project)
             // TODO verify integrity of dependencies config
+            final DependencyExtractor extractor = new DependencyExtractor(
+                getLog(), this.factory, this.getSession(), this.extractThreads);
+            if (this.extractCache) {
+                File cacheDir = this.extractCacheDirectory;
+                if (cacheDir == null) {
+                    cacheDir = new File(this.getSession().getLocalRepository().getBasedir(), ".cache/php-deps");
+                }
+                extractor.setCache(new ExtractionCache(getLog(), cacheDir, this.extractCacheSize * 1024 * 1024));
+            }
             this.getPhpHelper().prepareDependencies(
-                this.factory,
-                this.getSession(),
-                targetDir,
                 getTargetScope(),
-                depConfig);
+                depConfig,
+                targetDir,
+                extractor);
         } catch (MultiException e) {
             throw new MojoExecutionException(e.getMessage(), e);
         } catch (PhpException e) {
@@ -23,6 +23,7 @@ import org.codehaus.plexus.configuration.PlexusConfigurationException;
 import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.lint.ILintChecker;
 import org.phpmaven.lint.ILintExecution;
+import org.phpmaven.lint.ILintListener;
 import org.phpmaven.plugin.php.AbstractPhpWalkHelper;
 import org.phpmaven.plugin.php.IPhpWalkConfigurationMojo;
 import org.phpmaven.plugin.php.MultiException;
@@ -128,6 +129,14 @@ public abstract class AbstractPhpResources extends AbstractPhpMojo {
         try {
             getLog().info("Copying source files and performing LINT validation...");
             this.checker = this.factory.lookup(ILintChecker.class, IComponentFactory.EMPTY_CONFIG, this.getSession());
+            this.checker.setListener(new ILintListener() {
+                @Override
+                public void onFailure(ILintExecution failure) {
+                    getLog().info("Lint check failure for " + failure.getFile(), failure.getException());
+                }
+            });
+            // lint checks are performed while walking the source folder
+            this.checker.start(this.getLog());
             new PhpWalkHelper(this).goRecursiveAndCall(this.getSourceFolder());
         } catch (MultiException e) {
             throw new MojoExecutionException(e.getMessage(), e);
@@ -137,12 +146,8 @@ public abstract class AbstractPhpResources extends AbstractPhpMojo {
             throw new MojoExecutionException(e.getMessage(), e);
         }
         
-        boolean hadFailure = false;
-        for (final ILintExecution failure : this.checker.run(this.getLog())) {
-            getLog().info("Lint check failure for " + failure.getFile(), failure.getException());
-            hadFailure = true;
-        }
-        if (hadFailure) {
+        // failures were already logged by the listener
+        if (this.checker.run(this.getLog()).iterator().hasNext()) {
             throw new MojoExecutionException("Lint check failures.");
         }
     }
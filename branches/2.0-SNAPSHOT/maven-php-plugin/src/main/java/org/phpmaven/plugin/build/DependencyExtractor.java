@@ -0,0 +1,595 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.plugin.build;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.codehaus.plexus.configuration.PlexusConfigurationException;
+import org.codehaus.plexus.util.FileUtils;
+import org.phpmaven.core.HashUtils;
+import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.phar.IPharPackager;
+import org.phpmaven.phar.PharJavaPackager;
+
+/**
+ * Extracts dependencies (jar, phar and zip files) into target directories.
+ *
+ * <p>
+ * A manifest is written for every extracted dependency (artifact coordinates, size, modification time
+ * and SHA-1 checksum of the dependency file and the list of extracted files). The manifests are stored
+ * in the directory "phpmaven-deps" within the build directory of the project (one sub directory per target
+ * directory). Unchanged dependencies are skipped. Changed dependencies are extracted in parallel into a
+ * staging directory; afterwards the files of the previous version are removed and the new files are moved
+ * into the target directory. The manifest is written last so that an interrupted extraction is repeated by
+ * the next build.
+ * </p>
+ *
+ * <p>
+ * If an {@link ExtractionCache} is set the dependencies are extracted once into the cache and copied from
+ * there.
+ * </p>
+ *
+ * <p>
+ * If multiple dependencies contain the same file the file of the dependency added first wins.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class DependencyExtractor {
+
+    /**
+     * Name of the manifest directory (within the build directory).
+     */
+    public static final String MANIFEST_DIR = "phpmaven-deps";
+
+    /**
+     * Manifest file extension.
+     */
+    private static final String MANIFEST_SUFFIX = ".manifest";
+
+    /**
+     * A dependency to be extracted.
+     */
+    private static final class Job {
+
+        /**
+         * The artifact.
+         */
+        private final Artifact artifact;
+
+        /**
+         * The target directory.
+         */
+        private final File targetDir;
+
+        /**
+         * The path inside the archive (normalized); empty for all files.
+         */
+        private final String path;
+
+        /**
+         * The manifest file.
+         */
+        private final File manifestFile;
+
+        /**
+         * The staging directory.
+         */
+        private final File stagingDir;
+
+        /**
+         * The new manifest; null if the dependency is unchanged.
+         */
+        private Manifest manifest;
+
+        /**
+         * The manifest of the unchanged dependency; null if the dependency changed.
+         */
+        private Manifest current;
+
+        /**
+         * Constructor.
+         * @param artifact the artifact
+         * @param targetDir the target directory
+         * @param path the path inside the archive (normalized); empty for all files
+         * @param manifestDir the manifest directory
+         */
+        Job(Artifact artifact, File targetDir, String path, File manifestDir) {
+            this.artifact = artifact;
+            this.targetDir = targetDir;
+            this.path = path;
+            String key = artifact.getGroupId() + "_" + artifact.getArtifactId();
+            if (artifact.getClassifier() != null && artifact.getClassifier().length() > 0) {
+                key += "_" + artifact.getClassifier();
+            }
+            key += pathKey(path);
+            final File dir = new File(manifestDir, dirKey(targetDir));
+            this.manifestFile = new File(dir, key + MANIFEST_SUFFIX);
+            this.stagingDir = new File(dir, key + ".tmp");
+        }
+
+    }
+
+    /**
+     * The manifest of an extracted dependency.
+     */
+    private static final class Manifest {
+
+        /**
+         * The artifact coordinates.
+         */
+        private String artifact;
+
+        /**
+         * Size of the dependency file.
+         */
+        private long size;
+
+        /**
+         * Modification time of the dependency file.
+         */
+        private long lastModified;
+
+        /**
+         * SHA-1 checksum of the dependency file.
+         */
+        private String sha1;
+
+        /**
+         * The extracted files (relative paths).
+         */
+        private final List<String> files = new ArrayList<String>();
+
+        /**
+         * Reads a manifest.
+         * @param file the manifest file
+         * @return manifest or null if the file does not exist or is not readable
+         */
+        static Manifest read(File file) {
+            if (!file.isFile()) {
+                // interrupted while replacing the manifest
+                final File old = new File(file.getParentFile(), file.getName() + ".old");
+                return old.isFile() ? read(old) : null;
+            }
+            final Manifest result = new Manifest();
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+                try {
+                    String line = reader.readLine();
+                    while (line != null) {
+                        final int pos = line.indexOf('=');
+                        if (pos != -1) {
+                            final String key = line.substring(0, pos);
+                            final String value = line.substring(pos + 1);
+                            if ("artifact".equals(key)) {
+                                result.artifact = value;
+                            } else if ("size".equals(key)) {
+                                result.size = Long.parseLong(value);
+                            } else if ("lastModified".equals(key)) {
+                                result.lastModified = Long.parseLong(value);
+                            } else if ("sha1".equals(key)) {
+                                result.sha1 = value;
+                            } else if ("file".equals(key)) {
+                                result.files.add(value);
+                            }
+                        }
+                        line = reader.readLine();
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException ex) {
+                return null;
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+            return result.artifact == null || result.sha1 == null ? null : result;
+        }
+
+        /**
+         * Writes the manifest into a temporary file and renames it. If the file system cannot replace
+         * files by renaming the previous manifest is renamed first and removed afterwards; it is read
+         * instead of the manifest if the replacement is interrupted.
+         * @param file the manifest file
+         * @throws IOException thrown on io errors
+         */
+        void write(File file) throws IOException {
+            file.getParentFile().mkdirs();
+            final File tmp = new File(file.getParentFile(), file.getName() + ".new");
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            try {
+                writer.write("# php-maven dependency manifest\n");
+                writer.write("artifact=" + this.artifact + "\n");
+                writer.write("size=" + this.size + "\n");
+                writer.write("lastModified=" + this.lastModified + "\n");
+                writer.write("sha1=" + this.sha1 + "\n");
+                for (final String f : this.files) {
+                    writer.write("file=" + f + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            if (!tmp.renameTo(file)) {
+                final File old = new File(file.getParentFile(), file.getName() + ".old");
+                old.delete();
+                if (file.exists() && !file.renameTo(old)) {
+                    throw new IOException("Cannot rename " + file + " to " + old);
+                }
+                if (!tmp.renameTo(file)) {
+                    old.renameTo(file);
+                    throw new IOException("Cannot rename " + tmp + " to " + file);
+                }
+                old.delete();
+            }
+        }
+
+    }
+
+    /**
+     * The logger.
+     */
+    private final Log log;
+
+    /**
+     * The component factory.
+     */
+    private final IComponentFactory factory;
+
+    /**
+     * The maven session.
+     */
+    private final MavenSession session;
+
+    /**
+     * Number of threads.
+     */
+    private final int threads;
+
+    /**
+     * The manifest directory.
+     */
+    private final File manifestDir;
+
+    /**
+     * The dependencies to be extracted.
+     */
+    private final List<Job> jobs = new ArrayList<Job>();
+
+    /**
+     * The extraction cache; null to extract the dependencies directly.
+     */
+    private ExtractionCache cache;
+
+    /**
+     * Constructor.
+     * @param log the logger
+     * @param factory the component factory
+     * @param session the maven session
+     * @param threads number of threads; 0 for one thread per available processor
+     */
+    public DependencyExtractor(Log log, IComponentFactory factory, MavenSession session, int threads) {
+        this.log = log;
+        this.factory = factory;
+        this.session = session;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.manifestDir = new File(session.getCurrentProject().getBuild().getDirectory(), MANIFEST_DIR);
+    }
+
+    /**
+     * Sets the extraction cache.
+     * @param cache the cache; null to extract the dependencies directly
+     */
+    public void setCache(ExtractionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Adds a dependency to be extracted.
+     * @param artifact the dependency
+     * @param targetDir the target directory
+     */
+    public void add(Artifact artifact, File targetDir) {
+        this.add(artifact, targetDir, "/");
+    }
+
+    /**
+     * Adds a dependency of which only the files below the given path are extracted. Dependencies that are
+     * not resolved to a file (for example reactor projects resolved to their classes directory) are skipped.
+     * @param artifact the dependency
+     * @param targetDir the target directory
+     * @param path the path inside the archive; "/" for all files
+     */
+    public void add(Artifact artifact, File targetDir, String path) {
+        final File source = artifact.getFile();
+        if (source == null || !source.isFile()) {
+            this.log.debug("Dependency " + artifact.getId() + " is not a file (" + source + "). skipping.");
+            return;
+        }
+        this.jobs.add(new Job(artifact, targetDir, FileHelper.normalizeArchivePath(path), this.manifestDir));
+    }
+
+    /**
+     * Extracts the dependencies.
+     * @throws IOException thrown if the extraction failed
+     */
+    public void run() throws IOException {
+        if (this.jobs.isEmpty()) {
+            return;
+        }
+        final IPharPackager packager;
+        try {
+            packager = this.factory.lookup(
+                IPharPackager.class, "JAVA", IComponentFactory.EMPTY_CONFIG, this.session);
+        } catch (ComponentLookupException ex) {
+            throw new IOException("Error while extracting dependencies", ex);
+        } catch (PlexusConfigurationException ex) {
+            throw new IOException("Error while extracting dependencies", ex);
+        }
+        final int count = Math.min(this.threads, this.jobs.size());
+        if (count > 1 && packager instanceof PharJavaPackager) {
+            // the dependencies are already extracted in parallel
+            ((PharJavaPackager) packager).setExtractThreads(1);
+        }
+
+        // extract the changed dependencies into the staging directories
+        final ExecutorService executor = Executors.newFixedThreadPool(count, new ThreadFactory() {
+            private final AtomicInteger number = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "Dependency-Extractor-" + this.number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final Job job : this.jobs) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        DependencyExtractor.this.prepare(job, packager);
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting dependencies");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Error while extracting dependencies", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // replace the files in dependency order; files of dependencies added before are not overwritten
+        final Map<File, Set<String>> owned = new HashMap<File, Set<String>>();
+        int skipped = 0;
+        for (final Job job : this.jobs) {
+            Set<String> files = owned.get(job.targetDir);
+            if (files == null) {
+                files = new HashSet<String>();
+                owned.put(job.targetDir, files);
+            }
+            if (job.manifest == null) {
+                skipped++;
+                files.addAll(job.current.files);
+            } else {
+                this.commit(job, files);
+                files.addAll(job.manifest.files);
+            }
+        }
+        if (skipped > 0) {
+            this.log.info("Skipped " + skipped + " unchanged dependencies.");
+        }
+    }
+
+    /**
+     * Checks if the dependency changed and extracts it into the staging directory.
+     * @param job the dependency
+     * @param packager the phar packager
+     * @throws IOException thrown on io errors
+     */
+    private void prepare(Job job, IPharPackager packager) throws IOException {
+        final File source = job.artifact.getFile();
+        final Manifest old = Manifest.read(job.manifestFile);
+        final String coordinates = job.artifact.getId() + (job.path.length() == 0 ? "" : "!/" + job.path);
+        String sha1 = null;
+        if (old != null && old.artifact.equals(coordinates) && old.size == source.length()) {
+            if (old.lastModified != source.lastModified()) {
+                sha1 = sha1(source);
+            }
+            if ((sha1 == null || sha1.equals(old.sha1)) && this.exists(job.targetDir, old.files)) {
+                if (sha1 != null) {
+                    // touched but unchanged
+                    old.lastModified = source.lastModified();
+                    old.write(job.manifestFile);
+                }
+                this.log.debug("Dependency " + coordinates + " is unchanged. skipping.");
+                job.current = old;
+                return;
+            }
+        }
+
+        this.log.info("Extracting " + source.getAbsolutePath() + " to " + job.targetDir);
+        if (job.stagingDir.exists()) {
+            FileUtils.deleteDirectory(job.stagingDir);
+        }
+        job.stagingDir.mkdirs();
+        if (sha1 == null) {
+            sha1 = sha1(source);
+        }
+        if (this.cache == null) {
+            FileHelper.unpack(this.log, source, job.stagingDir, packager, job.path);
+        } else {
+            this.cache.extractTo(source, sha1, job.path, packager, job.stagingDir);
+        }
+
+        final Manifest manifest = new Manifest();
+        manifest.artifact = coordinates;
+        manifest.size = source.length();
+        manifest.lastModified = source.lastModified();
+        manifest.sha1 = sha1;
+        listFiles(job.stagingDir, "", manifest.files);
+        job.manifest = manifest;
+    }
+
+    /**
+     * Checks if all extracted files still exist.
+     * @param targetDir the target directory
+     * @param files the relative file names
+     * @return true if all files exist
+     */
+    private boolean exists(File targetDir, List<String> files) {
+        for (final String file : files) {
+            if (!new File(targetDir, file).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the files of the previous version and moves the extracted files into the target directory.
+     * @param job the dependency
+     * @param owned the files of dependencies added before; these files are not overwritten
+     * @throws IOException thrown on io errors
+     */
+    private void commit(Job job, Set<String> owned) throws IOException {
+        final Manifest old = Manifest.read(job.manifestFile);
+        if (old != null) {
+            // files owned by other dependencies of the same target directory are kept
+            final Set<String> keep = new HashSet<String>(job.manifest.files);
+            final File[] manifests = job.manifestFile.getParentFile().listFiles();
+            if (manifests != null) {
+                for (final File file : manifests) {
+                    if (file.getName().endsWith(MANIFEST_SUFFIX) && !file.equals(job.manifestFile)) {
+                        final Manifest other = Manifest.read(file);
+                        if (other != null) {
+                            keep.addAll(other.files);
+                        }
+                    }
+                }
+            }
+            for (final String file : old.files) {
+                if (!keep.contains(file)) {
+                    new File(job.targetDir, file).delete();
+                }
+            }
+        }
+
+        for (final String file : job.manifest.files) {
+            if (owned.contains(file)) {
+                continue;
+            }
+            final File source = new File(job.stagingDir, file);
+            final File target = new File(job.targetDir, file);
+            target.getParentFile().mkdirs();
+            if (target.exists() && !target.delete()) {
+                throw new IOException("Cannot replace " + target);
+            }
+            if (!source.renameTo(target)) {
+                FileUtils.copyFile(source, target);
+            }
+        }
+        FileUtils.deleteDirectory(job.stagingDir);
+        job.manifest.write(job.manifestFile);
+    }
+
+    /**
+     * Returns the name of the manifest directory for the given target directory.
+     * @param targetDir the target directory
+     * @return directory name
+     */
+    static String dirKey(File targetDir) {
+        return targetDir.getName().replaceAll("[^A-Za-z0-9\\-]", "_")
+            + "_" + Integer.toHexString(targetDir.getAbsolutePath().hashCode());
+    }
+
+    /**
+     * Returns the file name suffix for the given path inside an archive.
+     * @param path the path (normalized)
+     * @return suffix; empty for the root
+     */
+    static String pathKey(String path) {
+        if (path.length() == 0) {
+            return "";
+        }
+        return "_" + path.replaceAll("[^A-Za-z0-9\\-]", "_") + Integer.toHexString(path.hashCode());
+    }
+
+    /**
+     * Lists the files of a directory recursively.
+     * @param dir the directory
+     * @param prefix the relative path of the directory
+     * @param result receives the relative paths
+     */
+    private static void listFiles(File dir, String prefix, List<String> result) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, prefix + file.getName() + "/", result);
+            } else {
+                result.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Calculates the SHA-1 checksum of a file.
+     * @param file the file
+     * @return hex encoded checksum
+     * @throws IOException thrown on io errors
+     */
+    private static String sha1(File file) throws IOException {
+        return HashUtils.hash(file, "SHA-1");
+    }
+
+}
@@ -0,0 +1,406 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.plugin.build;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.phpmaven.phar.IPharPackager;
+
+/**
+ * A cache of extracted dependencies shared by all modules and builds.
+ *
+ * <p>
+ * The cache is keyed by the SHA-1 checksum of the dependency file and the extracted path. Each dependency is extracted once into
+ * the directory &lt;sha1&gt; of the cache and copied from there into the target directories. A marker
+ * file &lt;sha1&gt;.size is written after the extraction completed; it holds the size of the extracted files
+ * and its modification time is the last access time used for the eviction. If the cache grows larger than
+ * the configured size the least recently used entries are removed.
+ * </p>
+ *
+ * <p>
+ * Every entry is guarded by a lock that is held while the entry is extracted, copied or evicted. The lock
+ * is a {@link ReentrantLock} for threads of the same jvm (parallel reactor builds) and a {@link FileLock}
+ * on the file &lt;sha1&gt;.lock for concurrent builds. The lock file is removed together with an evicted entry;
+ * before it is removed a byte is written into it so that builds waiting for the removed file retry with a new
+ * lock file.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class ExtractionCache {
+
+    /**
+     * The locks of the entries used by this jvm; guarded by itself.
+     */
+    private static final Map<String, JvmLock> LOCKS = new HashMap<String, JvmLock>();
+
+    /**
+     * Extension of the marker files.
+     */
+    private static final String SIZE_SUFFIX = ".size";
+
+    /**
+     * Extension of the lock files.
+     */
+    private static final String LOCK_SUFFIX = ".lock";
+
+    /**
+     * The lock of an entry within this jvm.
+     */
+    private static final class JvmLock {
+
+        /**
+         * The lock.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Number of threads using the lock; unused locks are removed from {@link ExtractionCache#LOCKS}.
+         */
+        private int users;
+
+    }
+
+    /**
+     * A locked cache entry.
+     */
+    private final class Lock {
+
+        /**
+         * The path of the entry.
+         */
+        private final String path;
+
+        /**
+         * The lock file.
+         */
+        private final File lockFile;
+
+        /**
+         * The jvm lock; null if the lock is not acquired.
+         */
+        private JvmLock jvmLock;
+
+        /**
+         * The opened lock file.
+         */
+        private RandomAccessFile file;
+
+        /**
+         * The file lock.
+         */
+        private FileLock fileLock;
+
+        /**
+         * Constructor.
+         * @param key the cache key
+         */
+        Lock(String key) {
+            this.path = new File(ExtractionCache.this.directory, key).getAbsolutePath();
+            this.lockFile = new File(ExtractionCache.this.directory, key + LOCK_SUFFIX);
+        }
+
+        /**
+         * Acquires the lock.
+         * @param wait true to wait for the lock; false to return immediately
+         * @return true if the lock was acquired
+         * @throws IOException thrown on io errors
+         */
+        boolean acquire(boolean wait) throws IOException {
+            synchronized (LOCKS) {
+                this.jvmLock = LOCKS.get(this.path);
+                if (this.jvmLock == null) {
+                    this.jvmLock = new JvmLock();
+                    LOCKS.put(this.path, this.jvmLock);
+                }
+                this.jvmLock.users++;
+            }
+            if (wait) {
+                this.jvmLock.lock.lock();
+            } else if (!this.jvmLock.lock.tryLock()) {
+                this.unuse();
+                return false;
+            }
+            try {
+                while (true) {
+                    this.file = new RandomAccessFile(this.lockFile, "rw");
+                    final FileChannel channel = this.file.getChannel();
+                    this.fileLock = wait ? channel.lock() : channel.tryLock();
+                    if (this.fileLock == null) {
+                        this.release();
+                        return false;
+                    }
+                    if (this.file.length() == 0) {
+                        return true;
+                    }
+                    // the lock file was removed by an eviction while waiting for it
+                    this.closeFile();
+                    if (!wait) {
+                        this.release();
+                        return false;
+                    }
+                }
+            } catch (IOException ex) {
+                this.release();
+                throw ex;
+            }
+        }
+
+        /**
+         * Removes the lock file; the lock must be acquired and is still to be released.
+         * @throws IOException thrown on io errors
+         */
+        void delete() throws IOException {
+            this.file.write(1);
+            if (!this.lockFile.delete()) {
+                // the file system does not remove opened files; keep the lock file usable
+                this.file.setLength(0);
+            }
+        }
+
+        /**
+         * Releases the lock.
+         * @throws IOException thrown on io errors
+         */
+        void release() throws IOException {
+            try {
+                this.closeFile();
+            } finally {
+                this.jvmLock.lock.unlock();
+                this.unuse();
+            }
+        }
+
+        /**
+         * Releases the file lock and closes the lock file.
+         * @throws IOException thrown on io errors
+         */
+        private void closeFile() throws IOException {
+            try {
+                if (this.fileLock != null) {
+                    this.fileLock.release();
+                    this.fileLock = null;
+                }
+            } finally {
+                if (this.file != null) {
+                    this.file.close();
+                    this.file = null;
+                }
+            }
+        }
+
+        /**
+         * Removes the jvm lock from the map if no other thread uses it.
+         */
+        private void unuse() {
+            synchronized (LOCKS) {
+                this.jvmLock.users--;
+                if (this.jvmLock.users == 0) {
+                    LOCKS.remove(this.path);
+                }
+                this.jvmLock = null;
+            }
+        }
+
+    }
+
+    /**
+     * The logger.
+     */
+    private final Log log;
+
+    /**
+     * The cache directory.
+     */
+    private final File directory;
+
+    /**
+     * The maximum size in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * Constructor.
+     * @param log the logger
+     * @param directory the cache directory
+     * @param maxSize the maximum size of the cache in bytes
+     */
+    public ExtractionCache(Log log, File directory, long maxSize) {
+        this.log = log;
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cache directory.
+     * @return the cache directory
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Copies the extracted contents of a dependency to the given directory. The dependency is extracted into
+     * the cache first if it is not already cached.
+     * @param source the dependency file
+     * @param sha1 the SHA-1 checksum of the dependency file
+     * @param path the path inside the archive (normalized); empty for all files
+     * @param packager the packager used to extract phar files
+     * @param targetDir the target directory
+     * @throws IOException thrown on io errors
+     */
+    public void extractTo(File source, String sha1, String path, IPharPackager packager, File targetDir)
+        throws IOException {
+        this.directory.mkdirs();
+        final String key = sha1 + DependencyExtractor.pathKey(path);
+        final File entry = new File(this.directory, key);
+        final File marker = new File(this.directory, key + SIZE_SUFFIX);
+        boolean extracted = false;
+        final Lock lock = new Lock(key);
+        lock.acquire(true);
+        try {
+            if (marker.isFile()) {
+                this.log.debug("Using cached extraction of " + source.getAbsolutePath());
+                marker.setLastModified(System.currentTimeMillis());
+            } else {
+                this.log.debug("Extracting " + source.getAbsolutePath() + " to cache " + entry);
+                if (entry.exists()) {
+                    // left over from an interrupted extraction
+                    FileUtils.deleteDirectory(entry);
+                }
+                entry.mkdirs();
+                FileHelper.unpack(this.log, source, entry, packager, path);
+                FileUtils.fileWrite(marker.getAbsolutePath(), "UTF-8", String.valueOf(size(entry)));
+                extracted = true;
+            }
+            targetDir.mkdirs();
+            FileUtils.copyDirectoryStructure(entry, targetDir);
+        } finally {
+            lock.release();
+        }
+        if (extracted) {
+            this.evict(key);
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache is smaller than the maximum size.
+     * @param current the entry that was just added; it is never removed
+     * @throws IOException thrown on io errors
+     */
+    private void evict(String current) throws IOException {
+        final File[] markers = this.directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File pathname) {
+                return pathname.getName().endsWith(SIZE_SUFFIX);
+            }
+        });
+        if (markers == null) {
+            return;
+        }
+        final List<Long> sizes = new ArrayList<Long>();
+        long total = 0;
+        for (final File marker : markers) {
+            final long size = readSize(marker);
+            sizes.add(size);
+            total += size;
+        }
+        if (total <= this.maxSize) {
+            return;
+        }
+
+        final File[] sorted = markers.clone();
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                final long m1 = o1.lastModified();
+                final long m2 = o2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        final List<File> markerList = Arrays.asList(markers);
+        for (final File marker : sorted) {
+            if (total <= this.maxSize) {
+                break;
+            }
+            final String key = marker.getName().substring(0, marker.getName().length() - SIZE_SUFFIX.length());
+            if (key.equals(current)) {
+                continue;
+            }
+            final Lock lock = new Lock(key);
+            if (!lock.acquire(false)) {
+                // in use
+                continue;
+            }
+            try {
+                if (marker.delete()) {
+                    this.log.debug("Evicting " + key + " from the extraction cache");
+                    total -= sizes.get(markerList.indexOf(marker));
+                    FileUtils.deleteDirectory(new File(this.directory, key));
+                    lock.delete();
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Reads the size stored in a marker file.
+     * @param marker the marker file
+     * @return the size
+     */
+    private static long readSize(File marker) {
+        try {
+            return Long.parseLong(FileUtils.fileRead(marker, "UTF-8").trim());
+        } catch (IOException ex) {
+            return 0;
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the size of the files within a directory.
+     * @param dir the directory
+     * @return size in bytes
+     */
+    private static long size(File dir) {
+        long result = 0;
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                result += file.isDirectory() ? size(file) : file.length();
+            }
+        }
+        return result;
+    }
+
+}
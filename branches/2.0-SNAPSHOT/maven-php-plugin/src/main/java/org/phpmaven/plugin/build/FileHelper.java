@@ -43,7 +43,8 @@ import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.exec.PhpException;
-import org.phpmaven.phar.IPharPackagerConfiguration;
+import org.phpmaven.phar.IPharPackager;
+import org.phpmaven.phar.PharJavaPackager;
 
 import com.google.common.base.Preconditions;
 
@@ -112,28 +113,95 @@ public final class FileHelper {
             log.debug("unpacking " + element);
             final File sourceFile = new File(element);
             if (sourceFile.isFile()) {
-                final int pos = sourceFile.getName().lastIndexOf('.');
-                String extension = sourceFile.getName();
-                if (pos != -1) {
-                    extension = extension.substring(pos + 1);
-                }
-                
-                if ("jar".equals(extension)) {
-                    // for backward compatibility to phpmaven1; there we build jar instead of phar
-                    unjar(log, sourceFile, targetDirectory);
-                } else if ("phar".equals(extension)) {
+                if (sourceFile.getName().endsWith(".phar")) {
                     unphar(log, targetDirectory, factory, session, sourceFile);
-                } else if ("zip".equals(extension)) {
-                    // although jar and zips are compatible to each other this is a implementation detail of jvm.
-                    // we should not depend on it. so let us divide it.
-                    unzip(log, sourceFile, targetDirectory);
                 } else {
-                    throw new IOException("Unknown archive format. Unable to extract " + sourceFile.getAbsolutePath());
+                    unpack(log, sourceFile, targetDirectory, null);
                 }
             }
         }
     }
 
+    /**
+     * Unpacks a jar, phar or zip file to the given directory.
+     *
+     * @param log Logging
+     * @param sourceFile the file to unpack
+     * @param targetDirectory where to unpack the files to
+     * @param packager the packager used to extract phar files
+     * @throws IOException if something goes wrong while copying
+     * @since 2.0.1
+     */
+    public static void unpack(Log log, File sourceFile, File targetDirectory, IPharPackager packager)
+        throws IOException {
+        unpack(log, sourceFile, targetDirectory, packager, "/");
+    }
+
+    /**
+     * Unpacks the files below a path inside a jar, phar or zip file to the given directory. Only the
+     * selected entries are read; the path itself is removed from the file names.
+     *
+     * @param log Logging
+     * @param sourceFile the file to unpack
+     * @param targetDirectory where to unpack the files to
+     * @param packager the packager used to extract phar files
+     * @param path the path inside the archive; "/" to unpack all files
+     * @throws IOException if something goes wrong while copying
+     * @since 2.0.1
+     */
+    public static void unpack(Log log, File sourceFile, File targetDirectory, IPharPackager packager, String path)
+        throws IOException {
+        final String prefix = normalizeArchivePath(path);
+        final int pos = sourceFile.getName().lastIndexOf('.');
+        String extension = sourceFile.getName();
+        if (pos != -1) {
+            extension = extension.substring(pos + 1);
+        }
+        
+        if ("jar".equals(extension)) {
+            // for backward compatibility to phpmaven1; there we build jar instead of phar
+            if (prefix.length() == 0) {
+                unjar(log, sourceFile, targetDirectory);
+            } else {
+                unzip(log, sourceFile, targetDirectory, prefix);
+            }
+        } else if ("phar".equals(extension) && packager != null) {
+            log.debug("unphar " + sourceFile.getAbsolutePath());
+            try {
+                if (prefix.length() == 0) {
+                    packager.extractPharTo(sourceFile, targetDirectory, log);
+                } else if (packager instanceof PharJavaPackager) {
+                    ((PharJavaPackager) packager).extractPharTo(sourceFile, targetDirectory, prefix, log);
+                } else {
+                    throw new IOException("Unable to extract path " + path + " of "
+                        + sourceFile.getAbsolutePath() + ": paths inside phar require the JAVA phar packager");
+                }
+            } catch (ComponentLookupException e) {
+                throw new IOException(
+                        "Error while extracting phar. Unable to extract "
+                        + sourceFile.getAbsolutePath(), e);
+            } catch (PlexusConfigurationException e) {
+                throw new IOException(
+                        "Error while extracting phar. Unable to extract "
+                        + sourceFile.getAbsolutePath(), e);
+            } catch (PhpException e) {
+                throw new IOException(
+                        "Error while extracting phar. Unable to extract "
+                        + sourceFile.getAbsolutePath(), e);
+            }
+        } else if ("zip".equals(extension)) {
+            // although jar and zips are compatible to each other this is a implementation detail of jvm.
+            // we should not depend on it. so let us divide it.
+            if (prefix.length() == 0) {
+                unzip(log, sourceFile, targetDirectory);
+            } else {
+                unzip(log, sourceFile, targetDirectory, prefix);
+            }
+        } else {
+            throw new IOException("Unknown archive format. Unable to extract " + sourceFile.getAbsolutePath());
+        }
+    }
+
     /**
      * Unphar given file to destination directory.
      * 
@@ -148,23 +216,25 @@ public final class FileHelper {
             final MavenSession session, final File sourceFile) throws IOException {
         log.debug("unphar " + sourceFile.getAbsolutePath());
         try {
-            final IPharPackagerConfiguration config = factory.lookup(
-                    IPharPackagerConfiguration.class,
+            // the java packager reads phars without spawning php
+            final IPharPackager packager = factory.lookup(
+                    IPharPackager.class,
+                    "JAVA",
                     IComponentFactory.EMPTY_CONFIG,
                     session);
             
-            config.getPharPackager().extractPharTo(sourceFile, targetDirectory, log);
+            packager.extractPharTo(sourceFile, targetDirectory, log);
         } catch (ComponentLookupException e) {
             throw new IOException(
-                    "Error while execution unphar script. Unable to extract "
+                    "Error while extracting phar. Unable to extract "
                     + sourceFile.getAbsolutePath(), e);
         } catch (PlexusConfigurationException e) {
             throw new IOException(
-                    "Error while execution unphar script. Unable to extract "
+                    "Error while extracting phar. Unable to extract "
                     + sourceFile.getAbsolutePath(), e);
         } catch (PhpException e) {
             throw new IOException(
-                    "Error while execution unphar script. Unable to extract "
+                    "Error while extracting phar. Unable to extract "
                     + sourceFile.getAbsolutePath(), e);
         }
     }
@@ -183,10 +253,14 @@ public final class FileHelper {
         final JarFile jar = new JarFile(jarFile);
         log.debug("unjar " + jarFile.getAbsolutePath());
 
-        final Enumeration<JarEntry> items = jar.entries();
-        while (items.hasMoreElements()) {
-            final JarEntry entry = items.nextElement();
-            unpackJarEntry(entry, jar.getInputStream(entry), destDir);
+        try {
+            final Enumeration<JarEntry> items = jar.entries();
+            while (items.hasMoreElements()) {
+                final JarEntry entry = items.nextElement();
+                unpackJarEntry(entry, jar.getInputStream(entry), destDir);
+            }
+        } finally {
+            jar.close();
         }
     }
 
@@ -204,13 +278,88 @@ public final class FileHelper {
         final ZipFile zip = new ZipFile(zipFile);
         log.debug("unzip " + zipFile.getAbsolutePath());
 
-        final Enumeration<? extends ZipEntry> items = zip.entries();
-        while (items.hasMoreElements()) {
-            final ZipEntry entry = items.nextElement();
-            unpackZipEntry(entry, zip.getInputStream(entry), destDir);
+        try {
+            final Enumeration<? extends ZipEntry> items = zip.entries();
+            while (items.hasMoreElements()) {
+                final ZipEntry entry = items.nextElement();
+                unpackZipEntry(entry, zip.getInputStream(entry), destDir);
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Unpacks the entries of a zip file below the given prefix. The entries are looked up in the central
+     * directory; the contents of other entries are not read.
+     *
+     * @param log Logging
+     * @param zipFile the zip file
+     * @param destDir the destination directory
+     * @param prefix the prefix (normalized, see {@link #normalizeArchivePath(String)}); empty for all entries
+     * @throws IOException if something goes wrong
+     * @since 2.0.1
+     */
+    public static void unzip(Log log, File zipFile, File destDir, String prefix) throws IOException {
+        Preconditions.checkNotNull(zipFile, "ZipFile");
+
+        final ZipFile zip = new ZipFile(zipFile);
+        log.debug("unzip " + zipFile.getAbsolutePath() + (prefix.length() == 0 ? "" : " path " + prefix));
+
+        try {
+            final String destPath = destDir.getCanonicalPath() + File.separator;
+            final Enumeration<? extends ZipEntry> items = zip.entries();
+            while (items.hasMoreElements()) {
+                final ZipEntry entry = items.nextElement();
+                final String name = entry.getName().replace('\\', '/');
+                if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+                    continue;
+                }
+                final File destFile = new File(destDir, name.substring(prefix.length()));
+                if (!(destFile.getCanonicalPath() + File.separator).startsWith(destPath)) {
+                    throw new IOException("Invalid zip entry " + name + ": outside of the target directory");
+                }
+                if (entry.isDirectory()) {
+                    destFile.mkdirs();
+                    continue;
+                }
+                destFile.getParentFile().mkdirs();
+                final InputStream in = zip.getInputStream(entry);
+                try {
+                    final OutputStream out = new BufferedOutputStream(new FileOutputStream(destFile));
+                    try {
+                        IOUtil.copy(in, out);
+                    } finally {
+                        out.close();
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            zip.close();
         }
     }
 
+    /**
+     * Normalizes a path inside an archive: the leading slash is removed, backslashes are replaced and
+     * a trailing slash is added.
+     *
+     * @param path the path; null or "/" for the root
+     * @return normalized path; empty string for the root
+     * @since 2.0.1
+     */
+    public static String normalizeArchivePath(String path) {
+        String result = path == null ? "" : path.replace('\\', '/');
+        while (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        if (result.length() > 0 && !result.endsWith("/")) {
+            result += "/";
+        }
+        return result;
+    }
+
     /**
      * Unpacks a jar URI.
      *
@@ -15,6 +15,8 @@
 package org.phpmaven.plugin.build;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -79,6 +81,33 @@ public final class PhpTest extends AbstractPhpMojo implements IPhpunitConfigurat
      */
     private boolean singleTestInvocation;
     
+    /**
+     * Number of concurrent phpunit processes if <code>singleTestInvocation</code> is false. Values below 1 mean
+     * the number of processors. Higher values than the number of processors are honored. Defaults to the phpunit
+     * plugin configuration (1).
+     * 
+     * @parameter expression="${phpunit.forkCount}"
+     */
+    private Integer forkCount;
+    
+    /**
+     * Executes only a part of the test files; "i/K" selects the i-th of K shards (1 &lt;= i &lt;= K). The
+     * shards are balanced by the test durations of previous runs.
+     * 
+     * @parameter expression="${phpunit.shard}"
+     */
+    private String shard;
+    
+    /**
+     * True to execute only the tests affected by changes since their last execution (test impact analysis).
+     * The coverage of every test is recorded; tests without coverage data (new tests, failed tests, php
+     * without coverage support) are always executed. Requires <code>singleTestInvocation</code> set to false
+     * and cannot be combined with <code>phpunitCoverageResultXml</code>. Defaults to the phpunit plugin configuration (false).
+     * 
+     * @parameter expression="${phpunit.impact}"
+     */
+    private Boolean impactAnalysis;
+    
     /**
      * Target file for the phpunit xml result; can only be used if <code>singleTestInvocation</code> was set to true.
      * 
@@ -231,8 +260,26 @@ public final class PhpTest extends AbstractPhpMojo implements IPhpunitConfigurat
             throw new MojoExecutionException(
                     "Setting singleTestInvocation to true requires at least phpunitXmlResult to be set manually.");
         }
+        int shardIndex = 0;
+        int shardCount = 0;
+        if (this.shard != null && this.shard.length() > 0) {
+            final String[] parts = this.shard.split("/");
+            try {
+                shardIndex = Integer.parseInt(parts[0].trim());
+                shardCount = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : 0;
+            } catch (NumberFormatException ex) {
+                shardCount = 0;
+            }
+            if (shardCount < 1 || shardIndex < 1 || shardIndex > shardCount) {
+                throw new MojoExecutionException("Invalid phpunit.shard " + this.shard + "; expecting i/K with 1 <= i <= K");
+            }
+        }
+        if (this.singleTestInvocation && this.impactAnalysis != null && this.impactAnalysis) {
+            throw new MojoExecutionException(
+                    "Test impact analysis requires singleTestInvocation to be set to false.");
+        }
         try {
-            final Iterable<File> files = new TestHelper(this).getTestFiles();
+            Iterable<File> files = new TestHelper(this).getTestFiles();
     
             // did we get a testing file?
             if (files.iterator().hasNext()) {
@@ -250,14 +297,45 @@ public final class PhpTest extends AbstractPhpMojo implements IPhpunitConfigurat
                         IPhpunitTestRequest.class,
                         IComponentFactory.EMPTY_CONFIG,
                         this.getSession());
+                final IPhpunitSupport support = config.getPhpunitSupport();
+                if (this.impactAnalysis != null) {
+                    support.setImpactAnalysis(this.impactAnalysis);
+                }
+                if (support.isImpactAnalysis() && !this.singleTestInvocation && this.phpunitCoverageResultXml != null) {
+                    // every test writes its own coverage xml for the impact index
+                    throw new MojoExecutionException(
+                            "Test impact analysis cannot be combined with phpunitCoverageResultXml.");
+                }
+                if (support.isImpactAnalysis() && !this.singleTestInvocation) {
+                    final List<File> all = new ArrayList<File>();
+                    for (final File file : files) {
+                        all.add(file);
+                    }
+                    final List<File> impacted = support.getImpactIndex().selectImpacted(all);
+                    getLog().info("Test impact analysis: " + impacted.size() + " of " + all.size()
+                        + " test files affected by changes.");
+                    files = impacted;
+                }
+                if (shardCount > 0) {
+                    final List<File> all = new ArrayList<File>();
+                    for (final File file : files) {
+                        all.add(file);
+                    }
+                    final List<File> selected = support.getHistory().shard(all, shardIndex, shardCount);
+                    getLog().info("Executing shard " + shardIndex + "/" + shardCount + ": "
+                        + selected.size() + " of " + all.size() + " test files.");
+                    files = selected;
+                }
                 for (final File file : files) {
                     request.addTestFile(file);
                 }
                 if (phpUnitXmlConfigurationPath.exists()) {
                     request.setPhpunitXml(phpUnitXmlConfigurationPath);
                 }
-                final IPhpunitSupport support = config.getPhpunitSupport();
                 support.setIsSingleTestInvocation(this.singleTestInvocation);
+                if (this.forkCount != null) {
+                    support.setForkCount(this.forkCount);
+                }
                 if (this.phpUnitArguments != null) {
                     support.setPhpunitArguments(this.phpUnitArguments);
                 }
@@ -19,16 +19,10 @@ package org.phpmaven.plugin.phar;
 import java.io.File;
 import java.io.IOException;
 
-import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
-import org.codehaus.plexus.configuration.PlexusConfigurationException;
-import org.codehaus.plexus.util.xml.Xpp3Dom;
-import org.phpmaven.core.IComponentFactory;
-import org.phpmaven.exec.PhpException;
-import org.phpmaven.phar.IPharPackagerConfiguration;
+import org.phpmaven.phar.PharArchive;
 
 /**
  * Mojo to list the contents of a phar file.
@@ -44,22 +38,6 @@ public class ListPharFilesMojo extends AbstractMojo {
      * @required
      */
     private File phar;
-    
-    /**
-     * The Maven session.
-     *
-     * @parameter expression="${session}"
-     * @readonly
-     * @required
-     */
-    private MavenSession session;
-    
-    /**
-     * The configuration factory.
-     * @component
-     * @required
-     */
-    protected IComponentFactory factory;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -70,30 +48,19 @@ public class ListPharFilesMojo extends AbstractMojo {
             throw new MojoExecutionException("phar file " + this.phar + " is a directory");
         }
         try {
-            final File tmpSnippet = File.createTempFile("snippet", ".php");
-            tmpSnippet.deleteOnExit();
-            
-            final Xpp3Dom configNode = new Xpp3Dom("configuration");
-            final Xpp3Dom execConfigNode = new Xpp3Dom("executableConfig");
-            final Xpp3Dom fileNode = new Xpp3Dom("temporaryScriptFile");
-            fileNode.setValue(tmpSnippet.getAbsolutePath());
-            execConfigNode.addChild(fileNode);
-            configNode.addChild(execConfigNode);
-            
-            final IPharPackagerConfiguration config = this.factory.lookup(
-                IPharPackagerConfiguration.class, configNode, this.session);
-            
-            final Iterable<String> contents = config.getPharPackager().listFiles(this.phar, this.getLog());
-            getLog().info("contents of phar file " + this.phar);
-            for (final String f : contents) {
-                getLog().info(f);
+            // read the manifest in java; no need to spawn php
+            final PharArchive archive = new PharArchive(this.phar);
+            try {
+                getLog().info("contents of phar file " + this.phar);
+                for (final PharArchive.Entry entry : archive.getEntries()) {
+                    if (!entry.isDirectory()) {
+                        // platform specific separators (like the former php based listing)
+                        getLog().info(File.separatorChar + entry.getName().replace('/', File.separatorChar));
+                    }
+                }
+            } finally {
+                archive.close();
             }
-        } catch (ComponentLookupException ex) {
-            throw new MojoExecutionException("failed executing list-phar-files", ex);
-        } catch (PlexusConfigurationException ex) {
-            throw new MojoExecutionException("failed executing list-phar-files", ex);
-        } catch (PhpException ex) {
-            throw new MojoExecutionException("failed executing list-phar-files", ex);
         } catch (IOException ex) {
             throw new MojoExecutionException("failed executing list-phar-files", ex);
         }
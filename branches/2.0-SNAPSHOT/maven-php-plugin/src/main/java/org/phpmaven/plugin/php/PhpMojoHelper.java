@@ -16,8 +16,6 @@ package org.phpmaven.plugin.php;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -39,7 +37,9 @@ import org.phpmaven.dependency.IActionExtract;
 import org.phpmaven.dependency.IActionExtractAndInclude;
 import org.phpmaven.dependency.IDependency;
 import org.phpmaven.dependency.IDependencyConfiguration;
-import org.phpmaven.plugin.build.FileHelper;
+import org.phpmaven.exec.IPhpOutputClassifier;
+import org.phpmaven.exec.PhpOutputClassifier;
+import org.phpmaven.plugin.build.DependencyExtractor;
 
 import com.google.common.base.Preconditions;
 
@@ -54,23 +54,9 @@ import com.google.common.base.Preconditions;
 public class PhpMojoHelper implements IPhpExecution {
 
     /**
-     * This list describes all keywords which will be printed out by PHP
-     * if an error occurs.
+     * The classifier detecting php errors and warnings within the output.
      */
-    private static final String[] ERROR_IDENTIFIERS = new String[]{
-        "Fatal error",
-        "Error",
-        "Parse error"
-    };
-
-    /**
-     * This list describes all keywords which will be printed out by PHP
-     * if a warrning occurs.
-     */
-    private static final String[] WARNING_IDENTIFIERS = new String[]{
-        "Warning",
-        "Notice"
-    };
+    private final IPhpOutputClassifier classifier = PhpOutputClassifier.instance();
 
     /**
      * Path to the php executable.
@@ -160,40 +146,6 @@ public class PhpMojoHelper implements IPhpExecution {
         this.session = config.getSession();
     }
 
-    /**
-     * Checks if a line (string) contains a PHP error message.
-     *
-     * @param line output line
-     * @return if the line contains php error messages
-     */
-    private boolean isError(String line) {
-        final String trimmedLine = line.trim();
-        for (String errorIdentifier : ERROR_IDENTIFIERS) {
-            if (trimmedLine.startsWith(errorIdentifier + ":")
-                || trimmedLine.startsWith("<b>" + errorIdentifier + "</b>:")) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Checks if a line (string) contains a PHP warning message.
-     *
-     * @param line output line
-     * @return if the line contains php warning messages
-     */
-    private boolean isWarning(String line) {
-        final String trimmedLine = line.trim();
-        for (String warningIdentifier : WARNING_IDENTIFIERS) {
-            if (trimmedLine.startsWith(warningIdentifier + ":")
-                || trimmedLine.startsWith("<b>" + warningIdentifier + "</b>:")) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Executes PHP with the given arguments.
      *
@@ -254,21 +206,18 @@ public class PhpMojoHelper implements IPhpExecution {
 
                     stdout.consumeLine(line);
 
-                    final boolean error = isError(line);
-                    final boolean warning = isWarning(line);
-                    if (error || warning) {
-                        if (PhpMojoHelper.this.ignoreIncludeErrors
-                            && !line.contains("require_once")
-                            && !line.contains("include_once")
-                            ) {
-                            stderr.append(line);
-                            stderr.append("\n");
-                        } else if (!PhpMojoHelper.this.ignoreIncludeErrors) {
+                    final IPhpOutputClassifier.LineType type = PhpMojoHelper.this.classifier.classify(line);
+                    if (type != IPhpOutputClassifier.LineType.OUTPUT) {
+                        if (!PhpMojoHelper.this.ignoreIncludeErrors
+                            || !PhpMojoHelper.this.classifier.isIncludeError(line)) {
                             stderr.append(line);
                             stderr.append("\n");
                         }
-                        if (error) throwError.set(true);
-                        if (warning) throwWarning.set(true);
+                        if (type == IPhpOutputClassifier.LineType.ERROR) {
+                            throwError.set(true);
+                        } else {
+                            throwWarning.set(true);
+                        }
                     }
                 }
             },
@@ -358,14 +307,60 @@ public class PhpMojoHelper implements IPhpExecution {
             String sourceScope,
             IDependencyConfiguration depConfig)
             throws IOException, PhpException, MojoExecutionException {
+        this.prepareDependencies(factory, session, targetDir, sourceScope, depConfig, 0);
+    }
+
+    /**
+     * Unzips all dependency sources. Independent dependencies are extracted in parallel; unchanged
+     * dependencies are skipped.
+     * 
+     * @param factory Component factory
+     * @param session maven session
+     * @param targetDir target directory
+     * @param sourceScope dependency scope to unpack from
+     * @param depConfig the dependency config 
+     * @param threads number of extraction threads; 0 for one thread per available processor
+     *
+     * @throws IOException if something goes wrong while prepareing the dependencies
+     * @throws PhpException php exceptions can fly everywhere..
+     * @since 2.0.1
+     */
+    public void prepareDependencies(
+            IComponentFactory factory,
+            MavenSession session,
+            File targetDir,
+            String sourceScope,
+            IDependencyConfiguration depConfig,
+            int threads)
+            throws IOException, PhpException, MojoExecutionException {
+        this.prepareDependencies(
+            sourceScope, depConfig, targetDir, new DependencyExtractor(this.log, factory, session, threads));
+    }
+
+    /**
+     * Unzips all dependency sources with the given extractor.
+     * 
+     * @param sourceScope dependency scope to unpack from
+     * @param depConfig the dependency config 
+     * @param targetDir target directory
+     * @param extractor the dependency extractor
+     *
+     * @throws IOException if something goes wrong while prepareing the dependencies
+     * @throws PhpException php exceptions can fly everywhere..
+     * @since 2.0.1
+     */
+    public void prepareDependencies(
+            String sourceScope,
+            IDependencyConfiguration depConfig,
+            File targetDir,
+            DependencyExtractor extractor)
+            throws IOException, PhpException, MojoExecutionException {
         final Set<Artifact> deps = this.project.getArtifacts();
         for (final Artifact dep : deps) {
             if (!sourceScope.equals(dep.getScope())) {
                 continue;
             }
             
-            final List<String> packedElements = new ArrayList<String>();
-            packedElements.add(dep.getFile().getAbsolutePath());
             boolean isClassic = true;
             final Class<?> clazz1 = IDependency.class;
             for (final IDependency depCfg : depConfig.getDependencies()) {
@@ -391,35 +386,19 @@ public class PhpMojoHelper implements IPhpExecution {
                             case ACTION_EXTRACT:
                                 this.log.info(dep.getFile().getAbsolutePath() + " will be extracted to " +
                                     ((IActionExtract) action).getTargetPath());
-                                if (((IActionExtract) action).getPharPath() == null ||
-                                    ((IActionExtract) action).getPharPath().equals("/")) {
-                                    FileHelper.unzipElements(
-                                        this.log,
-                                        new File(((IActionExtract) action).getTargetPath()),
-                                        packedElements,
-                                        factory,
-                                        session);
-                                } else {
-                                    // TODO add support
-                                    throw new PhpCoreException("paths inside phar currently not supported");
-                                }
+                                extractor.add(
+                                    dep,
+                                    new File(((IActionExtract) action).getTargetPath()),
+                                    ((IActionExtract) action).getPharPath());
                                 break;
                             case ACTION_EXTRACT_INCLUDE:
                                 this.log.info(dep.getFile().getAbsolutePath() + " will be extracted to " +
                                     ((IActionExtractAndInclude) action).getTargetPath() + " and added on " +
                                     "include path");
-                                if (((IActionExtractAndInclude) action).getPharPath() == null ||
-                                    ((IActionExtractAndInclude) action).getPharPath().equals("/")) {
-                                    FileHelper.unzipElements(
-                                        this.log,
-                                        new File(((IActionExtractAndInclude) action).getTargetPath()),
-                                        packedElements,
-                                        factory,
-                                        session);
-                                } else {
-                                    // TODO add support
-                                    throw new PhpCoreException("paths inside phar currently not supported");
-                                }
+                                extractor.add(
+                                    dep,
+                                    new File(((IActionExtractAndInclude) action).getTargetPath()),
+                                    ((IActionExtractAndInclude) action).getPharPath());
                                 break;
                         }
                     }
@@ -427,7 +406,6 @@ public class PhpMojoHelper implements IPhpExecution {
             }
             
             if (isClassic) {
-                this.log.info("Extracting " + dep.getFile().getAbsolutePath() + " to target directory");
                 try {
                     if (this.getProjectFromArtifact(dep).getFile() != null) {
                         // Reference to a local project; should only happen in IDEs or multi-project-poms
@@ -438,9 +416,10 @@ public class PhpMojoHelper implements IPhpExecution {
                 } catch (ProjectBuildingException ex) {
                     throw new IOException("Problems creating maven project from dependency", ex);
                 }
-                FileHelper.unzipElements(this.log, targetDir, packedElements, factory, session);
+                extractor.add(dep, targetDir);
             }
         }
+        extractor.run();
     }
 
 }
@@ -0,0 +1,303 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.mojos.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.plugin.build.DependencyExtractor;
+import org.phpmaven.plugin.build.ExtractionCache;
+import org.phpmaven.test.AbstractTestCase;
+
+/**
+ * Test the extraction of dependencies.
+ * 
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class DependencyExtractorTest extends AbstractTestCase {
+
+    /**
+     * tests that unchanged dependencies are skipped and changed dependencies are replaced.
+     *
+     * @throws Exception 
+     */
+    public void testExtract() throws Exception {
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleSession("mojos-compile/source-copy");
+        final File basedir = new File(session.getCurrentProject().getBasedir(), "target/extractor");
+        FileUtils.deleteDirectory(basedir);
+        final File targetDir = new File(basedir, "deps");
+
+        final File zip1 = new File(basedir, "dep1.zip");
+        final File zip2 = new File(basedir, "dep2.zip");
+        basedir.mkdirs();
+        zip(zip1, "foo/a.php", "A1", "foo/b.php", "B1");
+        zip(zip2, "other.php", "OTHER");
+        final Artifact dep1 = artifact("dep1", zip1);
+        final Artifact dep2 = artifact("dep2", zip2);
+
+        // initial extraction
+        this.extract(factory, session, targetDir, 4, dep1, dep2);
+        assertEquals("A1", FileUtils.readFileToString(new File(targetDir, "foo/a.php")));
+        assertEquals("B1", FileUtils.readFileToString(new File(targetDir, "foo/b.php")));
+        assertEquals("OTHER", FileUtils.readFileToString(new File(targetDir, "other.php")));
+        // no plugin state within the target directory
+        assertEquals(2, targetDir.list().length);
+        final File manifestDir = new File(session.getCurrentProject().getBuild().getDirectory(),
+                DependencyExtractor.MANIFEST_DIR);
+        assertTrue(manifestDir.isDirectory());
+
+        // unchanged dependencies are skipped
+        FileUtils.writeStringToFile(new File(targetDir, "foo/a.php"), "MODIFIED");
+        this.extract(factory, session, targetDir, 4, dep1, dep2);
+        assertEquals("MODIFIED", FileUtils.readFileToString(new File(targetDir, "foo/a.php")));
+
+        // a changed dependency replaces the previous files
+        zip(zip1, "foo/a.php", "A2", "foo/c.php", "C2");
+        zip1.setLastModified(zip1.lastModified() + 2000);
+        this.extract(factory, session, targetDir, 1, dep1, dep2);
+        assertEquals("A2", FileUtils.readFileToString(new File(targetDir, "foo/a.php")));
+        assertEquals("C2", FileUtils.readFileToString(new File(targetDir, "foo/c.php")));
+        assertFalse(new File(targetDir, "foo/b.php").exists());
+        assertEquals("OTHER", FileUtils.readFileToString(new File(targetDir, "other.php")));
+    }
+
+    /**
+     * tests that the file of the dependency added first wins.
+     *
+     * @throws Exception 
+     */
+    public void testPrecedence() throws Exception {
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleSession("mojos-compile/source-copy");
+        final File basedir = new File(session.getCurrentProject().getBasedir(), "target/extractor-precedence");
+        FileUtils.deleteDirectory(basedir);
+        basedir.mkdirs();
+        final File targetDir = new File(basedir, "deps");
+
+        final File zip1 = new File(basedir, "dep1.zip");
+        final File zip2 = new File(basedir, "dep2.zip");
+        zip(zip1, "common.php", "FIRST", "a.php", "A");
+        zip(zip2, "common.php", "SECOND", "b.php", "B");
+        final Artifact dep1 = artifact("dep1", zip1);
+        final Artifact dep2 = artifact("dep2", zip2);
+
+        this.extract(factory, session, targetDir, 2, dep1, dep2);
+        assertEquals("FIRST", FileUtils.readFileToString(new File(targetDir, "common.php")));
+        assertEquals("B", FileUtils.readFileToString(new File(targetDir, "b.php")));
+
+        // a changed dependency added later does not overwrite the file
+        zip(zip2, "common.php", "SECOND2", "b.php", "B2");
+        zip2.setLastModified(zip2.lastModified() + 2000);
+        this.extract(factory, session, targetDir, 2, dep1, dep2);
+        assertEquals("FIRST", FileUtils.readFileToString(new File(targetDir, "common.php")));
+        assertEquals("B2", FileUtils.readFileToString(new File(targetDir, "b.php")));
+    }
+
+    /**
+     * tests that dependencies resolved to directories (reactor projects) are skipped.
+     *
+     * @throws Exception 
+     */
+    public void testDirectory() throws Exception {
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleSession("mojos-compile/source-copy");
+        final File basedir = new File(session.getCurrentProject().getBasedir(), "target/extractor-directory");
+        FileUtils.deleteDirectory(basedir);
+        basedir.mkdirs();
+        final File targetDir = new File(basedir, "deps");
+
+        final File classes = new File(basedir, "classes");
+        classes.mkdirs();
+        FileUtils.writeStringToFile(new File(classes, "a.php"), "A");
+        final File zip2 = new File(basedir, "dep2.zip");
+        zip(zip2, "other.php", "OTHER");
+        final Artifact dep1 = artifact("dep1", classes);
+        final Artifact dep2 = artifact("dep2", zip2);
+        final Artifact dep3 = artifact("dep3", null);
+
+        this.extract(factory, session, targetDir, 2, dep1, dep2, dep3);
+        assertEquals("OTHER", FileUtils.readFileToString(new File(targetDir, "other.php")));
+        assertFalse(new File(targetDir, "a.php").exists());
+    }
+
+    /**
+     * tests the extraction of a path inside the dependency.
+     *
+     * @throws Exception 
+     */
+    public void testPath() throws Exception {
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleSession("mojos-compile/source-copy");
+        final File basedir = new File(session.getCurrentProject().getBasedir(), "target/extractor-path");
+        FileUtils.deleteDirectory(basedir);
+        basedir.mkdirs();
+        final File targetDir = new File(basedir, "deps");
+
+        final File zip1 = new File(basedir, "dep1.zip");
+        zip(zip1, "foo/a.php", "A1", "foo/sub/b.php", "B1", "bar/c.php", "C1");
+        final Artifact dep1 = artifact("dep1", zip1);
+
+        final DependencyExtractor extractor = new DependencyExtractor(
+                new DefaultLog(new ConsoleLogger()), factory, session, 2);
+        extractor.add(dep1, targetDir, "/foo");
+        extractor.add(dep1, new File(targetDir, "bar"), "bar/");
+        extractor.run();
+        assertEquals("A1", FileUtils.readFileToString(new File(targetDir, "a.php")));
+        assertEquals("B1", FileUtils.readFileToString(new File(targetDir, "sub/b.php")));
+        assertEquals("C1", FileUtils.readFileToString(new File(targetDir, "bar/c.php")));
+        assertFalse(new File(targetDir, "foo").exists());
+    }
+
+    /**
+     * tests the shared extraction cache.
+     *
+     * @throws Exception 
+     */
+    public void testCache() throws Exception {
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleSession("mojos-compile/source-copy");
+        final File basedir = new File(session.getCurrentProject().getBasedir(), "target/extractor-cache");
+        FileUtils.deleteDirectory(basedir);
+        basedir.mkdirs();
+        final File cacheDir = new File(basedir, "cache");
+
+        final File zip1 = new File(basedir, "dep1.zip");
+        final File zip2 = new File(basedir, "dep2.zip");
+        zip(zip1, "foo/a.php", "A1");
+        zip(zip2, "other.php", "OTHER");
+        final Artifact dep1 = artifact("dep1", zip1);
+        final Artifact dep2 = artifact("dep2", zip2);
+
+        // the first module fills the cache
+        final ExtractionCache cache = new ExtractionCache(new DefaultLog(new ConsoleLogger()), cacheDir, 1024);
+        this.extract(factory, session, new File(basedir, "module1"), 1, cache, dep1);
+        final File[] entries = cacheDir.listFiles();
+        assertEquals(3, entries.length);
+        final File cached = new File(cacheDir, findEntry(cacheDir));
+        assertEquals("A1", FileUtils.readFileToString(new File(cached, "foo/a.php")));
+
+        // the second module copies the files from the cache
+        FileUtils.writeStringToFile(new File(cached, "foo/a.php"), "CACHED");
+        this.extract(factory, session, new File(basedir, "module2"), 1, cache, dep1);
+        assertEquals("CACHED", FileUtils.readFileToString(new File(basedir, "module2/foo/a.php")));
+        assertEquals("A1", FileUtils.readFileToString(new File(basedir, "module1/foo/a.php")));
+
+        // the least recently used entry is evicted
+        final ExtractionCache small = new ExtractionCache(new DefaultLog(new ConsoleLogger()), cacheDir, 5);
+        this.extract(factory, session, new File(basedir, "module3"), 1, small, dep2);
+        assertFalse(cached.exists());
+        assertFalse(new File(cacheDir, cached.getName() + ".lock").exists());
+        assertEquals(3, cacheDir.listFiles().length);
+        assertEquals("OTHER", FileUtils.readFileToString(new File(basedir, "module3/other.php")));
+        assertEquals("OTHER", FileUtils.readFileToString(new File(cacheDir, findEntry(cacheDir) + "/other.php")));
+    }
+
+    /**
+     * Returns the name of the single entry of the cache.
+     * @param cacheDir cache directory
+     * @return entry name
+     */
+    private static String findEntry(File cacheDir) {
+        for (final File file : cacheDir.listFiles()) {
+            if (file.isDirectory()) {
+                return file.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the given dependencies.
+     * @param factory component factory
+     * @param session maven session
+     * @param targetDir target directory
+     * @param threads number of threads
+     * @param deps dependencies
+     * @throws Exception thrown on errors
+     */
+    private void extract(IComponentFactory factory, MavenSession session, File targetDir, int threads,
+            Artifact... deps) throws Exception {
+        this.extract(factory, session, targetDir, threads, null, deps);
+    }
+
+    /**
+     * Extracts the given dependencies.
+     * @param factory component factory
+     * @param session maven session
+     * @param targetDir target directory
+     * @param threads number of threads
+     * @param cache extraction cache or null
+     * @param deps dependencies
+     * @throws Exception thrown on errors
+     */
+    private void extract(IComponentFactory factory, MavenSession session, File targetDir, int threads,
+            ExtractionCache cache, Artifact... deps) throws Exception {
+        final DependencyExtractor extractor = new DependencyExtractor(
+                new DefaultLog(new ConsoleLogger()), factory, session, threads);
+        extractor.setCache(cache);
+        for (final Artifact dep : deps) {
+            extractor.add(dep, targetDir);
+        }
+        extractor.run();
+    }
+
+    /**
+     * Creates an artifact.
+     * @param artifactId artifact id
+     * @param file the artifact file
+     * @return artifact
+     */
+    private static Artifact artifact(String artifactId, File file) {
+        final Artifact result = new DefaultArtifact(
+                "org.phpmaven.test", artifactId, "0.0.1", Artifact.SCOPE_COMPILE, "zip", null,
+                new DefaultArtifactHandler("zip"));
+        result.setFile(file);
+        return result;
+    }
+
+    /**
+     * Writes a zip file.
+     * @param file the zip file
+     * @param contents file names and contents
+     * @throws Exception thrown on errors
+     */
+    private static void zip(File file, String... contents) throws Exception {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < contents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(contents[i]));
+                out.write(contents[i + 1].getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -18,10 +18,16 @@ package org.phpmaven.project;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.ProjectBuilder;
@@ -52,6 +58,55 @@ import org.phpmaven.exec.IPhpExecutableConfiguration;
 @Component(role = IProjectPhpExecution.class, instantiationStrategy = "singleton")
 public class ProjectPhpExecution implements IProjectPhpExecution {
     
+    /**
+     * Include path and dependency projects resolved within a maven session.
+     */
+    private static final class ResolutionCache {
+        
+        /**
+         * The dependency projects by artifact id and remote repositories.
+         */
+        private final Map<String, MavenProject> projects = new HashMap<String, MavenProject>();
+        
+        /**
+         * The include paths by project, scope and configuration.
+         */
+        private final Map<String, CachedIncludePath> includePaths = new HashMap<String, CachedIncludePath>();
+        
+    }
+    
+    /**
+     * A cached include path.
+     */
+    private static final class CachedIncludePath {
+        
+        /**
+         * The fingerprint of the project artifacts.
+         */
+        private final String fingerprint;
+        
+        /**
+         * The include path.
+         */
+        private final List<String> includePath;
+        
+        /**
+         * Constructor.
+         * @param fingerprint the fingerprint of the project artifacts
+         * @param includePath the include path
+         */
+        CachedIncludePath(String fingerprint, List<String> includePath) {
+            this.fingerprint = fingerprint;
+            this.includePath = includePath;
+        }
+        
+    }
+    
+    /**
+     * The resolution caches by maven execution request (the request is shared by all clones of a session).
+     */
+    private final Map<Object, ResolutionCache> caches = new WeakHashMap<Object, ResolutionCache>();
+    
     /**
      * The component factory.
      */
@@ -177,12 +232,9 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
                 IPhpExecutableConfiguration.class,
                 configs.toArray(new Xpp3Dom[configs.size()]),
                 mavenSession);
-        final IDependencyConfiguration depConfig = this.componentFactory.lookup(
-                IDependencyConfiguration.class,
-                IComponentFactory.EMPTY_CONFIG,
-                mavenSession);
         try {
-            this.addIncludes(execConfig, buildConfig, mojoConfig, project, mavenSession, depConfig);
+            execConfig.getIncludePath().addAll(
+                this.getIncludePath(buildConfig, mojoConfig, project, mavenSession, false));
         } catch (ExpressionEvaluationException ex) {
             throw new PlexusConfigurationException("Problems evaluating the includes", ex);
         }
@@ -216,13 +268,9 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
                 IPhpExecutableConfiguration.class,
                 configs.toArray(new Xpp3Dom[configs.size()]),
                 mavenSession);
-        final IDependencyConfiguration depConfig = this.componentFactory.lookup(
-                IDependencyConfiguration.class,
-                IComponentFactory.EMPTY_CONFIG,
-                mavenSession);
         try {
-            this.addIncludes(execConfig, buildConfig, mojoConfig, project, mavenSession, depConfig);
-            this.addTestIncludes(execConfig, buildConfig, mojoConfig, project, mavenSession, depConfig);
+            execConfig.getIncludePath().addAll(
+                this.getIncludePath(buildConfig, mojoConfig, project, mavenSession, true));
         } catch (ExpressionEvaluationException ex) {
             throw new PlexusConfigurationException("Problems evaluating the includes", ex);
         }
@@ -230,23 +278,125 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
     }
 
     /**
-     * Adds the default includes to the executable configuration.
-     * @param execConfig executable configuration.
+     * Returns the include path for the given project. The include path is cached per maven session; the
+     * cache entry is reused as long as the configuration and the artifacts of the project do not change.
+     * 
      * @param buildConfig the build configuration.
      * @param mojoConfig the mojo configuration.
      * @param project the project.
      * @param mavenSession the maven session.
+     * @param test true to return the test include path
+     * @return include path (unmodifiable)
+     * 
+     * @throws ExpressionEvaluationException thrown on maven property errors
+     * @throws PlexusConfigurationException thrown on errors while creating the dependency configuration
+     * @throws ComponentLookupException thrown on errors while creating the dependency configuration
+     */
+    private List<String> getIncludePath(
+            Xpp3Dom buildConfig,
+            Xpp3Dom mojoConfig,
+            MavenProject project,
+            MavenSession mavenSession,
+            boolean test)
+        throws ExpressionEvaluationException, PlexusConfigurationException, ComponentLookupException {
+        final ResolutionCache cache = this.getCache(mavenSession);
+        final String key = project.getId() + "|" + project.getBasedir() + "|" + test + "|"
+            + buildConfig + "|" + mojoConfig + "|"
+            + this.componentFactory.getBuildConfig(project, "org.phpmaven", "maven-php-dependency");
+        final String fingerprint = fingerprint(project);
+        if (cache != null) {
+            synchronized (cache) {
+                final CachedIncludePath cached = cache.includePaths.get(key);
+                if (cached != null && cached.fingerprint.equals(fingerprint)) {
+                    return cached.includePath;
+                }
+            }
+        }
+        
+        final IDependencyConfiguration depConfig = this.componentFactory.lookup(
+                IDependencyConfiguration.class,
+                IComponentFactory.EMPTY_CONFIG,
+                mavenSession);
+        final List<String> includePath = new ArrayList<String>();
+        this.addIncludes(includePath, buildConfig, mojoConfig, project, mavenSession, depConfig, cache);
+        if (test) {
+            this.addTestIncludes(includePath, buildConfig, mojoConfig, project, mavenSession, depConfig, cache);
+        }
+        final List<String> result = Collections.unmodifiableList(includePath);
+        if (cache != null) {
+            synchronized (cache) {
+                cache.includePaths.put(key, new CachedIncludePath(fingerprint, result));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the resolution cache of the given session.
+     * @param mavenSession the maven session
+     * @return resolution cache or null if the session does not have a request
+     */
+    private ResolutionCache getCache(MavenSession mavenSession) {
+        // cloned sessions share the request
+        final Object request = mavenSession.getRequest();
+        if (request == null) {
+            return null;
+        }
+        synchronized (this.caches) {
+            ResolutionCache result = this.caches.get(request);
+            if (result == null) {
+                result = new ResolutionCache();
+                this.caches.put(request, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns a fingerprint of the artifacts of the given project.
+     * @param project the project
+     * @return fingerprint
+     */
+    private static String fingerprint(MavenProject project) {
+        final StringBuilder result = new StringBuilder();
+        for (final Artifact artifact : project.getArtifacts()) {
+            result.append(artifact.getId()).append('@').append(artifact.getScope());
+            result.append('=').append(artifact.getFile()).append(';');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the key used to match artifacts and dependency configurations.
+     * @param groupId group id
+     * @param artifactId artifact id
+     * @return key
+     */
+    private static String key(String groupId, String artifactId) {
+        return groupId + ":" + artifactId;
+    }
+
+    /**
+     * Adds the default includes.
+     * @param includePath receives the include path.
+     * @param buildConfig the build configuration.
+     * @param mojoConfig the mojo configuration.
+     * @param project the project.
+     * @param mavenSession the maven session.
+     * @param depConfig the dependency configuration.
+     * @param cache the resolution cache or null.
      * @throws ExpressionEvaluationException thrown on maven property errors
      */
     private void addIncludes(
-            IPhpExecutableConfiguration execConfig,
+            List<String> includePath,
             Xpp3Dom buildConfig,
             Xpp3Dom mojoConfig,
             MavenProject project,
             MavenSession mavenSession,
-            IDependencyConfiguration depConfig)
+            IDependencyConfiguration depConfig,
+            ResolutionCache cache)
         throws ExpressionEvaluationException {
-        execConfig.getIncludePath().add(project.getBuild().getOutputDirectory());
+        includePath.add(project.getBuild().getOutputDirectory());
         File depsDir;
         if (buildConfig == null || buildConfig.getChild("dependenciesDir") == null) {
             depsDir = this.componentFactory.filterString(
@@ -265,44 +415,42 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
                     mojoConfig.getChild("dependenciesDir").getValue(),
                     File.class);
         }
-        execConfig.getIncludePath().add(depsDir.getAbsolutePath());
+        includePath.add(depsDir.getAbsolutePath());
         // TODO: Bad hack for broken pear libraries.
-        execConfig.getIncludePath().add(new File(depsDir, "pear").getAbsolutePath());
+        includePath.add(new File(depsDir, "pear").getAbsolutePath());
         
-        addFromDepConfig(execConfig, project, Artifact.SCOPE_COMPILE, depConfig, depsDir);
+        addFromDepConfig(includePath, project, Artifact.SCOPE_COMPILE, depConfig, cache);
         
         // add the project dependencies of multi-project-poms
-        addProjectDependencies(execConfig, project, Artifact.SCOPE_COMPILE, depConfig);
+        addProjectDependencies(includePath, project, Artifact.SCOPE_COMPILE, depConfig, cache);
     }
 
     /**
      * Adds additional include paths from dependency config.
-     * @param execConfig
-     * @param project
-     * @param targetScope
-     * @param depConfig
-     * @param depsDir
+     * @param includePath receives the include path.
+     * @param project the project.
+     * @param targetScope the dependency scope.
+     * @param depConfig the dependency configuration.
+     * @param cache the resolution cache or null.
      * @throws ExpressionEvaluationException 
      */
     private void addFromDepConfig(
-        IPhpExecutableConfiguration execConfig,
+        List<String> includePath,
         MavenProject project,
         String targetScope,
         IDependencyConfiguration depConfig,
-        File depsDir) throws ExpressionEvaluationException {
-        final Set<Artifact> deps = project.getArtifacts();
-        for (final IDependency dep : depConfig.getDependencies()) {
-            Artifact depObject = null;
-            for (final Artifact adep : deps) {
-                if (!targetScope.equals(adep.getScope())) {
-                    continue;
-                }
-                if (adep.getGroupId().equals(dep.getGroupId()) && adep.getArtifactId().equals(dep.getArtifactId())) {
-                    depObject = adep;
-                    break;
+        ResolutionCache cache) throws ExpressionEvaluationException {
+        final Map<String, Artifact> deps = new HashMap<String, Artifact>();
+        for (final Artifact adep : project.getArtifacts()) {
+            if (targetScope.equals(adep.getScope())) {
+                final String key = key(adep.getGroupId(), adep.getArtifactId());
+                if (!deps.containsKey(key)) {
+                    deps.put(key, adep);
                 }
             }
-            
+        }
+        for (final IDependency dep : depConfig.getDependencies()) {
+            final Artifact depObject = deps.get(key(dep.getGroupId(), dep.getArtifactId()));
             if (depObject == null) {
                 // silently ignore
                 continue;
@@ -310,7 +458,7 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
             
             MavenProject depProject;
             try {
-                depProject = this.getProjectFromArtifact(project, depObject);
+                depProject = this.getDependencyProject(cache, project, depObject);
             } catch (ProjectBuildingException ex) {
                 throw new ExpressionEvaluationException("Problems creating maven project from dependency", ex);
             }
@@ -319,23 +467,23 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
                 
                 for (final IAction action : dep.getActions()) {
                     if (action.getType() == ActionType.ACTION_INCLUDE) {
-                        final String includePath =
+                        final String path =
                             getClassesDirFromProject(depProject) +
                             "/" +
                             ((IActionInclude) action).getPharPath();
-                        execConfig.getIncludePath().add(new File(includePath).getAbsolutePath());
+                        includePath.add(new File(path).getAbsolutePath());
                     } else if (action.getType() == ActionType.ACTION_EXTRACT_INCLUDE) {
-                        final String includePath =
+                        final String path =
                             getClassesDirFromProject(depProject) +
                             "/" +
                             ((IActionExtractAndInclude) action).getPharPath() +
                             "/" +
                             ((IActionExtractAndInclude) action).getIncludePath();
-                        execConfig.getIncludePath().add(new File(includePath).getAbsolutePath());
+                        includePath.add(new File(path).getAbsolutePath());
                     } else if (action.getType() == ActionType.ACTION_CLASSIC) {
-                        final String includePath =
+                        final String path =
                             getClassesDirFromProject(depProject);
-                        execConfig.getIncludePath().add(new File(includePath).getAbsolutePath());
+                        includePath.add(new File(path).getAbsolutePath());
                     }
                 }
             }
@@ -344,22 +492,22 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
                 // Reference to a local repository
                 for (final IAction action : dep.getActions()) {
                     if (action.getType() == ActionType.ACTION_INCLUDE) {
-                        final String includePath = ((IActionInclude) action).getPharPath();
-                        execConfig.getIncludePath().add(
+                        final String pharPath = ((IActionInclude) action).getPharPath();
+                        includePath.add(
                             "phar://" +
                             depObject.getFile().getAbsolutePath().replace("\\", "/") +
                             "/" +
-                            (includePath.startsWith("/") ? includePath.substring(1) : includePath));
+                            (pharPath.startsWith("/") ? pharPath.substring(1) : pharPath));
                     } else if (action.getType() == ActionType.ACTION_EXTRACT_INCLUDE) {
-                        final String includePath = ((IActionExtractAndInclude) action).getIncludePath();
+                        final String path = ((IActionExtractAndInclude) action).getIncludePath();
                         final String pharPath = ((IActionExtractAndInclude) action).getPharPath();
-                        execConfig.getIncludePath().add(
+                        includePath.add(
                             "phar://" +
                             depObject.getFile().getAbsolutePath().replace("\\", "/") +
                             "/" +
                             (pharPath.startsWith("/") ? pharPath.substring(1) : pharPath) +
                             (pharPath.endsWith("/") || pharPath.length() == 0 ? "" : "/") +
-                            (includePath.startsWith("/") ? includePath.substring(1) : includePath));
+                            (path.startsWith("/") ? path.substring(1) : path));
                     }
                 }
             }
@@ -369,39 +517,40 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
 
     /**
      * Adds project dependencies (/target/classes) for given scope (needed for IDE/multi-pom).
-     * @param execConfig executable config.
+     * @param includePath receives the include path.
      * @param project project.
      * @param targetScope target scope.
+     * @param depConfig the dependency configuration.
+     * @param cache the resolution cache or null.
      * @throws ExpressionEvaluationException thrown on errors.
      * @since 2.0.1
      */
     private void addProjectDependencies(
-        IPhpExecutableConfiguration execConfig,
+        List<String> includePath,
         MavenProject project,
         final String targetScope,
-        IDependencyConfiguration depConfig)
+        IDependencyConfiguration depConfig,
+        ResolutionCache cache)
         throws ExpressionEvaluationException {
+        final Set<String> configured = new HashSet<String>();
+        for (final IDependency depC : depConfig.getDependencies()) {
+            configured.add(key(depC.getGroupId(), depC.getArtifactId()));
+        }
         final Set<Artifact> deps = project.getArtifacts();
         for (final Artifact dep : deps) {
             if (!targetScope.equals(dep.getScope())) {
                 continue;
             }
-            boolean foundDepConfig = false;
-            for (final IDependency depC : depConfig.getDependencies()) {
-                if (depC.getGroupId().equals(dep.getGroupId()) && depC.getArtifactId().equals(dep.getArtifactId())) {
-                    foundDepConfig = true;
-                }
-            }
-            if (foundDepConfig) {
+            if (configured.contains(key(dep.getGroupId(), dep.getArtifactId()))) {
                 // was already be performed by addFromDepConfig()
                 continue;
             }
             try {
-                final MavenProject depProject = this.getProjectFromArtifact(project, dep);
+                final MavenProject depProject = this.getDependencyProject(cache, project, dep);
                 if (depProject.getFile() != null) {
                     // Reference to a local project; should only happen in IDEs or multi-project poms
                     final String depTargetDir = getClassesDirFromProject(depProject);
-                    execConfig.getIncludePath().add(depTargetDir);
+                    includePath.add(depTargetDir);
                 }
             } catch (ProjectBuildingException ex) {
                 throw new ExpressionEvaluationException("Problems creating maven project from dependency", ex);
@@ -419,6 +568,38 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
         return depTargetDir;
     }
     
+    /**
+     * Returns the maven project from given artifact; uses the resolution cache if available. The cache
+     * entries are keyed by artifact and the remote repositories of the project because the projects of
+     * a reactor may resolve the artifact from different repositories.
+     * @param cache the resolution cache or null
+     * @param project the maven project
+     * @param a artifact
+     * @return maven project
+     * @throws ProjectBuildingException thrown if there are problems creating the project
+     */
+    private MavenProject getDependencyProject(final ResolutionCache cache, final MavenProject project,
+        final Artifact a) throws ProjectBuildingException {
+        if (cache == null) {
+            return this.getProjectFromArtifact(project, a);
+        }
+        final StringBuilder key = new StringBuilder(a.getId());
+        for (final ArtifactRepository repository : project.getRemoteArtifactRepositories()) {
+            key.append('|').append(repository.getId()).append('=').append(repository.getUrl());
+        }
+        synchronized (cache) {
+            final MavenProject result = cache.projects.get(key.toString());
+            if (result != null) {
+                return result;
+            }
+        }
+        final MavenProject result = this.getProjectFromArtifact(project, a);
+        synchronized (cache) {
+            cache.projects.put(key.toString(), result);
+        }
+        return result;
+    }
+    
     /**
      * Returns the maven project from given artifact.
      * @param project the maven project
@@ -438,23 +619,26 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
     }
     
     /**
-     * Adds the test includes to the executable configuration.
-     * @param execConfig executable configuration.
+     * Adds the test includes.
+     * @param includePath receives the include path.
      * @param buildConfig 
      * @param mojoConfig 
      * @param project the project.
      * @param mavenSession the maven session.
+     * @param depConfig the dependency configuration.
+     * @param cache the resolution cache or null.
      * @throws ExpressionEvaluationException thrown on maven property errors
      */
     private void addTestIncludes(
-            IPhpExecutableConfiguration execConfig,
+            List<String> includePath,
             Xpp3Dom buildConfig,
             Xpp3Dom mojoConfig,
             MavenProject project,
             MavenSession mavenSession,
-            IDependencyConfiguration depConfig)
+            IDependencyConfiguration depConfig,
+            ResolutionCache cache)
         throws ExpressionEvaluationException {
-        execConfig.getIncludePath().add(project.getBuild().getTestOutputDirectory());
+        includePath.add(project.getBuild().getTestOutputDirectory());
         File depsDir;
         if (buildConfig == null || buildConfig.getChild("testDependenciesDir") == null) {
             depsDir = this.componentFactory.filterString(
@@ -473,14 +657,14 @@ public class ProjectPhpExecution implements IProjectPhpExecution {
                     mojoConfig.getChild("testDependenciesDir").getValue(),
                     File.class);
         }
-        execConfig.getIncludePath().add(depsDir.getAbsolutePath());
+        includePath.add(depsDir.getAbsolutePath());
         // TODO: Bad hack for broken pear libraries.
-        execConfig.getIncludePath().add(new File(depsDir, "pear").getAbsolutePath());
+        includePath.add(new File(depsDir, "pear").getAbsolutePath());
         
-        addFromDepConfig(execConfig, project, Artifact.SCOPE_TEST, depConfig, depsDir);
+        addFromDepConfig(includePath, project, Artifact.SCOPE_TEST, depConfig, cache);
         
         // add the project dependencies of multi-project-poms
-        addProjectDependencies(execConfig, project, Artifact.SCOPE_TEST, depConfig);
+        addProjectDependencies(includePath, project, Artifact.SCOPE_TEST, depConfig, cache);
     }
 
     /**
@@ -17,7 +17,9 @@
 package org.phpmaven.project.legacy.test;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.maven.execution.MavenSession;
@@ -132,6 +134,39 @@ public class BaseTest extends AbstractTestCase {
         assertTrue(includes.contains(targetPhpTestDependencies));
     }
 
+    /**
+     * Tests that repeated calls return independent configurations with the same include path.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testIncludePathCache() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        // create the execution config
+        final MavenSession session = this.createSessionForPhpMaven(
+                "project/legacy/small-project");
+        final IProjectPhpExecution prjConfig = factory.lookup(
+                IProjectPhpExecution.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        
+        final IPhpExecutableConfiguration first = prjConfig.getTestExecutionConfiguration();
+        final List<String> expected = new ArrayList<String>(first.getIncludePath());
+        first.getIncludePath().add("/some/additional/path");
+        final IPhpExecutableConfiguration second = prjConfig.getTestExecutionConfiguration();
+        assertNotSame(first, second);
+        assertEquals(expected, second.getIncludePath());
+        
+        // the mojo configuration is part of the cache key
+        final Xpp3Dom config = new Xpp3Dom("configuration");
+        final Xpp3Dom deps = new Xpp3Dom("dependenciesDir");
+        deps.setValue("${project.basedir}/target/php-dependencies");
+        config.addChild(deps);
+        assertTrue(prjConfig.getTestExecutionConfiguration(config).getIncludePath().contains(
+                new File(session.getCurrentProject().getBasedir(), "target/php-dependencies").getAbsolutePath()));
+        assertEquals(expected, prjConfig.getTestExecutionConfiguration().getIncludePath());
+    }
+
     /**
      * Tests an additional include path scenario.
      *
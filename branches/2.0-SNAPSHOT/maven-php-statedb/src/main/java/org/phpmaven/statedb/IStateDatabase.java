@@ -52,6 +52,17 @@ import org.phpmaven.core.IComponentFactory;
  * </p>
  * 
  * <p>
+ * The default implementation appends every change to a log file and only keeps an index of the
+ * values in memory. Changes are forced to disc via {@link #flush()}; stale values are removed from
+ * the file via {@link #compact()} (automatically done when the jvm exits). The implementation is
+ * thread safe and the database file may be shared by multiple processes (for example parallel
+ * builds and IDE builds); it is guarded by a lock file next to the database file. A state
+ * database file written by the former implementation (a serialized java object) is migrated
+ * automatically. The former implementation (not thread safe) is still available with the component
+ * hint &quot;serialized&quot;.
+ * </p>
+ * 
+ * <p>
  * Available options:
  * </p>
  * 
@@ -98,7 +109,7 @@ public interface IStateDatabase {
     <T extends Serializable> T get(String groupId, String artifact, String key, Class<T> clazz);
     
     /**
-     * Sets the data and saves the database to disc
+     * Sets the data and appends it to the database file
      * @param groupId The group id
      * @param artifactId The artifact Id
      * @param key The key for the stored element
@@ -114,4 +125,16 @@ public interface IStateDatabase {
      */
     void remove(String groupId, String artifactId, String key);
     
+    /**
+     * Forces the changes to disc.
+     * @since 2.0.1
+     */
+    void flush();
+    
+    /**
+     * Removes overwritten and removed values from the database file.
+     * @since 2.0.1
+     */
+    void compact();
+    
 }
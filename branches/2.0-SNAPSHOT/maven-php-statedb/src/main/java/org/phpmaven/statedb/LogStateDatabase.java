@@ -0,0 +1,174 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.phpmaven.statedb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import org.codehaus.plexus.component.annotations.Component;
+import org.phpmaven.core.ConfigurationParameter;
+
+/**
+ * Implementation of the persistent state database using an append-only log file.
+ *
+ * <p>
+ * The implementation is thread safe and the database file can be shared by multiple processes (see
+ * {@link LogStore}). Every database file is opened once per jvm and shared by all instances; the files
+ * are compacted and closed when the jvm exits.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+@Component(role = IStateDatabase.class, instantiationStrategy = "per-lookup")
+public class LogStateDatabase implements IStateDatabase {
+
+    /**
+     * The database file.
+     */
+    @ConfigurationParameter(name = "dbfile", expression = "${project.basedir}/target/phpmaven.state.db")
+    private File dbfile;
+
+    /**
+     * Constructor used by the component container.
+     */
+    public LogStateDatabase() {
+        // empty
+    }
+
+    /**
+     * Constructor to use the database outside of a component container.
+     * @param dbfile the database file
+     */
+    public LogStateDatabase(File dbfile) {
+        this.dbfile = dbfile;
+    }
+
+    @Override
+    public File getDbfile() {
+        return this.dbfile;
+    }
+
+    /**
+     * Returns the log file of the database file if the database file exists.
+     * @return log file or null if the database file does not exist
+     * @throws IOException thrown on io errors
+     */
+    private LogStore existingStore() throws IOException {
+        final LogStore store = LogStores.instance().find(this.dbfile);
+        if (store != null) {
+            return store;
+        }
+        if (!this.dbfile.exists()) {
+            return null;
+        }
+        return LogStores.instance().get(this.dbfile);
+    }
+
+    @Override
+    public <T extends Serializable> T get(String groupId, String artifact, String key, Class<T> clazz) {
+        try {
+            final LogStore store = this.existingStore();
+            final byte[] data = store == null ? null : store.get(groupId, artifact, key);
+            if (data == null) {
+                return null;
+            }
+            final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+            return clazz.cast(ois.readObject());
+        } catch (Exception ex) {
+            throw new IllegalStateException("Error while accessing persistent state database", ex);
+        }
+    }
+
+    @Override
+    public void set(String groupId, String artifactId, String key, Serializable data) {
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(data);
+            oos.close();
+            LogStores.instance().get(this.dbfile).set(groupId, artifactId, key, baos.toByteArray());
+        } catch (Exception ex) {
+            throw new IllegalStateException("Error while accessing persistent state database", ex);
+        }
+    }
+
+    @Override
+    public void remove(String groupId, String artifactId, String key) {
+        try {
+            final LogStore store = this.existingStore();
+            if (store != null) {
+                store.remove(groupId, artifactId, key);
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException("Error while accessing persistent state database", ex);
+        }
+    }
+
+    @Override
+    public void delete() {
+        try {
+            LogStores.instance().close(this.dbfile);
+            if (this.dbfile.exists()) {
+                this.dbfile.delete();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Error while accessing persistent state database", ex);
+        }
+    }
+
+    @Override
+    public void reload() {
+        try {
+            final LogStore store = LogStores.instance().find(this.dbfile);
+            if (store != null) {
+                store.reload();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Error while accessing persistent state database", ex);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            final LogStore store = LogStores.instance().find(this.dbfile);
+            if (store != null) {
+                store.flush();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Error while accessing persistent state database", ex);
+        }
+    }
+
+    @Override
+    public void compact() {
+        try {
+            final LogStore store = this.existingStore();
+            if (store != null) {
+                store.compact();
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException("Error while accessing persistent state database", ex);
+        }
+    }
+
+}
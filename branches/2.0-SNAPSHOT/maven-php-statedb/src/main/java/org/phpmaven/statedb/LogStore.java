@@ -0,0 +1,892 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.phpmaven.statedb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * An append-only log file with an in-memory index.
+ *
+ * <p>
+ * The file starts with a header (magic number and format version) followed by the records. A record
+ * consists of the operation (set or remove), group id, artifact id, key, the serialized value (set only)
+ * and a CRC32 checksum of the record. Only the index (key to value position) is kept in memory; the
+ * values are read from the file on demand. A truncated or corrupt record at the end of the file (for
+ * example caused by a crash while writing) is dropped.
+ * </p>
+ *
+ * <p>
+ * Every record is appended with a single write; {@link #flush()} forces the file to disc. Overwritten and
+ * removed values remain in the file until it is compacted via {@link #compact()}. Compaction writes a new
+ * file and renames it to the log file.
+ * </p>
+ *
+ * <p>
+ * The store is thread safe and the log file can be shared by multiple processes. Threads reading values
+ * share a read lock; threads modifying the log file or the index use the write lock. In addition they lock
+ * the lock file (log file name with suffix ".lock") so that only one process modifies the log file at a
+ * time. The lock file contains the generation of the log file which is incremented every time the log file
+ * is replaced. Records appended by other processes are read before every modification and whenever a read
+ * detects a modification (changed file length or generation).
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+class LogStore {
+
+    /**
+     * Magic number ("PMSD").
+     */
+    private static final int MAGIC = 0x504d5344;
+
+    /**
+     * Format version.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Header size (magic and version).
+     */
+    private static final int HEADER_SIZE = 5;
+
+    /**
+     * Operation: set a value.
+     */
+    private static final byte OP_SET = 1;
+
+    /**
+     * Operation: remove a value.
+     */
+    private static final byte OP_REMOVE = 2;
+
+    /**
+     * Size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Minimum number of stale bytes before the file is worth compacting.
+     */
+    private static final long COMPACT_THRESHOLD = 65536;
+
+    /**
+     * Stream header of serialized java objects (former database format).
+     */
+    private static final int SERIALIZED_MAGIC = 0xaced;
+
+    /**
+     * Position of a value within the log file.
+     */
+    private static final class Entry {
+
+        /**
+         * Offset of the value bytes.
+         */
+        private final long offset;
+
+        /**
+         * Length of the value bytes.
+         */
+        private final int length;
+
+        /**
+         * Size of the whole record.
+         */
+        private final int recordSize;
+
+        /**
+         * Constructor.
+         * @param offset offset of the value bytes
+         * @param length length of the value bytes
+         * @param recordSize size of the whole record
+         */
+        Entry(long offset, int length, int recordSize) {
+            this.offset = offset;
+            this.length = length;
+            this.recordSize = recordSize;
+        }
+
+    }
+
+    /**
+     * Input stream counting the bytes read.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes read.
+         */
+        private long count;
+
+        /**
+         * Constructor.
+         * @param in underlying stream
+         * @param count initial number of bytes
+         */
+        CountingInputStream(InputStream in, long count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = super.read();
+            if (result != -1) {
+                this.count++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int result = super.read(b, off, len);
+            if (result > 0) {
+                this.count += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long result = super.skip(n);
+            this.count += result;
+            return result;
+        }
+
+    }
+
+    /**
+     * The log file.
+     */
+    private final File file;
+
+    /**
+     * The lock file.
+     */
+    private final File lockFile;
+
+    /**
+     * The index.
+     */
+    private final Map<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Lock of the threads.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Length of the log file that was read into the index.
+     */
+    private long length;
+
+    /**
+     * Number of bytes used by overwritten or removed records.
+     */
+    private long stale;
+
+    /**
+     * Generation of the log file.
+     */
+    private long generation;
+
+    /**
+     * True if the log file was deleted; the opened log file must not be used any longer.
+     */
+    private boolean deleted;
+
+    /**
+     * The opened log file.
+     */
+    private RandomAccessFile data;
+
+    /**
+     * The opened lock file.
+     */
+    private RandomAccessFile locks;
+
+    /**
+     * Constructor.
+     * @param file the log file
+     */
+    LogStore(File file) {
+        this.file = file;
+        this.lockFile = new File(file.getParentFile(), file.getName() + ".lock");
+    }
+
+    /**
+     * Returns the log file.
+     * @return log file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Opens the log file (creating it if it does not exist) and builds the index. A database file of the
+     * former format (serialized {@link Db}) is converted to a log file.
+     * @throws IOException thrown on io errors
+     */
+    public void open() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (!this.file.getParentFile().exists()) {
+                this.file.getParentFile().mkdirs();
+            }
+            this.locks = new RandomAccessFile(this.lockFile, "rw");
+            final FileLock fileLock = this.lockFile();
+            try {
+                this.generation = this.readGeneration();
+                this.migrate();
+                this.data = new RandomAccessFile(this.file, "rw");
+                this.scan(true);
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-reads the whole log file.
+     * @throws IOException thrown on io errors
+     */
+    public void reload() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            final FileLock fileLock = this.lockFile();
+            try {
+                this.reset();
+                this.refresh(false);
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if the log file contains stale records worth to be compacted.
+     * @return true if the log file should be compacted
+     */
+    public boolean isCompactable() {
+        this.lock.readLock().lock();
+        try {
+            return this.stale >= COMPACT_THRESHOLD && this.stale > this.length / 2;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the serialized value of given key.
+     * @param groupId group id
+     * @param artifactId artifact id
+     * @param key key
+     * @return value bytes or null if the key is not present
+     * @throws IOException thrown on io errors
+     */
+    public byte[] get(String groupId, String artifactId, String key) throws IOException {
+        final String indexKey = toKey(groupId, artifactId, key);
+        this.lock.readLock().lock();
+        try {
+            if (!this.isModified()) {
+                return this.read(indexKey);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        // read the modifications of other processes
+        this.lock.writeLock().lock();
+        try {
+            final FileLock fileLock = this.lockFile();
+            try {
+                this.refresh(false);
+            } finally {
+                fileLock.release();
+            }
+            return this.read(indexKey);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a set record.
+     * @param groupId group id
+     * @param artifactId artifact id
+     * @param key key
+     * @param value serialized value
+     * @throws IOException thrown on io errors
+     */
+    public void set(String groupId, String artifactId, String key, byte[] value) throws IOException {
+        final byte[] record = record(OP_SET, groupId, artifactId, key, value);
+        this.lock.writeLock().lock();
+        try {
+            final FileLock fileLock = this.lockFile();
+            try {
+                this.refresh(true);
+                final long offset = this.append(record);
+                this.put(
+                    toKey(groupId, artifactId, key),
+                    new Entry(offset + record.length - 4 - value.length, value.length, record.length));
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a remove record if the key is present.
+     * @param groupId group id
+     * @param artifactId artifact id
+     * @param key key
+     * @throws IOException thrown on io errors
+     */
+    public void remove(String groupId, String artifactId, String key) throws IOException {
+        final String indexKey = toKey(groupId, artifactId, key);
+        final byte[] record = record(OP_REMOVE, groupId, artifactId, key, null);
+        this.lock.writeLock().lock();
+        try {
+            final FileLock fileLock = this.lockFile();
+            try {
+                this.refresh(true);
+                if (this.index.containsKey(indexKey)) {
+                    this.append(record);
+                    this.put(indexKey, null);
+                    this.stale += record.length;
+                }
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the appended records to disc.
+     * @throws IOException thrown on io errors
+     */
+    public void flush() throws IOException {
+        this.lock.readLock().lock();
+        try {
+            if (this.data != null) {
+                this.data.getChannel().force(false);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log file containing the current values only.
+     * @throws IOException thrown on io errors
+     */
+    public void compact() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            final FileLock fileLock = this.lockFile();
+            try {
+                this.refresh(true);
+                if (this.stale > 0) {
+                    this.rewrite();
+                }
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the log file to disc and closes it.
+     * @throws IOException thrown on io errors
+     */
+    public void close() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (this.data != null) {
+                this.data.getChannel().force(false);
+                this.data.close();
+            }
+        } finally {
+            this.data = null;
+            try {
+                if (this.locks != null) {
+                    this.locks.close();
+                }
+            } finally {
+                this.locks = null;
+                this.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads a value. Requires the read or write lock.
+     * @param indexKey index key
+     * @return value bytes or null if the key is not present
+     * @throws IOException thrown on io errors
+     */
+    private byte[] read(String indexKey) throws IOException {
+        final Entry entry = this.index.get(indexKey);
+        if (entry == null) {
+            return null;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        final FileChannel channel = this.data.getChannel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, entry.offset + buffer.position()) == -1) {
+                throw new EOFException("Unexpected end of state database " + this.file);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Writes a new log file containing the current values and replaces the log file. Requires the write lock
+     * and the file lock.
+     * @throws IOException thrown on io errors
+     */
+    private void rewrite() throws IOException {
+        final File tmp = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+        final Map<String, Entry> newIndex = new HashMap<String, Entry>();
+        final FileOutputStream fos = new FileOutputStream(tmp);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            for (final Map.Entry<String, Entry> mapEntry : this.index.entrySet()) {
+                final String[] parts = fromKey(mapEntry.getKey());
+                final byte[] value = this.read(mapEntry.getKey());
+                final byte[] record = record(OP_SET, parts[0], parts[1], parts[2], value);
+                newIndex.put(mapEntry.getKey(), new Entry(
+                    out.size() + record.length - 4 - value.length, value.length, record.length));
+                out.write(record);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        final long newLength = tmp.length();
+
+        this.data.close();
+        this.data = null;
+        this.file.delete();
+        final boolean renamed = tmp.renameTo(this.file);
+        this.data = new RandomAccessFile(this.file, "rw");
+        if (!renamed) {
+            tmp.delete();
+            this.reset();
+            this.scan(true);
+            throw new IOException("Cannot rename " + tmp + " to " + this.file);
+        }
+        this.writeGeneration(this.generation + 1);
+        this.index.clear();
+        this.index.putAll(newIndex);
+        this.length = newLength;
+        this.stale = 0;
+    }
+
+    /**
+     * Locks the lock file exclusively. Waits until the lock is available. Requires the write lock.
+     * @return file lock
+     * @throws IOException thrown on io errors
+     */
+    private FileLock lockFile() throws IOException {
+        if (this.locks == null) {
+            throw new IOException("State database " + this.file + " is closed");
+        }
+        if (!this.lockFile.exists()) {
+            // deleted (for example by a clean build); other processes use the new lock file
+            this.locks.close();
+            this.locks = null;
+            if (!this.lockFile.getParentFile().exists()) {
+                this.lockFile.getParentFile().mkdirs();
+            }
+            this.locks = new RandomAccessFile(this.lockFile, "rw");
+        }
+        while (true) {
+            try {
+                return this.locks.getChannel().lock();
+            } catch (OverlappingFileLockException ex) {
+                // locked by another store of this jvm
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ex2) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while locking " + this.lockFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the generation from the lock file.
+     * @return generation
+     * @throws IOException thrown on io errors
+     */
+    private long readGeneration() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        final FileChannel channel = this.locks.getChannel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) == -1) {
+                return 0;
+            }
+        }
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    /**
+     * Writes the generation to the lock file. Requires the file lock.
+     * @param newGeneration generation
+     * @throws IOException thrown on io errors
+     */
+    private void writeGeneration(long newGeneration) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(newGeneration);
+        buffer.flip();
+        final FileChannel channel = this.locks.getChannel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.force(false);
+        this.generation = newGeneration;
+    }
+
+    /**
+     * Returns true if the log file was modified by another process. Requires the read or write lock.
+     * @return true if the log file was modified
+     * @throws IOException thrown on io errors
+     */
+    private boolean isModified() throws IOException {
+        if (this.data == null) {
+            throw new IOException("State database " + this.file + " is closed");
+        }
+        if (this.deleted) {
+            return this.file.exists();
+        }
+        return this.file.length() != this.length || this.readGeneration() != this.generation;
+    }
+
+    /**
+     * Clears the index.
+     */
+    private void reset() {
+        this.index.clear();
+        this.length = 0;
+        this.stale = 0;
+    }
+
+    /**
+     * Reads the modifications of other processes. Requires the write lock and the file lock.
+     * @param write true if the log file is modified afterwards; creates the log file if it does not exist
+     * @throws IOException thrown on io errors
+     */
+    private void refresh(boolean write) throws IOException {
+        if (this.data == null) {
+            throw new IOException("State database " + this.file + " is closed");
+        }
+        final long newGeneration = this.readGeneration();
+        if (!this.file.exists()) {
+            // the log file was deleted
+            this.reset();
+            if (!write) {
+                this.deleted = true;
+                return;
+            }
+            if (!this.file.getParentFile().exists()) {
+                this.file.getParentFile().mkdirs();
+            }
+            this.reopen(newGeneration);
+        } else if (this.deleted || newGeneration != this.generation
+            || this.file.length() != this.data.getChannel().size()) {
+            // the log file was replaced
+            this.reopen(newGeneration);
+        } else if (this.data.getChannel().size() < this.length) {
+            this.reset();
+        }
+        this.scan(write);
+    }
+
+    /**
+     * Re-opens the log file after it was replaced. Requires the write lock and the file lock.
+     * @param newGeneration the generation of the log file
+     * @throws IOException thrown on io errors
+     */
+    private void reopen(long newGeneration) throws IOException {
+        this.data.close();
+        this.data = null;
+        this.generation = newGeneration;
+        this.reset();
+        this.migrate();
+        this.data = new RandomAccessFile(this.file, "rw");
+        this.deleted = false;
+    }
+
+    /**
+     * Reads the records that were not read into the index yet. Requires the write lock and the file lock.
+     * @param write true to write the header of a new log file
+     * @throws IOException thrown on io errors
+     */
+    private void scan(boolean write) throws IOException {
+        final FileChannel channel = this.data.getChannel();
+        final long fileLength = channel.size();
+        if (this.length == 0) {
+            if (fileLength < HEADER_SIZE) {
+                if (write) {
+                    // new file or incomplete header
+                    channel.truncate(0);
+                    this.data.seek(0);
+                    this.data.writeInt(MAGIC);
+                    this.data.writeByte(VERSION);
+                    this.length = HEADER_SIZE;
+                }
+                return;
+            }
+            this.data.seek(0);
+            if (this.data.readInt() != MAGIC || this.data.readByte() != VERSION) {
+                throw new IOException("Unknown format of state database " + this.file);
+            }
+            this.length = HEADER_SIZE;
+        }
+        if (fileLength <= this.length) {
+            return;
+        }
+
+        channel.position(this.length);
+        final CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE), this.length);
+        final CRC32 crc = new CRC32();
+        final DataInputStream in = new DataInputStream(new CheckedInputStream(counter, crc));
+        long position = this.length;
+        final byte[] scratch = new byte[8192];
+        try {
+            while (position < fileLength) {
+                crc.reset();
+                final byte op = in.readByte();
+                if (op != OP_SET && op != OP_REMOVE) {
+                    break;
+                }
+                final String key = toKey(in.readUTF(), in.readUTF(), in.readUTF());
+                int valueLength = 0;
+                long valueOffset = 0;
+                if (op == OP_SET) {
+                    valueLength = in.readInt();
+                    valueOffset = counter.count;
+                    if (valueLength < 0 || valueOffset + valueLength > fileLength) {
+                        break;
+                    }
+                    int remaining = valueLength;
+                    while (remaining > 0) {
+                        final int read = in.read(scratch, 0, Math.min(remaining, scratch.length));
+                        if (read == -1) {
+                            throw new EOFException();
+                        }
+                        remaining -= read;
+                    }
+                }
+                final long checksum = crc.getValue();
+                if (in.readInt() != (int) checksum) {
+                    break;
+                }
+                final int recordSize = (int) (counter.count - position);
+                if (op == OP_SET) {
+                    this.put(key, new Entry(valueOffset, valueLength, recordSize));
+                } else {
+                    this.put(key, null);
+                    this.stale += recordSize;
+                }
+                position = counter.count;
+            }
+        } catch (EOFException ex) {
+            // truncated record
+        }
+        this.length = position;
+        if (position < fileLength) {
+            // drop the corrupt tail; nobody else is writing
+            channel.truncate(position);
+        }
+    }
+
+    /**
+     * Appends a record. Requires the write lock and the file lock.
+     * @param record record bytes
+     * @return the file offset of the record
+     * @throws IOException thrown on io errors
+     */
+    private long append(byte[] record) throws IOException {
+        final long offset = this.length;
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+        final FileChannel channel = this.data.getChannel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        this.length += record.length;
+        return offset;
+    }
+
+    /**
+     * Converts a database file of the former format (serialized {@link Db}) to a log file. Requires the write
+     * lock and the file lock.
+     * @throws IOException thrown on io errors
+     */
+    private void migrate() throws IOException {
+        if (!this.file.isFile() || this.file.length() < 2) {
+            return;
+        }
+        final DataInputStream header = new DataInputStream(new FileInputStream(this.file));
+        try {
+            if (header.readUnsignedShort() != SERIALIZED_MAGIC) {
+                return;
+            }
+        } finally {
+            header.close();
+        }
+
+        final Db database;
+        final InputStream in = new BufferedInputStream(new FileInputStream(this.file));
+        try {
+            database = (Db) new ObjectInputStream(in).readObject();
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Cannot migrate state database " + this.file, ex);
+        } finally {
+            in.close();
+        }
+
+        final File tmp = new File(this.file.getParentFile(), this.file.getName() + ".migrate");
+        final FileOutputStream fos = new FileOutputStream(tmp);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            for (final Map.Entry<String, Map<String, Map<String, byte[]>>> group : database.getDb().entrySet()) {
+                for (final Map.Entry<String, Map<String, byte[]>> artifact : group.getValue().entrySet()) {
+                    for (final Map.Entry<String, byte[]> value : artifact.getValue().entrySet()) {
+                        out.write(record(OP_SET, group.getKey(), artifact.getKey(), value.getKey(), value.getValue()));
+                    }
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        this.file.delete();
+        if (!tmp.renameTo(this.file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + this.file);
+        }
+        this.writeGeneration(this.generation + 1);
+    }
+
+    /**
+     * Updates the index and the number of stale bytes.
+     * @param key index key
+     * @param entry new entry or null to remove the key
+     */
+    private void put(String key, Entry entry) {
+        final Entry old = entry == null ? this.index.remove(key) : this.index.put(key, entry);
+        if (old != null) {
+            this.stale += old.recordSize;
+        }
+    }
+
+    /**
+     * Creates a record including the checksum.
+     * @param op operation
+     * @param groupId group id
+     * @param artifactId artifact id
+     * @param key key
+     * @param value value bytes; only used for set records
+     * @return record bytes
+     * @throws IOException thrown on io errors
+     */
+    private static byte[] record(byte op, String groupId, String artifactId, String key, byte[] value)
+        throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(value == null ? 64 : value.length + 64);
+        final DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(op);
+        record.writeUTF(groupId);
+        record.writeUTF(artifactId);
+        record.writeUTF(key);
+        if (op == OP_SET) {
+            record.writeInt(value.length);
+            record.write(value);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        record.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the index key.
+     * @param groupId group id
+     * @param artifactId artifact id
+     * @param key key
+     * @return index key
+     */
+    private static String toKey(String groupId, String artifactId, String key) {
+        return groupId + '\u0000' + artifactId + '\u0000' + key;
+    }
+
+    /**
+     * Splits the index key.
+     * @param key index key
+     * @return group id, artifact id and key
+     */
+    private static String[] fromKey(String key) {
+        final int first = key.indexOf('\u0000');
+        final int second = key.indexOf('\u0000', first + 1);
+        return new String[]{key.substring(0, first), key.substring(first + 1, second), key.substring(second + 1)};
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.phpmaven.statedb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The opened log files of this jvm.
+ *
+ * <p>
+ * Every log file is opened once and shared by all state database instances using it. The log files are
+ * compacted (if worth it) and closed when the jvm exits.
+ * </p>
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+final class LogStores {
+
+    /**
+     * Singleton instance.
+     */
+    private static final LogStores INSTANCE = new LogStores();
+
+    /**
+     * The opened log files.
+     */
+    private final ConcurrentMap<File, LogStore> stores = new ConcurrentHashMap<File, LogStore>();
+
+    /**
+     * Hidden constructor (singleton).
+     */
+    private LogStores() {
+        Runtime.getRuntime().addShutdownHook(new Thread("phpmaven-statedb-shutdown") {
+            @Override
+            public void run() {
+                LogStores.this.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Returns the instance of this singleton.
+     *
+     * @return instance singleton.
+     */
+    public static LogStores instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the opened log file.
+     * @param file database file
+     * @return log file or null if it is not opened
+     */
+    public LogStore find(File file) {
+        return this.stores.get(file.getAbsoluteFile());
+    }
+
+    /**
+     * Returns the log file; opens it on first access.
+     * @param file database file
+     * @return log file
+     * @throws IOException thrown on io errors
+     */
+    public LogStore get(File file) throws IOException {
+        final File key = file.getAbsoluteFile();
+        LogStore store = this.stores.get(key);
+        if (store == null) {
+            synchronized (this) {
+                store = this.stores.get(key);
+                if (store == null) {
+                    store = new LogStore(key);
+                    store.open();
+                    if (store.isCompactable()) {
+                        store.compact();
+                    }
+                    this.stores.put(key, store);
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Closes the log file.
+     * @param file database file
+     * @throws IOException thrown on io errors
+     */
+    public synchronized void close(File file) throws IOException {
+        final LogStore store = this.stores.remove(file.getAbsoluteFile());
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Compacts and closes all log files.
+     */
+    public synchronized void shutdown() {
+        final List<LogStore> list = new ArrayList<LogStore>(this.stores.values());
+        this.stores.clear();
+        for (final LogStore store : list) {
+            try {
+                if (store.isCompactable()) {
+                    store.compact();
+                }
+            // CHECKSTYLE:OFF
+            // checkstyle does not like empty catches
+            } catch (IOException ex) {
+                // ignore; the file is compacted the next time
+            }
+            // CHECKSTYLE:ON
+            try {
+                store.close();
+            // CHECKSTYLE:OFF
+            // checkstyle does not like empty catches
+            } catch (IOException ex) {
+                // ignore; the records were written before
+            }
+            // CHECKSTYLE:ON
+        }
+    }
+
+}
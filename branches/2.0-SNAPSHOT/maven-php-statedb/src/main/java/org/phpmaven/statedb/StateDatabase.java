@@ -34,12 +34,16 @@ import org.codehaus.plexus.component.annotations.Component;
 import org.phpmaven.core.ConfigurationParameter;
 
 /**
- * Implementation of the persistent state database.
+ * Implementation of the persistent state database serializing the whole database on every change.
+ * 
+ * <p>
+ * Superseded by {@link LogStateDatabase}; available with the component hint &quot;serialized&quot;.
+ * </p>
  * 
  * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
  * @since 2.0.1
  */
-@Component(role = IStateDatabase.class, instantiationStrategy = "singleton")
+@Component(role = IStateDatabase.class, hint = "serialized", instantiationStrategy = "singleton")
 public class StateDatabase implements IStateDatabase {
     
     /**
@@ -160,6 +164,16 @@ public class StateDatabase implements IStateDatabase {
         }
     }
 
+    @Override
+    public void flush() {
+        // every change is saved immediately
+    }
+
+    @Override
+    public void compact() {
+        // the database file never contains stale values
+    }
+
     private void save() throws IOException, FileNotFoundException {
         if (!this.dbfile.getParentFile().exists()) {
             this.dbfile.getParentFile().mkdirs();
@@ -16,6 +16,10 @@
 
 package org.phpmaven.statedb.test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
 import org.apache.maven.execution.MavenSession;
 import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.statedb.IStateDatabase;
@@ -75,5 +79,130 @@ public class BaseTest extends AbstractTestCase {
         db.reload();
         assertEquals("persistence", db.get("foo", "bar", "baz", String.class));
     }
+    
+    /**
+     * Tests overwriting and removing values and the compaction of the database file.
+     * 
+     * @throws Exception
+     */
+    public void testRemoveAndCompact() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleEmptySession();
+        
+        final IStateDatabase db = factory.lookup(
+                IStateDatabase.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        for (int i = 0; i < 100; i++) {
+            db.set("foo", "bar", "baz", "value" + i);
+            db.set("foo", "bar", "key" + i, Integer.valueOf(i));
+        }
+        db.remove("foo", "bar", "key0");
+        db.flush();
+        assertEquals("value99", db.get("foo", "bar", "baz", String.class));
+        assertNull(db.get("foo", "bar", "key0", Integer.class));
+        
+        final long length = db.getDbfile().length();
+        db.compact();
+        assertTrue(db.getDbfile().length() < length);
+        assertEquals("value99", db.get("foo", "bar", "baz", String.class));
+        assertEquals(Integer.valueOf(50), db.get("foo", "bar", "key50", Integer.class));
+        
+        db.reload();
+        assertEquals("value99", db.get("foo", "bar", "baz", String.class));
+        assertNull(db.get("foo", "bar", "key0", Integer.class));
+        assertEquals(Integer.valueOf(99), db.get("foo", "bar", "key99", Integer.class));
+    }
+    
+    /**
+     * Tests that a truncated record at the end of the database file is dropped.
+     * 
+     * @throws Exception
+     */
+    public void testTruncated() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleEmptySession();
+        
+        final IStateDatabase db = factory.lookup(
+                IStateDatabase.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        db.set("foo", "bar", "baz", "persistence");
+        db.set("foo", "bar", "other", "lost");
+        db.reload();
+        
+        final RandomAccessFile raf = new RandomAccessFile(db.getDbfile(), "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        
+        assertEquals("persistence", db.get("foo", "bar", "baz", String.class));
+        assertNull(db.get("foo", "bar", "other", String.class));
+        db.set("foo", "bar", "other", "written");
+        db.reload();
+        assertEquals("written", db.get("foo", "bar", "other", String.class));
+    }
+    
+    /**
+     * Tests the migration of a database file written by the serialized state database.
+     * 
+     * @throws Exception
+     */
+    public void testMigration() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleEmptySession();
+        
+        final IStateDatabase legacy = factory.lookup(
+                IStateDatabase.class,
+                "serialized",
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        legacy.set("foo", "bar", "baz", "persistence");
+        legacy.set("foo", "bar2", "baz", Integer.valueOf(42));
+        final File file = legacy.getDbfile();
+        assertTrue(file.exists());
+        
+        final IStateDatabase db = factory.lookup(
+                IStateDatabase.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        assertEquals(file, db.getDbfile());
+        assertEquals("persistence", db.get("foo", "bar", "baz", String.class));
+        assertEquals(Integer.valueOf(42), db.get("foo", "bar2", "baz", Integer.class));
+        
+        db.reload();
+        assertEquals("persistence", db.get("foo", "bar", "baz", String.class));
+    }
+    
+    /**
+     * Tests that an unknown database file is reported.
+     * 
+     * @throws Exception
+     */
+    public void testUnknownFormat() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleEmptySession();
+        
+        final IStateDatabase db = factory.lookup(
+                IStateDatabase.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+        db.getDbfile().getParentFile().mkdirs();
+        final FileOutputStream fos = new FileOutputStream(db.getDbfile());
+        fos.write("no database".getBytes("UTF-8"));
+        fos.close();
+        try {
+            db.get("foo", "bar", "baz", String.class);
+            fail("Exception expected");
+        // CHECKSTYLE:OFF
+        // checkstyle does not like empty catches
+        } catch (IllegalStateException ex) {
+            // ignore; we expect this exception
+        }
+        // CHECKSTYLE:ON
+    }
    
 }
\ No newline at end of file
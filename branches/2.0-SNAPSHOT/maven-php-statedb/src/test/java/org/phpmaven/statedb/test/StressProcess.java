@@ -0,0 +1,97 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.statedb.test;
+
+import java.io.File;
+
+import org.phpmaven.statedb.IStateDatabase;
+import org.phpmaven.statedb.LogStateDatabase;
+
+/**
+ * Process started by the stress test; modifies the state database concurrently to other processes.
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public final class StressProcess {
+
+    /**
+     * Hidden constructor.
+     */
+    private StressProcess() {
+        // empty
+    }
+
+    /**
+     * Writes, reads and removes values of the artifact "process&lt;id&gt;".
+     *
+     * @param args database file, process id and number of values
+     */
+    public static void main(String[] args) {
+        final IStateDatabase db = new LogStateDatabase(new File(args[0]));
+        final String artifact = "process" + args[1];
+        final int count = Integer.parseInt(args[2]);
+        writeValues(db, artifact, count);
+        System.exit(0);
+    }
+
+    /**
+     * Writes, reads and removes values; removes every third value and compacts the database from time to time.
+     *
+     * @param db the state database
+     * @param artifact the artifact id
+     * @param count number of values
+     */
+    static void writeValues(IStateDatabase db, String artifact, int count) {
+        for (int i = 0; i < count; i++) {
+            db.set("stress", artifact, "key" + i, "value" + i);
+            db.set("stress", "shared", "last", artifact + i);
+            if (!("value" + i).equals(db.get("stress", artifact, "key" + i, String.class))) {
+                throw new IllegalStateException("Lost value " + artifact + "/key" + i);
+            }
+            if (i % 3 == 0) {
+                db.remove("stress", artifact, "key" + i);
+            }
+            if (i % 50 == 49) {
+                db.compact();
+            }
+        }
+        db.flush();
+    }
+
+    /**
+     * Verifies the values written by {@link #writeValues(IStateDatabase, String, int)}.
+     *
+     * @param db the state database
+     * @param artifact the artifact id
+     * @param count number of values
+     * @return error message or null if all values are present
+     */
+    static String verifyValues(IStateDatabase db, String artifact, int count) {
+        for (int i = 0; i < count; i++) {
+            final String value = db.get("stress", artifact, "key" + i, String.class);
+            if (i % 3 == 0 && value != null) {
+                return "Removed value present: " + artifact + "/key" + i;
+            }
+            if (i % 3 != 0 && !("value" + i).equals(value)) {
+                return "Wrong value " + artifact + "/key" + i + ": " + value;
+            }
+        }
+        return null;
+    }
+
+}
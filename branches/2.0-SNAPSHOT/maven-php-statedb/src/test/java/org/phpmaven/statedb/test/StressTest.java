@@ -0,0 +1,169 @@
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.statedb.test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.execution.MavenSession;
+import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.statedb.IStateDatabase;
+import org.phpmaven.test.AbstractTestCase;
+
+/**
+ * Stress tests for concurrent access to the state database.
+ *
+ * @author Martin Eisengardt <Martin.Eisengardt@googlemail.com>
+ * @since 2.0.1
+ */
+public class StressTest extends AbstractTestCase {
+
+    /**
+     * Number of values per thread or process.
+     */
+    private static final int COUNT = 300;
+
+    /**
+     * Looks up the state database.
+     *
+     * @return state database
+     * @throws Exception thrown on errors
+     */
+    private IStateDatabase lookupDatabase() throws Exception {
+        // look up the component factory
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final MavenSession session = this.createSimpleEmptySession();
+        return factory.lookup(
+                IStateDatabase.class,
+                IComponentFactory.EMPTY_CONFIG,
+                session);
+    }
+
+    /**
+     * Starts threads writing the given artifacts.
+     *
+     * @param db the state database
+     * @param artifacts the artifact ids
+     * @param errors list receiving the errors
+     * @return the started threads
+     */
+    private List<Thread> startThreads(final IStateDatabase db, String[] artifacts, final List<Throwable> errors) {
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (final String artifact : artifacts) {
+            final Thread thread = new Thread(artifact) {
+                @Override
+                public void run() {
+                    try {
+                        StressProcess.writeValues(db, artifact, COUNT);
+                    // CHECKSTYLE:OFF
+                    // collect every error
+                    } catch (Throwable ex) {
+                    // CHECKSTYLE:ON
+                        errors.add(ex);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    /**
+     * Hammers the database from multiple threads.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testThreads() throws Exception {
+        final IStateDatabase db = this.lookupDatabase();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final String[] artifacts = new String[8];
+        for (int i = 0; i < artifacts.length; i++) {
+            artifacts[i] = "thread" + i;
+        }
+        for (final Thread thread : this.startThreads(db, artifacts, errors)) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new Exception(errors.get(0));
+        }
+
+        db.reload();
+        for (final String artifact : artifacts) {
+            assertNull(StressProcess.verifyValues(db, artifact, COUNT));
+        }
+        assertNotNull(db.get("stress", "shared", "last", String.class));
+    }
+
+    /**
+     * Hammers the database from multiple processes and threads.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testProcesses() throws Exception {
+        final IStateDatabase db = this.lookupDatabase();
+        final File java = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        final List<Process> processes = new ArrayList<Process>();
+        final String[] artifacts = new String[3];
+        for (int i = 0; i < artifacts.length; i++) {
+            artifacts[i] = "process" + i;
+            final ProcessBuilder builder = new ProcessBuilder(
+                    java.getAbsolutePath(),
+                    "-cp",
+                    System.getProperty("java.class.path"),
+                    StressProcess.class.getName(),
+                    db.getDbfile().getAbsolutePath(),
+                    String.valueOf(i),
+                    String.valueOf(COUNT));
+            builder.redirectErrorStream(true);
+            processes.add(builder.start());
+        }
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<Thread> threads = this.startThreads(db, new String[]{"thread0", "thread1"}, errors);
+
+        for (final Process process : processes) {
+            final InputStream in = process.getInputStream();
+            final StringBuilder output = new StringBuilder();
+            final byte[] buffer = new byte[1024];
+            int read = in.read(buffer);
+            while (read != -1) {
+                output.append(new String(buffer, 0, read));
+                read = in.read(buffer);
+            }
+            assertEquals(output.toString(), 0, process.waitFor());
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new Exception(errors.get(0));
+        }
+
+        for (final String artifact : new String[]{"process0", "process1", "process2", "thread0", "thread1"}) {
+            assertNull(StressProcess.verifyValues(db, artifact, COUNT));
+        }
+        db.reload();
+        for (final String artifact : new String[]{"process0", "process1", "process2", "thread0", "thread1"}) {
+            assertNull(StressProcess.verifyValues(db, artifact, COUNT));
+        }
+    }
+
+}
@@ -20,7 +20,25 @@ import org.apache.maven.plugin.logging.Log;
 /**
  * Validator for php files doing a lint check.
  * 
- * First set the log (setLog). Then invoke the run method do perform the lint check. TODO description of configuration.
+ * <p>
+ * Add the files to be checked (addFileToCheck) and invoke the run method to perform the lint check and to wait for
+ * the results. You may invoke the start method before adding files; the files will be checked as soon as they are
+ * added. The number of threads can be configured via configuration "threads" of the build plugin
+ * maven-php-validate-lint or via property php.lint.threads (defaults to the number of available processors).
+ * </p>
+ * 
+ * <p>
+ * Setting the configuration "batchSize" (property php.lint.batchSize) to a value greater than 1 lets a single php
+ * process check the given number of files (requires PHP 7 and opcache). Files failing the check or crashing the
+ * php process are re-checked in isolation so that the errors are reported as by single file checks. Per default every file is checked by its own php process.
+ * </p>
+ * 
+ * <p>
+ * Setting the configuration "incremental" (property php.lint.incremental) to true skips files that passed the
+ * lint check before and whose content did not change. The content hashes are stored in the configuration
+ * "cacheFile" (defaults to target/phpmaven.lint.cache) and are discarded if the php version, php defines or
+ * additional php parameters change.
+ * </p>
  * 
  * @author mepeisen
  * @since 2.0.0
@@ -28,12 +46,24 @@ import org.apache.maven.plugin.logging.Log;
 public interface ILintChecker {
     
     /**
-     * Runs the lint check
+     * Starts the lint check threads. Files added after invoking this method are checked immediately.
+     * @param log logger
+     */
+    void start(Log log);
+    
+    /**
+     * Runs the lint check (if not already started) and waits for all files to be checked.
      * @param log logger
      * @return failures
      */
     Iterable<ILintExecution> run(Log log);
     
+    /**
+     * Sets a listener that receives failures as soon as they occur.
+     * @param listener listener or {@code null}
+     */
+    void setListener(ILintListener listener);
+    
     /**
      * Adds a file to be checked
      * @param file file to be checked
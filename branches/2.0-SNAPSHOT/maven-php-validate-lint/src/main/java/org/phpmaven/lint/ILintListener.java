@@ -0,0 +1,35 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.lint;
+
+/**
+ * Listener receiving lint check failures as soon as they occur.
+ * 
+ * <p>
+ * The listener is invoked from the lint check threads; implementations must be thread safe.
+ * </p>
+ * 
+ * @author mepeisen
+ * @since 2.0.1
+ */
+public interface ILintListener {
+    
+    /**
+     * Invoked for every file failing the lint check.
+     * @param failure the failed lint execution
+     */
+    void onFailure(ILintExecution failure);
+
+}
@@ -0,0 +1,240 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.lint.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.phpmaven.core.HashUtils;
+
+/**
+ * Cache of files that passed the lint check (incremental lint checks).
+ *
+ * <p>
+ * The cache is a text file. The first line contains the fingerprint of the php executable; the cache
+ * is discarded if the fingerprint changes. Every following line contains the content hash and the
+ * path of a file that passed the lint check ("-" as hash removes the file). New entries are appended
+ * to the file; the file is only rewritten while closing the cache if it contains stale entries.
+ * </p>
+ *
+ * @author mepeisen
+ * @since 2.0.1
+ */
+class LintCache {
+
+    /**
+     * Header prefix of the cache file.
+     */
+    private static final String HEADER = "#phpmaven-lint-cache 1 ";
+
+    /**
+     * Hash used for removed entries.
+     */
+    private static final String REMOVED = "-";
+
+    /**
+     * The cache file.
+     */
+    private final File file;
+
+    /**
+     * The fingerprint of the php executable.
+     */
+    private final String fingerprint;
+
+    /**
+     * The content hashes of the files that passed the lint check.
+     */
+    private final Map<String, String> entries = new HashMap<String, String>();
+
+    /**
+     * The number of lines within the cache file.
+     */
+    private int lines;
+
+    /**
+     * The writer appending new entries.
+     */
+    private Writer writer;
+
+    /**
+     * Constructor.
+     * @param file the cache file
+     * @param fingerprint the fingerprint of the php executable
+     */
+    public LintCache(File file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Loads the cache file.
+     * @throws IOException thrown on io errors
+     */
+    public synchronized void load() throws IOException {
+        this.entries.clear();
+        this.lines = 0;
+        if (this.file.exists()) {
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+            try {
+                String line = reader.readLine();
+                if (line != null && line.equals(HEADER + this.fingerprint)) {
+                    line = reader.readLine();
+                    while (line != null) {
+                        final int pos = line.indexOf(' ');
+                        if (pos > 0) {
+                            final String hash = line.substring(0, pos);
+                            if (REMOVED.equals(hash)) {
+                                this.entries.remove(line.substring(pos + 1));
+                            } else {
+                                this.entries.put(line.substring(pos + 1), hash);
+                            }
+                            this.lines++;
+                        }
+                        line = reader.readLine();
+                    }
+                } else {
+                    // different php executable or unknown format
+                    this.lines = -1;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        if (this.lines == -1 || !this.file.exists()) {
+            this.rewrite();
+        }
+    }
+
+    /**
+     * Returns true if the given file passed the lint check with the given content hash.
+     * @param path the file
+     * @param hash the content hash
+     * @return true if the file is unchanged
+     */
+    public synchronized boolean isUnchanged(File path, String hash) {
+        return hash.equals(this.entries.get(path.getAbsolutePath()));
+    }
+
+    /**
+     * Records a file that passed the lint check.
+     * @param path the file
+     * @param hash the content hash
+     * @throws IOException thrown on io errors
+     */
+    public synchronized void passed(File path, String hash) throws IOException {
+        final String key = path.getAbsolutePath();
+        if (!hash.equals(this.entries.put(key, hash))) {
+            this.append(hash, key);
+        }
+    }
+
+    /**
+     * Records a file that failed the lint check.
+     * @param path the file
+     * @throws IOException thrown on io errors
+     */
+    public synchronized void failed(File path) throws IOException {
+        final String key = path.getAbsolutePath();
+        if (this.entries.remove(key) != null) {
+            this.append(REMOVED, key);
+        }
+    }
+
+    /**
+     * Prunes entries of files that do not exist any longer and closes the cache.
+     * @throws IOException thrown on io errors
+     */
+    public synchronized void close() throws IOException {
+        final Iterator<String> iter = this.entries.keySet().iterator();
+        while (iter.hasNext()) {
+            if (!new File(iter.next()).exists()) {
+                iter.remove();
+            }
+        }
+        if (this.lines > this.entries.size()) {
+            this.rewrite();
+        }
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Appends an entry to the cache file.
+     * @param hash the hash
+     * @param path the path
+     * @throws IOException thrown on io errors
+     */
+    private void append(String hash, String path) throws IOException {
+        if (this.writer == null) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), "UTF-8"));
+        }
+        this.writer.write(hash + " " + path + "\n");
+        this.lines++;
+    }
+
+    /**
+     * Rewrites the cache file containing the current entries only.
+     * @throws IOException thrown on io errors
+     */
+    private void rewrite() throws IOException {
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+        if (!this.file.getParentFile().exists()) {
+            this.file.getParentFile().mkdirs();
+        }
+        final File tmp = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+        final Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            w.write(HEADER + this.fingerprint + "\n");
+            for (final Map.Entry<String, String> entry : this.entries.entrySet()) {
+                w.write(entry.getValue() + " " + entry.getKey() + "\n");
+            }
+        } finally {
+            w.close();
+        }
+        this.file.delete();
+        if (!tmp.renameTo(this.file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + this.file);
+        }
+        this.lines = this.entries.size();
+    }
+
+    /**
+     * Calculates the content hash of given file.
+     * @param path the file
+     * @return content hash
+     * @throws IOException thrown on io errors
+     */
+    public static String hash(File path) throws IOException {
+        return HashUtils.hash(path, "SHA-1");
+    }
+
+}
@@ -15,28 +15,73 @@
 package org.phpmaven.lint.impl;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Configuration;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
+import org.phpmaven.core.BuildPluginConfiguration;
 import org.phpmaven.core.ConfigurationParameter;
 import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.exec.PhpException;
 import org.phpmaven.lint.ILintChecker;
 import org.phpmaven.lint.ILintExecution;
+import org.phpmaven.lint.ILintListener;
 
 @Component(role = ILintChecker.class, instantiationStrategy = "per-lookup")
+@BuildPluginConfiguration(groupId = "org.phpmaven", artifactId = "maven-php-validate-lint",
+    filter = { "executableConfig" })
 public class LintChecker implements ILintChecker {
     
     /**
-     * Thread count.
-     * TODO configrable
+     * Thread count; 0 for the number of available processors.
      */
-    private static final int THREAD_COUNT = 5;
+    @Configuration(name = "threads", value = "0")
+    @ConfigurationParameter(name = "threads", expression = "${php.lint.threads}")
+    private int threads;
+    
+    /**
+     * Number of files checked by a single php process; 0 or 1 to check every file by its own php process.
+     */
+    @Configuration(name = "batchSize", value = "0")
+    @ConfigurationParameter(name = "batchSize", expression = "${php.lint.batchSize}")
+    private int batchSize;
+    
+    /**
+     * True to skip files that passed the lint check before and that did not change.
+     */
+    @Configuration(name = "incremental", value = "false")
+    @ConfigurationParameter(name = "incremental", expression = "${php.lint.incremental}")
+    private boolean incremental;
+    
+    /**
+     * The cache file used for incremental lint checks.
+     */
+    @ConfigurationParameter(name = "cacheFile", expression = "${project.basedir}/target/phpmaven.lint.cache")
+    private File cacheFile;
+    
+    /**
+     * The cache of files that passed the lint check; null if incremental lint checks are disabled.
+     */
+    private LintCache cache;
+    
+    /**
+     * Number of files skipped because they did not change.
+     */
+    private final AtomicInteger skipped = new AtomicInteger();
     
     /**
      * The component factory.
@@ -51,64 +96,238 @@ public class LintChecker implements ILintChecker {
     private MavenSession session;
     
     /**
-     * The queue.
+     * The files added before the lint check was started.
      */
-    private LintQueue queue = new LintQueue();
+    private final List<LintExecution> pending = new ArrayList<LintExecution>();
     
     /**
-     * The walkers.
+     * The files added after the lint check was started that are not yet submitted (batch mode).
      */
-    private LintThread[] walkers = new LintThread[THREAD_COUNT];
+    private List<LintExecution> chunk = new ArrayList<LintExecution>();
     
     /**
-     * The lint helper.
+     * The futures of the lint checks.
      */
-    public LintChecker() {
-        this.queue = new LintQueue();
-    }
+    private final List<Future<List<LintExecution>>> futures = new ArrayList<Future<List<LintExecution>>>();
+    
+    /**
+     * The executor running the lint checks.
+     */
+    private ExecutorService executor;
+    
+    /**
+     * The validator.
+     */
+    private LintValidator validator;
+    
+    /**
+     * The listener.
+     */
+    private volatile ILintListener listener;
+    
+    /**
+     * The log.
+     */
+    private Log log;
     
     /**
      * {@inheritDoc}
      */
     @Override
     public void addFileToCheck(File file) {
-        this.queue.addLintCheck(new LintExecution(file));
+        final LintExecution execution = new LintExecution(file);
+        synchronized (this.futures) {
+            if (this.executor == null) {
+                this.pending.add(execution);
+            } else {
+                this.chunk.add(execution);
+                if (this.chunk.size() >= this.batchSize) {
+                    this.submitChunk();
+                }
+            }
+        }
     }
     
     /**
-     * waits for thread end and returns the failures.
-     * @return failures
+     * Submits the lint checks of the current chunk.
      */
-    private Iterable<LintExecution> waitAndReturnFailures() {
-        this.queue.terminate();
-        for (final LintThread thread : walkers) {
+    private void submitChunk() {
+        if (this.chunk.isEmpty()) {
+            return;
+        }
+        final List<LintExecution> executions = this.chunk;
+        this.chunk = new ArrayList<LintExecution>();
+        this.futures.add(this.executor.submit(new Callable<List<LintExecution>>() {
+            @Override
+            public List<LintExecution> call() {
+                LintChecker.this.validate(executions);
+                final ILintListener l = LintChecker.this.listener;
+                if (l != null) {
+                    for (final LintExecution execution : executions) {
+                        if (execution.getException() != null) {
+                            l.onFailure(execution);
+                        }
+                    }
+                }
+                return executions;
+            }
+        }));
+    }
+    
+    /**
+     * Validates the given executions respecting the incremental lint cache.
+     * @param executions lint executions
+     */
+    private void validate(List<LintExecution> executions) {
+        if (this.cache == null) {
+            this.validator.validate(executions, this.log);
+            return;
+        }
+        
+        final List<LintExecution> changed = new ArrayList<LintExecution>();
+        final List<String> hashes = new ArrayList<String>();
+        for (final LintExecution execution : executions) {
+            String hash = null;
             try {
-                thread.join();
-            } catch (InterruptedException ex) {
-                // ignore; should never happen
+                hash = LintCache.hash(execution.getFile());
+            } catch (IOException ex) {
+                this.log.debug("Cannot hash " + execution.getFile(), ex);
+            }
+            if (hash != null && this.cache.isUnchanged(execution.getFile(), hash)) {
+                this.skipped.incrementAndGet();
+            } else {
+                changed.add(execution);
+                hashes.add(hash);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        
+        this.validator.validate(changed, this.log);
+        try {
+            for (int i = 0; i < changed.size(); i++) {
+                final LintExecution execution = changed.get(i);
+                if (execution.getException() != null) {
+                    this.cache.failed(execution.getFile());
+                } else if (hashes.get(i) != null) {
+                    this.cache.passed(execution.getFile(), hashes.get(i));
+                }
             }
+        } catch (IOException ex) {
+            this.log.warn("Cannot write lint cache " + this.cacheFile, ex);
         }
-        return this.queue.getFailures();
     }
-
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setListener(ILintListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public Iterable<ILintExecution> run(Log log) {
-        for (int i = 0; i < walkers.length; i++) {
+    public void start(Log l) {
+        synchronized (this.futures) {
+            if (this.executor != null) {
+                return;
+            }
+            this.log = l;
             try {
-                walkers[i] = this.factory.lookup(LintThread.class, IComponentFactory.EMPTY_CONFIG, this.session);
-                walkers[i].setQueue(queue);
+                this.validator = this.factory.lookup(
+                        LintValidator.class, IComponentFactory.EMPTY_CONFIG, this.session);
+                this.validator.prepare(l);
             } catch (ComponentLookupException ex) {
                 throw new IllegalStateException(ex);
             } catch (PlexusConfigurationException ex) {
                 throw new IllegalStateException(ex);
             }
+            
+            if (this.incremental) {
+                try {
+                    final LintCache c = new LintCache(this.cacheFile, this.validator.getFingerprint());
+                    c.load();
+                    this.cache = c;
+                    this.skipped.set(0);
+                } catch (PhpException ex) {
+                    l.warn("Incremental lint check disabled; cannot evaluate the php version", ex);
+                } catch (IOException ex) {
+                    l.warn("Incremental lint check disabled; cannot read lint cache " + this.cacheFile, ex);
+                }
+            }
+            
+            final int count = this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors();
+            l.debug("Starting " + count + " lint check threads");
+            this.executor = Executors.newFixedThreadPool(count, new ThreadFactory() {
+                private final AtomicInteger number = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "Lint-Check-" + this.number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            for (final LintExecution execution : this.pending) {
+                this.chunk.add(execution);
+                if (this.chunk.size() >= this.batchSize) {
+                    this.submitChunk();
+                }
+            }
+            this.pending.clear();
         }
-        for (int i = 0; i < walkers.length; i++) {
-            walkers[i].run(log);
-        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterable<ILintExecution> run(Log l) {
+        this.start(l);
         final List<ILintExecution> result = new ArrayList<ILintExecution>();
-        for (final LintExecution exec : this.waitAndReturnFailures()) {
-            result.add(exec);
+        try {
+            while (true) {
+                final List<Future<List<LintExecution>>> all;
+                synchronized (this.futures) {
+                    this.submitChunk();
+                    if (this.futures.isEmpty()) {
+                        break;
+                    }
+                    all = new ArrayList<Future<List<LintExecution>>>(this.futures);
+                    this.futures.clear();
+                }
+                for (final Future<List<LintExecution>> future : all) {
+                    for (final LintExecution execution : future.get()) {
+                        if (execution.getException() != null) {
+                            result.add(execution);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            synchronized (this.futures) {
+                this.executor.shutdownNow();
+                this.executor = null;
+                this.futures.clear();
+                this.chunk.clear();
+            }
+            if (this.cache != null) {
+                l.info("Lint check skipped " + this.skipped.get() + " unchanged files.");
+                try {
+                    this.cache.close();
+                } catch (IOException ex) {
+                    l.warn("Cannot write lint cache " + this.cacheFile, ex);
+                }
+                this.cache = null;
+            }
         }
         return result;
     }
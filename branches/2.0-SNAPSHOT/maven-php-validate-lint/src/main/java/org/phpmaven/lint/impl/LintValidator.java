@@ -0,0 +1,326 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.phpmaven.lint.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Configuration;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.codehaus.plexus.configuration.PlexusConfigurationException;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.phpmaven.core.BuildPluginConfiguration;
+import org.phpmaven.core.ConfigurationParameter;
+import org.phpmaven.core.HashUtils;
+import org.phpmaven.core.IComponentFactory;
+import org.phpmaven.exec.IPhpExecutable;
+import org.phpmaven.exec.IPhpExecutableConfiguration;
+import org.phpmaven.exec.PhpException;
+
+/**
+ * Lint validator performing the lint check of single files.
+ * 
+ * @author mepeisen
+ */
+@Component(role = LintValidator.class, instantiationStrategy = "per-lookup")
+@BuildPluginConfiguration(groupId = "org.phpmaven", artifactId = "maven-php-validate-lint",
+    filter = { "threads", "batchSize", "incremental", "cacheFile" })
+public class LintValidator {
+    
+    /**
+     * Prefix of the result lines printed by the batch lint script.
+     */
+    private static final String BATCH_PREFIX = "##phpmaven-lint## ";
+    
+    /**
+     * Line printed by the batch lint script if php cannot compile files without executing them.
+     */
+    private static final String BATCH_UNSUPPORTED = BATCH_PREFIX + "UNSUPPORTED";
+    
+    /**
+     * Php options of the batch lint check; opcache_compile_file requires opcache within the cli.
+     */
+    private static final String BATCH_OPTIONS = "-d opcache.enable_cli=1 ";
+    
+    /**
+     * The batch lint script (shared by all validators).
+     */
+    private static File batchScript;
+    
+    /**
+     * The component factory.
+     */
+    @Requirement
+    private IComponentFactory factory;
+    
+    /**
+     * The maven session.
+     */
+    @ConfigurationParameter(name = "session", expression = "${session}")
+    private MavenSession session;
+    
+    /**
+     * Php config.
+     */
+    @Configuration(name = "executableConfig", value = "")
+    private Xpp3Dom executableConfig;
+    
+    /**
+     * The php executable configuration.
+     */
+    private IPhpExecutableConfiguration execConfig;
+    
+    /**
+     * The php executable.
+     */
+    private IPhpExecutable exec;
+    
+    /**
+     * True if the php executable supports batch lint checks; null if not checked yet.
+     */
+    private Boolean batchSupported;
+
+    public Xpp3Dom getExecutableConfig() {
+        return executableConfig;
+    }
+
+    public void setExecutableConfig(Xpp3Dom executableConfig) {
+        this.executableConfig = executableConfig;
+    }
+    
+    /**
+     * Prepares the php executable.
+     * @param log the log
+     * @throws ComponentLookupException thrown if the php executable cannot be created
+     * @throws PlexusConfigurationException thrown if the php executable cannot be created
+     */
+    public void prepare(Log log) throws ComponentLookupException, PlexusConfigurationException {
+        this.execConfig = this.factory.lookup(IPhpExecutableConfiguration.class, this.executableConfig, session);
+        this.exec = this.execConfig.getPhpExecutable(log);
+    }
+    
+    /**
+     * Returns a fingerprint of the php executable influencing the lint check results (php version, php
+     * defines and additional php parameters).
+     * @return fingerprint
+     * @throws PhpException thrown if the php version cannot be evaluated
+     */
+    public String getFingerprint() throws PhpException {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(this.exec.getStrVersion()).append('\n');
+        builder.append(this.execConfig.getExecutable()).append('\n');
+        builder.append(this.execConfig.getAdditionalPhpParameters()).append('\n');
+        builder.append(new TreeMap<String, String>(this.execConfig.getPhpDefines()));
+        try {
+            return HashUtils.toHex(MessageDigest.getInstance("SHA-1").digest(
+                    builder.toString().getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Validates the given file; the validation result is stored within the lint execution.
+     * @param execution the lint execution
+     * @param log the log
+     */
+    public void validate(LintExecution execution, Log log) {
+        final String command = "-l \"" + execution.getFile().getAbsolutePath() + "\"";
+        log.debug("Validating: " + execution.getFile().getAbsolutePath());
+        try {
+            this.exec.execute(command, execution.getFile());
+        } catch (PhpException e) {
+            execution.setException(e);
+        }
+    }
+
+    /**
+     * Validates the given files within a single php process; the validation results are stored within the
+     * lint executions. The batch only reports the files passing the check; all other files (syntax errors,
+     * compile errors or crashing php) are validated again in isolation by "php -l" so that batch and single
+     * file checks report the same errors. If the batch lint script stopped early the remaining files are
+     * passed to a new batch.
+     * @param executions the lint executions
+     * @param log the log
+     */
+    public void validate(List<LintExecution> executions, final Log log) {
+        int from = 0;
+        while (from < executions.size()) {
+            final List<LintExecution> pending = executions.subList(from, executions.size());
+            final int[] returnCode = new int[1];
+            final Set<Integer> passed = pending.size() == 1 || !this.isBatchSupported(log)
+                ? null : this.runBatch(pending, returnCode, log);
+            if (passed == null) {
+                for (final LintExecution execution : pending) {
+                    this.validate(execution, log);
+                }
+                return;
+            }
+            
+            int stop = pending.size();
+            if (returnCode[0] != 0) {
+                // the batch stopped at the file following the last passed file
+                stop = 0;
+                for (final Integer index : passed) {
+                    stop = Math.max(stop, index + 1);
+                }
+            }
+            from = executions.size();
+            for (int i = 0; i < pending.size(); i++) {
+                if (!passed.contains(i)) {
+                    // retry in isolation
+                    this.validate(pending.get(i), log);
+                    if (i == stop) {
+                        from = executions.size() - pending.size() + i + 1;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Runs the batch lint script.
+     * @param executions the lint executions
+     * @param returnCode receives the return code of the batch lint script
+     * @param log the log
+     * @return the indexes of the lint executions passing the check; null if the batch lint check failed or is
+     *     not supported
+     */
+    private Set<Integer> runBatch(List<LintExecution> executions, int[] returnCode, final Log log) {
+        final Set<Integer> results = new HashSet<Integer>();
+        final boolean[] unsupported = new boolean[1];
+        File list = null;
+        try {
+            list = File.createTempFile("phpmaven-lint", ".lst");
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(list), Charset.defaultCharset());
+            try {
+                for (final LintExecution execution : executions) {
+                    log.debug("Validating: " + execution.getFile().getAbsolutePath());
+                    writer.write(execution.getFile().getAbsolutePath());
+                    writer.write("\n");
+                }
+            } finally {
+                writer.close();
+            }
+            
+            returnCode[0] = this.exec.execute(
+                BATCH_OPTIONS + "\"" + getBatchScript().getAbsolutePath() + "\" \"" + list.getAbsolutePath() + "\"",
+                new StreamConsumer() {
+                    @Override
+                    public void consumeLine(String line) {
+                        if (line.startsWith(BATCH_UNSUPPORTED)) {
+                            unsupported[0] = true;
+                        } else if (line.startsWith(BATCH_PREFIX)) {
+                            final String[] parts = line.substring(BATCH_PREFIX.length()).split(" ");
+                            results.add(Integer.valueOf(parts[0]));
+                        } else {
+                            log.debug("php.out: " + line);
+                        }
+                    }
+                },
+                new StreamConsumer() {
+                    @Override
+                    public void consumeLine(String line) {
+                        log.debug("php.err: " + line);
+                    }
+                });
+            if (returnCode[0] != 0) {
+                log.debug("Batch lint check returned " + returnCode[0] + "; re-checking remaining files");
+            }
+        } catch (IOException ex) {
+            log.debug("Batch lint check failed; re-checking files", ex);
+            return null;
+        } catch (PhpException ex) {
+            log.debug("Batch lint check failed; re-checking files", ex);
+            return null;
+        } finally {
+            if (list != null) {
+                list.delete();
+            }
+        }
+        
+        if (unsupported[0]) {
+            synchronized (this) {
+                if (this.batchSupported) {
+                    log.info("Batch lint checks require opcache; checking every file by its own php process.");
+                }
+                this.batchSupported = false;
+            }
+            return null;
+        }
+        return results;
+    }
+    
+    /**
+     * Returns true if the php executable supports batch lint checks (PHP 7 or newer).
+     * @param log the log
+     * @return true if batch lint checks are supported
+     */
+    private synchronized boolean isBatchSupported(Log log) {
+        if (this.batchSupported == null) {
+            boolean supported = false;
+            try {
+                final String version = this.exec.getStrVersion();
+                final int dot = version.indexOf('.');
+                supported = Integer.parseInt(dot == -1 ? version : version.substring(0, dot)) >= 7;
+            } catch (PhpException ex) {
+                log.debug("Cannot determine php version", ex);
+            } catch (NumberFormatException ex) {
+                log.debug("Cannot determine php version", ex);
+            }
+            if (!supported) {
+                log.info("Batch lint checks require PHP 7 or newer; checking every file by its own php process.");
+            }
+            this.batchSupported = supported;
+        }
+        return this.batchSupported;
+    }
+    
+    /**
+     * Returns the batch lint script.
+     * @return batch lint script
+     * @throws IOException thrown if the script cannot be created
+     */
+    private static synchronized File getBatchScript() throws IOException {
+        if (batchScript == null) {
+            final File script = File.createTempFile("phpmaven-lint", ".php");
+            script.deleteOnExit();
+            FileUtils.copyURLToFile(LintValidator.class.getResource("/org/phpmaven/lint/lint-batch.php"), script);
+            batchScript = script;
+        }
+        return batchScript;
+    }
+    
+}
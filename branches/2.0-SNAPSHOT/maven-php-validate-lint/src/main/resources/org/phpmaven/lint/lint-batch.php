@@ -0,0 +1,91 @@
+<?php
+/**
+ * Copyright 2010-2012 by PHP-maven.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * PHP-Maven batch lint check.
+ *
+ * Argument 1 is a file containing the php files to be checked (one file per line). The files are
+ * parsed and compiled (without executing or declaring anything) and every file passing the check is printed:
+ *   ##phpmaven-lint## <index> OK
+ *
+ * Syntax errors are detected by token_get_all with TOKEN_PARSE. The files passing the syntax check are
+ * compiled by opcache_compile_file to detect compile errors (for example duplicate declarations or break
+ * outside of loops). If pcntl is available every file is compiled within a forked child process.
+ * Otherwise the files are compiled within this process; the script stops after the first file failing
+ * to compile because the engine state is undefined after compile errors.
+ *
+ * No result is printed for unreadable files and files failing the syntax check or failing to compile; the
+ * caller checks them by "php -l" to get the same error messages. If opcache is not available the script prints "##phpmaven-lint## UNSUPPORTED" and exits.
+ *
+ * Requires PHP 7 or newer (token_get_all with TOKEN_PARSE) and opcache (opcache.enable_cli=1).
+ */
+
+/**
+ * Compiles the given file.
+ * @param string $file the php file
+ * @return boolean true if the file was compiled
+ */
+function __phpmaven_lint_compile($file) {
+    ini_set('display_errors', '0');
+    ini_set('log_errors', '0');
+    try {
+        return @opcache_compile_file($file) === true;
+    } catch (Throwable $e) {
+        return false;
+    }
+}
+
+if (!function_exists('opcache_compile_file') || !ini_get('opcache.enable') || !ini_get('opcache.enable_cli')) {
+    echo "##phpmaven-lint## UNSUPPORTED\n";
+    exit(0);
+}
+
+$fork = function_exists('pcntl_fork') && function_exists('pcntl_waitpid');
+$files = file($argv[1], FILE_IGNORE_NEW_LINES | FILE_SKIP_EMPTY_LINES);
+foreach ($files as $index => $file) {
+    $code = @file_get_contents($file);
+    if ($code === false) {
+        continue;
+    }
+    try {
+        token_get_all($code, TOKEN_PARSE);
+    } catch (Throwable $e) {
+        continue;
+    }
+
+    if ($fork) {
+        $pid = pcntl_fork();
+        if ($pid === 0) {
+            // child process; compile errors are fatal and end the child only
+            if (__phpmaven_lint_compile($file)) {
+                echo '##phpmaven-lint## ' . $index . " OK\n";
+                flush();
+            }
+            exit(0);
+        }
+        if ($pid > 0) {
+            pcntl_waitpid($pid, $status);
+        }
+        continue;
+    }
+
+    if (!__phpmaven_lint_compile($file)) {
+        exit(2);
+    }
+    echo '##phpmaven-lint## ' . $index . " OK\n";
+    flush();
+}
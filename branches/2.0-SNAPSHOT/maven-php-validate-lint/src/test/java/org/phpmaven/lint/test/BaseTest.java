@@ -17,16 +17,21 @@
 package org.phpmaven.lint.test;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.monitor.logging.DefaultLog;
 import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.phpmaven.core.IComponentFactory;
 import org.phpmaven.lint.ILintChecker;
 import org.phpmaven.lint.ILintExecution;
+import org.phpmaven.lint.ILintListener;
 import org.phpmaven.test.AbstractTestCase;
 
 /**
@@ -115,4 +120,133 @@ public class BaseTest extends AbstractTestCase {
         assertNotNull(failures.get(failed2File));
     }
 
+    /**
+     * Tests if files can be added after the lint check was started and if the failures are streamed.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testAddWhileRunning() throws Exception {
+        final MavenSession session = this.createSimpleSession("lint/empty-pom");
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final Xpp3Dom config = new Xpp3Dom("configuration");
+        final Xpp3Dom threads = new Xpp3Dom("threads");
+        threads.setValue("2");
+        config.addChild(threads);
+        final ILintChecker checker = factory.lookup(ILintChecker.class, config, session);
+        
+        final Set<File> streamed = Collections.synchronizedSet(new HashSet<File>());
+        checker.setListener(new ILintListener() {
+            @Override
+            public void onFailure(ILintExecution failure) {
+                streamed.add(failure.getFile());
+            }
+        });
+        
+        final DefaultLog logger = new DefaultLog(new ConsoleLogger());
+        final File failedFile = new File(session.getCurrentProject().getBasedir(), "multiple/failed.php");
+        final File failed2File = new File(session.getCurrentProject().getBasedir(), "multiple/failed2.php");
+        checker.addFileToCheck(failedFile);
+        checker.start(logger);
+        checker.addFileToCheck(new File(session.getCurrentProject().getBasedir(), "multiple/success.php"));
+        checker.addFileToCheck(failed2File);
+        final Iterable<ILintExecution> result = checker.run(logger);
+        final Map<File, ILintExecution> failures = new HashMap<File, ILintExecution>();
+        for (final ILintExecution failure : result) {
+            failures.put(failure.getFile(), failure);
+        }
+        assertEquals(2, failures.size());
+        assertNotNull(failures.get(failedFile));
+        assertNotNull(failures.get(failed2File));
+        assertEquals(failures.keySet(), streamed);
+    }
+
+    /**
+     * Tests if validation works in batch mode.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testBatch() throws Exception {
+        final MavenSession session = this.createSimpleSession("lint/empty-pom");
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final Xpp3Dom config = new Xpp3Dom("configuration");
+        final Xpp3Dom batchSize = new Xpp3Dom("batchSize");
+        batchSize.setValue("2");
+        config.addChild(batchSize);
+        final ILintChecker checker = factory.lookup(ILintChecker.class, config, session);
+        
+        final DefaultLog logger = new DefaultLog(new ConsoleLogger());
+        final File failedFile = new File(session.getCurrentProject().getBasedir(), "multiple/failed.php");
+        final File failed2File = new File(session.getCurrentProject().getBasedir(), "multiple/failed2.php");
+        checker.addFileToCheck(new File(session.getCurrentProject().getBasedir(), "multiple/success.php"));
+        checker.addFileToCheck(failedFile);
+        checker.addFileToCheck(new File(session.getCurrentProject().getBasedir(), "success.php"));
+        checker.addFileToCheck(failed2File);
+        checker.addFileToCheck(new File(session.getCurrentProject().getBasedir(), "failed.php"));
+        final Iterable<ILintExecution> result = checker.run(logger);
+        final Map<File, ILintExecution> failures = new HashMap<File, ILintExecution>();
+        for (final ILintExecution failure : result) {
+            failures.put(failure.getFile(), failure);
+        }
+        assertEquals(3, failures.size());
+        assertNotNull(failures.get(failedFile));
+        assertNotNull(failures.get(failed2File));
+    }
+
+    /**
+     * Tests if files with compile errors (but valid syntax) fail in single file and in batch mode.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testCompileError() throws Exception {
+        final MavenSession session = this.createSimpleSession("lint/empty-pom");
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final Xpp3Dom config = new Xpp3Dom("configuration");
+        final Xpp3Dom batchSize = new Xpp3Dom("batchSize");
+        batchSize.setValue("3");
+        config.addChild(batchSize);
+        
+        final DefaultLog logger = new DefaultLog(new ConsoleLogger());
+        final File compileErrorFile = new File(session.getCurrentProject().getBasedir(), "compile-error.php");
+        for (final Xpp3Dom[] checkerConfig : new Xpp3Dom[][]{IComponentFactory.EMPTY_CONFIG, {config}}) {
+            final ILintChecker checker = factory.lookup(ILintChecker.class, checkerConfig, session);
+            checker.addFileToCheck(new File(session.getCurrentProject().getBasedir(), "multiple/success.php"));
+            checker.addFileToCheck(compileErrorFile);
+            checker.addFileToCheck(new File(session.getCurrentProject().getBasedir(), "success.php"));
+            final Iterator<ILintExecution> iter = checker.run(logger).iterator();
+            assertTrue(iter.hasNext());
+            final ILintExecution failure = iter.next();
+            assertFalse(iter.hasNext());
+            assertEquals(compileErrorFile, failure.getFile());
+            assertNotNull(failure.getException());
+        }
+    }
+
+    /**
+     * Tests if incremental validation skips unchanged files but still reports failures.
+     *
+     * @throws Exception thrown on errors
+     */
+    public void testIncremental() throws Exception {
+        final MavenSession session = this.createSimpleSession("lint/empty-pom");
+        final IComponentFactory factory = lookup(IComponentFactory.class);
+        final Xpp3Dom config = new Xpp3Dom("configuration");
+        final Xpp3Dom incremental = new Xpp3Dom("incremental");
+        incremental.setValue("true");
+        config.addChild(incremental);
+        
+        final DefaultLog logger = new DefaultLog(new ConsoleLogger());
+        final File successFile = new File(session.getCurrentProject().getBasedir(), "multiple/success.php");
+        final File failedFile = new File(session.getCurrentProject().getBasedir(), "multiple/failed.php");
+        for (int i = 0; i < 2; i++) {
+            final ILintChecker checker = factory.lookup(ILintChecker.class, config, session);
+            checker.addFileToCheck(successFile);
+            checker.addFileToCheck(failedFile);
+            final Iterator<ILintExecution> iter = checker.run(logger).iterator();
+            assertTrue(iter.hasNext());
+            assertEquals(failedFile, iter.next().getFile());
+            assertFalse(iter.hasNext());
+        }
+        assertTrue(new File(session.getCurrentProject().getBasedir(), "target/phpmaven.lint.cache").exists());
+    }
+
 }
\ No newline at end of file
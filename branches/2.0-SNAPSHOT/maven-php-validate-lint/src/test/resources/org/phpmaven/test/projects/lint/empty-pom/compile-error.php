@@ -0,0 +1,11 @@
+<?php 
+
+/**
+ * A function with valid syntax that does not compile.
+ * 
+ * @author Martin Eisengardt
+ */
+function myMavenCompileError()
+{
+	break;
+}